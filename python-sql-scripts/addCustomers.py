@@ -11,9 +11,9 @@ num_customers_to_add = 100
 connection = pymysql.connect(host=mysql_endpoint, user=username, passwd = password, db=database_name)
 cursor = connection.cursor()
 
-# Make empty Customers table
+# Make empty Customers table (unless the app already migrated the schema on startup)
 create_customer_table_sql = '''
-  CREATE TABLE Customers (
+  CREATE TABLE IF NOT EXISTS Customers (
     CustomerID varchar(255),
     FirstName varchar(255),
     LastName varchar(255),
@@ -26,7 +26,7 @@ cursor.execute(create_customer_table_sql)
 
 # Make empty Passwords table
 create_password_table_sql = '''
-CREATE TABLE Passwords (
+CREATE TABLE IF NOT EXISTS Passwords (
   CustomerID varchar(255),
   Password varchar(255)
 );
@@ -35,7 +35,7 @@ cursor.execute(create_password_table_sql)
 
 # Make empty OverdraftLogs table
 create_overdraftlogs_table_sql = '''
-CREATE TABLE OverdraftLogs (
+CREATE TABLE IF NOT EXISTS OverdraftLogs (
   CustomerID varchar(255),
   Timestamp DATETIME,
   DepositAmt int,
@@ -47,7 +47,7 @@ cursor.execute(create_overdraftlogs_table_sql)
 
 # Make empty TransactionHistory table
 create_transactionhistory_table_sql = '''
-CREATE TABLE TransactionHistory (
+CREATE TABLE IF NOT EXISTS TransactionHistory (
   CustomerID varchar(255),
   Timestamp DATETIME,
   Action varchar(255) CHECK (Action IN ('Deposit', 'Withdraw')),
@@ -0,0 +1,175 @@
+package net.codejava;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CookieValue;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * JSON API for the same operations as the HTML forms of {@link MvcController}, for clients that
+ * would otherwise have to scrape the "account_info" page.
+ *
+ *   POST /api/sessions                      {"username": ..., "password": ...}  logs in, sets the session cookie
+ *   DELETE /api/sessions                                                        logs out, removes the session cookie
+ *   GET  /api/accounts/{id}                                                     the account's {@link AccountSnapshot}
+ *   POST /api/accounts/{id}/deposits        {"amount": "12.50"}
+ *   POST /api/accounts/{id}/withdrawals     {"amount": "12.50"}
+ *   POST /api/accounts/{id}/disputes        {"numTransactionsAgo": 1}
+ *
+ * Account calls need the session cookie of the customer they name: 401 without a live session,
+ * 403 for another customer's account. Money movements go through the same {@link LedgerService}
+ * as the forms and answer with the updated snapshot, or with an {@link ApiError} naming the
+ * {@link LedgerOutcome} and a matching status code.
+ */
+@RestController
+@RequestMapping("/api")
+public class AccountApiController {
+  private final static Logger LOGGER = LoggerFactory.getLogger(AccountApiController.class);
+
+  private CredentialCache credentialCache;
+  private SessionStore sessionStore;
+  private AccountSnapshotCache accountSnapshotCache;
+  private LedgerService ledgerService;
+
+  public AccountApiController(@Autowired CredentialCache credentialCache,
+                              @Autowired SessionStore sessionStore,
+                              @Autowired AccountSnapshotCache accountSnapshotCache,
+                              @Autowired LedgerService ledgerService) {
+    this.credentialCache = credentialCache;
+    this.sessionStore = sessionStore;
+    this.accountSnapshotCache = accountSnapshotCache;
+    this.ledgerService = ledgerService;
+  }
+
+  /**
+   * @param loginRequest
+   * @return 204 with the session cookie set, or 401 if the password is wrong
+   */
+  @PostMapping("/sessions")
+  public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
+    String customerID = loginRequest.getUsername();
+    LOGGER.debug("API login attempt customer={}", customerID);
+    if (customerID == null || !credentialCache.verify(customerID, loginRequest.getPassword())) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ApiError("INVALID_CREDENTIALS"));
+    }
+
+    ResponseCookie sessionCookie = SessionStore.sessionCookie(sessionStore.create(customerID));
+    return ResponseEntity.noContent().header(HttpHeaders.SET_COOKIE, sessionCookie.toString()).build();
+  }
+
+  /**
+   * @param sessionToken
+   * @return 204 with the session cookie removed, whether or not the session was still live
+   */
+  @DeleteMapping("/sessions")
+  public ResponseEntity<?> logout(@CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
+    return logout(sessionStore, sessionToken);
+  }
+
+  static ResponseEntity<?> logout(SessionStore sessionStore, String sessionToken) {
+    if (sessionToken != null) {
+      sessionStore.invalidate(sessionToken);
+    }
+    return ResponseEntity.noContent().header(HttpHeaders.SET_COOKIE, SessionStore.expiredSessionCookie().toString()).build();
+  }
+
+  @GetMapping("/accounts/{id}")
+  public ResponseEntity<?> getAccount(@PathVariable("id") String customerID,
+                                      @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
+    ResponseEntity<?> unauthorized = checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return unauthorized;
+    }
+    return ResponseEntity.ok(accountSnapshotCache.get(customerID));
+  }
+
+  @PostMapping("/accounts/{id}/deposits")
+  public ResponseEntity<?> deposit(@PathVariable("id") String customerID,
+                                   @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                   @RequestBody MoneyMovementRequest depositRequest) {
+    ResponseEntity<?> unauthorized = checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return unauthorized;
+    }
+    if (depositRequest.getAmount() == null) {
+      return outcomeResponse(customerID, LedgerOutcome.INVALID_AMOUNT);
+    }
+    return outcomeResponse(customerID, ledgerService.deposit(customerID, depositRequest.getAmount()));
+  }
+
+  @PostMapping("/accounts/{id}/withdrawals")
+  public ResponseEntity<?> withdraw(@PathVariable("id") String customerID,
+                                    @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                    @RequestBody MoneyMovementRequest withdrawRequest) {
+    ResponseEntity<?> unauthorized = checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return unauthorized;
+    }
+    if (withdrawRequest.getAmount() == null) {
+      return outcomeResponse(customerID, LedgerOutcome.INVALID_AMOUNT);
+    }
+    return outcomeResponse(customerID, ledgerService.withdraw(customerID, withdrawRequest.getAmount()));
+  }
+
+  @PostMapping("/accounts/{id}/disputes")
+  public ResponseEntity<?> dispute(@PathVariable("id") String customerID,
+                                   @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                   @RequestBody DisputeRequest disputeRequest) {
+    ResponseEntity<?> unauthorized = checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return unauthorized;
+    }
+    return outcomeResponse(customerID, ledgerService.reverseTransaction(customerID, disputeRequest.getNumTransactionsAgo()));
+  }
+
+  /**
+   * @return the error response if the session doesn't belong to this customer, or null if it does
+   */
+  static ResponseEntity<?> checkSession(SessionStore sessionStore, String customerID, String sessionToken) {
+    String sessionCustomerID = sessionStore.customerFor(sessionToken);
+    if (sessionCustomerID == null) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ApiError("NO_SESSION"));
+    }
+    if (!sessionCustomerID.equals(customerID)) {
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiError("NOT_YOUR_ACCOUNT"));
+    }
+    return null;
+  }
+
+  private ResponseEntity<?> outcomeResponse(String customerID, LedgerOutcome outcome) {
+    if (outcome == LedgerOutcome.APPLIED) {
+      // LedgerService has already invalidated the cached snapshot, so this reads the new balance
+      return ResponseEntity.ok(accountSnapshotCache.get(customerID));
+    }
+    return outcomeError(outcome);
+  }
+
+  /**
+   * @return the error response for a money movement that was not applied
+   */
+  static ResponseEntity<?> outcomeError(LedgerOutcome outcome) {
+    switch (outcome) {
+      case INVALID_AMOUNT:
+        return ResponseEntity.badRequest().body(new ApiError(outcome.name()));
+      case ACCOUNT_FROZEN:
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiError(outcome.name()));
+      case TRANSACTION_NOT_FOUND:
+      case CUSTOMER_NOT_FOUND:
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ApiError(outcome.name()));
+      case OVERDRAFT_LIMIT_EXCEEDED:
+      default:
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(new ApiError(outcome.name()));
+    }
+  }
+}
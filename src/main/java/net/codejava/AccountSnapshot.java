@@ -0,0 +1,23 @@
+package net.codejava;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * Immutable view of everything the "account_info" page shows for one customer:
+ * the customer's row in the Customers table, and the most recent page of their
+ * OverdraftLogs and of their TransactionHistory, each newest first.
+ *
+ * Snapshots are produced by {@link AccountSnapshotRepository} in a single DB round trip.
+ */
+@Value
+public class AccountSnapshot {
+  private String customerID;
+  private String firstName;
+  private String lastName;
+  private Money balance;
+  private Money overdraftBalance;
+  private List<OverdraftLogEntry> overdraftLogs;
+  private List<TransactionRecord> transactionHistory;
+}
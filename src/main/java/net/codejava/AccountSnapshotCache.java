@@ -0,0 +1,100 @@
+package net.codejava;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache of {@link AccountSnapshot}s, so that showing the "account_info" page again
+ * doesn't hit the DB when nothing changed since the last time.
+ *
+ * Holds at most `testudo.snapshot-cache.max-entries` customers, evicting the ones least likely to
+ * be used again (Caffeine's W-TinyLFU, which weighs both recency and frequency), each for at most
+ * `testudo.snapshot-cache.ttl-seconds` after it was loaded. Hits, misses and evictions are reported
+ * as the `cache.*` meters tagged with `cache=account-snapshots`.
+ *
+ * {@link LedgerService} invalidates a customer's snapshot after each of their money movements
+ * commits. A load that was in flight when the invalidation arrived finishes first and is then
+ * dropped, so a read that starts after a write has returned always loads the new state. That
+ * holds with read replicas too: the invalidation also tells the {@link ReplicationTracker} about
+ * the write, so the next load comes from the primary or from a replica that has the write.
+ *
+ * That read-after-write guarantee only holds within one instance of the app. A money movement
+ * committed by another instance, or a write made straight to the DB, is not seen here until the
+ * customer's snapshot expires.
+ */
+@Component
+public class AccountSnapshotCache {
+  final static int MAX_NUM_OVERDRAFT_LOGS_DISPLAYED = 10;
+  final static int MAX_NUM_TRANSACTIONS_DISPLAYED = 3;
+  private final static long DEFAULT_TTL_IN_SECONDS = 30;
+
+  private AccountSnapshotRepository accountSnapshotRepository;
+  private ReplicationTracker replicationTracker;
+  private Cache<String, AccountSnapshot> snapshots;
+
+  @Autowired
+  public AccountSnapshotCache(AccountSnapshotRepository accountSnapshotRepository,
+                              ReplicationTracker replicationTracker,
+                              MeterRegistry meterRegistry,
+                              @Value("${testudo.snapshot-cache.max-entries:10000}") long maxEntries,
+                              @Value("${testudo.snapshot-cache.ttl-seconds:30}") long ttlInSeconds) {
+    this(accountSnapshotRepository, replicationTracker, meterRegistry, maxEntries, ttlInSeconds, TimeUnit.SECONDS, Ticker.systemTicker());
+  }
+
+  public AccountSnapshotCache(AccountSnapshotRepository accountSnapshotRepository, long maxEntries) {
+    this(accountSnapshotRepository, ReplicationTracker.primaryOnly(), new SimpleMeterRegistry(), maxEntries, DEFAULT_TTL_IN_SECONDS);
+  }
+
+  AccountSnapshotCache(AccountSnapshotRepository accountSnapshotRepository, ReplicationTracker replicationTracker, MeterRegistry meterRegistry,
+                       long maxEntries, long ttl, TimeUnit ttlUnit, Ticker ticker) {
+    this.accountSnapshotRepository = accountSnapshotRepository;
+    this.replicationTracker = replicationTracker;
+    this.snapshots = Caffeine.newBuilder()
+                             .maximumSize(maxEntries)
+                             .expireAfterWrite(ttl, ttlUnit)
+                             .ticker(ticker)
+                             .recordStats()
+                             .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "account-snapshots");
+  }
+
+  /**
+   * Returns the customer's snapshot, loading it from the DB if it is not cached.
+   *
+   * @param customerID
+   * @return snapshot of the customer's account, with their most recent OverdraftLogs and TransactionHistory rows
+   */
+  public AccountSnapshot get(String customerID) {
+    return snapshots.get(customerID, id -> accountSnapshotRepository.loadSnapshot(id, MAX_NUM_OVERDRAFT_LOGS_DISPLAYED,
+                                                                                  MAX_NUM_TRANSACTIONS_DISPLAYED));
+  }
+
+  /**
+   * Drops the customer's cached snapshot. Called after every committed write to their account.
+   *
+   * @param customerID
+   */
+  public void invalidate(String customerID) {
+    replicationTracker.recordWrite(customerID);
+    snapshots.invalidate(customerID);
+  }
+
+  /**
+   * @return hit, miss and eviction counts since startup
+   */
+  public CacheStats stats() {
+    return snapshots.stats();
+  }
+}
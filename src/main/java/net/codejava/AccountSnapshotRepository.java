@@ -0,0 +1,335 @@
+package net.codejava;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Loads an {@link AccountSnapshot} for a customer in a single DB round trip.
+ *
+ * The Customers row and the most recent OverdraftLogs and TransactionHistory rows are fetched
+ * with one UNION ALL query. Every row carries a RowType discriminator and the remaining columns
+ * are shared between the three row shapes:
+ *
+ *   RowType | CustomerID | Timestamp | Text1     | Text2    | Num1       | Num2             | Num3           | LogID
+ *   --------+------------+-----------+-----------+----------+------------+------------------+----------------+---------------
+ *   0       | CustomerID | NULL      | FirstName | LastName | Balance    | OverdraftBalance | NULL           | NULL
+ *   1       | CustomerID | Timestamp | NULL      | NULL     | DepositAmt | OldOverBalance   | NewOverBalance | OverdraftLogID
+ *   2       | CustomerID | Timestamp | Action    | NULL     | Amount     | NULL             | NULL           | TransactionID
+ *
+ * With `testudo.snapshot.fan-out.enabled` the three parts are read as three separate queries instead,
+ * issued at the same time on up to `testudo.snapshot.fan-out.threads` pool threads, each with its own
+ * pooled connection, and joined. A page view then costs the slowest of the three reads rather than one
+ * read that does the work of all three, but takes up to three connections at once, and the three
+ * reads are not one consistent snapshot: a money movement that commits between them can show in one
+ * part and not yet in another. When every fan-out thread is busy, the request thread runs the read
+ * itself, so the executor never queues. Reads still running after `testudo.snapshot.fan-out.timeout-millis`
+ * are cancelled on the DB and the load fails with a QueryTimeoutException.
+ *
+ * Snapshots are read on a replica when one has the customer's latest write, see {@link ReplicaRoutingDataSource}.
+ */
+@Repository
+public class AccountSnapshotRepository {
+  private final static int CUSTOMER_ROW = 0;
+  private final static int OVERDRAFT_LOG_ROW = 1;
+  private final static int TRANSACTION_ROW = 2;
+
+  // column indexes of the snapshot query
+  private final static int ROW_TYPE = 1;
+  private final static int TIMESTAMP = 3;
+  private final static int TEXT1 = 4;
+  private final static int TEXT2 = 5;
+  private final static int NUM1 = 6;
+  private final static int NUM2 = 7;
+  private final static int NUM3 = 8;
+  private final static int LOG_ID = 9;
+
+  final static String ACCOUNT_SNAPSHOT_SQL =
+      "SELECT 0 AS RowType, CustomerID, NULL AS Timestamp, FirstName AS Text1, LastName AS Text2, Balance AS Num1, OverdraftBalance AS Num2, NULL AS Num3, NULL AS LogID " +
+      "FROM Customers WHERE CustomerID=? " +
+      "UNION ALL " +
+      "(SELECT 1, CustomerID, Timestamp, NULL, NULL, DepositAmt, OldOverBalance, NewOverBalance, OverdraftLogID " +
+      "FROM OverdraftLogs WHERE CustomerID=? ORDER BY Timestamp DESC, OverdraftLogID DESC LIMIT ?) " +
+      "UNION ALL " +
+      "(SELECT 2, CustomerID, Timestamp, Action, NULL, Amount, NULL, NULL, TransactionID " +
+      "FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?) " +
+      // a UNION can only be ordered by its output columns, so every log comes back oldest first
+      "ORDER BY RowType, Timestamp, LogID";
+  final static String CUSTOMER_SQL = "SELECT FirstName, LastName, Balance, OverdraftBalance FROM Customers WHERE CustomerID=?";
+  private final static Logger LOGGER = LoggerFactory.getLogger(AccountSnapshotRepository.class);
+
+  private JdbcTemplate jdbcTemplate;
+  private final boolean fanOutEnabled;
+  private final long fanOutTimeoutMillis;
+  private ThreadPoolExecutor fanOutExecutor;
+
+  @Autowired
+  public AccountSnapshotRepository(@Qualifier("replicaJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                   @Value("${testudo.snapshot.fan-out.enabled:false}") boolean fanOutEnabled,
+                                   @Value("${testudo.snapshot.fan-out.threads:8}") int fanOutThreads,
+                                   @Value("${testudo.snapshot.fan-out.timeout-millis:2000}") long fanOutTimeoutMillis) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.fanOutEnabled = fanOutEnabled;
+    this.fanOutTimeoutMillis = fanOutTimeoutMillis;
+
+    if (fanOutEnabled) {
+      AtomicInteger threadNumber = new AtomicInteger();
+      ThreadFactory threadFactory = runnable -> {
+        Thread thread = new Thread(runnable, "account-snapshot-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      };
+      fanOutExecutor = new ThreadPoolExecutor(fanOutThreads, fanOutThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                                              threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+      fanOutExecutor.allowCoreThreadTimeOut(true);
+    }
+  }
+
+  AccountSnapshotRepository(JdbcTemplate jdbcTemplate) {
+    this(jdbcTemplate, false, 0, 0);
+  }
+
+  public boolean isFanOutEnabled() {
+    return fanOutEnabled;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (fanOutExecutor != null) {
+      fanOutExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fetches the account snapshot for a customer.
+   *
+   * @param customerID
+   * @param maxOverdraftLogs number of most recent OverdraftLogs rows to include
+   * @param maxTransactions number of most recent TransactionHistory rows to include
+   * @return snapshot of the customer's account
+   * @throws EmptyResultDataAccessException if there is no customer with this ID
+   */
+  public AccountSnapshot loadSnapshot(String customerID, int maxOverdraftLogs, int maxTransactions) {
+    if (fanOutEnabled) {
+      return loadSnapshotFannedOut(customerID, maxOverdraftLogs, maxTransactions);
+    }
+    return ReplicaRoutingDataSource.readFor(customerID, () -> jdbcTemplate.query(ACCOUNT_SNAPSHOT_SQL, new AccountSnapshotExtractor(customerID),
+                                                                                 customerID, customerID, maxOverdraftLogs, customerID, maxTransactions));
+  }
+
+  /**
+   * Reads the customer's row, OverdraftLogs and TransactionHistory as three concurrent queries.
+   */
+  private AccountSnapshot loadSnapshotFannedOut(String customerID, int maxOverdraftLogs, int maxTransactions) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fanOutTimeoutMillis);
+    FanOutRead<AccountSnapshot> customerRead = new FanOutRead<>(CUSTOMER_SQL, rs -> {
+      if (!rs.next()) {
+        throw new EmptyResultDataAccessException("No customer with ID " + customerID, 1);
+      }
+      return new AccountSnapshot(customerID, rs.getString(1), rs.getString(2), Money.ofCents(rs.getLong(3)),
+                                 Money.ofCents(rs.getLong(4)), null, null);
+    }, customerID);
+    FanOutRead<List<OverdraftLogEntry>> overdraftLogsRead = new FanOutRead<>(OverdraftLogRepository.RECENT_OVERDRAFT_LOGS_SQL, rs -> {
+      List<OverdraftLogEntry> overdraftLogs = new ArrayList<>();
+      while (rs.next()) {
+        overdraftLogs.add(new OverdraftLogEntry(rs.getLong(1), customerID, rs.getObject(2, LocalDateTime.class), Money.ofCents(rs.getLong(3)),
+                                                Money.ofCents(rs.getLong(4)), Money.ofCents(rs.getLong(5))));
+      }
+      return overdraftLogs;
+    }, customerID, maxOverdraftLogs);
+    FanOutRead<List<TransactionRecord>> transactionsRead = new FanOutRead<>(TransactionHistoryRepository.RECENT_TRANSACTIONS_SQL, rs -> {
+      List<TransactionRecord> transactionHistory = new ArrayList<>();
+      while (rs.next()) {
+        transactionHistory.add(new TransactionRecord(rs.getLong(1), customerID, rs.getObject(2, LocalDateTime.class), rs.getString(3),
+                                                     Money.ofCents(rs.getLong(4))));
+      }
+      return transactionHistory;
+    }, customerID, maxTransactions);
+
+    List<FanOutRead<?>> reads = new ArrayList<>(3);
+    try {
+      Future<AccountSnapshot> customer = submit(customerRead, reads);
+      Future<List<OverdraftLogEntry>> overdraftLogs = submit(overdraftLogsRead, reads);
+      Future<List<TransactionRecord>> transactionHistory = submit(transactionsRead, reads);
+
+      AccountSnapshot customerRow = join(customer, deadline);
+      return new AccountSnapshot(customerID, customerRow.getFirstName(), customerRow.getLastName(), customerRow.getBalance(),
+                                 customerRow.getOverdraftBalance(), join(overdraftLogs, deadline), join(transactionHistory, deadline));
+    } finally {
+      // a no-op for reads that completed, the others are not waited for
+      for (FanOutRead<?> read : reads) {
+        read.cancel();
+      }
+    }
+  }
+
+  private <T> Future<T> submit(FanOutRead<T> read, List<FanOutRead<?>> reads) {
+    reads.add(read);
+    Future<T> future = fanOutExecutor.submit(read);
+    read.future = future;
+    return future;
+  }
+
+  private <T> T join(Future<T> future, long deadline) {
+    try {
+      return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      throw new QueryTimeoutException("Account snapshot reads took longer than " + fanOutTimeoutMillis + "ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessResourceFailureException("Interrupted while reading account snapshot", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new DataAccessResourceFailureException("Account snapshot read failed", e.getCause());
+    }
+  }
+
+  /**
+   * One query of a fanned out snapshot load. Keeps hold of its statement while it runs, so that
+   * cancelling the read also cancels the query on the DB instead of letting it run on for nobody.
+   */
+  private class FanOutRead<T> implements Callable<T>, PreparedStatementCreator, SqlProvider {
+    private final String sql;
+    private final ResultSetExtractor<T> extractor;
+    private final Object[] args;
+    private volatile PreparedStatement statement;
+    private volatile Future<T> future;
+
+    FanOutRead(String sql, ResultSetExtractor<T> extractor, Object... args) {
+      this.sql = sql;
+      this.extractor = extractor;
+      this.args = args;
+    }
+
+    @Override
+    public T call() {
+      try {
+        // the first argument of every fanned out query is the CustomerID
+        return ReplicaRoutingDataSource.readFor((String) args[0], () -> jdbcTemplate.query(this, new ArgumentPreparedStatementSetter(args), extractor));
+      } finally {
+        statement = null;
+      }
+    }
+
+    @Override
+    public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+      statement = connection.prepareStatement(sql);
+      return statement;
+    }
+
+    @Override
+    public String getSql() {
+      return sql;
+    }
+
+    void cancel() {
+      // a read that has not started yet never will
+      if (future != null) {
+        future.cancel(false);
+      }
+      PreparedStatement runningStatement = statement;
+      if (runningStatement != null) {
+        try {
+          runningStatement.cancel();
+        } catch (SQLException e) {
+          // the query finished or its statement was closed in the meantime
+          LOGGER.debug("Could not cancel account snapshot read: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Folds the discriminated rows of the snapshot query back into an {@link AccountSnapshot}.
+   * Columns are read by index and log rows are decoded straight into {@link OverdraftLogEntry}
+   * and {@link TransactionRecord}, which share the customer ID that was asked for.
+   */
+  private static class AccountSnapshotExtractor implements ResultSetExtractor<AccountSnapshot> {
+    private final String customerID;
+
+    AccountSnapshotExtractor(String customerID) {
+      this.customerID = customerID;
+    }
+
+    @Override
+    public AccountSnapshot extractData(ResultSet rs) throws SQLException {
+      boolean foundCustomer = false;
+      String firstName = null;
+      String lastName = null;
+      Money balance = Money.ZERO;
+      Money overdraftBalance = Money.ZERO;
+      List<OverdraftLogEntry> overdraftLogs = new ArrayList<>();
+      List<TransactionRecord> transactionHistory = new ArrayList<>();
+
+      while (rs.next()) {
+        int rowType = rs.getInt(ROW_TYPE);
+        switch (rowType) {
+          case CUSTOMER_ROW:
+            foundCustomer = true;
+            firstName = rs.getString(TEXT1);
+            lastName = rs.getString(TEXT2);
+            balance = Money.ofCents(rs.getLong(NUM1));
+            overdraftBalance = Money.ofCents(rs.getLong(NUM2));
+            break;
+          // rows arrive oldest first, but logs are displayed newest first
+          case OVERDRAFT_LOG_ROW:
+            overdraftLogs.add(0, new OverdraftLogEntry(rs.getLong(LOG_ID),
+                                                       customerID,
+                                                       rs.getObject(TIMESTAMP, LocalDateTime.class),
+                                                       Money.ofCents(rs.getLong(NUM1)),
+                                                       Money.ofCents(rs.getLong(NUM2)),
+                                                       Money.ofCents(rs.getLong(NUM3))));
+            break;
+          case TRANSACTION_ROW:
+            transactionHistory.add(0, new TransactionRecord(rs.getLong(LOG_ID),
+                                                            customerID,
+                                                            rs.getObject(TIMESTAMP, LocalDateTime.class),
+                                                            rs.getString(TEXT1),
+                                                            Money.ofCents(rs.getLong(NUM1))));
+            break;
+          default:
+            throw new SQLException("Unexpected RowType in account snapshot: " + rowType);
+        }
+      }
+
+      if (!foundCustomer) {
+        throw new EmptyResultDataAccessException("No customer with ID " + customerID, 1);
+      }
+
+      return new AccountSnapshot(customerID, firstName, lastName, balance, overdraftBalance,
+                                 overdraftLogs, transactionHistory);
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package net.codejava;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Value;
+
+/**
+ * JSON body of a failed {@link AccountApiController} or {@link BatchController} call,
+ * e.g. `{"error": "OVERDRAFT_LIMIT_EXCEEDED"}`.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ApiError {
+  /** the {@link LedgerOutcome}, or why the call was not authorized */
+  private String error;
+  /** the line of a batch that could not be read, or null */
+  private Integer line;
+
+  public ApiError(String error) {
+    this(error, null);
+  }
+
+  public ApiError(String error, Integer line) {
+    this.error = error;
+    this.line = line;
+  }
+}
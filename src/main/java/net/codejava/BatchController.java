@@ -0,0 +1,223 @@
+package net.codejava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Applies payroll and settlement runs of deposits and withdraws across many customers in one request,
+ * instead of one `/deposit` or `/withdraw` form post per line.
+ *
+ *   POST /api/batches   Content-Type: application/json   [{"customerID": ..., "type": "DEPOSIT", "amount": "12.50"}, ...]
+ *   POST /api/batches   Content-Type: text/csv           CustomerID,Type,Amount lines, the header line is optional
+ *
+ * Batches are not tied to a customer's login session, so they are only accepted with the
+ * `X-Api-Key` header set to `testudo.batch.api-key`, and not at all while that property is empty.
+ * The handlers take the raw request body, so that the key is checked before any of the body is read,
+ * and then read at most `testudo.batch.max-body-bytes` of it. Every line is checked before any is
+ * applied: a line that can't be read rejects the whole batch with 400 and its line number. The lines
+ * are then applied by {@link LedgerService#applyBatch}, and the response is a {@link BatchReport}
+ * with the outcome of every line. If one of the batch's transactions fails, the lines that were not
+ * committed are NOT_COMMITTED in the report.
+ */
+@RestController
+@RequestMapping("/api")
+public class BatchController {
+  final static String API_KEY_HEADER = "X-Api-Key";
+  final static String TEXT_CSV_VALUE = "text/csv";
+  private final static String CSV_HEADER = "CustomerID,Type,Amount";
+  private final static TypeReference<List<BatchOperation>> OPERATIONS_TYPE = new TypeReference<List<BatchOperation>>() {};
+  private final static Logger LOGGER = LoggerFactory.getLogger(BatchController.class);
+
+  private LedgerService ledgerService;
+  private byte[] apiKey;
+  private int maxOperations;
+  private int maxOperationsPerTransaction;
+  private ObjectMapper objectMapper;
+  private int maxBodyBytes;
+
+  public BatchController(@Autowired LedgerService ledgerService,
+                         @Autowired ObjectMapper objectMapper,
+                         @Value("${testudo.batch.api-key:}") String apiKey,
+                         @Value("${testudo.batch.max-operations:100000}") int maxOperations,
+                         @Value("${testudo.batch.max-operations-per-transaction:500}") int maxOperationsPerTransaction,
+                         @Value("${testudo.batch.max-body-bytes:10485760}") int maxBodyBytes) {
+    this.ledgerService = ledgerService;
+    this.objectMapper = objectMapper;
+    this.apiKey = apiKey.getBytes(StandardCharsets.UTF_8);
+    this.maxOperations = maxOperations;
+    this.maxOperationsPerTransaction = maxOperationsPerTransaction;
+    this.maxBodyBytes = maxBodyBytes;
+  }
+
+  /**
+   * @param apiKey
+   * @param body JSON array of operations
+   * @return the report, 401/403 without a valid API key, 400 for a body that is not a list of complete
+   *         operations, or 413 for too large a body or too many operations
+   */
+  @PostMapping(value = "/batches", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> submitBatch(@RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+                                       InputStream body) throws IOException {
+    ResponseEntity<?> unauthorized = checkApiKey(apiKey);
+    if (unauthorized != null) {
+      return unauthorized;
+    }
+    byte[] json = readBody(body);
+    if (json == null) {
+      return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new ApiError("BODY_TOO_LARGE"));
+    }
+    List<BatchOperation> operations;
+    try {
+      operations = objectMapper.readValue(json, OPERATIONS_TYPE);
+    } catch (JsonProcessingException e) {
+      operations = null;
+    }
+    if (operations == null) {
+      return ResponseEntity.badRequest().body(new ApiError("INVALID_OPERATION"));
+    }
+    List<Integer> lineNumbers = new ArrayList<>(operations.size());
+    for (int i = 0; i < operations.size(); i++) {
+      lineNumbers.add(i + 1);
+    }
+    return applyBatch(operations, lineNumbers);
+  }
+
+  /**
+   * @param apiKey
+   * @param body CustomerID,Type,Amount lines in UTF-8, e.g. `123456789,DEPOSIT,1500.00`
+   * @return the report, 401/403 without a valid API key, 400 for a malformed line, or 413 for too large
+   *         a body or too many operations
+   */
+  @PostMapping(value = "/batches", consumes = TEXT_CSV_VALUE)
+  public ResponseEntity<?> submitCsvBatch(@RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+                                          InputStream body) throws IOException {
+    ResponseEntity<?> unauthorized = checkApiKey(apiKey);
+    if (unauthorized != null) {
+      return unauthorized;
+    }
+    byte[] csv = readBody(body);
+    if (csv == null) {
+      return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new ApiError("BODY_TOO_LARGE"));
+    }
+    String file = new String(csv, StandardCharsets.UTF_8);
+    List<BatchOperation> operations = new ArrayList<>();
+    List<Integer> lineNumbers = new ArrayList<>();
+    String[] lines = file.split("\n");
+    for (int i = 0; i < lines.length; i++) {
+      String line = lines[i].trim();
+      if (line.isEmpty() || (operations.isEmpty() && line.equalsIgnoreCase(CSV_HEADER))) {
+        continue;
+      }
+      BatchOperation operation = parseCsvLine(line);
+      if (operation == null) {
+        return ResponseEntity.badRequest().body(new ApiError("INVALID_OPERATION", i + 1));
+      }
+      operations.add(operation);
+      lineNumbers.add(i + 1);
+    }
+    return applyBatch(operations, lineNumbers);
+  }
+
+  /**
+   * @return the error response if batches are disabled or apiKey is not the configured key, or null if it is
+   */
+  private ResponseEntity<?> checkApiKey(String apiKey) {
+    if (this.apiKey.length == 0) {
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiError("BATCHES_DISABLED"));
+    }
+    if (apiKey == null || !MessageDigest.isEqual(this.apiKey, apiKey.getBytes(StandardCharsets.UTF_8))) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ApiError("INVALID_API_KEY"));
+    }
+    return null;
+  }
+
+  /**
+   * @return the whole body, or null if it is longer than maxBodyBytes, in which case the rest is not read
+   */
+  private byte[] readBody(InputStream body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int length;
+    while ((length = body.read(buffer)) != -1) {
+      if (out.size() + length > maxBodyBytes) {
+        return null;
+      }
+      out.write(buffer, 0, length);
+    }
+    return out.toByteArray();
+  }
+
+  private ResponseEntity<?> applyBatch(List<BatchOperation> operations, List<Integer> lineNumbers) {
+    if (operations.size() > maxOperations) {
+      return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new ApiError("TOO_MANY_OPERATIONS"));
+    }
+    for (int i = 0; i < operations.size(); i++) {
+      BatchOperation operation = operations.get(i);
+      if (operation == null || operation.getCustomerID() == null || operation.getCustomerID().isEmpty()
+          || operation.getType() == null || operation.getAmount() == null) {
+        return ResponseEntity.badRequest().body(new ApiError("INVALID_OPERATION", lineNumbers.get(i)));
+      }
+    }
+
+    long startNanos = System.nanoTime();
+    List<LedgerOutcome> outcomes = ledgerService.applyBatch(operations, maxOperationsPerTransaction);
+    long elapsedNanos = System.nanoTime() - startNanos;
+
+    List<BatchLineResult> results = new ArrayList<>(operations.size());
+    int applied = 0;
+    for (int i = 0; i < operations.size(); i++) {
+      LedgerOutcome outcome = outcomes.get(i);
+      if (outcome == LedgerOutcome.APPLIED) {
+        applied++;
+      }
+      results.add(new BatchLineResult(lineNumbers.get(i), operations.get(i).getCustomerID(), outcome));
+    }
+    double operationsPerSecond = elapsedNanos == 0 ? 0 : operations.size() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    LOGGER.info("Applied batch operations={} applied={} elapsedMillis={} operationsPerSecond={}",
+                operations.size(), applied, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), (long) operationsPerSecond);
+
+    return ResponseEntity.ok(new BatchReport(applied, operations.size() - applied, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                                             operationsPerSecond, results));
+  }
+
+  /**
+   * @return the operation, or null if the line is not a CustomerID, a type and an amount
+   */
+  private static BatchOperation parseCsvLine(String line) {
+    String[] fields = line.split(",", -1);
+    if (fields.length != 3 || fields[0].trim().isEmpty()) {
+      return null;
+    }
+    try {
+      return new BatchOperation(fields[0].trim(),
+                                BatchOperation.Type.valueOf(fields[1].trim().toUpperCase(Locale.ROOT)),
+                                Money.valueOf(fields[2].trim()));
+    } catch (IllegalArgumentException e) {
+      // covers NumberFormatException from Money
+      return null;
+    }
+  }
+}
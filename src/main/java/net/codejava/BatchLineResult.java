@@ -0,0 +1,14 @@
+package net.codejava;
+
+import lombok.Value;
+
+/**
+ * Outcome of one line of a batch submitted to {@link BatchController}.
+ */
+@Value
+public class BatchLineResult {
+  /** line number in a CSV file, or position in a JSON array, counting from 1 */
+  private int line;
+  private String customerID;
+  private LedgerOutcome outcome;
+}
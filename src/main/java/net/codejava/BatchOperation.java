@@ -0,0 +1,29 @@
+package net.codejava;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * One line of a payroll or settlement batch submitted to {@link BatchController}.
+ */
+public class BatchOperation {
+  public enum Type {DEPOSIT, WITHDRAW}
+
+  @Setter @Getter
+  private String customerID;
+
+  @Setter @Getter
+  private Type type;
+
+  @Setter @Getter
+  private Money amount;
+
+  public BatchOperation() {
+  }
+
+  public BatchOperation(String customerID, Type type, Money amount) {
+    this.customerID = customerID;
+    this.type = type;
+    this.amount = amount;
+  }
+}
@@ -0,0 +1,18 @@
+package net.codejava;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * Response of {@link BatchController}: the outcome of every line in the order they were submitted,
+ * and how fast the batch was applied.
+ */
+@Value
+public class BatchReport {
+  private int applied;
+  private int rejected;
+  private long elapsedMillis;
+  private double operationsPerSecond;
+  private List<BatchLineResult> results;
+}
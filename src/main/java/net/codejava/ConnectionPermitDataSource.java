@@ -0,0 +1,116 @@
+package net.codejava;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * DataSource that lets at most a fixed number of threads hold a connection at once. Every other
+ * thread waits for a permit, first come first served, before it gets to ask the pool.
+ *
+ * With one virtual thread per request there is no thread pool left to bound how many requests reach
+ * the DB at once, so thousands of them can be waiting for a connection. Waiting on the semaphore parks
+ * a virtual thread cleanly, in one fair queue with its own timeout. With as many permits as the pool
+ * has connections, a thread that gets a permit never waits on the pool, and no more threads than
+ * there are connections are ever inside the JDBC driver, whose `synchronized` blocks pin a virtual
+ * thread to its carrier thread on Java 21.
+ *
+ * A permit is returned when its connection is closed. Closing a connection twice returns it once.
+ */
+public class ConnectionPermitDataSource extends DelegatingDataSource {
+  private final Semaphore permits;
+  private final int maxPermits;
+  private final long permitTimeoutMillis;
+
+  /**
+   * @param targetDataSource the pool
+   * @param maxPermits at most this many connections are handed out at once
+   * @param permitTimeoutMillis how long getConnection waits for a permit before it fails
+   */
+  public ConnectionPermitDataSource(DataSource targetDataSource, int maxPermits, long permitTimeoutMillis) {
+    super(targetDataSource);
+    this.permits = new Semaphore(maxPermits, true);
+    this.maxPermits = maxPermits;
+    this.permitTimeoutMillis = permitTimeoutMillis;
+  }
+
+  public int getMaxPermits() {
+    return maxPermits;
+  }
+
+  /**
+   * @return number of connections that can be handed out without waiting
+   */
+  public int getAvailablePermits() {
+    return permits.availablePermits();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    acquirePermit();
+    try {
+      return withPermit(super.getConnection());
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    acquirePermit();
+    try {
+      return withPermit(super.getConnection(username, password));
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  private void acquirePermit() throws SQLException {
+    try {
+      if (!permits.tryAcquire(permitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLTransientConnectionException("No DB connection permit available after " + permitTimeoutMillis + "ms, "
+                                                  + maxPermits + " connections in use");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted while waiting for a DB connection permit", e);
+    }
+  }
+
+  /**
+   * @return proxy of the connection that returns the permit when it is closed
+   */
+  private Connection withPermit(Connection connection) {
+    AtomicBoolean released = new AtomicBoolean();
+    InvocationHandler handler = (proxy, method, args) -> {
+      if (method.getName().equals("close") && method.getParameterCount() == 0) {
+        try {
+          connection.close();
+        } finally {
+          if (released.compareAndSet(false, true)) {
+            permits.release();
+          }
+        }
+        return null;
+      }
+      try {
+        return method.invoke(connection, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    };
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, handler);
+  }
+}
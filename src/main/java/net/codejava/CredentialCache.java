@@ -0,0 +1,123 @@
+package net.codejava;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Verifies customer passwords against the Passwords table, with a size-bounded, TTL-evicting
+ * cache in front of the lookup so that repeated operations by the same customer don't hit the DB.
+ *
+ * Raw passwords are never kept in memory. Each cached entry is a random salt and the
+ * SHA-256 hash of salt + password, and a password attempt is checked by hashing it the same way.
+ *
+ * Holds at most `testudo.credential-cache.max-entries` credentials, each for
+ * `testudo.credential-cache.ttl-minutes` after it was read. Hits, misses and evictions are reported
+ * as the `cache.*` meters tagged with `cache=credentials`.
+ *
+ * The app never writes the Passwords table, so nothing invalidates a cached credential. A password
+ * changed in the DB takes effect once the old one expires, and until then the old password still works.
+ */
+@Component
+public class CredentialCache {
+  final static String GET_USER_PASSWORD_SQL = "SELECT Password FROM Passwords WHERE CustomerID=?";
+  private final static int SALT_LENGTH_IN_BYTES = 16;
+
+  private final SecureRandom secureRandom = new SecureRandom();
+  private JdbcTemplate jdbcTemplate;
+  private Cache<String, SaltedHash> credentials;
+
+  @Autowired
+  public CredentialCache(JdbcTemplate jdbcTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${testudo.credential-cache.max-entries:10000}") long maxCachedCredentials,
+                         @Value("${testudo.credential-cache.ttl-minutes:5}") long ttlInMinutes) {
+    this(jdbcTemplate, meterRegistry, maxCachedCredentials, ttlInMinutes, TimeUnit.MINUTES, Ticker.systemTicker());
+  }
+
+  CredentialCache(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry, long maxCachedCredentials, long ttl, TimeUnit ttlUnit, Ticker ticker) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.credentials = Caffeine.newBuilder()
+                               .maximumSize(maxCachedCredentials)
+                               .expireAfterWrite(ttl, ttlUnit)
+                               .ticker(ticker)
+                               .recordStats()
+                               .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, credentials, "credentials");
+  }
+
+  /**
+   * Checks a password attempt for a customer. The customer's password is read from the DB
+   * only if it is not already cached.
+   *
+   * @param customerID
+   * @param passwordAttempt
+   * @return true if the attempt matches the customer's password
+   * @throws EmptyResultDataAccessException if there is no password for this customer
+   */
+  public boolean verify(String customerID, String passwordAttempt) {
+    SaltedHash credential = credentials.get(customerID, this::loadCredential);
+    if (passwordAttempt == null) {
+      return false;
+    }
+    return MessageDigest.isEqual(credential.hash, hash(credential.salt, passwordAttempt));
+  }
+
+  /**
+   * @return hit, miss and eviction counts since startup
+   */
+  public CacheStats stats() {
+    return credentials.stats();
+  }
+
+  /**
+   * Runs pending evictions now instead of on the cache's background executor.
+   */
+  void cleanUp() {
+    credentials.cleanUp();
+  }
+
+  private SaltedHash loadCredential(String customerID) {
+    String password = jdbcTemplate.queryForObject(GET_USER_PASSWORD_SQL, String.class, customerID);
+    byte[] salt = new byte[SALT_LENGTH_IN_BYTES];
+    secureRandom.nextBytes(salt);
+    return new SaltedHash(salt, hash(salt, password));
+  }
+
+  private static byte[] hash(byte[] salt, String password) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(salt);
+      return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class SaltedHash {
+    private final byte[] salt;
+    private final byte[] hash;
+
+    SaltedHash(byte[] salt, byte[] hash) {
+      this.salt = salt;
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package net.codejava;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads and updates rows in the Customers table.
+ *
+ * Every statement uses `?` placeholders so that the JDBC driver can cache and reuse
+ * its prepared statement no matter which customer or amount it is run with.
+ */
+@Repository
+public class CustomerRepository {
+  final static String CUSTOMER_STATE_SQL = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=?";
+  private final static String CUSTOMER_STATE_FOR_UPDATE_SQL = CUSTOMER_STATE_SQL + " FOR UPDATE";
+  private final static String INCREASE_BALANCE_SQL = "UPDATE Customers SET Balance = Balance + ? WHERE CustomerID=?";
+  private final static String DECREASE_BALANCE_SQL = "UPDATE Customers SET Balance = Balance - ? WHERE CustomerID=?";
+  private final static String SET_BALANCE_SQL = "UPDATE Customers SET Balance = ? WHERE CustomerID=?";
+  private final static String INCREASE_OVERDRAFT_BALANCE_SQL = "UPDATE Customers SET OverdraftBalance = OverdraftBalance + ? WHERE CustomerID=?";
+  private final static String SET_OVERDRAFT_BALANCE_SQL = "UPDATE Customers SET OverdraftBalance = ? WHERE CustomerID=?";
+  private final static String SET_BALANCES_SQL = "UPDATE Customers SET Balance = ?, OverdraftBalance = ? WHERE CustomerID=?";
+  private final static String SET_NUM_FRAUD_REVERSALS_SQL = "UPDATE Customers SET NumFraudReversals = ? WHERE CustomerID=?";
+
+  private JdbcTemplate jdbcTemplate;
+
+  public CustomerRepository(@Autowired JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Reads Balance, OverdraftBalance and NumFraudReversals for a customer in a single query.
+   *
+   * @param customerID
+   * @return the customer's current account state
+   */
+  public CustomerState findState(String customerID) {
+    return jdbcTemplate.queryForObject(CUSTOMER_STATE_SQL, customerStateRowMapper(customerID), customerID);
+  }
+
+  /**
+   * Same as {@link #findState(String)}, but issues a `SELECT ... FOR UPDATE` so that the
+   * customer's row stays locked until the surrounding transaction ends. Used by the write paths,
+   * which update the row based on the state read here.
+   *
+   * @param customerID
+   * @return the customer's current account state
+   */
+  public CustomerState findStateForUpdate(String customerID) {
+    return jdbcTemplate.queryForObject(CUSTOMER_STATE_FOR_UPDATE_SQL, customerStateRowMapper(customerID), customerID);
+  }
+
+  public void increaseBalance(String customerID, Money amount) {
+    jdbcTemplate.update(INCREASE_BALANCE_SQL, amount.getCents(), customerID);
+  }
+
+  public void decreaseBalance(String customerID, Money amount) {
+    jdbcTemplate.update(DECREASE_BALANCE_SQL, amount.getCents(), customerID);
+  }
+
+  public void setBalance(String customerID, Money balance) {
+    jdbcTemplate.update(SET_BALANCE_SQL, balance.getCents(), customerID);
+  }
+
+  public void increaseOverdraftBalance(String customerID, Money amount) {
+    jdbcTemplate.update(INCREASE_OVERDRAFT_BALANCE_SQL, amount.getCents(), customerID);
+  }
+
+  public void setOverdraftBalance(String customerID, Money overdraftBalance) {
+    jdbcTemplate.update(SET_OVERDRAFT_BALANCE_SQL, overdraftBalance.getCents(), customerID);
+  }
+
+  /**
+   * Writes the Balance and OverdraftBalance of many customers as one JDBC batch.
+   *
+   * @param customerStates the new balances, NumFraudReversals is not written
+   */
+  public void setBalances(List<CustomerState> customerStates) {
+    List<Object[]> rows = new ArrayList<>(customerStates.size());
+    for (CustomerState customerState : customerStates) {
+      rows.add(new Object[] {customerState.getBalance().getCents(), customerState.getOverdraftBalance().getCents(), customerState.getCustomerID()});
+    }
+    jdbcTemplate.batchUpdate(SET_BALANCES_SQL, rows);
+  }
+
+  public void setNumFraudReversals(String customerID, int numFraudReversals) {
+    jdbcTemplate.update(SET_NUM_FRAUD_REVERSALS_SQL, numFraudReversals, customerID);
+  }
+
+  private static RowMapper<CustomerState> customerStateRowMapper(String customerID) {
+    // columns in the order of CUSTOMER_STATE_SQL
+    return (rs, rowNum) -> new CustomerState(customerID,
+                                             Money.ofCents(rs.getLong(1)),
+                                             Money.ofCents(rs.getLong(2)),
+                                             rs.getInt(3));
+  }
+}
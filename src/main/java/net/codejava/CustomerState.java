@@ -0,0 +1,18 @@
+package net.codejava;
+
+import lombok.Value;
+
+/**
+ * The mutable account fields of a single row in the Customers table.
+ *
+ * Loaded in one row read by {@link CustomerRepository} so that the deposit, withdraw and
+ * dispute handlers do not need to query the Customers table one column at a time.
+ * Money values are stored in the DB as whole cents.
+ */
+@Value
+public class CustomerState {
+  private String customerID;
+  private Money balance;
+  private Money overdraftBalance;
+  private int numFraudReversals;
+}
@@ -0,0 +1,134 @@
+package net.codejava;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StringUtils;
+
+/**
+ * Two Hikari pools on the same DB, so that slow reads can never take the connections that
+ * logins, deposits and withdraws need.
+ *
+ * The `oltp` pool is the primary DataSource, configured by `spring.datasource.hikari.*` like the
+ * pool Spring Boot would otherwise create, and runs everything except history pages and statement
+ * exports. Those run on the `reporting` pool, which starts from the same `spring.datasource.hikari.*`
+ * settings and overrides them with `testudo.datasource.reporting.hikari.*`.
+ *
+ * Each pool has a JdbcTemplate timing its statements, with its own query timeout. Both pools report
+ * `hikaricp.connections.*` meters tagged with their pool name, such as `hikaricp.connections.acquire`
+ * for the time spent waiting for a connection and `hikaricp.connections.pending` for the number of
+ * threads waiting.
+ *
+ * With `testudo.replica.urls` set, account snapshots, history pages and statement exports are read
+ * from those read replicas when they have caught up, see {@link ReplicationTracker}. Each replica gets
+ * a `replica-N` pool, starting from the same `spring.datasource.hikari.*` settings overridden with
+ * `testudo.datasource.replica.hikari.*`.
+ */
+@Configuration
+public class DataSourceConfiguration {
+  final static String REPORTING_HIKARI_PREFIX = "testudo.datasource.reporting.hikari";
+  final static String REPLICA_HIKARI_PREFIX = "testudo.datasource.replica.hikari";
+
+  /**
+   * Pool of short transactions: logins, account reads, deposits, withdraws and disputes.
+   */
+  @Bean
+  @Primary
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource dataSource(DataSourceProperties properties) {
+    return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+  }
+
+  /**
+   * Pool of history pages and statement exports.
+   */
+  @Bean
+  public HikariDataSource reportingDataSource(DataSourceProperties properties, Environment environment) {
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    Binder binder = Binder.get(environment);
+    binder.bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+    binder.bind(REPORTING_HIKARI_PREFIX, Bindable.ofInstance(dataSource));
+    return dataSource;
+  }
+
+  /**
+   * Read replicas, and how far each of them has caught up with the primary.
+   */
+  @Bean
+  public ReplicationTracker replicationTracker(JdbcTemplate jdbcTemplate, DataSourceProperties properties, Environment environment,
+                                               Clock clock, MeterRegistry meterRegistry,
+                                               @Value("${testudo.replica.urls:}") String replicaUrls,
+                                               @Value("${testudo.replica.max-lag-millis:5000}") long maxLagMillis,
+                                               @Value("${testudo.replica.read-your-writes-wait-millis:0}") long readYourWritesWaitMillis,
+                                               @Value("${testudo.replica.heartbeat-millis:200}") long heartbeatMillis) {
+    Binder binder = Binder.get(environment);
+    List<DataSource> replicas = new ArrayList<>();
+    for (String url : StringUtils.tokenizeToStringArray(replicaUrls, ",")) {
+      HikariDataSource replica = properties.initializeDataSourceBuilder().url(url).type(HikariDataSource.class).build();
+      binder.bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+      binder.bind(REPLICA_HIKARI_PREFIX, Bindable.ofInstance(replica));
+      replica.setPoolName(ReplicationTracker.replicaName(replicas.size()));
+      replica.setReadOnly(true);
+      // not beans, so Spring Boot doesn't instrument them
+      replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+      replicas.add(replica);
+    }
+    return new ReplicationTracker(jdbcTemplate, replicas, clock, maxLagMillis, readYourWritesWaitMillis, heartbeatMillis, meterRegistry);
+  }
+
+  /**
+   * JdbcTemplate of the oltp pool, used by every repository.
+   * Replaces the one Spring Boot would otherwise configure.
+   */
+  @Bean
+  @Primary
+  public JdbcTemplate jdbcTemplate(DataSource dataSource, MeterRegistry meterRegistry,
+                                   @Value("${testudo.datasource.query-timeout-seconds:0}") int queryTimeoutSeconds) {
+    JdbcTemplate jdbcTemplate = new MeteredJdbcTemplate(dataSource, meterRegistry);
+    jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
+    return jdbcTemplate;
+  }
+
+  /**
+   * JdbcTemplate of account snapshot reads, on a replica or else the oltp pool.
+   */
+  @Bean
+  public JdbcTemplate replicaJdbcTemplate(DataSource dataSource, ReplicationTracker replicationTracker, MeterRegistry meterRegistry,
+                                          @Value("${testudo.datasource.query-timeout-seconds:0}") int queryTimeoutSeconds) {
+    JdbcTemplate jdbcTemplate = new MeteredJdbcTemplate(new ReplicaRoutingDataSource(dataSource, replicationTracker, meterRegistry), meterRegistry);
+    jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
+    return jdbcTemplate;
+  }
+
+  /**
+   * JdbcTemplate of history pages and statement exports, on a replica or else the reporting pool.
+   */
+  @Bean
+  public JdbcTemplate reportingJdbcTemplate(@Qualifier("reportingDataSource") DataSource reportingDataSource, ReplicationTracker replicationTracker,
+                                            MeterRegistry meterRegistry,
+                                            @Value("${testudo.datasource.reporting.query-timeout-seconds:0}") int queryTimeoutSeconds) {
+    JdbcTemplate jdbcTemplate = new MeteredJdbcTemplate(new ReplicaRoutingDataSource(reportingDataSource, replicationTracker, meterRegistry),
+                                                        meterRegistry);
+    jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
+    return jdbcTemplate;
+  }
+}
@@ -0,0 +1,12 @@
+package net.codejava;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * JSON body of a dispute through {@link AccountApiController}, e.g. `{"numTransactionsAgo": 1}`.
+ */
+public class DisputeRequest {
+  @Setter @Getter
+  private int numTransactionsAgo;
+}
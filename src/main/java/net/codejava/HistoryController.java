@@ -0,0 +1,96 @@
+package net.codejava;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CookieValue;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * JSON API for a logged in customer's full transaction history and overdraft logs, newest first.
+ *
+ * `GET /history` returns the first page of transactions, and `GET /history?cursor=...` the page after
+ * the one whose `nextCursor` was given. `GET /overdraft-logs` pages through overdraft logs the same way.
+ * Pages hold `testudo.history.page-size` rows unless `size` asks for a different number, up to
+ * `testudo.history.max-page-size`. Pages are read on the reporting connection pool, see
+ * {@link DataSourceConfiguration}.
+ */
+@RestController
+public class HistoryController {
+  private SessionStore sessionStore;
+  private TransactionHistoryRepository transactionHistoryRepository;
+  private OverdraftLogRepository overdraftLogRepository;
+  private int defaultPageSize;
+  private int maxPageSize;
+
+  public HistoryController(@Autowired SessionStore sessionStore,
+                           @Autowired TransactionHistoryRepository transactionHistoryRepository,
+                           @Autowired OverdraftLogRepository overdraftLogRepository,
+                           @Value("${testudo.history.page-size:20}") int defaultPageSize,
+                           @Value("${testudo.history.max-page-size:100}") int maxPageSize) {
+    this.sessionStore = sessionStore;
+    this.transactionHistoryRepository = transactionHistoryRepository;
+    this.overdraftLogRepository = overdraftLogRepository;
+    this.defaultPageSize = defaultPageSize;
+    this.maxPageSize = maxPageSize;
+  }
+
+  /**
+   * @param sessionToken the customer's login session
+   * @param cursor `nextCursor` of the previous page, or absent for the first page
+   * @param size number of transactions per page
+   * @return the page, 401 without a login session, or 400 for a malformed cursor
+   */
+  @GetMapping("/history")
+  public ResponseEntity<TransactionHistoryPage> getHistory(@CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                                           @RequestParam(value = "cursor", required = false) String cursor,
+                                                           @RequestParam(value = "size", required = false) Integer size) {
+    String customerID = sessionStore.customerFor(sessionToken);
+    if (customerID == null) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+
+    HistoryCursor after = null;
+    if (cursor != null) {
+      try {
+        after = HistoryCursor.decode(cursor);
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest().build();
+      }
+    }
+    return ResponseEntity.ok(transactionHistoryRepository.findPage(customerID, after, pageSize(size)));
+  }
+
+  /**
+   * @param sessionToken the customer's login session
+   * @param cursor `nextCursor` of the previous page, or absent for the first page
+   * @param size number of overdraft logs per page
+   * @return the page, 401 without a login session, or 400 for a malformed cursor
+   */
+  @GetMapping("/overdraft-logs")
+  public ResponseEntity<OverdraftLogPage> getOverdraftLogs(@CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                                           @RequestParam(value = "cursor", required = false) String cursor,
+                                                           @RequestParam(value = "size", required = false) Integer size) {
+    String customerID = sessionStore.customerFor(sessionToken);
+    if (customerID == null) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+
+    HistoryCursor after = null;
+    if (cursor != null) {
+      try {
+        after = HistoryCursor.decode(cursor);
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest().build();
+      }
+    }
+    return ResponseEntity.ok(overdraftLogRepository.findPage(customerID, after, pageSize(size)));
+  }
+
+  private int pageSize(Integer size) {
+    return Math.max(1, Math.min(size == null ? defaultPageSize : size, maxPageSize));
+  }
+}
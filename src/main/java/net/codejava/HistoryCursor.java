@@ -0,0 +1,56 @@
+package net.codejava;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import lombok.Value;
+
+/**
+ * Position in a customer's transaction history or overdraft logs: the (Timestamp, TransactionID)
+ * or (Timestamp, OverdraftLogID) of the last row on a page. The next page starts right after it,
+ * so paging never re-reads or skips rows that were added in between.
+ *
+ * Handed to clients as an opaque URL-safe string.
+ */
+@Value
+public class HistoryCursor {
+  private final static char SEPARATOR = '_';
+
+  private LocalDateTime timestamp;
+  /** TransactionID or OverdraftLogID */
+  private long logID;
+
+  public static HistoryCursor after(TransactionRecord transactionRecord) {
+    return new HistoryCursor(transactionRecord.getTimestamp(), transactionRecord.getTransactionID());
+  }
+
+  public static HistoryCursor after(OverdraftLogEntry overdraftLogEntry) {
+    return new HistoryCursor(overdraftLogEntry.getTimestamp(), overdraftLogEntry.getOverdraftLogID());
+  }
+
+  public String encode() {
+    String position = timestamp.toString() + SEPARATOR + logID;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * @param cursor a string returned by {@link #encode()}
+   * @return the decoded cursor
+   * @throws IllegalArgumentException if the string is not a cursor
+   */
+  public static HistoryCursor decode(String cursor) {
+    try {
+      String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+      int separator = position.lastIndexOf(SEPARATOR);
+      if (separator < 0) {
+        throw new IllegalArgumentException("Not a history cursor: " + cursor);
+      }
+      return new HistoryCursor(LocalDateTime.parse(position.substring(0, separator)),
+                               Long.parseLong(position.substring(separator + 1)));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Not a history cursor: " + cursor, e);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package net.codejava;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * Group commit of whole deposits and withdraws. Operations submitted by concurrent requests are
+ * queued, and a single writer thread applies them as groups, each group in one DB transaction that
+ * writes the balances, TransactionHistory rows and OverdraftLogs rows of all its operations. Every
+ * operation commits or rolls back together with its own history, and many requests share one commit.
+ *
+ * Every operation that queued up while the previous group was committing goes into the next group,
+ * up to maxGroupSize operations. The writer can also linger up to maxLingerMillis for more operations
+ * before committing, which only pays off when requests arrive faster than one per commit latency.
+ *
+ * {@link #submit} waits until the operation's group has committed or rolled back, and can't be
+ * interrupted in between. It gives up after submitTimeoutMillis, which only happens when the DB
+ * stalls, and then can't tell whether the operation will still be applied. Otherwise a request gets
+ * an exception only if its operation was not applied. Queued operations are still applied when the
+ * group commit shuts down, and operations submitted after it started shutting down are rejected
+ * without being applied.
+ */
+class LedgerGroupCommit {
+  private final static long SHUTDOWN_POLL_MILLIS = 100;
+
+  private final Function<List<BatchOperation>, List<LedgerOutcome>> applyGroup;
+  private final int maxGroupSize;
+  private final long maxLingerNanos;
+  private final long submitTimeoutNanos;
+
+  private final BlockingQueue<PendingOperation> queue = new LinkedBlockingQueue<>();
+  /**
+   * Guards running, so that no operation is queued once {@link #shutdown} has set it to false.
+   */
+  private final Object lifecycleLock = new Object();
+  private volatile boolean running = true;
+  private final Thread writer;
+
+  /**
+   * @param applyGroup applies the operations in one transaction, and returns the outcome of each
+   * @param maxGroupSize
+   * @param maxLingerMillis
+   * @param submitTimeoutMillis how long {@link #submit} waits for the operation's group to commit
+   */
+  LedgerGroupCommit(Function<List<BatchOperation>, List<LedgerOutcome>> applyGroup, int maxGroupSize, long maxLingerMillis,
+                    long submitTimeoutMillis) {
+    this.applyGroup = applyGroup;
+    this.maxGroupSize = maxGroupSize;
+    this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+    this.submitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(submitTimeoutMillis);
+
+    writer = new Thread(this::applyGroups, "ledger-group-commit");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queues a deposit or withdraw and waits until the group it was applied in has committed.
+   *
+   * @param operation
+   * @return the outcome of the operation
+   * @throws IllegalStateException if the group commit has shut down, and the operation was not applied
+   * @throws QueryTimeoutException if the group did not commit in time, and the operation may still be applied
+   * @throws RuntimeException the exception that rolled back the operation's group
+   */
+  LedgerOutcome submit(BatchOperation operation) {
+    PendingOperation pendingOperation = new PendingOperation(operation);
+    synchronized (lifecycleLock) {
+      if (!running) {
+        throw new IllegalStateException("Ledger group commit is not running");
+      }
+      queue.add(pendingOperation);
+    }
+
+    long deadline = System.nanoTime() + submitTimeoutNanos;
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return pendingOperation.outcome.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+          // keep waiting, since the operation may already be committing
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+          }
+          throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+          throw new QueryTimeoutException("Ledger group commit did not commit the operation within "
+                                          + TimeUnit.NANOSECONDS.toMillis(submitTimeoutNanos) + " ms, it may still be applied");
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Stops accepting operations, and applies every operation that is already queued before returning.
+   */
+  void shutdown() throws InterruptedException {
+    synchronized (lifecycleLock) {
+      if (!running) {
+        return;
+      }
+      // every operation queued so far is in the queue, and the writer drains it before it stops
+      running = false;
+    }
+    writer.join();
+  }
+
+  private void applyGroups() {
+    List<PendingOperation> group = new ArrayList<>(maxGroupSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        PendingOperation first = queue.poll(SHUTDOWN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        group.add(first);
+        // everything that queued up while the previous group was committing joins this one
+        queue.drainTo(group, maxGroupSize - group.size());
+
+        // linger for more operations, so that concurrent requests share this commit
+        long deadline = System.nanoTime() + maxLingerNanos;
+        while (group.size() < maxGroupSize) {
+          PendingOperation next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          group.add(next);
+        }
+      } catch (InterruptedException e) {
+        // only shutdown() stops the writer, so keep draining
+      }
+
+      if (!group.isEmpty()) {
+        apply(group);
+        group.clear();
+      }
+    }
+  }
+
+  private void apply(List<PendingOperation> group) {
+    List<BatchOperation> operations = new ArrayList<>(group.size());
+    for (PendingOperation pendingOperation : group) {
+      operations.add(pendingOperation.operation);
+    }
+
+    List<LedgerOutcome> outcomes;
+    try {
+      outcomes = applyGroup.apply(operations);
+    } catch (RuntimeException e) {
+      for (PendingOperation pendingOperation : group) {
+        pendingOperation.outcome.completeExceptionally(e);
+      }
+      return;
+    }
+
+    for (int i = 0; i < group.size(); i++) {
+      group.get(i).outcome.complete(outcomes.get(i));
+    }
+  }
+
+  private static class PendingOperation {
+    private final BatchOperation operation;
+    private final CompletableFuture<LedgerOutcome> outcome = new CompletableFuture<>();
+
+    PendingOperation(BatchOperation operation) {
+      this.operation = operation;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package net.codejava;
+
+/**
+ * Result of a money movement submitted to the {@link LedgerService}.
+ * Every outcome other than APPLIED means that nothing was written to the DB.
+ */
+public enum LedgerOutcome {
+  /** The money movement was committed. */
+  APPLIED,
+  /** The requested amount was negative. */
+  INVALID_AMOUNT,
+  /** The customer's account is frozen because it has too many fraud reversals. */
+  ACCOUNT_FROZEN,
+  /** The money movement would put the customer's overdraft balance over the maximum allowed. */
+  OVERDRAFT_LIMIT_EXCEEDED,
+  /** The transaction to reverse does not exist in the customer's recent transaction history. */
+  TRANSACTION_NOT_FOUND,
+  /** There is no customer with the given ID. Only reported for batch operations, see {@link LedgerService#applyBatch}. */
+  CUSTOMER_NOT_FOUND,
+  /**
+   * The batch transaction of this operation, or of an earlier one, failed and was rolled back, so the
+   * operation was not applied and can be submitted again. Only reported for batch operations.
+   */
+  NOT_COMMITTED
+}
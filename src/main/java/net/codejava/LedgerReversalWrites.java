@@ -0,0 +1,11 @@
+package net.codejava;
+
+/**
+ * The writes of a money movement that may also reverse a transaction, see
+ * {@link LedgerRules#reverseTransaction}.
+ */
+public interface LedgerReversalWrites extends LedgerWrites {
+  void deleteOverdraftLogsOf(String userID, long transactionID);
+
+  void setNumFraudReversals(String userID, int numFraudReversals);
+}
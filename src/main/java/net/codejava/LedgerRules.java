@@ -0,0 +1,296 @@
+package net.codejava;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The rules of deposits, withdraws and transaction reversals, shared by the blocking
+ * {@link LedgerService} and the non-blocking ReactiveLedgerService of the `reactive` build profile.
+ *
+ * Each rule starts from the customer's locked {@link CustomerState}, decides whether the money
+ * movement is allowed, and describes its changes to a {@link LedgerWrites}. Nothing is written
+ * unless the outcome is APPLIED. Locking the customer and committing the writes is up to the caller.
+ *
+ * Business events are handed to {@link LedgerWrites#countOnCommit}:
+ *
+ *   ledger.overdrafts  - money movements that took an account into (deeper) overdraft
+ *   ledger.reversals   - applied disputes, tagged with the `action` that was reversed
+ */
+public class LedgerRules {
+  private final static long INTEREST_IN_BASIS_POINTS = 200;
+  private final static Money MAX_OVERDRAFT = Money.ofDollars(1000);
+  private final static int MAX_DISPUTES = 2;
+  final static int MAX_REVERSABLE_TRANSACTIONS_AGO = 3;
+  private final static Logger LOGGER = LoggerFactory.getLogger(LedgerRules.class);
+
+  private Clock clock;
+  private Counter overdrafts;
+  private Counter depositReversals;
+  private Counter withdrawReversals;
+
+  public LedgerRules(Clock clock, MeterRegistry meterRegistry) {
+    this.clock = clock;
+    this.overdrafts = meterRegistry.counter("ledger.overdrafts");
+    this.depositReversals = meterRegistry.counter("ledger.reversals", "action", "deposit");
+    this.withdrawReversals = meterRegistry.counter("ledger.reversals", "action", "withdraw");
+  }
+
+  /**
+   * @return true if numTransactionsAgo can name a reversable transaction, checked before any DB access
+   */
+  public static boolean isReversable(int numTransactionsAgo) {
+    return numTransactionsAgo > 0 && numTransactionsAgo <= MAX_REVERSABLE_TRANSACTIONS_AGO;
+  }
+
+  /**
+   * Deposits money into a customer's account. If the customer has an overdraft balance,
+   * the deposit pays it off first and only the excess is added to the main balance.
+   *
+   * @param customerState the customer's locked state
+   * @param userDepositAmt
+   * @param writes
+   * @return APPLIED if the deposit was written
+   */
+  public LedgerOutcome deposit(CustomerState customerState, Money userDepositAmt, LedgerWrites writes) {
+    String userID = customerState.getCustomerID();
+    if (userDepositAmt.isNegative()) {
+      return LedgerOutcome.INVALID_AMOUNT;
+    }
+    //If too many reversals dont do deposit
+    if (customerState.getNumFraudReversals() >= MAX_DISPUTES) {
+      return LedgerOutcome.ACCOUNT_FROZEN;
+    }
+
+    LocalDateTime currentTime = currentTime();
+
+    //Adds deposit to transaction history
+    writes.recordTransaction(userID, currentTime, "Deposit", userDepositAmt);
+
+    Money userOverdraftBalance = customerState.getOverdraftBalance();
+
+    // if the overdraft balance is positive, subtract the deposit with interest
+    if (userOverdraftBalance.isPositive()) {
+      Money newOverdraftBalance = Money.max(userOverdraftBalance.minus(userDepositAmt), Money.ZERO);
+      writes.insertOverdraftLog(userID, currentTime, userDepositAmt, userOverdraftBalance, newOverdraftBalance);
+
+      // updating customers table
+      writes.setOverdraftBalance(userID, newOverdraftBalance);
+    }
+
+    // if in the overdraft case and there is excess deposit, deposit the excess amount.
+    // otherwise, this is a non-overdraft case, so just use the userDepositAmt.
+    Money balanceIncreaseAmt = Money.ZERO;
+    if (userOverdraftBalance.isPositive() && userDepositAmt.isGreaterThan(userOverdraftBalance)) {
+      balanceIncreaseAmt = userDepositAmt.minus(userOverdraftBalance);
+    } else if (userOverdraftBalance.isPositive() && !userDepositAmt.isGreaterThan(userOverdraftBalance)) {
+      balanceIncreaseAmt = Money.ZERO; // overdraft case, but no excess deposit. don't increase balance column.
+    } else {
+      balanceIncreaseAmt = userDepositAmt;
+    }
+
+    LOGGER.debug("Increasing balance customer={} amount={}", userID, balanceIncreaseAmt);
+    writes.increaseBalance(userID, balanceIncreaseAmt);
+    return LedgerOutcome.APPLIED;
+  }
+
+  /**
+   * Withdraws money from a customer's account. If the withdraw is larger than the main balance,
+   * the main balance is emptied and the remainder (plus interest) is added to the overdraft balance.
+   *
+   * @param customerState the customer's locked state
+   * @param userWithdrawAmt
+   * @param writes
+   * @return APPLIED if the withdraw was written
+   */
+  public LedgerOutcome withdraw(CustomerState customerState, Money userWithdrawAmt, LedgerWrites writes) {
+    String userID = customerState.getCustomerID();
+    if (userWithdrawAmt.isNegative()) {
+      return LedgerOutcome.INVALID_AMOUNT;
+    }
+    //If too many reversals dont do withdraw
+    if (customerState.getNumFraudReversals() >= MAX_DISPUTES) {
+      return LedgerOutcome.ACCOUNT_FROZEN;
+    }
+
+    Money userBalance = customerState.getBalance();
+
+    // if the balance is not positive, withdraw with interest fee
+    if (userWithdrawAmt.isGreaterThan(userBalance)) {
+      // subtracts the remaining balance from withdrawal amount
+      Money newOverdraftAmt = userWithdrawAmt.minus(userBalance);
+
+      if (newOverdraftAmt.isGreaterThan(MAX_OVERDRAFT)) {
+        return LedgerOutcome.OVERDRAFT_LIMIT_EXCEEDED;
+      }
+
+      // factor in the existing overdraft balance before executing another overdraft
+      Money userOverdraftBalance = customerState.getOverdraftBalance();
+      if (newOverdraftAmt.plus(userOverdraftBalance).isGreaterThan(MAX_OVERDRAFT)) {
+        return LedgerOutcome.OVERDRAFT_LIMIT_EXCEEDED;
+      }
+
+      LocalDateTime currentTime = currentTime();
+
+      //Adds withdraw to transaction history
+      writes.recordTransaction(userID, currentTime, "Withdraw", userWithdrawAmt);
+
+      // this is a valid overdraft, so we can set Balance column to 0
+      writes.setBalance(userID, Money.ZERO);
+
+      Money newOverdraftAmtAfterInterest = newOverdraftAmt.withInterest(INTEREST_IN_BASIS_POINTS);
+      Money cumulativeOverdraft = userOverdraftBalance.plus(newOverdraftAmtAfterInterest);
+
+      writes.setOverdraftBalance(userID, cumulativeOverdraft);
+      LOGGER.debug("Setting overdraft balance customer={} overdraftBalance={}", userID, cumulativeOverdraft);
+      writes.countOnCommit(overdrafts);
+
+      return LedgerOutcome.APPLIED;
+    }
+
+    // non-overdraft case
+    LOGGER.debug("Decreasing balance customer={} amount={}", userID, userWithdrawAmt);
+    writes.decreaseBalance(userID, userWithdrawAmt);
+
+    LocalDateTime currentTime = currentTime();
+
+    //Adds withdraw to transaction history
+    writes.recordTransaction(userID, currentTime, "Withdraw", userWithdrawAmt);
+
+    return LedgerOutcome.APPLIED;
+  }
+
+  /**
+   * Reverses one of the customer's most recent transactions. A reversed deposit is withdrawn
+   * (possibly into overdraft) and a reversed withdraw is deposited back. Reversing a withdraw
+   * counts as a fraud reversal, and accounts with too many fraud reversals are frozen.
+   *
+   * The reads are suppliers so that they only run when the rules need them, in the same
+   * order as the original handler ran its queries.
+   *
+   * @param customerState the customer's locked state
+   * @param numTransactionsAgo 1 for the most recent transaction, up to MAX_REVERSABLE_TRANSACTIONS_AGO
+   * @param recentTransactions the customer's MAX_REVERSABLE_TRANSACTIONS_AGO most recent transactions, newest first
+   * @param overdraftLogsOf the customer's OverdraftLogs rows written by a transaction, given its TransactionID
+   * @param writes
+   * @return APPLIED if the reversal was written
+   */
+  public LedgerOutcome reverseTransaction(CustomerState customerState, int numTransactionsAgo,
+                                          Supplier<List<TransactionRecord>> recentTransactions,
+                                          LongFunction<List<OverdraftLogEntry>> overdraftLogsOf,
+                                          LedgerReversalWrites writes) {
+    String userID = customerState.getCustomerID();
+    // Ensure that requested transaction to reverse is within acceptable range
+    if (!isReversable(numTransactionsAgo)) {
+      return LedgerOutcome.TRANSACTION_NOT_FOUND;
+    }
+
+    // check if customer account is frozen
+    int numOfReversals = customerState.getNumFraudReversals();
+    if (numOfReversals >= MAX_DISPUTES) {
+      return LedgerOutcome.ACCOUNT_FROZEN;
+    }
+
+    // Fetch 3 most recent transactions for this customer
+    List<TransactionRecord> transactionLogs = recentTransactions.get();
+
+    // Ensure customer has enough transactions to complete the reversal
+    if (numTransactionsAgo > transactionLogs.size()) {
+      return LedgerOutcome.TRANSACTION_NOT_FOUND;
+    }
+
+    // Retrieve correct log based on what transaction user wants to reverse
+    TransactionRecord logToReverse = transactionLogs.get(numTransactionsAgo - 1);
+
+    // Get balance and overdraft balance
+    Money userBalance = customerState.getBalance();
+    Money userOverdraftBalance = customerState.getOverdraftBalance();
+
+    Money reversalAmount = logToReverse.getAmount();
+
+    // If transaction to reverse is a deposit, then withdraw the money out
+    if (logToReverse.isDeposit()) {
+      // if withdraw would exceed max overdraft possible, return welcome
+      if (userOverdraftBalance.plus(reversalAmount.minus(userBalance)).isGreaterThan(MAX_OVERDRAFT)) {
+        return LedgerOutcome.OVERDRAFT_LIMIT_EXCEEDED;
+      }
+
+      // if balance is large enough to have reversalAmount taken from it, subtract reversalAmount from balance
+      if (userBalance.isGreaterThan(reversalAmount)){
+        writes.decreaseBalance(userID, reversalAmount);
+      } else { // Case when reversing deposit causes overdraft or go deeper into overdraft
+        // Set main balance to 0 since we are either going into overdraft or already in overdraft
+        writes.setBalance(userID, Money.ZERO);
+
+        Money difference = reversalAmount.minus(userBalance);
+
+        writes.countOnCommit(overdrafts);
+
+        //check if deposit helped pay off overdraft balance
+        List<OverdraftLogEntry> queryLogs = overdraftLogsOf.apply(logToReverse.getTransactionID());
+        if (queryLogs.size() == 0) { // if deposit did not help pay of overdraft balance, then apply interest rate
+          writes.increaseOverdraftBalance(userID, difference.withInterest(INTEREST_IN_BASIS_POINTS));
+        } else { // otherwise don't apply interest and remove from overdraft logs
+          writes.increaseOverdraftBalance(userID, difference);
+          writes.deleteOverdraftLogsOf(userID, logToReverse.getTransactionID());
+        }
+      }
+
+      LocalDateTime currentTime = currentTime();
+
+      // add transaction to transaction history
+      writes.recordTransaction(userID, currentTime, "Withdraw", reversalAmount);
+      writes.countOnCommit(depositReversals);
+    } else { // Case when reversing a withdraw, deposit the money instead
+      // Adds to number of reversals
+      numOfReversals++;
+      writes.setNumFraudReversals(userID, numOfReversals);
+      if (userOverdraftBalance.equals(Money.ZERO)) {
+        writes.increaseBalance(userID, reversalAmount);
+
+        LocalDateTime currentTime = currentTime();
+
+        //adds transaction to transaction hisotry
+        writes.recordTransaction(userID, currentTime, "Deposit", reversalAmount);
+      } else { // case when user is in overdraft
+        // if amount is greater than overdraft balance, add difference to balance
+        Money difference = userOverdraftBalance.minus(reversalAmount);
+        if (difference.isNegative()) {
+          LOGGER.debug("Increasing balance customer={} amount={}", userID, difference.negate());
+          writes.increaseBalance(userID, difference.negate());
+        }
+
+        //sets new overdraft balance
+        Money newOverdraftBalance = Money.max(difference, Money.ZERO);
+        writes.setOverdraftBalance(userID, newOverdraftBalance);
+
+        LocalDateTime currentTime = currentTime();
+
+        //adds transaction to transaction logs
+        writes.recordTransaction(userID, currentTime, "Deposit", reversalAmount);
+
+        //adds change into overdraft logs
+        writes.insertOverdraftLog(userID, currentTime, reversalAmount, userOverdraftBalance, newOverdraftBalance);
+      }
+      writes.countOnCommit(withdrawReversals);
+    }
+    return LedgerOutcome.APPLIED;
+  }
+
+  /**
+   * Current time at the precision of the DATETIME log columns. Read from the injected {@link Clock},
+   * and passed to the DB as-is instead of being formatted into a String.
+   */
+  private LocalDateTime currentTime() {
+    return LocalDateTime.now(clock).truncatedTo(ChronoUnit.SECONDS);
+  }
+}
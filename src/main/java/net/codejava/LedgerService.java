@@ -0,0 +1,553 @@
+package net.codejava;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Applies deposits, withdraws and transaction reversals to customer accounts.
+ *
+ * Each money movement runs as one short DB transaction. The transaction starts by locking
+ * the customer's row in the Customers table with `SELECT ... FOR UPDATE`, so concurrent
+ * money movements on the same account are serialized by the DB while money movements on
+ * different accounts never wait on each other. All reads and writes of the movement
+ * (TransactionHistory, OverdraftLogs and Customers) commit or roll back together.
+ * The rules that decide what a money movement writes live in {@link LedgerRules}.
+ *
+ * Batches of deposits and withdraws (see {@link #applyBatch}) go through the same rules, but
+ * share one transaction and one set of JDBC batches among many operations.
+ *
+ * With `testudo.ledger.group-commit.enabled`, concurrent deposits and withdraws are applied the
+ * same way, as groups of up to `testudo.ledger.group-commit.max-group-size` operations that share
+ * one commit (see {@link LedgerGroupCommit}). Each operation still commits together with its
+ * TransactionHistory and OverdraftLogs rows. Reversals always run in their own transaction.
+ *
+ * If the DB aborts a transaction because of a lock conflict (deadlock or lock wait timeout),
+ * the whole money movement is retried, up to MAX_ATTEMPTS times.
+ *
+ * Business events are counted once their transaction has committed:
+ *
+ *   ledger.overdrafts  - money movements that took an account into (deeper) overdraft
+ *   ledger.reversals   - applied disputes, tagged with the `action` that was reversed
+ *   ledger.rejections  - money movements that were not applied, tagged with their `outcome`
+ *                        (ACCOUNT_FROZEN for locked accounts)
+ *   ledger.group.commits - commits shared by grouped deposits and withdraws
+ */
+@Service
+public class LedgerService {
+  private final static int MAX_ATTEMPTS = 3;
+  private final static Logger LOGGER = LoggerFactory.getLogger(LedgerService.class);
+
+  private CustomerRepository customerRepository;
+  private TransactionHistoryRepository transactionHistoryRepository;
+  private OverdraftLogRepository overdraftLogRepository;
+  private AccountSnapshotCache accountSnapshotCache;
+  private TransactionTemplate transactionTemplate;
+  private LedgerRules ledgerRules;
+  private final Map<LedgerOutcome, Counter> rejections = new EnumMap<>(LedgerOutcome.class);
+  /**
+   * Event counters of the current thread's money movement, incremented once it has committed.
+   */
+  private final ThreadLocal<List<Counter>> committedEvents = ThreadLocal.withInitial(ArrayList::new);
+  private final Counter groupCommits;
+  /**
+   * Null unless group commit is enabled.
+   */
+  private LedgerGroupCommit groupCommit;
+
+  @Autowired
+  public LedgerService(CustomerRepository customerRepository,
+                       TransactionHistoryRepository transactionHistoryRepository,
+                       OverdraftLogRepository overdraftLogRepository,
+                       AccountSnapshotCache accountSnapshotCache,
+                       TransactionTemplate transactionTemplate,
+                       Clock clock,
+                       MeterRegistry meterRegistry,
+                       @Value("${testudo.ledger.group-commit.enabled:false}") boolean groupCommitEnabled,
+                       @Value("${testudo.ledger.group-commit.max-group-size:64}") int maxGroupSize,
+                       @Value("${testudo.ledger.group-commit.max-linger-millis:0}") long maxLingerMillis,
+                       @Value("${testudo.ledger.group-commit.submit-timeout-millis:30000}") long submitTimeoutMillis) {
+    this.customerRepository = customerRepository;
+    this.transactionHistoryRepository = transactionHistoryRepository;
+    this.overdraftLogRepository = overdraftLogRepository;
+    this.accountSnapshotCache = accountSnapshotCache;
+    this.transactionTemplate = transactionTemplate;
+    this.ledgerRules = new LedgerRules(clock, meterRegistry);
+
+    for (LedgerOutcome outcome : LedgerOutcome.values()) {
+      if (outcome != LedgerOutcome.APPLIED) {
+        rejections.put(outcome, meterRegistry.counter("ledger.rejections", "outcome", outcome.name()));
+      }
+    }
+    this.groupCommits = meterRegistry.counter("ledger.group.commits");
+    if (groupCommitEnabled) {
+      this.groupCommit = new LedgerGroupCommit(this::applyGroup, maxGroupSize, maxLingerMillis, submitTimeoutMillis);
+    }
+  }
+
+  /**
+   * Ledger without group commit.
+   */
+  public LedgerService(CustomerRepository customerRepository,
+                       TransactionHistoryRepository transactionHistoryRepository,
+                       OverdraftLogRepository overdraftLogRepository,
+                       AccountSnapshotCache accountSnapshotCache,
+                       TransactionTemplate transactionTemplate,
+                       Clock clock,
+                       MeterRegistry meterRegistry) {
+    this(customerRepository, transactionHistoryRepository, overdraftLogRepository, accountSnapshotCache,
+         transactionTemplate, clock, meterRegistry, false, 0, 0, 0);
+  }
+
+  /**
+   * Applies every deposit and withdraw that is waiting for group commit, and rejects any that come later.
+   */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    if (groupCommit != null) {
+      groupCommit.shutdown();
+    }
+  }
+
+  /**
+   * Deposits money into a customer's account. If the customer has an overdraft balance,
+   * the deposit pays it off first and only the excess is added to the main balance.
+   *
+   * @param userID
+   * @param userDepositAmt
+   * @return APPLIED if the deposit was committed
+   */
+  public LedgerOutcome deposit(String userID, Money userDepositAmt) {
+    if (groupCommit != null) {
+      return groupCommit.submit(new BatchOperation(userID, BatchOperation.Type.DEPOSIT, userDepositAmt));
+    }
+    return runInTransaction(userID, status -> {
+      // Locks the customer's row until this transaction ends
+      CustomerState customerState = customerRepository.findStateForUpdate(userID);
+      return ledgerRules.deposit(customerState, userDepositAmt, new DirectWrites());
+    });
+  }
+
+  /**
+   * Withdraws money from a customer's account. If the withdraw is larger than the main balance,
+   * the main balance is emptied and the remainder (plus interest) is added to the overdraft balance.
+   *
+   * @param userID
+   * @param userWithdrawAmt
+   * @return APPLIED if the withdraw was committed
+   */
+  public LedgerOutcome withdraw(String userID, Money userWithdrawAmt) {
+    if (groupCommit != null) {
+      return groupCommit.submit(new BatchOperation(userID, BatchOperation.Type.WITHDRAW, userWithdrawAmt));
+    }
+    return runInTransaction(userID, status -> {
+      // Locks the customer's row until this transaction ends
+      CustomerState customerState = customerRepository.findStateForUpdate(userID);
+      return ledgerRules.withdraw(customerState, userWithdrawAmt, new DirectWrites());
+    });
+  }
+
+  /**
+   * Reverses one of the customer's most recent transactions. A reversed deposit is withdrawn
+   * (possibly into overdraft) and a reversed withdraw is deposited back. Reversing a withdraw
+   * counts as a fraud reversal, and accounts with too many fraud reversals are frozen.
+   *
+   * @param userID
+   * @param numTransactionsAgo 1 for the most recent transaction, up to MAX_REVERSABLE_TRANSACTIONS_AGO
+   * @return APPLIED if the reversal was committed
+   */
+  public LedgerOutcome reverseTransaction(String userID, int numTransactionsAgo) {
+    // Ensure that requested transaction to reverse is within acceptable range
+    if (!LedgerRules.isReversable(numTransactionsAgo)) {
+      return counted(LedgerOutcome.TRANSACTION_NOT_FOUND);
+    }
+
+    return runInTransaction(userID, status -> {
+      // Locks the customer's row until this transaction ends
+      CustomerState customerState = customerRepository.findStateForUpdate(userID);
+      return ledgerRules.reverseTransaction(customerState, numTransactionsAgo,
+                                            () -> transactionHistoryRepository.findRecent(userID, LedgerRules.MAX_REVERSABLE_TRANSACTIONS_AGO),
+                                            transactionID -> overdraftLogRepository.findByTransaction(userID, transactionID),
+                                            new DirectWrites());
+    });
+  }
+
+  /**
+   * Applies a batch of deposits and withdraws, such as a payroll or settlement run, with the same
+   * rules as {@link #deposit} and {@link #withdraw}.
+   *
+   * Operations are grouped per customer and keep their order within each customer. They are committed
+   * in transactions of at most maxOperationsPerTransaction operations, and a customer with more
+   * operations than that spans several transactions. Each transaction locks its customers' rows once,
+   * in order of CustomerID so that concurrent batches cannot deadlock, applies their operations one
+   * after the other in memory, and then writes the new balances, TransactionHistory rows and
+   * OverdraftLogs rows as one JDBC batch each.
+   *
+   * A transaction that fails for any reason other than a lock conflict is rolled back, and the batch
+   * stops there: the transactions before it stay committed, and the operations of the failed
+   * transaction and of all later ones are NOT_COMMITTED, so that the caller knows exactly which
+   * operations to submit again.
+   *
+   * @param operations each with a customerID, type and amount
+   * @param maxOperationsPerTransaction
+   * @return outcome of each operation, in the order of operations
+   */
+  public List<LedgerOutcome> applyBatch(List<BatchOperation> operations, int maxOperationsPerTransaction) {
+    LedgerOutcome[] outcomes = new LedgerOutcome[operations.size()];
+    List<List<Integer>> chunks = chunks(operations, maxOperationsPerTransaction);
+    for (int chunk = 0; chunk < chunks.size(); chunk++) {
+      try {
+        applyChunk(operations, chunks.get(chunk), outcomes);
+      } catch (RuntimeException e) {
+        int numNotCommitted = 0;
+        for (List<Integer> notCommitted : chunks.subList(chunk, chunks.size())) {
+          for (int i : notCommitted) {
+            outcomes[i] = counted(LedgerOutcome.NOT_COMMITTED);
+            numNotCommitted++;
+          }
+        }
+        LOGGER.error("Batch transaction failed, {} of {} operations not committed", numNotCommitted, operations.size(), e);
+        break;
+      }
+    }
+    return Arrays.asList(outcomes);
+  }
+
+  /**
+   * Applies deposits and withdraws of concurrent requests in one transaction, for group commit.
+   * If the transaction fails, its exception fails every operation of the group.
+   *
+   * @param operations
+   * @return outcome of each operation, in the order of operations
+   */
+  private List<LedgerOutcome> applyGroup(List<BatchOperation> operations) {
+    LedgerOutcome[] outcomes = new LedgerOutcome[operations.size()];
+    applyChunk(operations, chunks(operations, operations.size()).get(0), outcomes);
+    groupCommits.increment();
+    return Arrays.asList(outcomes);
+  }
+
+  /**
+   * Splits a batch into the operations of each transaction.
+   *
+   * @param operations
+   * @param maxOperationsPerTransaction
+   * @return indexes of the operations of each transaction, grouped by customer in the order their rows
+   *         are locked, and in their original order within each customer
+   */
+  private static List<List<Integer>> chunks(List<BatchOperation> operations, int maxOperationsPerTransaction) {
+    Map<String, List<Integer>> operationsByCustomer = new TreeMap<>();
+    for (int i = 0; i < operations.size(); i++) {
+      operationsByCustomer.computeIfAbsent(operations.get(i).getCustomerID(), customerID -> new ArrayList<>()).add(i);
+    }
+
+    List<List<Integer>> chunks = new ArrayList<>();
+    List<Integer> chunk = new ArrayList<>();
+    for (List<Integer> customerOperations : operationsByCustomer.values()) {
+      for (int i : customerOperations) {
+        chunk.add(i);
+        if (chunk.size() >= maxOperationsPerTransaction) {
+          chunks.add(chunk);
+          chunk = new ArrayList<>();
+        }
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  /**
+   * Applies the given operations of a batch in one transaction.
+   *
+   * @param operations the whole batch
+   * @param chunk indexes of the operations to apply, sorted by customer
+   * @param outcomes where the outcome of each applied operation is stored, at its index
+   */
+  private void applyChunk(List<BatchOperation> operations, List<Integer> chunk, LedgerOutcome[] outcomes) {
+    Set<String> customerIDs = new LinkedHashSet<>();
+    for (int i : chunk) {
+      customerIDs.add(operations.get(i).getCustomerID());
+    }
+
+    runInTransaction(customerIDs, status -> {
+      BatchedWrites writes = new BatchedWrites();
+      for (int i : chunk) {
+        BatchOperation operation = operations.get(i);
+        CustomerState customerState = writes.lockCustomer(operation.getCustomerID());
+        if (customerState == null) {
+          outcomes[i] = LedgerOutcome.CUSTOMER_NOT_FOUND;
+        } else if (operation.getType() == BatchOperation.Type.DEPOSIT) {
+          outcomes[i] = ledgerRules.deposit(customerState, operation.getAmount(), writes);
+        } else {
+          outcomes[i] = ledgerRules.withdraw(customerState, operation.getAmount(), writes);
+        }
+      }
+      writes.flush();
+      return null;
+    });
+
+    for (int i : chunk) {
+      counted(outcomes[i]);
+    }
+  }
+
+  /**
+   * Increments an event counter once the current money movement has committed.
+   */
+  private void countOnCommit(Counter counter) {
+    committedEvents.get().add(counter);
+  }
+
+  /**
+   * Counts an outcome as a rejection unless it was applied.
+   *
+   * @param outcome
+   * @return the same outcome
+   */
+  private LedgerOutcome counted(LedgerOutcome outcome) {
+    if (outcome != LedgerOutcome.APPLIED) {
+      rejections.get(outcome).increment();
+    }
+    return outcome;
+  }
+
+  /**
+   * Runs a money movement in its own transaction, see {@link #runInTransaction(Collection, TransactionCallback)}.
+   *
+   * @param userID the customer whose account is being changed
+   * @param moneyMovement
+   * @return the outcome of the money movement
+   */
+  private LedgerOutcome runInTransaction(String userID, TransactionCallback<LedgerOutcome> moneyMovement) {
+    return counted(runInTransaction(Collections.singletonList(userID), moneyMovement));
+  }
+
+  /**
+   * Runs money movements in one transaction, retrying it from the start if the DB
+   * aborts the transaction because of a lock conflict. Any other failure rolls back
+   * the transaction and is rethrown immediately.
+   *
+   * The customers' cached {@link AccountSnapshot}s are dropped once the transaction has ended,
+   * so the next read of their accounts sees the committed state.
+   *
+   * @param userIDs the customers whose accounts are being changed
+   * @param moneyMovements
+   * @return the result of moneyMovements
+   */
+  private <T> T runInTransaction(Collection<String> userIDs, TransactionCallback<T> moneyMovements) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        T result = transactionTemplate.execute(moneyMovements);
+        for (Counter counter : committedEvents.get()) {
+          counter.increment();
+        }
+        return result;
+      } catch (ConcurrencyFailureException e) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        // events of a rolled back attempt must not be counted
+        committedEvents.remove();
+        // not inside the transaction, or a concurrent read could cache the uncommitted state again
+        for (String userID : userIDs) {
+          accountSnapshotCache.invalidate(userID);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends every write as its own statement, for single money movements. One instance per money
+   * movement, since it remembers the TransactionID of the movement's transaction for its overdraft log.
+   */
+  private class DirectWrites implements LedgerReversalWrites {
+    private Long lastTransactionID;
+
+    @Override
+    public void recordTransaction(String userID, LocalDateTime timestamp, String action, Money amount) {
+      lastTransactionID = transactionHistoryRepository.insert(userID, timestamp, action, amount);
+    }
+
+    @Override
+    public void insertOverdraftLog(String userID, LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) {
+      if (lastTransactionID == null) {
+        throw new IllegalStateException("Overdraft log of customer " + userID + " written before its transaction");
+      }
+      overdraftLogRepository.insert(userID, lastTransactionID, timestamp, depositAmt, oldOverdraftBalance, newOverdraftBalance);
+    }
+
+    @Override
+    public void increaseBalance(String userID, Money amount) {
+      customerRepository.increaseBalance(userID, amount);
+    }
+
+    @Override
+    public void decreaseBalance(String userID, Money amount) {
+      customerRepository.decreaseBalance(userID, amount);
+    }
+
+    @Override
+    public void setBalance(String userID, Money balance) {
+      customerRepository.setBalance(userID, balance);
+    }
+
+    @Override
+    public void increaseOverdraftBalance(String userID, Money amount) {
+      customerRepository.increaseOverdraftBalance(userID, amount);
+    }
+
+    @Override
+    public void setOverdraftBalance(String userID, Money overdraftBalance) {
+      customerRepository.setOverdraftBalance(userID, overdraftBalance);
+    }
+
+    @Override
+    public void deleteOverdraftLogsOf(String userID, long transactionID) {
+      overdraftLogRepository.deleteByTransaction(userID, transactionID);
+    }
+
+    @Override
+    public void setNumFraudReversals(String userID, int numFraudReversals) {
+      customerRepository.setNumFraudReversals(userID, numFraudReversals);
+    }
+
+    @Override
+    public void countOnCommit(Counter counter) {
+      LedgerService.this.countOnCommit(counter);
+    }
+  }
+
+  /**
+   * Applies writes to the locked customers' state in memory, and sends them all as three JDBC batches
+   * on {@link #flush()}. Used by {@link #applyBatch}, where the next operation on a customer has to see
+   * the balances left by the previous one.
+   */
+  private class BatchedWrites implements LedgerWrites {
+    // null for customers that don't exist
+    private final Map<String, CustomerState> customerStates = new HashMap<>();
+    private final Set<String> changedCustomers = new LinkedHashSet<>();
+    private final List<Object[]> transactionRows = new ArrayList<>();
+    // the TransactionID column holds the index of the log's row in transactionRows until flush
+    private final List<Object[]> overdraftLogRows = new ArrayList<>();
+    private final Map<String, Integer> lastTransactionRows = new HashMap<>();
+
+    /**
+     * Locks the customer's row the first time it is asked for.
+     *
+     * @return the customer's state after the writes so far, or null if there is no such customer
+     */
+    CustomerState lockCustomer(String userID) {
+      if (!customerStates.containsKey(userID)) {
+        CustomerState customerState;
+        try {
+          customerState = customerRepository.findStateForUpdate(userID);
+        } catch (EmptyResultDataAccessException e) {
+          customerState = null;
+        }
+        customerStates.put(userID, customerState);
+      }
+      return customerStates.get(userID);
+    }
+
+    void flush() {
+      if (!changedCustomers.isEmpty()) {
+        List<CustomerState> changedStates = new ArrayList<>(changedCustomers.size());
+        for (String userID : changedCustomers) {
+          changedStates.add(customerStates.get(userID));
+        }
+        customerRepository.setBalances(changedStates);
+      }
+      if (!transactionRows.isEmpty()) {
+        long[] transactionIDs = transactionHistoryRepository.insertAll(transactionRows);
+        for (Object[] overdraftLogRow : overdraftLogRows) {
+          overdraftLogRow[1] = transactionIDs[(Integer) overdraftLogRow[1]];
+        }
+      }
+      if (!overdraftLogRows.isEmpty()) {
+        overdraftLogRepository.insertAll(overdraftLogRows);
+      }
+    }
+
+    @Override
+    public void recordTransaction(String userID, LocalDateTime timestamp, String action, Money amount) {
+      lastTransactionRows.put(userID, transactionRows.size());
+      transactionRows.add(new Object[] {userID, timestamp, action, amount.getCents()});
+    }
+
+    @Override
+    public void insertOverdraftLog(String userID, LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) {
+      Integer transactionRow = lastTransactionRows.get(userID);
+      if (transactionRow == null) {
+        throw new IllegalStateException("Overdraft log of customer " + userID + " written before its transaction");
+      }
+      overdraftLogRows.add(new Object[] {userID, transactionRow, timestamp, depositAmt.getCents(), oldOverdraftBalance.getCents(), newOverdraftBalance.getCents()});
+    }
+
+    @Override
+    public void increaseBalance(String userID, Money amount) {
+      CustomerState customerState = customerStates.get(userID);
+      setBalances(userID, customerState.getBalance().plus(amount), customerState.getOverdraftBalance());
+    }
+
+    @Override
+    public void decreaseBalance(String userID, Money amount) {
+      CustomerState customerState = customerStates.get(userID);
+      setBalances(userID, customerState.getBalance().minus(amount), customerState.getOverdraftBalance());
+    }
+
+    @Override
+    public void setBalance(String userID, Money balance) {
+      setBalances(userID, balance, customerStates.get(userID).getOverdraftBalance());
+    }
+
+    @Override
+    public void increaseOverdraftBalance(String userID, Money amount) {
+      CustomerState customerState = customerStates.get(userID);
+      setBalances(userID, customerState.getBalance(), customerState.getOverdraftBalance().plus(amount));
+    }
+
+    @Override
+    public void setOverdraftBalance(String userID, Money overdraftBalance) {
+      setBalances(userID, customerStates.get(userID).getBalance(), overdraftBalance);
+    }
+
+    @Override
+    public void countOnCommit(Counter counter) {
+      LedgerService.this.countOnCommit(counter);
+    }
+
+    private void setBalances(String userID, Money balance, Money overdraftBalance) {
+      int numFraudReversals = customerStates.get(userID).getNumFraudReversals();
+      customerStates.put(userID, new CustomerState(userID, balance, overdraftBalance, numFraudReversals));
+      changedCustomers.add(userID);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package net.codejava;
+
+import java.time.LocalDateTime;
+
+import io.micrometer.core.instrument.Counter;
+
+/**
+ * The writes of a deposit or withdraw, as decided by {@link LedgerRules}, so that the same rules can
+ * write through to the DB one statement at a time, batch writes up with other operations, or
+ * collect them to run later on a non-blocking connection. Reversals need the extra writes of
+ * {@link LedgerReversalWrites}.
+ */
+public interface LedgerWrites {
+  void recordTransaction(String userID, LocalDateTime timestamp, String action, Money amount);
+
+  /**
+   * Logs a deposit that paid off part of the overdraft balance. The log belongs to the transaction
+   * last recorded for the same customer, so the deposit has to be recorded first.
+   */
+  void insertOverdraftLog(String userID, LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance);
+
+  void increaseBalance(String userID, Money amount);
+
+  void decreaseBalance(String userID, Money amount);
+
+  void setBalance(String userID, Money balance);
+
+  void increaseOverdraftBalance(String userID, Money amount);
+
+  void setOverdraftBalance(String userID, Money overdraftBalance);
+
+  /**
+   * Increments an event counter once the money movement has committed.
+   */
+  void countOnCommit(Counter counter);
+}
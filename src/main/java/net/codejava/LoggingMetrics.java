@@ -0,0 +1,55 @@
+package net.codejava;
+
+import java.util.Iterator;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the counters of every {@link RingBufferAppender} attached to the root logger:
+ *
+ *   logging.events.dropped      - events dropped because the ring buffer was full
+ *   logging.events.sampled.out  - DEBUG and TRACE events left out by sampling
+ *   logging.events.queued       - events waiting to be written
+ *
+ * Each meter is tagged with the appender's name. Nothing is published if logging
+ * is not configured with logback-spring.xml (e.g. in tests).
+ */
+@Component
+public class LoggingMetrics implements MeterBinder {
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+    if (!(loggerFactory instanceof LoggerContext)) {
+      return;
+    }
+
+    ch.qos.logback.classic.Logger root = ((LoggerContext) loggerFactory).getLogger(Logger.ROOT_LOGGER_NAME);
+    for (Iterator<Appender<ILoggingEvent>> it = root.iteratorForAppenders(); it.hasNext(); ) {
+      Appender<ILoggingEvent> appender = it.next();
+      if (!(appender instanceof RingBufferAppender)) {
+        continue;
+      }
+      RingBufferAppender ringBufferAppender = (RingBufferAppender) appender;
+      FunctionCounter.builder("logging.events.dropped", ringBufferAppender, RingBufferAppender::getDroppedEvents)
+                     .tag("appender", appender.getName())
+                     .register(registry);
+      FunctionCounter.builder("logging.events.sampled.out", ringBufferAppender, RingBufferAppender::getSampledOutEvents)
+                     .tag("appender", appender.getName())
+                     .register(registry);
+      Gauge.builder("logging.events.queued", ringBufferAppender, RingBufferAppender::getQueuedEvents)
+           .tag("appender", appender.getName())
+           .register(registry);
+    }
+  }
+}
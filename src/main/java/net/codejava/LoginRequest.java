@@ -0,0 +1,15 @@
+package net.codejava;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * JSON body of a login through {@link AccountApiController}.
+ */
+public class LoginRequest {
+  @Setter @Getter
+  private String username;
+
+  @Setter @Getter
+  private String password;
+}
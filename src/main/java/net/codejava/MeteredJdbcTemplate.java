@@ -0,0 +1,100 @@
+package net.codejava;
+
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.SqlProvider;
+
+/**
+ * JdbcTemplate that times every prepared statement it runs and records how many rows it touched.
+ *
+ * Every `?`-parameterized query, update and batch goes through
+ * {@link #execute(PreparedStatementCreator, PreparedStatementCallback)}, so that is the only
+ * method instrumented. Meters are tagged with the statement's SQL text, which is one of the
+ * repositories' constants, so the number of distinct meters stays small.
+ *
+ *   jdbc.statement       - timer, tagged with `sql` and `outcome` (success or error)
+ *   jdbc.statement.rows  - rows affected by an update or batch, or rows returned by a query.
+ *                          A query whose ResultSetExtractor folds its rows into one object
+ *                          (like the account snapshot) counts as one row.
+ *
+ * With `management.metrics.enable.jdbc=false` the meters are no-ops and only the lookup
+ * of the cached meter is left on the hot path.
+ */
+public class MeteredJdbcTemplate extends JdbcTemplate {
+  private final static String STATEMENT_TIMER = "jdbc.statement";
+  private final static String STATEMENT_ROWS = "jdbc.statement.rows";
+
+  private MeterRegistry meterRegistry;
+  private final ConcurrentMap<String, StatementMeters> statementMeters = new ConcurrentHashMap<>();
+
+  public MeteredJdbcTemplate(DataSource dataSource, MeterRegistry meterRegistry) {
+    super(dataSource);
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action) throws DataAccessException {
+    String sql = psc instanceof SqlProvider ? ((SqlProvider) psc).getSql() : null;
+    if (sql == null) {
+      return super.execute(psc, action);
+    }
+    StatementMeters meters = statementMeters.computeIfAbsent(sql, StatementMeters::new);
+
+    Timer.Sample sample = Timer.start(meterRegistry);
+    T result;
+    try {
+      result = super.execute(psc, action);
+    } catch (RuntimeException e) {
+      sample.stop(meters.failed);
+      throw e;
+    }
+    sample.stop(meters.succeeded);
+    meters.rows.record(rowCount(result));
+    return result;
+  }
+
+  private static long rowCount(Object result) {
+    if (result == null) {
+      return 0;
+    } else if (result instanceof Integer) {
+      // update count
+      return (Integer) result;
+    } else if (result instanceof int[]) {
+      // batch update counts
+      long rows = 0;
+      for (int count : (int[]) result) {
+        // a rewritten MySQL batch doesn't report per-row counts
+        rows += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+      }
+      return rows;
+    } else if (result instanceof List) {
+      return ((List<?>) result).size();
+    }
+    return 1;
+  }
+
+  private class StatementMeters {
+    private final Timer succeeded;
+    private final Timer failed;
+    private final DistributionSummary rows;
+
+    StatementMeters(String sql) {
+      this.succeeded = Timer.builder(STATEMENT_TIMER).tag("sql", sql).tag("outcome", "success").register(meterRegistry);
+      this.failed = Timer.builder(STATEMENT_TIMER).tag("sql", sql).tag("outcome", "error").register(meterRegistry);
+      this.rows = DistributionSummary.builder(STATEMENT_ROWS).tag("sql", sql).register(meterRegistry);
+    }
+  }
+}
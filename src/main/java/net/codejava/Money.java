@@ -0,0 +1,172 @@
+package net.codejava;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * An exact amount of US dollars, held as a primitive count of cents.
+ *
+ * Replaces the `double` dollar amounts that were converted with `(int) (amount * 100)`,
+ * which silently loses a cent on amounts like $0.29. Arithmetic is done on the `long` cents
+ * and fails with an ArithmeticException instead of overflowing. Interest is rounded to the
+ * nearest cent, with half a cent rounded away from zero.
+ *
+ * Instances are immutable. Spring binds form input to Money through {@link #valueOf(String)},
+ * and JSPs render it through {@link #toString()}, e.g. "1234.50". JSON uses the same string.
+ */
+public final class Money implements Comparable<Money> {
+  public static final Money ZERO = new Money(0);
+
+  private final static long CENTS_PER_DOLLAR = 100;
+  private final static long BASIS_POINTS = 10000;
+
+  private final long cents;
+
+  private Money(long cents) {
+    this.cents = cents;
+  }
+
+  public static Money ofCents(long cents) {
+    return cents == 0 ? ZERO : new Money(cents);
+  }
+
+  public static Money ofDollars(long dollars) {
+    return ofCents(Math.multiplyExact(dollars, CENTS_PER_DOLLAR));
+  }
+
+  /**
+   * Parses a dollar amount as typed into a form, e.g. "12", "12.5" or "-0.29".
+   *
+   * @param dollars
+   * @return the exact amount
+   * @throws NumberFormatException if the text is not a number with at most two decimals
+   */
+  @JsonCreator
+  public static Money valueOf(String dollars) {
+    String text = dollars.trim();
+    int length = text.length();
+    int i = 0;
+    boolean negative = false;
+    if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+      negative = text.charAt(i) == '-';
+      i++;
+    }
+
+    long cents = 0;
+    int digits = 0;
+    int decimals = -1;
+    for (; i < length; i++) {
+      char c = text.charAt(i);
+      if (c == '.' && decimals < 0) {
+        decimals = 0;
+      } else if (c >= '0' && c <= '9' && decimals < 2) {
+        try {
+          cents = Math.addExact(Math.multiplyExact(cents, 10), c - '0');
+        } catch (ArithmeticException e) {
+          throw new NumberFormatException("Amount out of range: " + dollars);
+        }
+        digits++;
+        if (decimals >= 0) {
+          decimals++;
+        }
+      } else {
+        throw new NumberFormatException("Not a dollar amount with at most two decimals: " + dollars);
+      }
+    }
+    if (digits == 0) {
+      throw new NumberFormatException("Not a dollar amount: " + dollars);
+    }
+
+    for (int scale = Math.max(decimals, 0); scale < 2; scale++) {
+      cents = Math.multiplyExact(cents, 10);
+    }
+    return ofCents(negative ? -cents : cents);
+  }
+
+  public long getCents() {
+    return cents;
+  }
+
+  public Money plus(Money other) {
+    return ofCents(Math.addExact(cents, other.cents));
+  }
+
+  public Money minus(Money other) {
+    return ofCents(Math.subtractExact(cents, other.cents));
+  }
+
+  /**
+   * @param interestInBasisPoints interest rate in hundredths of a percent, e.g. 200 for 2%
+   * @return this amount plus interest, rounded to the nearest cent
+   */
+  public Money withInterest(long interestInBasisPoints) {
+    long scaled = Math.multiplyExact(Math.abs(cents), interestInBasisPoints);
+    long interest = (scaled + BASIS_POINTS / 2) / BASIS_POINTS;
+    return ofCents(Math.addExact(cents, cents < 0 ? -interest : interest));
+  }
+
+  public Money negate() {
+    return ofCents(Math.negateExact(cents));
+  }
+
+  public boolean isNegative() {
+    return cents < 0;
+  }
+
+  public boolean isPositive() {
+    return cents > 0;
+  }
+
+  public boolean isGreaterThan(Money other) {
+    return cents > other.cents;
+  }
+
+  public static Money max(Money a, Money b) {
+    return a.cents >= b.cents ? a : b;
+  }
+
+  @Override
+  public int compareTo(Money other) {
+    return Long.compare(cents, other.cents);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Money && ((Money) o).cents == cents;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(cents);
+  }
+
+  /**
+   * @return the amount in dollars with two decimals, e.g. "-0.29"
+   */
+  @Override
+  @JsonValue
+  public String toString() {
+    long dollars = Math.abs(cents / CENTS_PER_DOLLAR);
+    int fraction = (int) Math.abs(cents % CENTS_PER_DOLLAR);
+
+    // sign, dollar digits, point and two cent digits, filled in from the end into an exactly sized
+    // buffer that the JIT can keep off the heap, so that rendering a balance only allocates the String
+    int length = cents < 0 ? 5 : 4;
+    for (long rest = dollars; rest >= 10; rest /= 10) {
+      length++;
+    }
+    char[] text = new char[length];
+    int i = length;
+    text[--i] = (char) ('0' + fraction % 10);
+    text[--i] = (char) ('0' + fraction / 10);
+    text[--i] = '.';
+    do {
+      text[--i] = (char) ('0' + dollars % 10);
+      dollars /= 10;
+    } while (dollars > 0);
+    if (cents < 0) {
+      text[--i] = '-';
+    }
+    return new String(text);
+  }
+}
@@ -0,0 +1,13 @@
+package net.codejava;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * JSON body of a deposit or withdraw through {@link AccountApiController}, e.g. `{"amount": "12.50"}`.
+ * The amount is a string, parsed exactly by {@link Money#valueOf(String)}.
+ */
+public class MoneyMovementRequest {
+  @Setter @Getter
+  private Money amount;
+}
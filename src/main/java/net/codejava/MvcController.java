@@ -1,36 +1,49 @@
 package net.codejava;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.jdbc.core.JdbcTemplate;
 
-import java.util.Map;
-
-
-import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @Controller
 public class MvcController {
   /**
-   * A simplified JDBC client that is injected with the login credentials
-   * specified in /src/main/resources/application.properties
+   * Checks password attempts against the Passwords table, caching salted hashes of
+   * recently used credentials.
+   */
+  private CredentialCache credentialCache;
+  /**
+   * Login sessions, so that money operations after login skip the password check.
+   */
+  private SessionStore sessionStore;
+  /**
+   * Everything shown on the "account_info" page, loaded in a single DB round trip
+   * unless it is already cached.
+   */
+  private AccountSnapshotCache accountSnapshotCache;
+  /**
+   * Applies deposits, withdraws and reversals, each as a single DB transaction.
    */
-  private JdbcTemplate jdbcTemplate;
-  private static java.text.SimpleDateFormat SQL_DATETIME_FORMATTER = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-  private final static double INTEREST_RATE = 1.02;
-  private final static int MAX_OVERDRAFT_IN_PENNIES = 100000;
-  private final static int MAX_DISPUTES = 2;
-  private final static int MAX_NUM_TRANSACTIONS_DISPLAYED = 3;
-  private final static int MAX_REVERSABLE_TRANSACTIONS_AGO = 3;
-  private final static String HTML_LINE_BREAK = "<br/>";
-
-  public MvcController(@Autowired JdbcTemplate jdbcTemplate) {
-    this.jdbcTemplate = jdbcTemplate;
+  private LedgerService ledgerService;
+  private final static Logger LOGGER = LoggerFactory.getLogger(MvcController.class);
+
+  public MvcController(@Autowired CredentialCache credentialCache,
+                       @Autowired SessionStore sessionStore,
+                       @Autowired AccountSnapshotCache accountSnapshotCache,
+                       @Autowired LedgerService ledgerService) {
+    this.credentialCache = credentialCache;
+    this.sessionStore = sessionStore;
+    this.accountSnapshotCache = accountSnapshotCache;
+    this.ledgerService = ledgerService;
   }
 
   /**
@@ -64,66 +77,72 @@ public class MvcController {
    * Helper method that queries the MySQL DB for the customer account info (First Name, Last Name, and Balance)
    * and adds these values to the `user` Model Attribute so that they can be displayed in the "account_info" page.
    * 
+   * The customer row, recent overdraft logs and recent transaction history are fetched together
+   * as a single {@link AccountSnapshot} in one DB round trip, or served from {@link AccountSnapshotCache}
+   * if the account has not changed since it was last fetched. The logs are handed to the page as
+   * typed rows, which it renders one by one.
+   * 
    * @param user
    */
-  private void updateAccountInfo(User user) {
-    String getUserNameAndBalanceAndOverDraftBalanceSql = String.format("SELECT FirstName, LastName, Balance, OverdraftBalance FROM customers WHERE CustomerID='%s';", user.getUsername());
-    List<Map<String,Object>> queryResults = jdbcTemplate.queryForList(getUserNameAndBalanceAndOverDraftBalanceSql);
-    String getOverDraftLogsSql = String.format("SELECT * FROM OverdraftLogs WHERE CustomerID='%s';", user.getUsername());
-    // SQL Query that only fetches the three most recent transaction logs for this customer.
-    String getTransactionHistorySql = String.format("Select * from TransactionHistory WHERE CustomerId='%s' ORDER BY Timestamp DESC LIMIT %d;", user.getUsername(), MAX_NUM_TRANSACTIONS_DISPLAYED);
-    
-    List<Map<String,Object>> queryLogs = jdbcTemplate.queryForList(getOverDraftLogsSql);
-    String logs = HTML_LINE_BREAK;
-    for(Map<String, Object> overdraftLog : queryLogs){
-      logs += overdraftLog + HTML_LINE_BREAK;
-    }
-    List<Map<String,Object>> transactionLogs = jdbcTemplate.queryForList(getTransactionHistorySql);
-    String transactionHistoryOutput = HTML_LINE_BREAK;
-    for(Map<String, Object> transactionLog : transactionLogs){
-      transactionHistoryOutput += transactionLog + HTML_LINE_BREAK;
-    }
-
-    Map<String,Object> userData = queryResults.get(0);
+  void updateAccountInfo(User user) {
+    AccountSnapshot snapshot = accountSnapshotCache.get(user.getUsername());
+
+    user.setFirstName(snapshot.getFirstName());
+    user.setLastName(snapshot.getLastName());
+    user.setBalance(snapshot.getBalance());
+    user.setOverDraftBalance(snapshot.getOverdraftBalance());
+    user.setOverdraftLogs(snapshot.getOverdraftLogs());
+    user.setTransactionHist(snapshot.getTransactionHistory());
+  }
 
-    user.setFirstName((String)userData.get("FirstName"));
-    user.setLastName((String)userData.get("LastName"));
-    user.setBalance((int)userData.get("Balance")/100.0);
-    double overDraftBalance = (int)userData.get("OverdraftBalance");
-    user.setOverDraftBalance(overDraftBalance/100);
-    user.setLogs(logs);
-    user.setTransactionHist(transactionHistoryOutput);
+  /**
+   * Helper method that decides whether a form submission may act on the customer's account.
+   * A live login session for the same customer is enough, as long as the form sends back the
+   * session's CSRF token, which only the forms served to that session carry. Otherwise the
+   * password attempt is checked the same way as on the login page.
+   * 
+   * @param user
+   * @param sessionToken value of the session cookie, null if there is none
+   * @return true if the submission is authorized
+   */
+  private boolean isAuthorized(User user, String sessionToken) {
+    String sessionCustomerID = sessionStore.customerFor(sessionToken);
+    if (sessionCustomerID != null && sessionCustomerID.equals(user.getUsername())
+        && sessionStore.isValidCsrfToken(sessionToken, user.getCsrfToken())) {
+      return true;
+    }
+    return credentialCache.verify(user.getUsername(), user.getPassword());
   }
 
   /**
    * HTML POST request handler that uses user input from Login Form page to determine 
    * login success or failure.
    * 
-   * Queries 'passwords' table in MySQL DB for the correct password associated with the
-   * username ID given by the user. Compares the user's password attempt with the correct
-   * password.
+   * Compares the user's password attempt with the correct password associated with the
+   * username ID given by the user. The correct password comes from the 'passwords' table
+   * in MySQL DB, unless it was recently cached by {@link CredentialCache}.
    * 
-   * If the password attempt is correct, the "account_info" page is served to the customer
-   * with all account details retrieved from the MySQL DB.
+   * If the password attempt is correct, a login session is started and its token is set
+   * as a cookie (see {@link SessionStore#sessionCookie}), and the "account_info" page is served to the customer with all account
+   * details retrieved from the MySQL DB.
    * 
    * If the password attempt is incorrect, the user is redirected to the "welcome" page.
    * 
    * @param user
+   * @param response
    * @return "account_info" page if login successful. Otherwise, redirect to "welcome" page.
    */
   @PostMapping("/login")
-	public String submitLoginForm(@ModelAttribute("user") User user) {
-    // Print user's existing fields for debugging
-		System.out.println(user);
-
+	public String submitLoginForm(@ModelAttribute("user") User user, HttpServletResponse response) {
     String userID = user.getUsername();
     String userPasswordAttempt = user.getPassword();
+    LOGGER.debug("Login attempt customer={}", userID);
 
-    // Retrieve correct password for this customer.
-    String getUserPasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", userID);
-    String userPassword = jdbcTemplate.queryForObject(getUserPasswordSql, String.class);
+    // Check the attempt against this customer's password.
+    if (credentialCache.verify(userID, userPasswordAttempt)) {
+      String sessionToken = sessionStore.create(userID);
+      response.addHeader(HttpHeaders.SET_COOKIE, SessionStore.sessionCookie(sessionToken).toString());
 
-    if (userPasswordAttempt.equals(userPassword)) {
       updateAccountInfo(user);
 
       return "account_info";
@@ -135,14 +154,17 @@ public class MvcController {
   /**
    * HTML GET request handler that serves the "deposit_form" page to the user.
    * An empty `User` object is also added to the Model as an Attribute to store
-   * the user's deposit form input.
+   * the user's deposit form input, carrying the CSRF token of the user's login session.
    * 
    * @param model
+   * @param sessionToken
    * @return "deposit_form" page
    */
   @GetMapping("/deposit")
-	public String showDepositForm(Model model) {
+	public String showDepositForm(Model model,
+                           @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
     User user = new User();
+    user.setCsrfToken(sessionStore.csrfTokenFor(sessionToken));
 		model.addAttribute("user", user);
 		return "deposit_form";
 	}
@@ -150,7 +172,8 @@ public class MvcController {
   /**
    * HTML POST request handler for the Deposit Form page.
    * 
-   * The same username+password handling from the login page is used.
+   * The same username+password handling from the login page is used, unless the
+   * customer already has a login session.
    * 
    * If the password attempt is correct, the balance is incremented by the amount specified
    * in the Deposit Form. The user is then served the "account_info" with an updated balance.
@@ -158,75 +181,26 @@ public class MvcController {
    * If the password attempt is incorrect, the user is redirected to the "welcome" page.
    * 
    * @param user
+   * @param sessionToken
    * @return "account_info" page if login successful. Otherwise, redirect to "welcome" page.
    */
   @PostMapping("/deposit")
-  public String submitDeposit(@ModelAttribute("user") User user) {
+  public String submitDeposit(@ModelAttribute("user") User user,
+                              @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
     String userID = user.getUsername();
-    String userPasswordAttempt = user.getPassword();
-
-    String getUserPasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", userID);
-    String userPassword = jdbcTemplate.queryForObject(getUserPasswordSql, String.class);
 
     // unsuccessful login
-    if (userPasswordAttempt.equals(userPassword) == false) {
+    if (isAuthorized(user, sessionToken) == false) {
       return "welcome";
     }
 
-    double userDepositAmt = user.getAmountToDeposit();
-    int userDepositAmtInPennies = (int) (userDepositAmt * 100);
+    Money userDepositAmt = user.getAmountToDeposit();
 
-    String numberOfReversalsSql = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", userID);
-    int numOfReversals = jdbcTemplate.queryForObject(numberOfReversalsSql, Integer.class);
-    //If too many reversals dont do deposit
-    if (userDepositAmt < 0 || numOfReversals >= MAX_DISPUTES){
+    // negative amount, frozen account, etc.
+    if (ledgerService.deposit(userID, userDepositAmt) != LedgerOutcome.APPLIED) {
       return "welcome";
     }
-    
-    String currentTime = SQL_DATETIME_FORMATTER.format(new java.util.Date());
-
-    //Adds deposit to transaction historu
-    String transactionHistorySql = String.format("INSERT INTO TransactionHistory VALUES ('%s', '%s', %s, %d);",
-                                                  userID,
-                                                  currentTime,
-                                                  "'Deposit'",
-                                                  userDepositAmtInPennies);
-    jdbcTemplate.update(transactionHistorySql);
-
-    String getUserOverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", userID);
-    int userOverdraftBalanceInPennies = jdbcTemplate.queryForObject(getUserOverdraftBalanceSql, Integer.class);
-
-    // if the overdraft balance is positive, subtract the deposit with interest
-    if (userOverdraftBalanceInPennies > 0) {
-      int newOverdraftBalanceInPennies = Math.max(userOverdraftBalanceInPennies - userDepositAmtInPennies, 0);
-      String overdraftLogsInsertSql = String.format("INSERT INTO OverdraftLogs VALUES ('%s', '%s', %d, %d, %d);", 
-                                                    userID,
-                                                    currentTime,
-                                                    userDepositAmtInPennies,
-                                                    userOverdraftBalanceInPennies,
-                                                    newOverdraftBalanceInPennies);
-      jdbcTemplate.update(overdraftLogsInsertSql);
-
-      // updating customers table
-      String overdraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = %d WHERE CustomerID='%s';", newOverdraftBalanceInPennies, userID);
-      jdbcTemplate.update(overdraftBalanceUpdateSql);
-      updateAccountInfo(user);
-    }
-
-    // if in the overdraft case and there is excess deposit, deposit the excess amount.
-    // otherwise, this is a non-overdraft case, so just use the userDepositAmt.
-    int balanceIncreaseAmtInPennies = 0;
-    if (userOverdraftBalanceInPennies > 0 && userDepositAmtInPennies > userOverdraftBalanceInPennies) {
-      balanceIncreaseAmtInPennies = userDepositAmtInPennies - userOverdraftBalanceInPennies;
-    } else if (userOverdraftBalanceInPennies > 0 && userDepositAmtInPennies <= userOverdraftBalanceInPennies) {
-      balanceIncreaseAmtInPennies = 0; // overdraft case, but no excess deposit. don't increase balance column.
-    } else {
-      balanceIncreaseAmtInPennies = userDepositAmtInPennies;
-    }
 
-    String balanceIncreaseSql = String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';", balanceIncreaseAmtInPennies, userID);
-    System.out.println(balanceIncreaseSql); // Print executed SQL update for debugging
-    jdbcTemplate.update(balanceIncreaseSql);
     updateAccountInfo(user);
     return "account_info";
   }
@@ -234,14 +208,17 @@ public class MvcController {
   /**
    * HTML GET request handler that serves the "withdraw_form" page to the user.
    * An empty `User` object is also added to the Model as an Attribute to store
-   * the user's withdraw form input.
+   * the user's withdraw form input, carrying the CSRF token of the user's login session.
    * 
    * @param model
+   * @param sessionToken
    * @return "withdraw_form" page
    */
   @GetMapping("/withdraw")
-	public String showWithdrawForm(Model model) {
+	public String showWithdrawForm(Model model,
+                           @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
     User user = new User();
+    user.setCsrfToken(sessionStore.csrfTokenFor(sessionToken));
 		model.addAttribute("user", user);
 		return "withdraw_form";
 	}
@@ -249,7 +226,8 @@ public class MvcController {
   /**
    * HTML POST request handler for the Withdraw Form page.
    * 
-   * The same username+password handling from the login page is used.
+   * The same username+password handling from the login page is used, unless the
+   * customer already has a login session.
    * 
    * If the password attempt is correct, the balance is decremented by the amount specified
    * in the Withdraw Form. The user is then served the "account_info" with an updated balance.
@@ -257,109 +235,44 @@ public class MvcController {
    * If the password attempt is incorrect, the user is redirected to the "welcome" page.
    * 
    * @param user
+   * @param sessionToken
    * @return "account_info" page if login successful. Otherwise, redirect to "welcome" page.
    */
   @PostMapping("/withdraw")
-  public String submitWithdraw(@ModelAttribute("user") User user) {
+  public String submitWithdraw(@ModelAttribute("user") User user,
+                               @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
     String userID = user.getUsername();
-    String userPasswordAttempt = user.getPassword();
-    
-    String getUserPasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", userID);
-    String userPassword = jdbcTemplate.queryForObject(getUserPasswordSql, String.class);
 
     // unsuccessful login
-    if (userPasswordAttempt.equals(userPassword) == false) {
+    if (isAuthorized(user, sessionToken) == false) {
       return "welcome";
     }
 
-    double userWithdrawAmt = user.getAmountToWithdraw();
-    int userWithdrawAmtInPennies = (int) (userWithdrawAmt * 100);
+    Money userWithdrawAmt = user.getAmountToWithdraw();
 
-    String numberOfReversalsSql = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", userID);
-    int numOfReversals = jdbcTemplate.queryForObject(numberOfReversalsSql, Integer.class);
-    //If too many reversals dont do withdraw
-    if (userWithdrawAmt < 0 || numOfReversals >= MAX_DISPUTES){
+    // negative amount, frozen account, overdraft limit exceeded, etc.
+    if (ledgerService.withdraw(userID, userWithdrawAmt) != LedgerOutcome.APPLIED) {
       return "welcome";
     }
 
-    String getUserBalanceSql =  String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", userID);
-    int userBalanceInPennies = jdbcTemplate.queryForObject(getUserBalanceSql, Integer.class);
-    
-    // if the balance is not positive, withdraw with interest fee
-    if (userBalanceInPennies - userWithdrawAmtInPennies < 0) {
-      // subtracts the remaining balance from withdrawal amount 
-      int newOverdraftAmtInPennies = userWithdrawAmtInPennies - userBalanceInPennies;
-
-      if (newOverdraftAmtInPennies > MAX_OVERDRAFT_IN_PENNIES) {
-        return "welcome";
-      }
-
-      // factor in the existing overdraft balance before executing another overdraft
-      String getUserOverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", userID);
-      int userOverdraftBalanceInPennies = jdbcTemplate.queryForObject(getUserOverdraftBalanceSql, Integer.class);
-      if (newOverdraftAmtInPennies + userOverdraftBalanceInPennies > MAX_OVERDRAFT_IN_PENNIES) {
-        return "welcome";
-      }
-
-      String currentTime = SQL_DATETIME_FORMATTER.format(new java.util.Date());
-
-      //Adds withdraw to transaction history
-      String transactionHistorySql = String.format("INSERT INTO TransactionHistory VALUES ('%s', '%s', %s, %d);",
-                                                    userID,
-                                                    currentTime,
-                                                    "'Withdraw'",
-                                                    userWithdrawAmtInPennies);
-      jdbcTemplate.update(transactionHistorySql);
-
-      // this is a valid overdraft, so we can set Balance column to 0
-      String updateBalanceSql = String.format("UPDATE Customers SET Balance = %d WHERE CustomerID='%s';", 0, userID);
-      jdbcTemplate.update(updateBalanceSql);
-
-      int newOverdraftAmtAfterInterestInPennies = (int)(newOverdraftAmtInPennies * INTEREST_RATE);
-      int cumulativeOverdraftInPennies = userOverdraftBalanceInPennies + newOverdraftAmtAfterInterestInPennies;
-
-      String overDraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = %d WHERE CustomerID='%s';", cumulativeOverdraftInPennies, userID);
-      jdbcTemplate.update(overDraftBalanceUpdateSql);
-      System.out.println(overDraftBalanceUpdateSql);
-
-      updateAccountInfo(user);
-      return "account_info";
-
-    }
-
-    // non-overdraft case
-    String balanceDecreaseSql = String.format("UPDATE Customers SET Balance = Balance - %d WHERE CustomerID='%s';", userWithdrawAmtInPennies, userID);
-    System.out.println(balanceDecreaseSql);
-    jdbcTemplate.update(balanceDecreaseSql);
-    
-
-    String currentTime = SQL_DATETIME_FORMATTER.format(new java.util.Date());
-
-    //Adds withdraw to transaction history
-    String transactionHistorySql = String.format("INSERT INTO TransactionHistory VALUES ('%s', '%s', %s, %d);",
-                                                    userID,
-                                                    currentTime,
-                                                    "'Withdraw'",
-                                                    userWithdrawAmtInPennies);
-    jdbcTemplate.update(transactionHistorySql);
-
     updateAccountInfo(user);
-
     return "account_info";
-
   }
 
   /**
    * HTML GET request handler that serves the "dispute_form" page to the user.
    * An empty `User` object is also added to the Model as an Attribute to store
-   * the user's dispute form input.
+   * the user's dispute form input, carrying the CSRF token of the user's login session.
    * 
    * @param model
+   * @param sessionToken
    * @return "dispute_form" page
    */
   @GetMapping("/dispute")
-	public String showDisputeForm(Model model) {
+	public String showDisputeForm(Model model,
+                           @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
     User user = new User();
+    user.setCsrfToken(sessionStore.csrfTokenFor(sessionToken));
 		model.addAttribute("user", user);
 		return "dispute_form";
 	}
@@ -367,7 +280,8 @@ public class MvcController {
   /**
    * HTML POST request handler for the Dispute Form page.
    * 
-   * The same username+password handling from the login page is used.
+   * The same username+password handling from the login page is used, unless the
+   * customer already has a login session.
    * 
    * If the password attempt is correct, the transaction is reversed and the proper
    * balances are updated
@@ -375,151 +289,44 @@ public class MvcController {
    * If the password attempt is incorrect, the user is redirected to the "welcome" page.
    * 
    * @param user
+   * @param sessionToken
    * @return "account_info" page if login successful. Otherwise, redirect to "welcome" page.
    */
 
   @PostMapping("/dispute")
-  public String submitDispute(@ModelAttribute("user") User user) {
-    // Ensure that requested transaction to reverse is within acceptable range
-    if (user.getNumTransactionsAgo() <= 0 || user.getNumTransactionsAgo() > MAX_REVERSABLE_TRANSACTIONS_AGO) {
-      return "welcome";
-    }
-
+  public String submitDispute(@ModelAttribute("user") User user,
+                              @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
     String userID = user.getUsername();
-    String userPasswordAttempt = user.getPassword();
-    
-    String getUserPasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", userID);
-    String userPassword = jdbcTemplate.queryForObject(getUserPasswordSql, String.class);
 
     // unsuccessful login
-    if (userPasswordAttempt.equals(userPassword) == false) {
+    if (isAuthorized(user, sessionToken) == false) {
       return "welcome";
     }
 
-    // check if customer account is frozen
-    String numberOfReversalsSql = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", userID);
-    int numOfReversals = jdbcTemplate.queryForObject(numberOfReversalsSql, Integer.class);
-    if (numOfReversals >= MAX_DISPUTES) {
-      return "welcome";
-    }
-    
-    // Fetch 3 most recent transactions for this customer
-    String getTransactionHistorySql = String.format("Select * from TransactionHistory WHERE CustomerId='%s' ORDER BY Timestamp DESC LIMIT %d;", user.getUsername(), MAX_NUM_TRANSACTIONS_DISPLAYED);
-    List<Map<String,Object>> transactionLogs = jdbcTemplate.queryForList(getTransactionHistorySql);
-    
-
-    // Ensure customer has enough transactions to complete the reversal
-    if (user.getNumTransactionsAgo() > transactionLogs.size()) {
+    // transaction out of range, frozen account, overdraft limit exceeded, etc.
+    if (ledgerService.reverseTransaction(userID, user.getNumTransactionsAgo()) != LedgerOutcome.APPLIED) {
       return "welcome";
     }
 
-    // Retrieve correct log based on what transaction user wants to reverse
-    Map<String, Object> logToReverse = transactionLogs.get(user.getNumTransactionsAgo() - 1);
-
-    // Get balance and overdraft balance
-    String getUserBalanceSql =  String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", userID);
-    int userBalanceInPennies = jdbcTemplate.queryForObject(getUserBalanceSql, Integer.class);
-    String getUserOverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", userID);
-    int userOverdraftBalanceInPennies = jdbcTemplate.queryForObject(getUserOverdraftBalanceSql, Integer.class);
-
-    int reversalAmount = (int) logToReverse.get("Amount");
-
-    // If transaction to reverse is a deposit, then withdraw the money out
-    if (((String) logToReverse.get("Action")).toLowerCase().equals("deposit")) {
-      // if withdraw would exceed max overdraft possible, return welcome
-      if (userOverdraftBalanceInPennies + (reversalAmount - userBalanceInPennies) > MAX_OVERDRAFT_IN_PENNIES) {
-        return "welcome";
-      }
-
-      // if balance is large enough to have reversalAmount taken from it, subtract reversalAmount from balance
-      if (userBalanceInPennies - reversalAmount > 0){
-        String balanceDecreaseSql = String.format("UPDATE Customers SET Balance = Balance - %d WHERE CustomerID='%s';", reversalAmount, userID);
-        jdbcTemplate.update(balanceDecreaseSql);
-      } else { // Case when reversing deposit causes overdraft or go deeper into overdraft
-        // Set main balance to 0 since we are either going into overdraft or already in overdraft
-        String balanceZeroSql = String.format("UPDATE Customers SET Balance = 0 WHERE CustomerID='%s';", userID);
-        jdbcTemplate.update(balanceZeroSql);
-
-        int difference = reversalAmount - userBalanceInPennies;
-
-        //check if deposit helped pay off overdraft balance
-        String getOverDraftLogsSql = String.format("SELECT * FROM OverdraftLogs WHERE CustomerID='%s' AND Timestamp='%s';", userID, logToReverse.get("Timestamp"));
-        List<Map<String,Object>> queryLogs = jdbcTemplate.queryForList(getOverDraftLogsSql);
-        if (queryLogs.size() == 0) { // if deposit did not help pay of overdraft balance, then apply interest rate
-          String overdraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = OverdraftBalance + %d WHERE CustomerID='%s';", ((int) (difference * INTEREST_RATE)), userID);
-          jdbcTemplate.update(overdraftBalanceUpdateSql);
-        } else { // otherwise don't apply interest and remove from overdraft logs
-          String overdraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = OverdraftBalance + %d WHERE CustomerID='%s';", difference, userID);
-          jdbcTemplate.update(overdraftBalanceUpdateSql);
-          String removeFromOverdraftLogsSql = String.format("DELETE from OverdraftLogs where Timestamp='%s';", logToReverse.get("Timestamp"));
-          jdbcTemplate.update(removeFromOverdraftLogsSql);
-        }
-      }
-      
-      String currentTime = SQL_DATETIME_FORMATTER.format(new java.util.Date());
-
-      // add transaction to transaction history
-      String transactionHistorySql = String.format("INSERT INTO TransactionHistory VALUES ('%s', '%s', %s, %d);",
-                                                  userID,
-                                                  currentTime,
-                                                  "'Withdraw'",
-                                                  reversalAmount);
-      jdbcTemplate.update(transactionHistorySql);
-    } else { // Case when reversing a withdraw, deposit the money instead
-      // Adds to number of reversals
-      numOfReversals++;
-      String numOfReversalsUpdateSql = String.format("UPDATE Customers SET NumFraudReversals = %d WHERE CustomerID='%s';", numOfReversals, userID);
-      jdbcTemplate.update(numOfReversalsUpdateSql);
-      if (userOverdraftBalanceInPennies == 0) {
-        String balanceIncreaseSql = String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';", reversalAmount, userID);
-        jdbcTemplate.update(balanceIncreaseSql);
-        
-        String currentTime = SQL_DATETIME_FORMATTER.format(new java.util.Date());
-
-        //adds transaction to transaction hisotry
-        String transactionHistorySql = String.format("INSERT INTO TransactionHistory VALUES ('%s', '%s', %s, %d);",
-                                                  userID,
-                                                  currentTime,
-                                                  "'Deposit'",
-                                                  reversalAmount);
-        jdbcTemplate.update(transactionHistorySql);
-      } else { // case when user is in overdraft
-        // if amount is greater than overdraft balance, add difference to balance
-        int difference = userOverdraftBalanceInPennies - reversalAmount;
-        if (difference < 0) {
-          String balanceDecreaseSql = String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';", (difference * -1), userID);
-          System.out.println(balanceDecreaseSql);
-          jdbcTemplate.update(balanceDecreaseSql);
-        }
-        
-        //sets new overdraft balance
-        int newOverdraftBalanceInPennies = Math.max(difference, 0);
-        String overdraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = %d WHERE CustomerID='%s';", newOverdraftBalanceInPennies, userID);
-        jdbcTemplate.update(overdraftBalanceUpdateSql);
-        
-        String currentTime = SQL_DATETIME_FORMATTER.format(new java.util.Date());
-
-        //adds change into overdraft logs
-        String overdraftLogsInsertSql = String.format("INSERT INTO OverdraftLogs VALUES ('%s', '%s', %d, %d, %d);", 
-                                                    userID,
-                                                    currentTime,
-                                                    reversalAmount,
-                                                    userOverdraftBalanceInPennies,
-                                                    newOverdraftBalanceInPennies);
-        jdbcTemplate.update(overdraftLogsInsertSql);
-
-        //adds transaction to transaction logs
-        String transactionHistorySql = String.format("INSERT INTO TransactionHistory VALUES ('%s', '%s', %s, %d);",
-                                                    userID,
-                                                    currentTime,
-                                                    "'Deposit'",
-                                                    reversalAmount);
-        jdbcTemplate.update(transactionHistorySql);
-      }
-    }
     updateAccountInfo(user);
-
     return "account_info";
   }
 
+  /**
+   * HTML POST request handler that ends the user's login session and removes its cookie.
+   * 
+   * @param sessionToken
+   * @param response
+   * @return "welcome" page
+   */
+  @PostMapping("/logout")
+  public String submitLogout(@CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                             HttpServletResponse response) {
+    if (sessionToken != null) {
+      sessionStore.invalidate(sessionToken);
+    }
+    response.addHeader(HttpHeaders.SET_COOKIE, SessionStore.expiredSessionCookie().toString());
+    return "welcome";
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package net.codejava;
+
+import java.time.LocalDateTime;
+
+import lombok.Value;
+
+/**
+ * A single row of the OverdraftLogs table: a deposit that paid off some or all of
+ * a customer's overdraft balance. Decoded straight from the ResultSet by
+ * {@link OverdraftLogRepository} and {@link AccountSnapshotRepository}.
+ */
+@Value
+public class OverdraftLogEntry {
+  private long overdraftLogID;
+  private String customerID;
+  private LocalDateTime timestamp;
+  private Money depositAmt;
+  private Money oldOverdraftBalance;
+  private Money newOverdraftBalance;
+
+  /**
+   * Logged the same way as a `SELECT *` row, with amounts in cents.
+   */
+  @Override
+  public String toString() {
+    return "{CustomerID=" + customerID + ", Timestamp=" + timestamp + ", DepositAmt=" + depositAmt.getCents()
+        + ", OldOverBalance=" + oldOverdraftBalance.getCents() + ", NewOverBalance=" + newOverdraftBalance.getCents() + "}";
+  }
+}
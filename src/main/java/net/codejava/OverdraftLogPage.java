@@ -0,0 +1,15 @@
+package net.codejava;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * One page of a customer's overdraft logs, newest first, as returned by `/overdraft-logs`.
+ */
+@Value
+public class OverdraftLogPage {
+  private List<OverdraftLogEntry> overdraftLogs;
+  /** Cursor for the next (older) page, or null if this is the last page. */
+  private String nextCursor;
+}
@@ -0,0 +1,121 @@
+package net.codejava;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads and writes rows in the OverdraftLogs table, which records every deposit
+ * that paid off part of a customer's overdraft balance.
+ *
+ * The table grows for as long as the customer keeps paying off overdrafts, so it is only ever
+ * read one bounded page at a time, newest first by (Timestamp, OverdraftLogID), the same way as
+ * {@link TransactionHistoryRepository} pages through transactions.
+ */
+@Repository
+public class OverdraftLogRepository {
+  private final static String INSERT_OVERDRAFT_LOG_SQL = "INSERT INTO OverdraftLogs (CustomerID, TransactionID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance) VALUES (?, ?, ?, ?, ?, ?)";
+  final static String OVERDRAFT_LOGS_OF_TRANSACTION_SQL = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE TransactionID=? AND CustomerID=?";
+  final static String RECENT_OVERDRAFT_LOGS_SQL = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE CustomerID=? ORDER BY Timestamp DESC, OverdraftLogID DESC LIMIT ?";
+  // `Timestamp <= ?` is the index range that skips straight to the cursor, and the OR breaks ties within its second
+  final static String OVERDRAFT_LOGS_AFTER_CURSOR_SQL = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE CustomerID=? AND Timestamp <= ? AND (Timestamp < ? OR OverdraftLogID < ?) ORDER BY Timestamp DESC, OverdraftLogID DESC LIMIT ?";
+  private final static String DELETE_OVERDRAFT_LOGS_OF_TRANSACTION_SQL = "DELETE FROM OverdraftLogs WHERE TransactionID=? AND CustomerID=?";
+
+  private JdbcTemplate jdbcTemplate;
+  private JdbcTemplate reportingJdbcTemplate;
+
+  /**
+   * @param jdbcTemplate
+   * @param reportingJdbcTemplate runs {@link #findPage}, see {@link DataSourceConfiguration}
+   */
+  @Autowired
+  public OverdraftLogRepository(JdbcTemplate jdbcTemplate, @Qualifier("reportingJdbcTemplate") JdbcTemplate reportingJdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.reportingJdbcTemplate = reportingJdbcTemplate;
+  }
+
+  public OverdraftLogRepository(JdbcTemplate jdbcTemplate) {
+    this(jdbcTemplate, jdbcTemplate);
+  }
+
+  /**
+   * Records a deposit that paid off part of the customer's overdraft balance.
+   *
+   * @param customerID
+   * @param transactionID of the deposit's TransactionHistory row
+   * @param timestamp
+   * @param depositAmt
+   * @param oldOverdraftBalance
+   * @param newOverdraftBalance
+   */
+  public void insert(String customerID, long transactionID, LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) {
+    jdbcTemplate.update(INSERT_OVERDRAFT_LOG_SQL, customerID, transactionID, timestamp, depositAmt.getCents(), oldOverdraftBalance.getCents(), newOverdraftBalance.getCents());
+  }
+
+  /**
+   * Inserts many overdraft logs as one JDBC batch.
+   *
+   * @param rows CustomerID, TransactionID, Timestamp, DepositAmt, OldOverBalance and NewOverBalance in cents of each log
+   */
+  public void insertAll(List<Object[]> rows) {
+    jdbcTemplate.batchUpdate(INSERT_OVERDRAFT_LOG_SQL, rows);
+  }
+
+  /**
+   * Fetches the customer's overdraft logs that were written by one deposit. Looked up by the
+   * deposit's TransactionID rather than its timestamp, which other deposits of the same customer
+   * in the same batch share.
+   *
+   * @param customerID
+   * @param transactionID of the deposit's TransactionHistory row
+   * @return matching overdraft logs
+   */
+  public List<OverdraftLogEntry> findByTransaction(String customerID, long transactionID) {
+    return jdbcTemplate.query(OVERDRAFT_LOGS_OF_TRANSACTION_SQL, overdraftLogEntryRowMapper(customerID), transactionID, customerID);
+  }
+
+  /**
+   * Fetches one page of the customer's overdraft logs, newest first.
+   *
+   * @param customerID
+   * @param after where the previous page ended, or null for the first page
+   * @param pageSize
+   * @return at most pageSize rows, and a cursor for the next page if there are more
+   */
+  public OverdraftLogPage findPage(String customerID, HistoryCursor after, int pageSize) {
+    // one extra row tells whether there is a next page
+    List<OverdraftLogEntry> overdraftLogs;
+    if (after == null) {
+      overdraftLogs = ReplicaRoutingDataSource.readFor(customerID, () -> reportingJdbcTemplate.query(RECENT_OVERDRAFT_LOGS_SQL, overdraftLogEntryRowMapper(customerID),
+                                                                                                     customerID, pageSize + 1));
+    } else {
+      overdraftLogs = ReplicaRoutingDataSource.readFor(customerID, () -> reportingJdbcTemplate.query(OVERDRAFT_LOGS_AFTER_CURSOR_SQL, overdraftLogEntryRowMapper(customerID),
+                                                                                                     customerID, after.getTimestamp(), after.getTimestamp(),
+                                                                                                     after.getLogID(), pageSize + 1));
+    }
+
+    if (overdraftLogs.size() <= pageSize) {
+      return new OverdraftLogPage(overdraftLogs, null);
+    }
+    overdraftLogs = overdraftLogs.subList(0, pageSize);
+    return new OverdraftLogPage(overdraftLogs, HistoryCursor.after(overdraftLogs.get(pageSize - 1)).encode());
+  }
+
+  public void deleteByTransaction(String customerID, long transactionID) {
+    jdbcTemplate.update(DELETE_OVERDRAFT_LOGS_OF_TRANSACTION_SQL, transactionID, customerID);
+  }
+
+  private static RowMapper<OverdraftLogEntry> overdraftLogEntryRowMapper(String customerID) {
+    return (rs, rowNum) -> new OverdraftLogEntry(rs.getLong(1),
+                                                 customerID,
+                                                 rs.getObject(2, LocalDateTime.class),
+                                                 Money.ofCents(rs.getLong(3)),
+                                                 Money.ofCents(rs.getLong(4)),
+                                                 Money.ofCents(rs.getLong(5)));
+  }
+}
@@ -0,0 +1,86 @@
+package net.codejava;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource that sends reads of one customer's data to a read replica, as chosen by the
+ * {@link ReplicationTracker}, and everything else to the primary.
+ *
+ * Only code running inside {@link #readFor} counts as a read of a customer's data. Connections
+ * taken anywhere else, or while a transaction is active, come from the primary. A transaction
+ * is bound to the primary DataSource and not to this one, so a read through this DataSource never
+ * joins it: run reads that must see a transaction's own writes on the primary's JdbcTemplate.
+ *
+ *   replica.reads  - connections taken inside readFor, tagged with the `target` they came from
+ *                    (replica or primary)
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+  private final static String PRIMARY = "primary";
+  private final static ThreadLocal<String> READING_CUSTOMER = new ThreadLocal<>();
+
+  private final ReplicationTracker replicationTracker;
+  private final Counter replicaReads;
+  private final Counter primaryReads;
+
+  public ReplicaRoutingDataSource(DataSource primary, ReplicationTracker replicationTracker, MeterRegistry meterRegistry) {
+    this.replicationTracker = replicationTracker;
+    this.replicaReads = meterRegistry.counter("replica.reads", "target", "replica");
+    this.primaryReads = meterRegistry.counter("replica.reads", "target", "primary");
+
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(PRIMARY, primary);
+    for (int i = 0; i < replicationTracker.getReplicas().size(); i++) {
+      targets.put(i, replicationTracker.getReplicas().get(i));
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+    afterPropertiesSet();
+  }
+
+  /**
+   * Runs a read of the customer's data, letting the queries it sends through a ReplicaRoutingDataSource
+   * go to a replica that has the customer's latest write.
+   *
+   * @param customerID
+   * @param read
+   * @return the result of read
+   */
+  public static <T> T readFor(String customerID, Supplier<T> read) {
+    String outerCustomerID = READING_CUSTOMER.get();
+    READING_CUSTOMER.set(customerID);
+    try {
+      return read.get();
+    } finally {
+      if (outerCustomerID == null) {
+        READING_CUSTOMER.remove();
+      } else {
+        READING_CUSTOMER.set(outerCustomerID);
+      }
+    }
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    String customerID = READING_CUSTOMER.get();
+    if (customerID == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+      return PRIMARY;
+    }
+    int replica = replicationTracker.chooseReplica(customerID);
+    if (replica == ReplicationTracker.PRIMARY) {
+      primaryReads.increment();
+      return PRIMARY;
+    }
+    replicaReads.increment();
+    return replica;
+  }
+}
@@ -0,0 +1,226 @@
+package net.codejava;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.sql.DataSource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Knows how far each read replica has caught up with the primary, and which customers wrote
+ * recently enough that a replica may not have their write yet. {@link ReplicaRoutingDataSource}
+ * asks it where each customer read should go.
+ *
+ * Every `testudo.replica.heartbeat-millis` the current time is written to the primary's
+ * ReplicationHeartbeat row, and each replica's copy of that row is read back. Replication applies
+ * writes in commit order, so a replica whose copy says T has every write that committed on the
+ * primary before T. A replica that is more than `testudo.replica.max-lag-millis` behind, or that
+ * can't be read, gets no reads at all until it catches up.
+ *
+ * For read-your-writes, the time after each committed write is kept per customer for max-lag-millis.
+ * A read of that customer only goes to a replica that has caught up to it, and otherwise waits up to
+ * `testudo.replica.read-your-writes-wait-millis` for one to catch up before it goes to the primary.
+ * A customer's reads go to the same replica whenever it is eligible, so that a page's queries don't
+ * mix replicas that are at different points.
+ *
+ * Heartbeats use the app's clock, so every app instance writing them should run on NTP-synced hosts.
+ *
+ *   replica.lag  - gauge of how far each replica is behind, in seconds, tagged with `replica`
+ */
+public class ReplicationTracker implements AutoCloseable {
+  final static String WRITE_HEARTBEAT_SQL = "UPDATE ReplicationHeartbeat SET Timestamp=? WHERE ID=1";
+  final static String READ_HEARTBEAT_SQL = "SELECT Timestamp FROM ReplicationHeartbeat WHERE ID=1";
+  /**
+   * Returned by {@link #chooseReplica} when the read must go to the primary.
+   */
+  final static int PRIMARY = -1;
+  private final static long WAIT_STEP_MILLIS = 10;
+  private final static Logger LOGGER = LoggerFactory.getLogger(ReplicationTracker.class);
+
+  private final JdbcTemplate primaryJdbcTemplate;
+  private final List<DataSource> replicas;
+  private final List<JdbcTemplate> replicaJdbcTemplates = new ArrayList<>();
+  private final Clock clock;
+  private final Duration maxLag;
+  private final long readYourWritesWaitMillis;
+  /**
+   * Heartbeat time that each replica has applied, or null while it can't be read.
+   */
+  private final AtomicReferenceArray<LocalDateTime> replicatedUntil;
+  /**
+   * Time after each customer's most recent write.
+   */
+  private final Cache<String, LocalDateTime> lastWrites;
+  private ScheduledExecutorService heartbeat;
+
+  /**
+   * @param primaryJdbcTemplate writes the heartbeats
+   * @param replicas read replicas of the primary, possibly none
+   * @param clock
+   * @param maxLagMillis
+   * @param readYourWritesWaitMillis
+   * @param heartbeatMillis period of heartbeats, or 0 to only send them on {@link #heartbeat()}
+   * @param meterRegistry
+   */
+  public ReplicationTracker(JdbcTemplate primaryJdbcTemplate, List<DataSource> replicas, Clock clock, long maxLagMillis,
+                            long readYourWritesWaitMillis, long heartbeatMillis, MeterRegistry meterRegistry) {
+    this.primaryJdbcTemplate = primaryJdbcTemplate;
+    this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+    this.clock = clock;
+    this.maxLag = Duration.ofMillis(maxLagMillis);
+    this.readYourWritesWaitMillis = readYourWritesWaitMillis;
+    this.replicatedUntil = new AtomicReferenceArray<>(replicas.size());
+    this.lastWrites = Caffeine.newBuilder()
+                              .expireAfterWrite(maxLagMillis, TimeUnit.MILLISECONDS)
+                              .build();
+
+    for (int i = 0; i < replicas.size(); i++) {
+      JdbcTemplate replicaJdbcTemplate = new JdbcTemplate(replicas.get(i));
+      replicaJdbcTemplate.setQueryTimeout(1);
+      replicaJdbcTemplates.add(replicaJdbcTemplate);
+      int replica = i;
+      Gauge.builder("replica.lag", this, tracker -> tracker.lagSeconds(replica))
+           .tag("replica", replicaName(i))
+           .register(meterRegistry);
+    }
+
+    if (!replicas.isEmpty() && heartbeatMillis > 0) {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "replication-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+      heartbeat = executor;
+    }
+  }
+
+  /**
+   * @return the tracker of a DB without replicas, which sends every read to the primary
+   */
+  static ReplicationTracker primaryOnly() {
+    return new ReplicationTracker(null, Collections.emptyList(), Clock.systemDefaultZone(), 0, 0, 0, new SimpleMeterRegistry());
+  }
+
+  static String replicaName(int replica) {
+    return "replica-" + replica;
+  }
+
+  public List<DataSource> getReplicas() {
+    return replicas;
+  }
+
+  /**
+   * Remembers that the customer's account changed, so that their next reads see the change.
+   * Called after every committed write to their account.
+   *
+   * @param customerID
+   */
+  public void recordWrite(String customerID) {
+    if (!replicas.isEmpty()) {
+      lastWrites.put(customerID, LocalDateTime.now(clock));
+    }
+  }
+
+  /**
+   * Picks the replica that a read of the customer's data goes to, waiting for one to catch up with
+   * their last write if needed.
+   *
+   * @param customerID
+   * @return index of the replica in {@link #getReplicas()}, or PRIMARY
+   */
+  public int chooseReplica(String customerID) {
+    if (replicas.isEmpty()) {
+      return PRIMARY;
+    }
+    LocalDateTime lastWrite = lastWrites.getIfPresent(customerID);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readYourWritesWaitMillis);
+    int first = Math.floorMod(customerID.hashCode(), replicas.size());
+    while (true) {
+      LocalDateTime oldestAllowed = LocalDateTime.now(clock).minus(maxLag);
+      LocalDateTime needed = lastWrite != null && lastWrite.isAfter(oldestAllowed) ? lastWrite : oldestAllowed;
+      boolean anyWithinMaxLag = false;
+      for (int i = 0; i < replicas.size(); i++) {
+        int replica = (first + i) % replicas.size();
+        LocalDateTime until = replicatedUntil.get(replica);
+        if (until != null && !until.isBefore(needed)) {
+          return replica;
+        }
+        anyWithinMaxLag |= until != null && !until.isBefore(oldestAllowed);
+      }
+
+      // only worth waiting for a write that is about to replicate, not for replicas that are far behind
+      long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (!anyWithinMaxLag || remainingMillis <= 0) {
+        return PRIMARY;
+      }
+      try {
+        Thread.sleep(Math.min(WAIT_STEP_MILLIS, remainingMillis));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return PRIMARY;
+      }
+    }
+  }
+
+  /**
+   * Writes a heartbeat to the primary and reads back how far each replica has got.
+   */
+  void heartbeat() {
+    try {
+      primaryJdbcTemplate.update(WRITE_HEARTBEAT_SQL, LocalDateTime.now(clock));
+    } catch (DataAccessException e) {
+      LOGGER.warn("Could not write replication heartbeat", e);
+    }
+    for (int i = 0; i < replicas.size(); i++) {
+      try {
+        replicatedUntil.set(i, replicaJdbcTemplates.get(i).queryForObject(READ_HEARTBEAT_SQL, LocalDateTime.class));
+      } catch (DataAccessException e) {
+        if (replicatedUntil.getAndSet(i, null) != null) {
+          LOGGER.warn("Could not read replication heartbeat of {}, sending its reads to other replicas", replicaName(i), e);
+        }
+      }
+    }
+  }
+
+  private double lagSeconds(int replica) {
+    LocalDateTime until = replicatedUntil.get(replica);
+    if (until == null) {
+      return Double.NaN;
+    }
+    return until.until(LocalDateTime.now(clock), ChronoUnit.MILLIS) / 1000.0;
+  }
+
+  @Override
+  public void close() {
+    if (heartbeat != null) {
+      heartbeat.shutdownNow();
+    }
+    for (DataSource replica : replicas) {
+      if (replica instanceof HikariDataSource) {
+        ((HikariDataSource) replica).close();
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package net.codejava;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free queue for many producer threads and a single consumer thread.
+ *
+ * Every slot carries a sequence number that says whose turn it is: a producer may fill slot
+ * `i` once its sequence equals the producer's claimed position, and the consumer may empty it
+ * once the sequence is one past that position. Producers claim positions with a single CAS on
+ * `tail`, so they never wait on each other for longer than that CAS, and {@link #offer} returns
+ * false instead of waiting when the buffer is full.
+ *
+ * @param <E> element type
+ */
+class RingBuffer<E> {
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<E> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  /** Only written by the consumer thread, volatile so that {@link #size()} can be read anywhere. */
+  private volatile long head;
+
+  /**
+   * @param capacity rounded up to the next power of two
+   */
+  RingBuffer(int capacity) {
+    this.capacity = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+    this.mask = this.capacity - 1;
+    this.slots = new AtomicReferenceArray<>(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds an element, from any thread.
+   *
+   * @param element
+   * @return false if the buffer is full
+   */
+  boolean offer(E element) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) position & mask;
+      long turn = sequences.get(index) - position;
+      if (turn == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots.set(index, element);
+          // publishes the element to the consumer
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (turn < 0) {
+        // the consumer has not emptied this slot since the last lap
+        return false;
+      } else {
+        // another producer claimed this position first
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest element. Must only be called from the consumer thread.
+   *
+   * @return the element, or null if the buffer is empty
+   */
+  E poll() {
+    long position = head;
+    int index = (int) position & mask;
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    E element = slots.get(index);
+    slots.set(index, null);
+    // hands the slot back to producers for the next lap
+    sequences.set(index, position + capacity);
+    head = position + 1;
+    return element;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return number of queued elements, approximate while producers are adding
+   */
+  int size() {
+    return (int) Math.max(0, Math.min(tail.get() - head, capacity));
+  }
+}
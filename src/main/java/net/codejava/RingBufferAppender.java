@@ -0,0 +1,232 @@
+package net.codejava;
+
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+/**
+ * Logback appender that hands log events to its child appenders on a background thread.
+ *
+ * Request threads only format the event and put it in a lock-free {@link RingBuffer}, so logging
+ * never makes Tomcat workers queue up on the console's lock. When the buffer is full, the event
+ * is dropped (`DROP`, the default) or the request thread waits for a free slot (`BLOCK`).
+ *
+ * DEBUG and TRACE events, which are per-request lines, are kept with probability
+ * `debugSampleRate`. Before an event is written, anything that looks like a credential
+ * (`password=...`, `token: ...`, etc.) is replaced by `****`.
+ *
+ * Dropped and sampled out events are counted, see {@link LoggingMetrics}. Configured in
+ * logback-spring.xml.
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+  private final static Pattern CREDENTIAL = Pattern.compile("(?i)\\b(password|passwd|pwd|secret|token)(\\s*[=:]\\s*)[^,;\\s\\]}]+");
+  private final static String REDACTED = "$1$2****";
+  private final static long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private final static long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  /**
+   * What a request thread does with an event when the buffer is full.
+   */
+  public enum OverflowPolicy {
+    DROP,
+    BLOCK
+  }
+
+  private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+  private final LongAdder droppedEvents = new LongAdder();
+  private final LongAdder sampledOutEvents = new LongAdder();
+  private int capacity = 8192;
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+  private double debugSampleRate = 1.0;
+
+  private RingBuffer<ILoggingEvent> buffer;
+  private Thread drainer;
+  private volatile boolean draining;
+  private volatile boolean drainerIdle;
+
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * @param debugSampleRate fraction of DEBUG and TRACE events to keep, from 0 to 1
+   */
+  public void setDebugSampleRate(double debugSampleRate) {
+    this.debugSampleRate = debugSampleRate;
+  }
+
+  public long getDroppedEvents() {
+    return droppedEvents.sum();
+  }
+
+  public long getSampledOutEvents() {
+    return sampledOutEvents.sum();
+  }
+
+  public int getQueuedEvents() {
+    return buffer == null ? 0 : buffer.size();
+  }
+
+  @Override
+  public void start() {
+    if (isStarted()) {
+      return;
+    }
+    if (capacity < 1) {
+      addError("Invalid capacity " + capacity + " for " + getName());
+      return;
+    }
+    buffer = new RingBuffer<>(capacity);
+    draining = true;
+    drainer = new Thread(this::drain, "logback-ring-buffer-" + getName());
+    drainer.setDaemon(true);
+    drainer.start();
+    super.start();
+  }
+
+  /**
+   * Stops accepting events, writes every event that is already queued, then stops the child appenders.
+   */
+  @Override
+  public void stop() {
+    if (!isStarted()) {
+      return;
+    }
+    super.stop();
+    draining = false;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    appenders.detachAndStopAllAppenders();
+  }
+
+  @Override
+  protected void append(ILoggingEvent event) {
+    if (!event.getLevel().isGreaterOrEqual(Level.INFO) && !sampled()) {
+      sampledOutEvents.increment();
+      return;
+    }
+    // the message, MDC and thread name must be captured on the logging thread
+    event.prepareForDeferredProcessing();
+
+    while (!buffer.offer(event)) {
+      if (overflowPolicy == OverflowPolicy.DROP || !isStarted()) {
+        droppedEvents.increment();
+        return;
+      }
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+    }
+    if (drainerIdle) {
+      LockSupport.unpark(drainer);
+    }
+  }
+
+  private boolean sampled() {
+    return debugSampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < debugSampleRate;
+  }
+
+  private void drain() {
+    while (true) {
+      ILoggingEvent event = buffer.poll();
+      if (event != null) {
+        appenders.appendLoopOnAppenders(redact(event));
+        continue;
+      }
+      if (!draining) {
+        return;
+      }
+      // re-checks the buffer after announcing the park, so that no producer's unpark is missed
+      drainerIdle = true;
+      if (buffer.size() == 0 && draining) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+      drainerIdle = false;
+    }
+  }
+
+  /**
+   * @return the event itself, or a copy with credentials masked out of its message
+   */
+  static ILoggingEvent redact(ILoggingEvent event) {
+    String message = event.getFormattedMessage();
+    if (message == null) {
+      return event;
+    }
+    Matcher matcher = CREDENTIAL.matcher(message);
+    if (!matcher.find()) {
+      return event;
+    }
+
+    LoggingEvent redacted = new LoggingEvent();
+    redacted.setLoggerName(event.getLoggerName());
+    redacted.setLoggerContextRemoteView(event.getLoggerContextVO());
+    redacted.setLevel(event.getLevel());
+    redacted.setThreadName(event.getThreadName());
+    redacted.setTimeStamp(event.getTimeStamp());
+    redacted.setMarker(event.getMarker());
+    redacted.setMDCPropertyMap(event.getMDCPropertyMap());
+    redacted.setMessage(matcher.replaceAll(REDACTED));
+    if (event.getThrowableProxy() instanceof ThrowableProxy) {
+      redacted.setThrowableProxy((ThrowableProxy) event.getThrowableProxy());
+    }
+    if (event.hasCallerData()) {
+      redacted.setCallerData(event.getCallerData());
+    }
+    return redacted;
+  }
+
+  @Override
+  public void addAppender(Appender<ILoggingEvent> appender) {
+    appenders.addAppender(appender);
+  }
+
+  @Override
+  public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+    return appenders.iteratorForAppenders();
+  }
+
+  @Override
+  public Appender<ILoggingEvent> getAppender(String name) {
+    return appenders.getAppender(name);
+  }
+
+  @Override
+  public boolean isAttached(Appender<ILoggingEvent> appender) {
+    return appenders.isAttached(appender);
+  }
+
+  @Override
+  public void detachAndStopAllAppenders() {
+    appenders.detachAndStopAllAppenders();
+  }
+
+  @Override
+  public boolean detachAppender(Appender<ILoggingEvent> appender) {
+    return appenders.detachAppender(appender);
+  }
+
+  @Override
+  public boolean detachAppender(String name) {
+    return appenders.detachAppender(name);
+  }
+}
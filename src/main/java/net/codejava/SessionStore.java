@@ -0,0 +1,162 @@
+package net.codejava;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory login sessions. A successful login creates a random session token that maps
+ * to the customer's ID, and later requests that present the token are authorized without
+ * checking the customer's password again.
+ *
+ * Each session also has a random CSRF token. The HTML forms carry it in a hidden field, and a
+ * form post only counts as coming from the session if it sends the session's token back, so
+ * that another site can't submit a form with the customer's session cookie.
+ *
+ * The session cookie is HttpOnly, Secure and SameSite=Strict, see {@link #sessionCookie}.
+ *
+ * Sessions are held in a concurrent Caffeine cache that is bounded by
+ * `testudo.session.max-sessions` and drops sessions that have not been used for
+ * `testudo.session.idle-timeout-minutes`.
+ */
+@Component
+public class SessionStore {
+  final static String SESSION_COOKIE = "TESTUDO_SESSION";
+  private final static int TOKEN_LENGTH_IN_BYTES = 32;
+
+  private final SecureRandom secureRandom = new SecureRandom();
+  private Cache<String, Session> sessions;
+
+  @Autowired
+  public SessionStore(@Value("${testudo.session.max-sessions:10000}") long maxSessions,
+                      @Value("${testudo.session.idle-timeout-minutes:30}") long idleTimeoutInMinutes) {
+    this(maxSessions, idleTimeoutInMinutes, TimeUnit.MINUTES, Ticker.systemTicker());
+  }
+
+  SessionStore(long maxSessions, long idleTimeout, TimeUnit idleTimeoutUnit, Ticker ticker) {
+    this.sessions = Caffeine.newBuilder()
+                            .maximumSize(maxSessions)
+                            .expireAfterAccess(idleTimeout, idleTimeoutUnit)
+                            .ticker(ticker)
+                            .build();
+  }
+
+  /**
+   * Starts a new session for a customer who just logged in.
+   *
+   * @param customerID
+   * @return the session token to hand back to the customer
+   */
+  public String create(String customerID) {
+    String token = randomToken();
+    sessions.put(token, new Session(customerID, randomToken()));
+    return token;
+  }
+
+  private String randomToken() {
+    byte[] tokenBytes = new byte[TOKEN_LENGTH_IN_BYTES];
+    secureRandom.nextBytes(tokenBytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+  }
+
+  /**
+   * Looks up the customer a session token belongs to, and keeps the session alive.
+   *
+   * @param token session token, may be null
+   * @return the customer's ID, or null if there is no live session for this token
+   */
+  public String customerFor(String token) {
+    Session session = sessionFor(token);
+    return session == null ? null : session.customerID;
+  }
+
+  /**
+   * @param token session token, may be null
+   * @return the session's CSRF token, to put into the forms it may submit, or null if there is no live session
+   */
+  public String csrfTokenFor(String token) {
+    Session session = sessionFor(token);
+    return session == null ? null : session.csrfToken;
+  }
+
+  /**
+   * Checks a form's CSRF token against its session's, in time that doesn't depend on where they differ.
+   *
+   * @param token session token, may be null
+   * @param csrfToken CSRF token sent with the form, may be null
+   * @return true if the session is live and csrfToken is its CSRF token
+   */
+  public boolean isValidCsrfToken(String token, String csrfToken) {
+    Session session = sessionFor(token);
+    return session != null && csrfToken != null
+           && MessageDigest.isEqual(session.csrfToken.getBytes(StandardCharsets.US_ASCII), csrfToken.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private Session sessionFor(String token) {
+    if (token == null) {
+      return null;
+    }
+    return sessions.getIfPresent(token);
+  }
+
+  public void invalidate(String token) {
+    sessions.invalidate(token);
+  }
+
+  /**
+   * The cookie that hands a session token to the customer's browser. It is only sent over HTTPS,
+   * can't be read by scripts, and is never sent along with requests that come from other sites.
+   *
+   * @param token
+   * @return value of a Set-Cookie header
+   */
+  static ResponseCookie sessionCookie(String token) {
+    return ResponseCookie.from(SESSION_COOKIE, token)
+                         .httpOnly(true)
+                         .secure(true)
+                         .sameSite("Strict")
+                         .path("/")
+                         .build();
+  }
+
+  /**
+   * @return value of a Set-Cookie header that removes the session cookie on logout
+   */
+  static ResponseCookie expiredSessionCookie() {
+    return ResponseCookie.from(SESSION_COOKIE, "")
+                         .httpOnly(true)
+                         .secure(true)
+                         .sameSite("Strict")
+                         .path("/")
+                         .maxAge(0)
+                         .build();
+  }
+
+  /**
+   * Runs pending evictions now instead of on the cache's background executor.
+   */
+  void cleanUp() {
+    sessions.cleanUp();
+  }
+
+  private static class Session {
+    private final String customerID;
+    private final String csrfToken;
+
+    Session(String customerID, String csrfToken) {
+      this.customerID = customerID;
+      this.csrfToken = csrfToken;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package net.codejava;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CookieValue;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Downloads a logged in customer's full statement, see {@link StatementExporter}.
+ *
+ * `GET /statement?format=csv|jsonl&from=2021-01-01&to=2021-12-31` streams every transaction and
+ * overdraft log from the start of `from` to the end of `to`. Both dates are optional, and the
+ * format defaults to CSV. The body is written by a {@link StreamingResponseBody} straight to the
+ * servlet output stream, so the response is never held in memory either.
+ */
+@RestController
+public class StatementController {
+  private final static Logger LOGGER = LoggerFactory.getLogger(StatementController.class);
+  // the range of a MySQL DATETIME
+  private final static LocalDateTime EARLIEST_TIMESTAMP = LocalDateTime.of(1000, 1, 1, 0, 0);
+  private final static LocalDateTime LATEST_TIMESTAMP = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+  private final static MediaType TEXT_CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+  private final static MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+  private final static int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+  private SessionStore sessionStore;
+  private StatementExporter statementExporter;
+
+  public StatementController(@Autowired SessionStore sessionStore,
+                             @Autowired StatementExporter statementExporter) {
+    this.sessionStore = sessionStore;
+    this.statementExporter = statementExporter;
+  }
+
+  /**
+   * @param sessionToken the customer's login session
+   * @param format "csv" or "jsonl"
+   * @param from first day of the statement, or absent to start at the first transaction
+   * @param to last day of the statement, or absent to end at the last transaction
+   * @return the statement, 401 without a login session, or 400 for an unknown format or a range that ends before it starts
+   */
+  @GetMapping("/statement")
+  public ResponseEntity<StreamingResponseBody> getStatement(@CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                                            @RequestParam(value = "format", defaultValue = "csv") String format,
+                                                            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+    String customerID = sessionStore.customerFor(sessionToken);
+    if (customerID == null) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+
+    StatementExporter.Format statementFormat;
+    try {
+      statementFormat = StatementExporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    }
+    if (from != null && to != null && to.isBefore(from)) {
+      return ResponseEntity.badRequest().build();
+    }
+    LocalDateTime fromTimestamp = from == null ? EARLIEST_TIMESTAMP : from.atStartOfDay();
+    LocalDateTime untilTimestamp = to == null ? LATEST_TIMESTAMP : to.plusDays(1).atStartOfDay();
+
+    StreamingResponseBody body = outputStream -> {
+      Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+      long rows = statementExporter.export(customerID, fromTimestamp, untilTimestamp, statementFormat, out);
+      LOGGER.info("Exported statement customer={} format={} rows={}", customerID, statementFormat, rows);
+    };
+    String fileName = "statement." + statementFormat.name().toLowerCase();
+    return ResponseEntity.ok()
+                         .contentType(statementFormat == StatementExporter.Format.CSV ? TEXT_CSV : APPLICATION_NDJSON)
+                         .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                         .body(body);
+  }
+}
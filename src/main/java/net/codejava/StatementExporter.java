@@ -0,0 +1,246 @@
+package net.codejava;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a customer's full statement: every TransactionHistory row and then every OverdraftLogs
+ * row in a date range, each oldest first.
+ *
+ * Rows are never collected. Each query runs on a forward-only, read-only ResultSet with
+ * `testudo.statement.fetch-size` set as its fetch size, and every row is written out as soon as it
+ * is read, so a statement takes the same memory whether it holds ten rows or ten million.
+ * Connector/J only streams a result set row by row when the fetch size is Integer.MIN_VALUE;
+ * any other value makes it read the whole result set into memory first.
+ */
+@Component
+public class StatementExporter {
+  final static String TRANSACTIONS_BETWEEN_SQL = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=? AND Timestamp >= ? AND Timestamp < ? ORDER BY Timestamp, TransactionID";
+  final static String OVERDRAFT_LOGS_BETWEEN_SQL = "SELECT Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE CustomerID=? AND Timestamp >= ? AND Timestamp < ? ORDER BY Timestamp";
+  final static String CSV_HEADER = "Type,Timestamp,TransactionID,Action,Amount,DepositAmt,OldOverBalance,NewOverBalance\n";
+
+  private final static JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /**
+   * Statement file formats.
+   */
+  public enum Format {
+    /** one header line, then one comma separated line per row */
+    CSV,
+    /** one JSON object per line */
+    JSONL
+  }
+
+  private JdbcTemplate jdbcTemplate;
+  private int fetchSize;
+
+  /**
+   * @param jdbcTemplate of the reporting pool or a replica, see {@link DataSourceConfiguration}
+   * @param fetchSize
+   */
+  public StatementExporter(@Autowired @Qualifier("reportingJdbcTemplate") JdbcTemplate jdbcTemplate,
+                           @Value("${testudo.statement.fetch-size:1000}") int fetchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * @param customerID
+   * @param from earliest Timestamp to include
+   * @param until Timestamp to stop before
+   * @param format
+   * @param out receives the statement, and is flushed but not closed
+   * @return number of rows written
+   * @throws IOException if writing to out fails, e.g. because the client went away
+   */
+  public long export(String customerID, LocalDateTime from, LocalDateTime until, Format format, Writer out) throws IOException {
+    StatementWriter statementWriter = format == Format.CSV ? new CsvStatementWriter(out) : new JsonLinesStatementWriter(out);
+    try {
+      long rows = ReplicaRoutingDataSource.readFor(customerID, () -> {
+        long transactionRows = jdbcTemplate.query(new StreamingStatementCreator(TRANSACTIONS_BETWEEN_SQL, fetchSize, customerID, from, until),
+                                                  forEachRow(rs -> statementWriter.writeTransaction(rs.getLong(1),
+                                                                                                   rs.getObject(2, LocalDateTime.class),
+                                                                                                   rs.getString(3),
+                                                                                                   Money.ofCents(rs.getLong(4)))));
+        return transactionRows + jdbcTemplate.query(new StreamingStatementCreator(OVERDRAFT_LOGS_BETWEEN_SQL, fetchSize, customerID, from, until),
+                                                    forEachRow(rs -> statementWriter.writeOverdraftLog(rs.getObject(1, LocalDateTime.class),
+                                                                                                      Money.ofCents(rs.getLong(2)),
+                                                                                                      Money.ofCents(rs.getLong(3)),
+                                                                                                      Money.ofCents(rs.getLong(4)))));
+      });
+      statementWriter.flush();
+      return rows;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private interface RowWriter {
+    void write(ResultSet rs) throws SQLException, IOException;
+  }
+
+  /**
+   * @return extractor that writes every row and counts them, so that JDBC metrics report the rows exported
+   */
+  private static ResultSetExtractor<Integer> forEachRow(RowWriter rowWriter) {
+    return rs -> {
+      int rows = 0;
+      try {
+        while (rs.next()) {
+          rowWriter.write(rs);
+          rows++;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return rows;
+    };
+  }
+
+  /**
+   * Prepares a forward-only, read-only statement with the streaming fetch size.
+   * Exposes its SQL so that {@link MeteredJdbcTemplate} times the export like any other query.
+   */
+  private static class StreamingStatementCreator implements PreparedStatementCreator, SqlProvider {
+    private final String sql;
+    private final int fetchSize;
+    private final Object[] args;
+
+    StreamingStatementCreator(String sql, int fetchSize, Object... args) {
+      this.sql = sql;
+      this.fetchSize = fetchSize;
+      this.args = args;
+    }
+
+    @Override
+    public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+      PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      ps.setFetchSize(fetchSize);
+      for (int i = 0; i < args.length; i++) {
+        ps.setObject(i + 1, args[i]);
+      }
+      return ps;
+    }
+
+    @Override
+    public String getSql() {
+      return sql;
+    }
+  }
+
+  private interface StatementWriter {
+    void writeTransaction(long transactionID, LocalDateTime timestamp, String action, Money amount) throws IOException;
+
+    void writeOverdraftLog(LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) throws IOException;
+
+    void flush() throws IOException;
+  }
+
+  private static class CsvStatementWriter implements StatementWriter {
+    private final Writer out;
+
+    CsvStatementWriter(Writer out) throws IOException {
+      this.out = out;
+      out.write(CSV_HEADER);
+    }
+
+    @Override
+    public void writeTransaction(long transactionID, LocalDateTime timestamp, String action, Money amount) throws IOException {
+      out.write("Transaction,");
+      out.write(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp));
+      out.write(',');
+      out.write(Long.toString(transactionID));
+      out.write(',');
+      writeField(action);
+      out.write(',');
+      out.write(amount.toString());
+      out.write(",,,\n");
+    }
+
+    @Override
+    public void writeOverdraftLog(LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) throws IOException {
+      out.write("OverdraftLog,");
+      out.write(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp));
+      out.write(",,,,");
+      out.write(depositAmt.toString());
+      out.write(',');
+      out.write(oldOverdraftBalance.toString());
+      out.write(',');
+      out.write(newOverdraftBalance.toString());
+      out.write('\n');
+    }
+
+    private void writeField(String text) throws IOException {
+      if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+        out.write(text);
+        return;
+      }
+      out.write('"');
+      out.write(text.replace("\"", "\"\""));
+      out.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+  }
+
+  private static class JsonLinesStatementWriter implements StatementWriter {
+    private final JsonGenerator json;
+
+    JsonLinesStatementWriter(Writer out) throws IOException {
+      this.json = JSON_FACTORY.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      // objects are separated by the newline written after each one, rather than the default space
+      json.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void writeTransaction(long transactionID, LocalDateTime timestamp, String action, Money amount) throws IOException {
+      json.writeStartObject();
+      json.writeStringField("type", "transaction");
+      json.writeStringField("timestamp", DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp));
+      json.writeNumberField("transactionID", transactionID);
+      json.writeStringField("action", action);
+      json.writeStringField("amount", amount.toString());
+      json.writeEndObject();
+      json.writeRaw('\n');
+    }
+
+    @Override
+    public void writeOverdraftLog(LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) throws IOException {
+      json.writeStartObject();
+      json.writeStringField("type", "overdraftLog");
+      json.writeStringField("timestamp", DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp));
+      json.writeStringField("depositAmt", depositAmt.toString());
+      json.writeStringField("oldOverdraftBalance", oldOverdraftBalance.toString());
+      json.writeStringField("newOverdraftBalance", newOverdraftBalance.toString());
+      json.writeEndObject();
+      json.writeRaw('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+      json.flush();
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package net.codejava;
 
+import java.time.Clock;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class TestudoBankApplication {
@@ -10,4 +13,13 @@ public class TestudoBankApplication {
 		SpringApplication.run(TestudoBankApplication.class, args);
 	}
 
+	/**
+	 * Wall clock used to timestamp TransactionHistory and OverdraftLogs rows.
+	 * Tests replace it with a fixed clock.
+	 */
+	@Bean
+	public Clock clock() {
+		return Clock.systemDefaultZone();
+	}
+
 }
@@ -0,0 +1,15 @@
+package net.codejava;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * One page of a customer's transaction history, newest first, as returned by `/history`.
+ */
+@Value
+public class TransactionHistoryPage {
+  private List<TransactionRecord> transactions;
+  /** Cursor for the next (older) page, or null if this is the last page. */
+  private String nextCursor;
+}
@@ -0,0 +1,153 @@
+package net.codejava;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads and appends rows in the TransactionHistory table.
+ *
+ * Rows are read newest first, ordered by (Timestamp, TransactionID) so that rows with the same
+ * Timestamp keep a stable order. Pages after the first are found with keyset pagination: the
+ * query seeks to the last row of the previous page in the (CustomerID, Timestamp, TransactionID)
+ * index instead of skipping an OFFSET, so a deep page costs the same as the first one.
+ */
+@Repository
+public class TransactionHistoryRepository {
+  final static String INSERT_TRANSACTION_SQL = "INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, ?, ?)";
+  final static String RECENT_TRANSACTIONS_SQL = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?";
+  // `Timestamp <= ?` is the index range that skips straight to the cursor, and the OR breaks ties within its second
+  final static String TRANSACTIONS_AFTER_CURSOR_SQL = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=? AND Timestamp <= ? AND (Timestamp < ? OR TransactionID < ?) ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?";
+
+  private JdbcTemplate jdbcTemplate;
+  private JdbcTemplate reportingJdbcTemplate;
+
+  /**
+   * @param jdbcTemplate
+   * @param reportingJdbcTemplate runs {@link #findPage}, see {@link DataSourceConfiguration}
+   */
+  @Autowired
+  public TransactionHistoryRepository(JdbcTemplate jdbcTemplate, @Qualifier("reportingJdbcTemplate") JdbcTemplate reportingJdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.reportingJdbcTemplate = reportingJdbcTemplate;
+  }
+
+  public TransactionHistoryRepository(JdbcTemplate jdbcTemplate) {
+    this(jdbcTemplate, jdbcTemplate);
+  }
+
+  /**
+   * Records a deposit or withdraw in the customer's transaction history.
+   *
+   * @param customerID
+   * @param timestamp
+   * @param action "Deposit" or "Withdraw"
+   * @param amount
+   * @return the TransactionID of the new row
+   */
+  public long insert(String customerID, LocalDateTime timestamp, String action, Money amount) {
+    Object[] row = {customerID, timestamp, action, amount.getCents()};
+    KeyHolder keyHolder = new GeneratedKeyHolder();
+    jdbcTemplate.update(connection -> {
+      PreparedStatement ps = prepareInsert(connection);
+      new ArgumentPreparedStatementSetter(row).setValues(ps);
+      return ps;
+    }, keyHolder);
+    return keyHolder.getKey().longValue();
+  }
+
+  /**
+   * Records many deposits and withdraws as one JDBC batch.
+   *
+   * @param rows CustomerID, Timestamp, Action and Amount in cents of each transaction
+   * @return the TransactionID of each new row, in the order of rows
+   */
+  public long[] insertAll(List<Object[]> rows) {
+    return jdbcTemplate.execute(TransactionHistoryRepository::prepareInsert, (PreparedStatement ps) -> {
+      for (Object[] row : rows) {
+        new ArgumentPreparedStatementSetter(row).setValues(ps);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+
+      long[] transactionIDs = new long[rows.size()];
+      int numKeys = 0;
+      try (ResultSet keys = ps.getGeneratedKeys()) {
+        while (keys.next()) {
+          if (numKeys < transactionIDs.length) {
+            transactionIDs[numKeys] = keys.getLong(1);
+          }
+          numKeys++;
+        }
+      }
+      if (numKeys != transactionIDs.length) {
+        throw new IncorrectResultSizeDataAccessException("Batch insert returned " + numKeys + " generated keys", transactionIDs.length, numKeys);
+      }
+      return transactionIDs;
+    });
+  }
+
+  /**
+   * Fetches the customer's most recent transactions, newest first.
+   *
+   * @param customerID
+   * @param maxTransactions
+   * @return at most maxTransactions rows
+   */
+  public List<TransactionRecord> findRecent(String customerID, int maxTransactions) {
+    return jdbcTemplate.query(RECENT_TRANSACTIONS_SQL, transactionRecordRowMapper(customerID), customerID, maxTransactions);
+  }
+
+  /**
+   * Fetches one page of the customer's transaction history, newest first.
+   *
+   * @param customerID
+   * @param after where the previous page ended, or null for the first page
+   * @param pageSize
+   * @return at most pageSize rows, and a cursor for the next page if there are more
+   */
+  public TransactionHistoryPage findPage(String customerID, HistoryCursor after, int pageSize) {
+    // one extra row tells whether there is a next page
+    List<TransactionRecord> transactions;
+    if (after == null) {
+      transactions = ReplicaRoutingDataSource.readFor(customerID, () -> reportingJdbcTemplate.query(RECENT_TRANSACTIONS_SQL, transactionRecordRowMapper(customerID),
+                                                                                                    customerID, pageSize + 1));
+    } else {
+      transactions = ReplicaRoutingDataSource.readFor(customerID, () -> reportingJdbcTemplate.query(TRANSACTIONS_AFTER_CURSOR_SQL, transactionRecordRowMapper(customerID),
+                                                                                                    customerID, after.getTimestamp(), after.getTimestamp(),
+                                                                                                    after.getLogID(), pageSize + 1));
+    }
+
+    if (transactions.size() <= pageSize) {
+      return new TransactionHistoryPage(transactions, null);
+    }
+    transactions = transactions.subList(0, pageSize);
+    return new TransactionHistoryPage(transactions, HistoryCursor.after(transactions.get(pageSize - 1)).encode());
+  }
+
+  private static PreparedStatement prepareInsert(Connection connection) throws SQLException {
+    return connection.prepareStatement(INSERT_TRANSACTION_SQL, Statement.RETURN_GENERATED_KEYS);
+  }
+
+  private static RowMapper<TransactionRecord> transactionRecordRowMapper(String customerID) {
+    return (rs, rowNum) -> new TransactionRecord(rs.getLong(1),
+                                                 customerID,
+                                                 rs.getObject(2, LocalDateTime.class),
+                                                 rs.getString(3),
+                                                 Money.ofCents(rs.getLong(4)));
+  }
+}
@@ -0,0 +1,34 @@
+package net.codejava;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Value;
+
+/**
+ * A single row of the TransactionHistory table, decoded straight from the ResultSet
+ * by {@link TransactionHistoryRepository} and {@link AccountSnapshotRepository}.
+ */
+@Value
+public class TransactionRecord {
+  private long transactionID;
+  private String customerID;
+  private LocalDateTime timestamp;
+  /** "Deposit" or "Withdraw" */
+  private String action;
+  private Money amount;
+
+  @JsonIgnore
+  public boolean isDeposit() {
+    return "deposit".equalsIgnoreCase(action);
+  }
+
+  /**
+   * Logged the same way as a `SELECT *` row, with the amount in cents.
+   */
+  @Override
+  public String toString() {
+    return "{CustomerID=" + customerID + ", Timestamp=" + timestamp + ", Action=" + action + ", Amount=" + amount.getCents() + "}";
+  }
+}
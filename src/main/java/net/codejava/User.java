@@ -1,7 +1,7 @@
 package net.codejava;
 
-import javax.validation.constraints.Positive;
-import javax.validation.constraints.PositiveOrZero;
+import java.util.Collections;
+import java.util.List;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -19,26 +19,29 @@ public class User {
   @Setter @Getter
   private String lastName;
 
-  @Setter  @Getter @PositiveOrZero
-	private double balance;
+  @Setter  @Getter
+	private Money balance = Money.ZERO;
 
-  @Setter @Getter @PositiveOrZero
-	private double overDraftBalance;
+  @Setter @Getter
+	private Money overDraftBalance = Money.ZERO;
 
   @Setter @Getter
-	private String logs;
+	private List<OverdraftLogEntry> overdraftLogs = Collections.emptyList();
   @Setter @Getter
-  private String transactionHist;
+  private List<TransactionRecord> transactionHist = Collections.emptyList();
 
-  @Setter @Getter @Positive
-  private double amountToDeposit;
+  @Setter @Getter
+  private Money amountToDeposit = Money.ZERO;
 
-  @Setter @Getter @Positive
-  private double amountToWithdraw;
+  @Setter @Getter
+  private Money amountToWithdraw = Money.ZERO;
 
   @Setter @Getter
   private int numTransactionsAgo;
 
+  @Setter @Getter
+  private String csrfToken;
+
 	@Override
 	public String toString() {
 		return "User [username=" + username + ", password=" + password + ", balance=" + balance + "]";
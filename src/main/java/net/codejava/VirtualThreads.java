@@ -0,0 +1,62 @@
+package net.codejava;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads on Java 21+ runtimes. The project still compiles to Java 8 bytecode,
+ * so the Java 21 APIs are looked up reflectively when the application starts.
+ */
+public final class VirtualThreads {
+  private VirtualThreads() {
+  }
+
+  /**
+   * @return true if this runtime has virtual threads
+   */
+  public static boolean isSupported() {
+    try {
+      Thread.class.getMethod("ofVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Equivalent to `Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory())`.
+   *
+   * @param namePrefix each thread is named namePrefix followed by a counter, so log lines still say which request they came from
+   * @return executor that starts a new virtual thread for every task
+   * @throws IllegalStateException if this runtime has no virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+    if (!isSupported()) {
+      throw new IllegalStateException("Virtual threads need a Java 21 or later runtime, but this is Java " + System.getProperty("java.version"));
+    }
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+      ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Could not create virtual thread executor", e);
+    }
+  }
+
+  /**
+   * @return true if the thread is a virtual thread
+   */
+  public static boolean isVirtual(Thread thread) {
+    if (!isSupported()) {
+      return false;
+    }
+    try {
+      return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package net.codejava;
+
+import java.util.concurrent.ExecutorService;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs every request on its own virtual thread instead of Tomcat's pool of `server.tomcat.max-threads`
+ * platform threads, when `testudo.server.threads=virtual`. A request blocked on JDBC then only parks
+ * its virtual thread, so the number of requests in flight is no longer capped by the thread pool.
+ *
+ * Needs a Java 21 or later runtime, and fails to start on anything older. The DB is guarded by
+ * a {@link ConnectionPermitDataSource} with one permit per connection in the Hikari pool, so
+ * `spring.datasource.hikari.maximum-pool-size` is the number of requests that use the DB at once.
+ */
+@Configuration
+@ConditionalOnProperty(name = "testudo.server.threads", havingValue = "virtual")
+public class VirtualThreadsConfiguration {
+  private final static Logger LOGGER = LoggerFactory.getLogger(VirtualThreadsConfiguration.class);
+
+  @Bean
+  public VirtualThreadExecutorCustomizer virtualThreadExecutorCustomizer() {
+    return new VirtualThreadExecutorCustomizer(VirtualThreads.newVirtualThreadPerTaskExecutor("http-virtual-"));
+  }
+
+  /**
+   * Static so that it is created before, and can wrap, the DataSource.
+   */
+  @Bean
+  public static BeanPostProcessor connectionPermitPostProcessor(@Value("${testudo.server.db-permit-timeout-millis:30000}") long permitTimeoutMillis) {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof HikariDataSource)) {
+          return bean;
+        }
+        int maxPermits = ((HikariDataSource) bean).getMaximumPoolSize();
+        LOGGER.info("Guarding DataSource {} with {} connection permits", beanName, maxPermits);
+        return new ConnectionPermitDataSource((HikariDataSource) bean, maxPermits, permitTimeoutMillis);
+      }
+    };
+  }
+
+  /**
+   * Hands Tomcat's connectors the virtual thread executor, and shuts it down with the application.
+   */
+  public static class VirtualThreadExecutorCustomizer implements TomcatProtocolHandlerCustomizer<ProtocolHandler>, DisposableBean {
+    private final ExecutorService executor;
+
+    public VirtualThreadExecutorCustomizer(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void customize(ProtocolHandler protocolHandler) {
+      LOGGER.info("Running {} requests on virtual threads", protocolHandler);
+      protocolHandler.setExecutor(executor);
+    }
+
+    @Override
+    public void destroy() {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,30 @@
+-- The tables as created by python-sql-scripts/addCustomers.py.
+-- Databases that already have these tables are baselined at this version and skip this script.
+CREATE TABLE IF NOT EXISTS Customers (
+  CustomerID varchar(255),
+  FirstName varchar(255),
+  LastName varchar(255),
+  Balance int,
+  OverdraftBalance int,
+  NumFraudReversals int
+);
+
+CREATE TABLE IF NOT EXISTS Passwords (
+  CustomerID varchar(255),
+  Password varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS OverdraftLogs (
+  CustomerID varchar(255),
+  Timestamp DATETIME,
+  DepositAmt int,
+  OldOverBalance int,
+  NewOverBalance int
+);
+
+CREATE TABLE IF NOT EXISTS TransactionHistory (
+  CustomerID varchar(255),
+  Timestamp DATETIME,
+  Action varchar(255) CHECK (Action IN ('Deposit', 'Withdraw')),
+  Amount int
+);
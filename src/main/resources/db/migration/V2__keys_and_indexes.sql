@@ -0,0 +1,15 @@
+-- Every lookup is by CustomerID, so key the per-customer tables on it.
+ALTER TABLE Customers MODIFY CustomerID varchar(255) NOT NULL;
+ALTER TABLE Customers ADD PRIMARY KEY (CustomerID);
+
+ALTER TABLE Passwords MODIFY CustomerID varchar(255) NOT NULL;
+ALTER TABLE Passwords ADD PRIMARY KEY (CustomerID);
+
+-- Log tables get a surrogate key, since a customer can have several rows with the same Timestamp.
+ALTER TABLE TransactionHistory ADD COLUMN TransactionID bigint NOT NULL AUTO_INCREMENT PRIMARY KEY;
+ALTER TABLE OverdraftLogs ADD COLUMN OverdraftLogID bigint NOT NULL AUTO_INCREMENT PRIMARY KEY;
+
+-- Serves `WHERE CustomerID=? ORDER BY Timestamp DESC LIMIT ?` without a filesort,
+-- and `WHERE CustomerID=? AND Timestamp=?` without a scan.
+CREATE INDEX TransactionHistory_CustomerID_Timestamp ON TransactionHistory (CustomerID, Timestamp DESC);
+CREATE INDEX OverdraftLogs_CustomerID_Timestamp ON OverdraftLogs (CustomerID, Timestamp DESC);
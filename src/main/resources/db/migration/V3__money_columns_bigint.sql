@@ -0,0 +1,9 @@
+-- Money is held as a long count of cents (see Money.java), so widen every money column to match.
+ALTER TABLE Customers MODIFY Balance bigint;
+ALTER TABLE Customers MODIFY OverdraftBalance bigint;
+
+ALTER TABLE TransactionHistory MODIFY Amount bigint;
+
+ALTER TABLE OverdraftLogs MODIFY DepositAmt bigint;
+ALTER TABLE OverdraftLogs MODIFY OldOverBalance bigint;
+ALTER TABLE OverdraftLogs MODIFY NewOverBalance bigint;
@@ -0,0 +1,5 @@
+-- Transaction history is paged newest first by (Timestamp, TransactionID), see TransactionHistoryRepository.
+-- Adding TransactionID to the index breaks ties between rows with the same Timestamp without a filesort,
+-- and lets a page that starts after a cursor seek straight to it.
+DROP INDEX TransactionHistory_CustomerID_Timestamp ON TransactionHistory;
+CREATE INDEX TransactionHistory_CustomerID_Timestamp ON TransactionHistory (CustomerID, Timestamp DESC, TransactionID DESC);
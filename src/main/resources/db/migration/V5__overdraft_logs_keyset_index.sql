@@ -0,0 +1,4 @@
+-- Overdraft logs are paged newest first by (Timestamp, OverdraftLogID), see OverdraftLogRepository,
+-- the same way as transaction history in V4.
+DROP INDEX OverdraftLogs_CustomerID_Timestamp ON OverdraftLogs;
+CREATE INDEX OverdraftLogs_CustomerID_Timestamp ON OverdraftLogs (CustomerID, Timestamp DESC, OverdraftLogID DESC);
@@ -0,0 +1,7 @@
+-- One row that ReplicationTracker overwrites with the current time on the primary. A replica's
+-- copy of the row tells up to when the replica has applied the primary's writes.
+CREATE TABLE ReplicationHeartbeat (
+  ID INT NOT NULL PRIMARY KEY,
+  Timestamp DATETIME(6) NOT NULL
+);
+INSERT INTO ReplicationHeartbeat VALUES (1, '1970-01-01 00:00:00');
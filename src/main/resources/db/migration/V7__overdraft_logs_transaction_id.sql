@@ -0,0 +1,12 @@
+-- Every overdraft log belongs to the TransactionHistory row of the deposit that wrote it. A reversal
+-- looks its overdraft logs up by that TransactionID, because a batch or a group commit writes many
+-- deposits of one customer within the same second, and their Timestamps no longer tell them apart.
+ALTER TABLE OverdraftLogs ADD COLUMN TransactionID bigint;
+-- Logs written before this migration are linked the way reversals used to find them, by Timestamp.
+UPDATE OverdraftLogs SET TransactionID = (
+  SELECT MAX(TransactionHistory.TransactionID) FROM TransactionHistory
+  WHERE TransactionHistory.CustomerID = OverdraftLogs.CustomerID
+    AND TransactionHistory.Timestamp = OverdraftLogs.Timestamp
+    AND TransactionHistory.Action = 'Deposit'
+);
+CREATE INDEX OverdraftLogs_TransactionID ON OverdraftLogs (TransactionID);
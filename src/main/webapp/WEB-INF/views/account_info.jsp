@@ -1,5 +1,6 @@
 <%@ page language="java" contentType="text/html; charset=ISO-8859-1"
     pageEncoding="ISO-8859-1"%>  
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <!DOCTYPE html>
 <html>
 <head>
@@ -32,13 +33,21 @@
 		<h2><span>${user.firstName}</span> <span>${user.lastName}</span> Bank Account Info</h2>
 		<span>Balance is: $</span><span>${user.balance}</span><br/>
     <span>Overdraft Balance is: $</span><span>${user.overDraftBalance}</span><br/>
-    <span>Re-payment logs: </span><span>${user.logs}</span><br/>
-    <span>Transaction History: </span><span>${user.transactionHist}</span><br/>
+    <span>Re-payment logs: </span><br/>
+    <c:forEach items="${user.overdraftLogs}" var="overdraftLog">
+      <span>${overdraftLog.timestamp} Deposit: $${overdraftLog.depositAmt} Overdraft: $${overdraftLog.oldOverdraftBalance} to $${overdraftLog.newOverdraftBalance}</span><br/>
+    </c:forEach>
+    <span>Transaction History: </span><br/>
+    <c:forEach items="${user.transactionHist}" var="transactionLog">
+      <span>${transactionLog.timestamp} <c:out value="${transactionLog.action}"/>: $${transactionLog.amount}</span><br/>
+    </c:forEach>
     <br/>
     <a href='/deposit'>Deposit</a>
     <a href='/withdraw'>Withdraw</a>
     <a href='/dispute'>Dispute</a>
-    <a href='/'>Logout</a>
+    <form action="logout" method="post" style="display:inline">
+      <button type="submit">Logout</button>
+    </form>
 	</div>
 </body>
 </html>
\ No newline at end of file
@@ -36,6 +36,7 @@
 <body>
 	<div align="center">
 		<form:form action="dispute" method="post" modelAttribute="user">
+			<form:hidden path="csrfToken"/>
 			<form:label path="username">Username:</form:label>
 			<form:input path="username"/><br/>
 			
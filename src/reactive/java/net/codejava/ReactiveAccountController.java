@@ -0,0 +1,144 @@
+package net.codejava;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CookieValue;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * The JSON API of {@link AccountApiController} on WebFlux, for {@link ReactiveTestudoBankApplication}.
+ * Same paths, bodies, session cookie and status codes, but every call is a chain of non-blocking
+ * R2DBC statements, so a request waiting on the DB holds no thread.
+ *
+ * An account is read fresh on every call, its Customers row, OverdraftLogs and TransactionHistory
+ * at the same time (see {@link ReactiveAccountRepository#loadSnapshot}), instead of from the
+ * {@link AccountSnapshotCache}, and passwords are compared against the Passwords table directly.
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAccountController {
+  private final static Logger LOGGER = LoggerFactory.getLogger(ReactiveAccountController.class);
+
+  private SessionStore sessionStore;
+  private ReactiveAccountRepository accountRepository;
+  private ReactiveLedgerService ledgerService;
+
+  public ReactiveAccountController(@Autowired SessionStore sessionStore,
+                                   @Autowired ReactiveAccountRepository accountRepository,
+                                   @Autowired ReactiveLedgerService ledgerService) {
+    this.sessionStore = sessionStore;
+    this.accountRepository = accountRepository;
+    this.ledgerService = ledgerService;
+  }
+
+  /**
+   * @param loginRequest
+   * @return 204 with the session cookie set, or 401 if the password is wrong
+   */
+  @PostMapping("/sessions")
+  public Mono<ResponseEntity<?>> login(@RequestBody LoginRequest loginRequest) {
+    String customerID = loginRequest.getUsername();
+    LOGGER.debug("API login attempt customer={}", customerID);
+    if (customerID == null || loginRequest.getPassword() == null) {
+      return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ApiError("INVALID_CREDENTIALS")));
+    }
+
+    return accountRepository.findPassword(customerID)
+                            .filter(password -> MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                                                                      loginRequest.getPassword().getBytes(StandardCharsets.UTF_8)))
+                            .<ResponseEntity<?>>map(password -> {
+                              ResponseCookie sessionCookie = SessionStore.sessionCookie(sessionStore.create(customerID));
+                              return ResponseEntity.noContent().header(HttpHeaders.SET_COOKIE, sessionCookie.toString()).build();
+                            })
+                            .defaultIfEmpty(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ApiError("INVALID_CREDENTIALS")));
+  }
+
+  @DeleteMapping("/sessions")
+  public Mono<ResponseEntity<?>> logout(@CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
+    return Mono.just(AccountApiController.logout(sessionStore, sessionToken));
+  }
+
+  @GetMapping("/accounts/{id}")
+  public Mono<ResponseEntity<?>> getAccount(@PathVariable("id") String customerID,
+                                            @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken) {
+    ResponseEntity<?> unauthorized = AccountApiController.checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return Mono.just(unauthorized);
+    }
+    return loadAccount(customerID);
+  }
+
+  @PostMapping("/accounts/{id}/deposits")
+  public Mono<ResponseEntity<?>> deposit(@PathVariable("id") String customerID,
+                                         @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                         @RequestBody MoneyMovementRequest depositRequest) {
+    ResponseEntity<?> unauthorized = AccountApiController.checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return Mono.just(unauthorized);
+    }
+    if (depositRequest.getAmount() == null) {
+      return outcomeResponse(customerID, LedgerOutcome.INVALID_AMOUNT);
+    }
+    return ledgerService.deposit(customerID, depositRequest.getAmount())
+                        .flatMap(outcome -> outcomeResponse(customerID, outcome));
+  }
+
+  @PostMapping("/accounts/{id}/withdrawals")
+  public Mono<ResponseEntity<?>> withdraw(@PathVariable("id") String customerID,
+                                          @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                          @RequestBody MoneyMovementRequest withdrawRequest) {
+    ResponseEntity<?> unauthorized = AccountApiController.checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return Mono.just(unauthorized);
+    }
+    if (withdrawRequest.getAmount() == null) {
+      return outcomeResponse(customerID, LedgerOutcome.INVALID_AMOUNT);
+    }
+    return ledgerService.withdraw(customerID, withdrawRequest.getAmount())
+                        .flatMap(outcome -> outcomeResponse(customerID, outcome));
+  }
+
+  @PostMapping("/accounts/{id}/disputes")
+  public Mono<ResponseEntity<?>> dispute(@PathVariable("id") String customerID,
+                                         @CookieValue(value = SessionStore.SESSION_COOKIE, required = false) String sessionToken,
+                                         @RequestBody DisputeRequest disputeRequest) {
+    ResponseEntity<?> unauthorized = AccountApiController.checkSession(sessionStore, customerID, sessionToken);
+    if (unauthorized != null) {
+      return Mono.just(unauthorized);
+    }
+    return ledgerService.reverseTransaction(customerID, disputeRequest.getNumTransactionsAgo())
+                        .flatMap(outcome -> outcomeResponse(customerID, outcome));
+  }
+
+  private Mono<ResponseEntity<?>> loadAccount(String customerID) {
+    return accountRepository.loadSnapshot(customerID, AccountSnapshotCache.MAX_NUM_OVERDRAFT_LOGS_DISPLAYED,
+                                          AccountSnapshotCache.MAX_NUM_TRANSACTIONS_DISPLAYED)
+                            .map(ResponseEntity::ok);
+  }
+
+  private Mono<ResponseEntity<?>> outcomeResponse(String customerID, LedgerOutcome outcome) {
+    if (outcome == LedgerOutcome.APPLIED) {
+      // read after the commit, so this sees the new balance
+      return loadAccount(customerID);
+    }
+    return Mono.just(AccountApiController.outcomeError(outcome));
+  }
+}
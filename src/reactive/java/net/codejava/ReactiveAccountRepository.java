@@ -0,0 +1,231 @@
+package net.codejava;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.r2dbc.spi.Row;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking reads and writes of the Customers, Passwords, TransactionHistory and OverdraftLogs
+ * tables over R2DBC, for {@link ReactiveLedgerService} and {@link ReactiveAccountController}.
+ *
+ * Runs the same statements as the JDBC repositories, with named parameters so that
+ * {@link DatabaseClient} can rewrite them to the bind markers of the driver in use.
+ * Every method returns a cold publisher: nothing is sent to the DB until it is subscribed to,
+ * and a write that is subscribed to inside a transaction of {@link ReactiveLedgerService} joins it.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAccountRepository {
+  final static String GET_USER_PASSWORD_SQL = "SELECT Password FROM Passwords WHERE CustomerID=:customerID";
+  final static String CUSTOMER_SQL = "SELECT FirstName, LastName, Balance, OverdraftBalance FROM Customers WHERE CustomerID=:customerID";
+  final static String CUSTOMER_STATE_FOR_UPDATE_SQL = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=:customerID FOR UPDATE";
+  final static String RECENT_TRANSACTIONS_SQL = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=:customerID ORDER BY Timestamp DESC, TransactionID DESC LIMIT :limit";
+  final static String RECENT_OVERDRAFT_LOGS_SQL = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE CustomerID=:customerID ORDER BY Timestamp DESC, OverdraftLogID DESC LIMIT :limit";
+  final static String OVERDRAFT_LOGS_OF_TRANSACTION_SQL = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE TransactionID=:transactionID AND CustomerID=:customerID";
+  private final static String INSERT_OVERDRAFT_LOG_SQL = "INSERT INTO OverdraftLogs (CustomerID, TransactionID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance) VALUES (:customerID, :transactionID, :timestamp, :depositAmt, :oldOverdraftBalance, :newOverdraftBalance)";
+  private final static String DELETE_OVERDRAFT_LOGS_OF_TRANSACTION_SQL = "DELETE FROM OverdraftLogs WHERE TransactionID=:transactionID AND CustomerID=:customerID";
+  private final static String INCREASE_BALANCE_SQL = "UPDATE Customers SET Balance = Balance + :amount WHERE CustomerID=:customerID";
+  private final static String DECREASE_BALANCE_SQL = "UPDATE Customers SET Balance = Balance - :amount WHERE CustomerID=:customerID";
+  private final static String SET_BALANCE_SQL = "UPDATE Customers SET Balance = :amount WHERE CustomerID=:customerID";
+  private final static String INCREASE_OVERDRAFT_BALANCE_SQL = "UPDATE Customers SET OverdraftBalance = OverdraftBalance + :amount WHERE CustomerID=:customerID";
+  private final static String SET_OVERDRAFT_BALANCE_SQL = "UPDATE Customers SET OverdraftBalance = :amount WHERE CustomerID=:customerID";
+  private final static String SET_NUM_FRAUD_REVERSALS_SQL = "UPDATE Customers SET NumFraudReversals = :numFraudReversals WHERE CustomerID=:customerID";
+
+  private DatabaseClient databaseClient;
+
+  public ReactiveAccountRepository(@Autowired DatabaseClient databaseClient) {
+    this.databaseClient = databaseClient;
+  }
+
+  /**
+   * @return the customer's password, or empty if there is no password for this customer
+   */
+  public Mono<String> findPassword(String customerID) {
+    return databaseClient.execute(GET_USER_PASSWORD_SQL)
+                         .bind("customerID", customerID)
+                         .map(row -> row.get("Password", String.class))
+                         .first();
+  }
+
+  /**
+   * Fetches the same {@link AccountSnapshot} as {@link AccountSnapshotRepository}, as three queries
+   * that run at the same time, each on its own connection. Inside a transaction they would share its
+   * connection and run one after the other, so snapshots are only read outside of money movements.
+   *
+   * @param customerID
+   * @param maxOverdraftLogs number of most recent OverdraftLogs rows to include
+   * @param maxTransactions number of most recent TransactionHistory rows to include
+   * @return snapshot of the customer's account, or an EmptyResultDataAccessException if there is no customer with this ID
+   */
+  public Mono<AccountSnapshot> loadSnapshot(String customerID, int maxOverdraftLogs, int maxTransactions) {
+    // rows are only valid inside map, so the customer's columns are copied out of theirs
+    Mono<Object[]> customerColumns = databaseClient.execute(CUSTOMER_SQL)
+                                                   .bind("customerID", customerID)
+                                                   .map(row -> new Object[] {row.get("FirstName", String.class),
+                                                                             row.get("LastName", String.class),
+                                                                             cents(row, "Balance"),
+                                                                             cents(row, "OverdraftBalance")})
+                                                   .first()
+                                                   .switchIfEmpty(Mono.error(() -> new EmptyResultDataAccessException("No customer with ID " + customerID, 1)));
+    return Mono.zip(customerColumns,
+                    findRecentOverdraftLogs(customerID, maxOverdraftLogs),
+                    findRecentTransactions(customerID, maxTransactions))
+               .map(columns -> {
+                 Object[] customerRow = columns.getT1();
+                 return new AccountSnapshot(customerID, (String) customerRow[0], (String) customerRow[1],
+                                            (Money) customerRow[2], (Money) customerRow[3],
+                                            columns.getT2(), columns.getT3());
+               });
+  }
+
+  /**
+   * Locks the customer's row until the current transaction ends.
+   *
+   * @return the customer's state, or empty if there is no customer with this ID
+   */
+  public Mono<CustomerState> findStateForUpdate(String customerID) {
+    return databaseClient.execute(CUSTOMER_STATE_FOR_UPDATE_SQL)
+                         .bind("customerID", customerID)
+                         .map(row -> new CustomerState(customerID,
+                                                       cents(row, "Balance"),
+                                                       cents(row, "OverdraftBalance"),
+                                                       ((Number) row.get("NumFraudReversals")).intValue()))
+                         .first();
+  }
+
+  /**
+   * @return the customer's most recent transactions, newest first
+   */
+  public Mono<List<TransactionRecord>> findRecentTransactions(String customerID, int limit) {
+    return databaseClient.execute(RECENT_TRANSACTIONS_SQL)
+                         .bind("customerID", customerID)
+                         .bind("limit", limit)
+                         .map(row -> new TransactionRecord(((Number) row.get("TransactionID")).longValue(),
+                                                           customerID,
+                                                           row.get("Timestamp", LocalDateTime.class),
+                                                           row.get("Action", String.class),
+                                                           cents(row, "Amount")))
+                         .all()
+                         .collectList();
+  }
+
+  /**
+   * @return the customer's most recent OverdraftLogs rows, newest first
+   */
+  public Mono<List<OverdraftLogEntry>> findRecentOverdraftLogs(String customerID, int limit) {
+    return databaseClient.execute(RECENT_OVERDRAFT_LOGS_SQL)
+                         .bind("customerID", customerID)
+                         .bind("limit", limit)
+                         .map(row -> overdraftLogEntry(customerID, row))
+                         .all()
+                         .collectList();
+  }
+
+  /**
+   * @return the customer's OverdraftLogs rows written by the transaction with this TransactionID
+   */
+  public Mono<List<OverdraftLogEntry>> findOverdraftLogsOf(String customerID, long transactionID) {
+    return databaseClient.execute(OVERDRAFT_LOGS_OF_TRANSACTION_SQL)
+                         .bind("transactionID", transactionID)
+                         .bind("customerID", customerID)
+                         .map(row -> overdraftLogEntry(customerID, row))
+                         .all()
+                         .collectList();
+  }
+
+  /**
+   * @return the TransactionID of the new row
+   */
+  public Mono<Long> insertTransaction(String customerID, LocalDateTime timestamp, String action, Money amount) {
+    // an insert spec, unlike an execute spec, asks the driver for the generated key
+    return databaseClient.insert()
+                         .into("TransactionHistory")
+                         .value("CustomerID", customerID)
+                         .value("Timestamp", timestamp)
+                         .value("Action", action)
+                         .value("Amount", amount.getCents())
+                         .map(row -> ((Number) row.get(0)).longValue())
+                         .one();
+  }
+
+  public Mono<Integer> insertOverdraftLog(String customerID, long transactionID, LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) {
+    return databaseClient.execute(INSERT_OVERDRAFT_LOG_SQL)
+                         .bind("customerID", customerID)
+                         .bind("transactionID", transactionID)
+                         .bind("timestamp", timestamp)
+                         .bind("depositAmt", depositAmt.getCents())
+                         .bind("oldOverdraftBalance", oldOverdraftBalance.getCents())
+                         .bind("newOverdraftBalance", newOverdraftBalance.getCents())
+                         .fetch()
+                         .rowsUpdated();
+  }
+
+  public Mono<Integer> deleteOverdraftLogsOf(String customerID, long transactionID) {
+    return databaseClient.execute(DELETE_OVERDRAFT_LOGS_OF_TRANSACTION_SQL)
+                         .bind("transactionID", transactionID)
+                         .bind("customerID", customerID)
+                         .fetch()
+                         .rowsUpdated();
+  }
+
+  public Mono<Integer> increaseBalance(String customerID, Money amount) {
+    return updateCustomer(INCREASE_BALANCE_SQL, customerID, amount);
+  }
+
+  public Mono<Integer> decreaseBalance(String customerID, Money amount) {
+    return updateCustomer(DECREASE_BALANCE_SQL, customerID, amount);
+  }
+
+  public Mono<Integer> setBalance(String customerID, Money balance) {
+    return updateCustomer(SET_BALANCE_SQL, customerID, balance);
+  }
+
+  public Mono<Integer> increaseOverdraftBalance(String customerID, Money amount) {
+    return updateCustomer(INCREASE_OVERDRAFT_BALANCE_SQL, customerID, amount);
+  }
+
+  public Mono<Integer> setOverdraftBalance(String customerID, Money overdraftBalance) {
+    return updateCustomer(SET_OVERDRAFT_BALANCE_SQL, customerID, overdraftBalance);
+  }
+
+  public Mono<Integer> setNumFraudReversals(String customerID, int numFraudReversals) {
+    return databaseClient.execute(SET_NUM_FRAUD_REVERSALS_SQL)
+                         .bind("customerID", customerID)
+                         .bind("numFraudReversals", numFraudReversals)
+                         .fetch()
+                         .rowsUpdated();
+  }
+
+  private Mono<Integer> updateCustomer(String sql, String customerID, Money amount) {
+    return databaseClient.execute(sql)
+                         .bind("customerID", customerID)
+                         .bind("amount", amount.getCents())
+                         .fetch()
+                         .rowsUpdated();
+  }
+
+  private static OverdraftLogEntry overdraftLogEntry(String customerID, Row row) {
+    return new OverdraftLogEntry(((Number) row.get("OverdraftLogID")).longValue(),
+                                 customerID,
+                                 row.get("Timestamp", LocalDateTime.class),
+                                 cents(row, "DepositAmt"),
+                                 cents(row, "OldOverBalance"),
+                                 cents(row, "NewOverBalance"));
+  }
+
+  /**
+   * Money columns are whole cents, as INT or BIGINT depending on the schema version.
+   */
+  private static Money cents(Row row, String column) {
+    return Money.ofCents(((Number) row.get(column)).longValue());
+  }
+}
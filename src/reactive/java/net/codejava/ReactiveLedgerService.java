@@ -0,0 +1,219 @@
+package net.codejava;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Applies deposits, withdraws and transaction reversals like {@link LedgerService}, with the same
+ * {@link LedgerRules}, but over R2DBC so that no thread waits on the DB.
+ *
+ * Each money movement is one transaction of the {@link TransactionalOperator}: it locks the customer's
+ * row with `SELECT ... FOR UPDATE`, runs the reads the rules need, lets the rules decide, and then
+ * sends the writes they collected one after the other on the transaction's connection. A reversal
+ * reads the customer's recent transactions, and the OverdraftLogs rows of the transaction it
+ * reverses, before the rules run instead of when they ask for them.
+ *
+ * Lock conflicts retry the whole money movement, up to MAX_ATTEMPTS times, and business events are
+ * counted once the transaction has committed, under the same names as {@link LedgerService}'s.
+ * Money movements are never grouped, whatever `testudo.ledger.group-commit.enabled` says.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveLedgerService {
+  private final static int MAX_ATTEMPTS = 3;
+
+  private ReactiveAccountRepository accountRepository;
+  private TransactionalOperator transactionalOperator;
+  private LedgerRules ledgerRules;
+  private final Map<LedgerOutcome, Counter> rejections = new EnumMap<>(LedgerOutcome.class);
+
+  public ReactiveLedgerService(@Autowired ReactiveAccountRepository accountRepository,
+                               @Autowired TransactionalOperator transactionalOperator,
+                               @Autowired Clock clock,
+                               @Autowired MeterRegistry meterRegistry) {
+    this.accountRepository = accountRepository;
+    this.transactionalOperator = transactionalOperator;
+    this.ledgerRules = new LedgerRules(clock, meterRegistry);
+    for (LedgerOutcome outcome : LedgerOutcome.values()) {
+      if (outcome != LedgerOutcome.APPLIED) {
+        rejections.put(outcome, meterRegistry.counter("ledger.rejections", "outcome", outcome.name()));
+      }
+    }
+  }
+
+  /**
+   * @see LedgerService#deposit
+   * @return APPLIED once the deposit has committed
+   */
+  public Mono<LedgerOutcome> deposit(String userID, Money userDepositAmt) {
+    return runInTransaction(userID, (customerState, writes) -> Mono.just(ledgerRules.deposit(customerState, userDepositAmt, writes)));
+  }
+
+  /**
+   * @see LedgerService#withdraw
+   * @return APPLIED once the withdraw has committed
+   */
+  public Mono<LedgerOutcome> withdraw(String userID, Money userWithdrawAmt) {
+    return runInTransaction(userID, (customerState, writes) -> Mono.just(ledgerRules.withdraw(customerState, userWithdrawAmt, writes)));
+  }
+
+  /**
+   * @see LedgerService#reverseTransaction
+   * @return APPLIED once the reversal has committed
+   */
+  public Mono<LedgerOutcome> reverseTransaction(String userID, int numTransactionsAgo) {
+    // Ensure that requested transaction to reverse is within acceptable range
+    if (!LedgerRules.isReversable(numTransactionsAgo)) {
+      return Mono.just(counted(LedgerOutcome.TRANSACTION_NOT_FOUND));
+    }
+
+    return runInTransaction(userID, (customerState, writes) ->
+        accountRepository.findRecentTransactions(userID, LedgerRules.MAX_REVERSABLE_TRANSACTIONS_AGO)
+                         .flatMap(transactionLogs -> findOverdraftLogsOfReversal(userID, transactionLogs, numTransactionsAgo)
+                             .map(overdraftLogs -> ledgerRules.reverseTransaction(customerState, numTransactionsAgo,
+                                                                                  () -> transactionLogs,
+                                                                                  transactionID -> overdraftLogs,
+                                                                                  writes))));
+  }
+
+  /**
+   * @return the OverdraftLogs rows written with the deposit that would be reversed, if there is one
+   */
+  private Mono<List<OverdraftLogEntry>> findOverdraftLogsOfReversal(String userID, List<TransactionRecord> transactionLogs, int numTransactionsAgo) {
+    if (numTransactionsAgo > transactionLogs.size() || !transactionLogs.get(numTransactionsAgo - 1).isDeposit()) {
+      return Mono.just(Collections.emptyList());
+    }
+    return accountRepository.findOverdraftLogsOf(userID, transactionLogs.get(numTransactionsAgo - 1).getTransactionID());
+  }
+
+  /**
+   * Runs a money movement in its own transaction, retrying it from the start if the DB aborts the
+   * transaction because of a lock conflict. Any other failure rolls back the transaction and is
+   * passed on immediately.
+   *
+   * @param userID the customer whose account is being changed
+   * @param moneyMovement decides the outcome from the customer's locked state, collecting its writes
+   * @return the outcome of the money movement, CUSTOMER_NOT_FOUND if there is no such customer
+   */
+  private Mono<LedgerOutcome> runInTransaction(String userID, BiFunction<CustomerState, CollectedWrites, Mono<LedgerOutcome>> moneyMovement) {
+    return Mono.defer(() -> {
+      // a retried attempt starts over with no writes and no events
+      CollectedWrites writes = new CollectedWrites();
+      return accountRepository.findStateForUpdate(userID)
+                              .flatMap(customerState -> moneyMovement.apply(customerState, writes))
+                              .flatMap(outcome -> writes.execute().thenReturn(outcome))
+                              .defaultIfEmpty(LedgerOutcome.CUSTOMER_NOT_FOUND)
+                              .as(transactionalOperator::transactional)
+                              .doOnNext(outcome -> writes.countCommitted());
+    }).retry(MAX_ATTEMPTS - 1, e -> e instanceof ConcurrencyFailureException)
+      .map(this::counted);
+  }
+
+  /**
+   * Counts an outcome as a rejection unless it was applied.
+   *
+   * @param outcome
+   * @return the same outcome
+   */
+  private LedgerOutcome counted(LedgerOutcome outcome) {
+    if (outcome != LedgerOutcome.APPLIED) {
+      rejections.get(outcome).increment();
+    }
+    return outcome;
+  }
+
+  /**
+   * Collects the statements of a money movement while the rules run, to be sent in order once they
+   * have decided. The overdraft log is only bound once the insert of its transaction has returned
+   * the TransactionID.
+   */
+  private class CollectedWrites implements LedgerReversalWrites {
+    private final List<Mono<?>> statements = new ArrayList<>();
+    private final List<Counter> events = new ArrayList<>();
+    private Long lastTransactionID;
+
+    Mono<Void> execute() {
+      return Flux.fromIterable(statements).concatMap(Mono::then).then();
+    }
+
+    void countCommitted() {
+      for (Counter counter : events) {
+        counter.increment();
+      }
+    }
+
+    @Override
+    public void recordTransaction(String userID, LocalDateTime timestamp, String action, Money amount) {
+      statements.add(accountRepository.insertTransaction(userID, timestamp, action, amount)
+                                      .doOnNext(transactionID -> lastTransactionID = transactionID));
+    }
+
+    @Override
+    public void insertOverdraftLog(String userID, LocalDateTime timestamp, Money depositAmt, Money oldOverdraftBalance, Money newOverdraftBalance) {
+      statements.add(Mono.defer(() -> {
+        if (lastTransactionID == null) {
+          return Mono.error(new IllegalStateException("Overdraft log of customer " + userID + " written before its transaction"));
+        }
+        return accountRepository.insertOverdraftLog(userID, lastTransactionID, timestamp, depositAmt, oldOverdraftBalance, newOverdraftBalance);
+      }));
+    }
+
+    @Override
+    public void deleteOverdraftLogsOf(String userID, long transactionID) {
+      statements.add(accountRepository.deleteOverdraftLogsOf(userID, transactionID));
+    }
+
+    @Override
+    public void increaseBalance(String userID, Money amount) {
+      statements.add(accountRepository.increaseBalance(userID, amount));
+    }
+
+    @Override
+    public void decreaseBalance(String userID, Money amount) {
+      statements.add(accountRepository.decreaseBalance(userID, amount));
+    }
+
+    @Override
+    public void setBalance(String userID, Money balance) {
+      statements.add(accountRepository.setBalance(userID, balance));
+    }
+
+    @Override
+    public void increaseOverdraftBalance(String userID, Money amount) {
+      statements.add(accountRepository.increaseOverdraftBalance(userID, amount));
+    }
+
+    @Override
+    public void setOverdraftBalance(String userID, Money overdraftBalance) {
+      statements.add(accountRepository.setOverdraftBalance(userID, overdraftBalance));
+    }
+
+    @Override
+    public void setNumFraudReversals(String userID, int numFraudReversals) {
+      statements.add(accountRepository.setNumFraudReversals(userID, numFraudReversals));
+    }
+
+    @Override
+    public void countOnCommit(Counter counter) {
+      events.add(counter);
+    }
+  }
+}
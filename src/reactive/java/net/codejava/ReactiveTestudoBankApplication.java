@@ -0,0 +1,91 @@
+package net.codejava;
+
+import java.time.Clock;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.r2dbc.connectionfactory.R2dbcTransactionManager;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+
+/**
+ * Runs the JSON API of {@link AccountApiController} on WebFlux and Netty instead of Tomcat, with
+ * every account read and money movement going to the DB over R2DBC (see {@link ReactiveAccountController}).
+ * The HTML forms of {@link MvcController} and the other servlet endpoints are not part of it.
+ *
+ * Only built with the `reactive` Maven profile, which adds WebFlux and R2DBC to the classpath, and
+ * started on its own, next to or instead of {@link TestudoBankApplication}:
+ *
+ *   mvn -P reactive compile
+ *   java -cp target/classes:... net.codejava.ReactiveTestudoBankApplication
+ *
+ * It reads the same application.properties. `testudo.r2dbc.url` names the DB and its connection pool,
+ * and the DB user and password are `spring.datasource.username` and `spring.datasource.password`,
+ * whose DataSource is still used by Flyway to migrate the schema on startup.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Import({SessionStore.class, ReactiveAccountRepository.class, ReactiveLedgerService.class, ReactiveAccountController.class})
+public class ReactiveTestudoBankApplication {
+
+  public static void main(String[] args) {
+    new SpringApplicationBuilder(ReactiveTestudoBankApplication.class).web(WebApplicationType.REACTIVE).run(args);
+  }
+
+  /**
+   * Wall clock used to timestamp TransactionHistory and OverdraftLogs rows.
+   */
+  @Bean
+  public Clock clock() {
+    return Clock.systemDefaultZone();
+  }
+
+  /**
+   * Netty, whose event loop threads never block on a request, rather than the Tomcat that the
+   * servlet application puts on the classpath and Spring Boot would otherwise pick.
+   */
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  /**
+   * @param url e.g. r2dbc:pool:mysql://localhost:3306/testudo_bank?maxSize=10
+   */
+  @Bean
+  public ConnectionFactory connectionFactory(@Value("${testudo.r2dbc.url}") String url,
+                                             @Value("${spring.datasource.username}") String username,
+                                             @Value("${spring.datasource.password}") String password) {
+    return ConnectionFactories.get(ConnectionFactoryOptions.parse(url)
+                                                           .mutate()
+                                                           .option(ConnectionFactoryOptions.USER, username)
+                                                           .option(ConnectionFactoryOptions.PASSWORD, password)
+                                                           .build());
+  }
+
+  @Bean
+  public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+    return DatabaseClient.create(connectionFactory);
+  }
+
+  /**
+   * Spring Boot wraps it in the TransactionalOperator that {@link ReactiveLedgerService} runs its
+   * transactions with. Not named transactionManager, which is the JDBC one that Flyway's DataSource gets.
+   */
+  @Bean
+  public ReactiveTransactionManager r2dbcTransactionManager(ConnectionFactory connectionFactory) {
+    return new R2dbcTransactionManager(connectionFactory);
+  }
+}
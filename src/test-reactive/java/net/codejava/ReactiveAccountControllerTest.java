@@ -0,0 +1,99 @@
+package net.codejava;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.connectionfactory.R2dbcTransactionManager;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+
+import java.time.Clock;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link AccountApiContract} against {@link ReactiveAccountController} wired to the real
+ * {@link ReactiveLedgerService}, with R2DBC's H2 driver standing in for the MySQL one on the same
+ * in-memory H2 DB.
+ */
+public class ReactiveAccountControllerTest extends AccountApiContract {
+  private ReactiveAccountController reactiveAccountController;
+
+  @Override
+  protected void createController() {
+    ConnectionFactory connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///" + DB_NAME + "?options=MODE=MySQL;DB_CLOSE_DELAY=-1");
+    ReactiveAccountRepository accountRepository = new ReactiveAccountRepository(DatabaseClient.create(connectionFactory));
+    ReactiveLedgerService ledgerService = new ReactiveLedgerService(accountRepository,
+                                                                    TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory)),
+                                                                    Clock.systemDefaultZone(),
+                                                                    new SimpleMeterRegistry());
+    reactiveAccountController = new ReactiveAccountController(sessionStore, accountRepository, ledgerService);
+  }
+
+  @Override
+  protected ResponseEntity<?> login(LoginRequest loginRequest) {
+    return reactiveAccountController.login(loginRequest).block();
+  }
+
+  @Override
+  protected ResponseEntity<?> logout(String sessionToken) {
+    return reactiveAccountController.logout(sessionToken).block();
+  }
+
+  @Override
+  protected ResponseEntity<?> getAccount(String customerID, String sessionToken) {
+    return reactiveAccountController.getAccount(customerID, sessionToken).block();
+  }
+
+  @Override
+  protected ResponseEntity<?> deposit(String customerID, String sessionToken, MoneyMovementRequest depositRequest) {
+    return reactiveAccountController.deposit(customerID, sessionToken, depositRequest).block();
+  }
+
+  @Override
+  protected ResponseEntity<?> withdraw(String customerID, String sessionToken, MoneyMovementRequest withdrawRequest) {
+    return reactiveAccountController.withdraw(customerID, sessionToken, withdrawRequest).block();
+  }
+
+  @Override
+  protected ResponseEntity<?> dispute(String customerID, String sessionToken, DisputeRequest disputeRequest) {
+    return reactiveAccountController.dispute(customerID, sessionToken, disputeRequest).block();
+  }
+
+  @Test
+  public void testRoutesThroughWebFlux() {
+    WebTestClient client = WebTestClient.bindToController(reactiveAccountController).build();
+
+    String cookie = client.post().uri("/api/sessions")
+                          .contentType(MediaType.APPLICATION_JSON)
+                          .bodyValue("{\"username\":\"" + CUSTOMER1_USERNAME + "\",\"password\":\"" + CUSTOMER1_PASSWORD + "\"}")
+                          .exchange()
+                          .expectStatus().isNoContent()
+                          .returnResult(Void.class)
+                          .getResponseHeaders()
+                          .getFirst(HttpHeaders.SET_COOKIE);
+    assertNotNull(cookie);
+    String sessionToken = cookie.substring(cookie.indexOf('=') + 1, cookie.indexOf(';'));
+
+    client.post().uri("/api/accounts/{id}/withdrawals", CUSTOMER1_USERNAME)
+          .cookie(SessionStore.SESSION_COOKIE, sessionToken)
+          .contentType(MediaType.APPLICATION_JSON)
+          .bodyValue("{\"amount\":\"12.50\"}")
+          .exchange()
+          .expectStatus().isOk()
+          .expectBody()
+          .jsonPath("$.balance").isEqualTo("87.50")
+          .jsonPath("$.transactionHistory[0].action").isEqualTo("Withdraw");
+
+    client.get().uri("/api/accounts/{id}", CUSTOMER2_USERNAME)
+          .cookie(SessionStore.SESSION_COOKIE, sessionToken)
+          .exchange()
+          .expectStatus().isForbidden();
+  }
+}
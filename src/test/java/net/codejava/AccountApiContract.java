@@ -0,0 +1,226 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+
+import static org.junit.Assert.*;
+
+/**
+ * Behavior of the JSON account API, which {@link AccountApiController} and ReactiveAccountController (built
+ * with the `reactive` profile) must both have. Each subclass wires its controller to the in-memory H2 DB named DB_NAME, in MySQL mode,
+ * and calls it through the methods below.
+ */
+public abstract class AccountApiContract {
+  protected static final String DB_NAME = "api";
+  protected static final String CUSTOMER1_USERNAME = "123456789";
+  protected static final String CUSTOMER1_PASSWORD = "password";
+  protected static final String CUSTOMER2_USERNAME = "987654321";
+
+  protected HikariDataSource dataSource;
+  protected JdbcTemplate jdbcTemplate;
+  protected SessionStore sessionStore;
+  protected String token;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource(DB_NAME);
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    sessionStore = new SessionStore(100, 30);
+    createController();
+
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 10000);
+    jdbcTemplate.update("INSERT INTO Passwords VALUES (?, ?)", CUSTOMER1_USERNAME, CUSTOMER1_PASSWORD);
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER2_USERNAME, "Jane", "Roe", 10000, 0, 0);
+    token = sessionStore.create(CUSTOMER1_USERNAME);
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  /**
+   * Creates the controller under test, with jdbcTemplate and sessionStore already set.
+   */
+  protected abstract void createController();
+
+  protected abstract ResponseEntity<?> login(LoginRequest loginRequest);
+
+  protected abstract ResponseEntity<?> logout(String sessionToken);
+
+  protected abstract ResponseEntity<?> getAccount(String customerID, String sessionToken);
+
+  protected abstract ResponseEntity<?> deposit(String customerID, String sessionToken, MoneyMovementRequest depositRequest);
+
+  protected abstract ResponseEntity<?> withdraw(String customerID, String sessionToken, MoneyMovementRequest withdrawRequest);
+
+  protected abstract ResponseEntity<?> dispute(String customerID, String sessionToken, DisputeRequest disputeRequest);
+
+  protected static MoneyMovementRequest amount(String dollars) {
+    MoneyMovementRequest request = new MoneyMovementRequest();
+    request.setAmount(Money.valueOf(dollars));
+    return request;
+  }
+
+  protected static DisputeRequest transactionsAgo(int numTransactionsAgo) {
+    DisputeRequest disputeRequest = new DisputeRequest();
+    disputeRequest.setNumTransactionsAgo(numTransactionsAgo);
+    return disputeRequest;
+  }
+
+  protected static String error(ResponseEntity<?> response) {
+    return ((ApiError) response.getBody()).getError();
+  }
+
+  @Test
+  public void testLoginSetsSessionCookie() {
+    LoginRequest loginRequest = new LoginRequest();
+    loginRequest.setUsername(CUSTOMER1_USERNAME);
+    loginRequest.setPassword(CUSTOMER1_PASSWORD);
+
+    ResponseEntity<?> response = login(loginRequest);
+
+    assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    String cookie = response.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+    assertTrue(cookie, cookie.startsWith(SessionStore.SESSION_COOKIE + "="));
+    // only sent over HTTPS, and never with requests from other sites
+    assertTrue(cookie, cookie.contains("; Secure"));
+    assertTrue(cookie, cookie.contains("; SameSite=Strict"));
+    String newToken = cookie.substring(cookie.indexOf('=') + 1, cookie.indexOf(';'));
+    assertEquals(CUSTOMER1_USERNAME, sessionStore.customerFor(newToken));
+
+    loginRequest.setPassword("not password");
+    assertEquals(HttpStatus.UNAUTHORIZED, login(loginRequest).getStatusCode());
+  }
+
+  @Test
+  public void testLogoutEndsSession() {
+    ResponseEntity<?> response = logout(token);
+
+    assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    String cookie = response.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+    assertTrue(cookie, cookie.startsWith(SessionStore.SESSION_COOKIE + "=;"));
+    assertTrue(cookie, cookie.contains("Max-Age=0"));
+    assertNull(sessionStore.customerFor(token));
+    assertEquals(HttpStatus.UNAUTHORIZED, getAccount(CUSTOMER1_USERNAME, token).getStatusCode());
+  }
+
+  @Test
+  public void testDepositReturnsUpdatedAccount() {
+    ResponseEntity<?> response = deposit(CUSTOMER1_USERNAME, token, amount("12.34"));
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    AccountSnapshot snapshot = (AccountSnapshot) response.getBody();
+    assertEquals(Money.ofCents(11234), snapshot.getBalance());
+    assertEquals(1, snapshot.getTransactionHistory().size());
+    assertEquals(snapshot, getAccount(CUSTOMER1_USERNAME, token).getBody());
+  }
+
+  @Test
+  public void testWithdrawIntoOverdraft() {
+    ResponseEntity<?> response = withdraw(CUSTOMER1_USERNAME, token, amount("150"));
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    AccountSnapshot snapshot = (AccountSnapshot) response.getBody();
+    assertEquals(Money.ZERO, snapshot.getBalance());
+    assertEquals(Money.ofCents(5100), snapshot.getOverdraftBalance());
+  }
+
+  @Test
+  public void testDepositPaysOffOverdraft() {
+    withdraw(CUSTOMER1_USERNAME, token, amount("150"));
+
+    ResponseEntity<?> response = deposit(CUSTOMER1_USERNAME, token, amount("60"));
+
+    AccountSnapshot snapshot = (AccountSnapshot) response.getBody();
+    assertEquals(Money.ofCents(900), snapshot.getBalance());
+    assertEquals(Money.ZERO, snapshot.getOverdraftBalance());
+    assertEquals(1, snapshot.getOverdraftLogs().size());
+    assertEquals(Money.ofCents(5100), snapshot.getOverdraftLogs().get(0).getOldOverdraftBalance());
+    assertEquals(2, snapshot.getTransactionHistory().size());
+    assertTrue(snapshot.getTransactionHistory().get(0).isDeposit());
+  }
+
+  @Test
+  public void testDisputeReversesTransaction() {
+    deposit(CUSTOMER1_USERNAME, token, amount("50"));
+
+    ResponseEntity<?> response = dispute(CUSTOMER1_USERNAME, token, transactionsAgo(1));
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(Money.ofCents(10000), ((AccountSnapshot) response.getBody()).getBalance());
+
+    response = dispute(CUSTOMER1_USERNAME, token, transactionsAgo(5));
+    assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    assertEquals("TRANSACTION_NOT_FOUND", error(response));
+  }
+
+  @Test
+  public void testDisputingOverdraftPayoffRestoresOverdraft() {
+    withdraw(CUSTOMER1_USERNAME, token, amount("150"));
+    deposit(CUSTOMER1_USERNAME, token, amount("60"));
+
+    ResponseEntity<?> response = dispute(CUSTOMER1_USERNAME, token, transactionsAgo(1));
+
+    AccountSnapshot snapshot = (AccountSnapshot) response.getBody();
+    assertEquals(Money.ZERO, snapshot.getBalance());
+    // no interest on the overdraft the deposit had paid off, and its log is gone
+    assertEquals(Money.ofCents(5100), snapshot.getOverdraftBalance());
+    assertEquals(0, snapshot.getOverdraftLogs().size());
+  }
+
+  @Test
+  public void testDisputedWithdrawsFreezeAccount() {
+    for (int i = 0; i < 2; i++) {
+      withdraw(CUSTOMER1_USERNAME, token, amount("1"));
+      assertEquals(HttpStatus.OK, dispute(CUSTOMER1_USERNAME, token, transactionsAgo(1)).getStatusCode());
+    }
+
+    ResponseEntity<?> response = deposit(CUSTOMER1_USERNAME, token, amount("1"));
+    assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+    assertEquals("ACCOUNT_FROZEN", error(response));
+    assertEquals(Money.ofCents(10000), ((AccountSnapshot) getAccount(CUSTOMER1_USERNAME, token).getBody()).getBalance());
+  }
+
+  @Test
+  public void testFailedOutcomesMapToStatusCodes() {
+    ResponseEntity<?> response = deposit(CUSTOMER1_USERNAME, token, amount("-1"));
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals("INVALID_AMOUNT", error(response));
+
+    response = withdraw(CUSTOMER1_USERNAME, token, amount("2000"));
+    assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+    assertEquals("OVERDRAFT_LIMIT_EXCEEDED", error(response));
+
+    response = deposit(CUSTOMER1_USERNAME, token, new MoneyMovementRequest());
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+  }
+
+  @Test
+  public void testAccountCallsRequireOwnSession() {
+    assertEquals(HttpStatus.UNAUTHORIZED, getAccount(CUSTOMER1_USERNAME, null).getStatusCode());
+    assertEquals(HttpStatus.UNAUTHORIZED, deposit(CUSTOMER1_USERNAME, "not a token", amount("1")).getStatusCode());
+    assertEquals(HttpStatus.FORBIDDEN, getAccount(CUSTOMER2_USERNAME, token).getStatusCode());
+    assertEquals(HttpStatus.FORBIDDEN, withdraw(CUSTOMER2_USERNAME, token, amount("1")).getStatusCode());
+
+    Integer customer2Balance = jdbcTemplate.queryForObject("SELECT Balance FROM Customers WHERE CustomerID=?", Integer.class, CUSTOMER2_USERNAME);
+    assertEquals(10000, (int) customer2Balance);
+  }
+
+  @Test
+  public void testAccountSerializesAmountsAsDollars() throws Exception {
+    String json = new ObjectMapper().findAndRegisterModules().writeValueAsString(getAccount(CUSTOMER1_USERNAME, token).getBody());
+
+    assertTrue(json, json.contains("\"balance\":\"100.00\""));
+    assertTrue(json, json.contains("\"firstName\":\"John\""));
+  }
+}
@@ -0,0 +1,61 @@
+package net.codejava;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Clock;
+
+/**
+ * Runs the {@link AccountApiContract} against {@link AccountApiController} wired to the real
+ * {@link LedgerService}, run against an in-memory H2 DB in MySQL mode.
+ */
+public class AccountApiControllerTest extends AccountApiContract {
+  private AccountApiController accountApiController;
+
+  @Override
+  protected void createController() {
+    TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    AccountSnapshotCache accountSnapshotCache = new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), 100);
+    LedgerService ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                                    new TransactionHistoryRepository(jdbcTemplate),
+                                                    new OverdraftLogRepository(jdbcTemplate),
+                                                    accountSnapshotCache,
+                                                    transactionTemplate,
+                                                    Clock.systemDefaultZone(),
+                                                    new SimpleMeterRegistry());
+    accountApiController = new AccountApiController(new CredentialCache(jdbcTemplate, new SimpleMeterRegistry(), 10000, 5), sessionStore, accountSnapshotCache, ledgerService);
+  }
+
+  @Override
+  protected ResponseEntity<?> login(LoginRequest loginRequest) {
+    return accountApiController.login(loginRequest);
+  }
+
+  @Override
+  protected ResponseEntity<?> logout(String sessionToken) {
+    return accountApiController.logout(sessionToken);
+  }
+
+  @Override
+  protected ResponseEntity<?> getAccount(String customerID, String sessionToken) {
+    return accountApiController.getAccount(customerID, sessionToken);
+  }
+
+  @Override
+  protected ResponseEntity<?> deposit(String customerID, String sessionToken, MoneyMovementRequest depositRequest) {
+    return accountApiController.deposit(customerID, sessionToken, depositRequest);
+  }
+
+  @Override
+  protected ResponseEntity<?> withdraw(String customerID, String sessionToken, MoneyMovementRequest withdrawRequest) {
+    return accountApiController.withdraw(customerID, sessionToken, withdrawRequest);
+  }
+
+  @Override
+  protected ResponseEntity<?> dispute(String customerID, String sessionToken, DisputeRequest disputeRequest) {
+    return accountApiController.dispute(customerID, sessionToken, disputeRequest);
+  }
+}
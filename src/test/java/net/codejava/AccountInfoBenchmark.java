@@ -0,0 +1,137 @@
+package net.codejava;
+
+import java.io.CharArrayWriter;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+/**
+ * Compares the "account_info" page of a customer with a long overdraft repayment history,
+ * rendered the old way against the bounded, typed rows that the page now iterates over.
+ *
+ * `concatenatedLogs` loads every OverdraftLogs row and joins them into one HTML string with `+=`,
+ * copying the string built so far for each row. `typedRows` loads the 10 most recent rows of the
+ * {@link AccountSnapshot} and writes each one out, as the JSP's `<c:forEach>` does. Both write the
+ * page's logs into the same buffer. Bytes allocated per operation are reported as gc.alloc.rate.norm.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=AccountInfoBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountInfoBenchmark {
+  private final static String CUSTOMER_ID = "123456789";
+  private final static int MAX_NUM_OVERDRAFT_LOGS_DISPLAYED = 10;
+  private final static int MAX_NUM_TRANSACTIONS_DISPLAYED = 3;
+  private final static String HTML_LINE_BREAK = "<br/>";
+  // the snapshot query before overdraft logs were bounded
+  private final static String UNBOUNDED_ACCOUNT_SNAPSHOT_SQL =
+      "SELECT 0 AS RowType, CustomerID, NULL AS Timestamp, FirstName AS Text1, LastName AS Text2, Balance AS Num1, OverdraftBalance AS Num2, NULL AS Num3, NULL AS LogID " +
+      "FROM Customers WHERE CustomerID=? " +
+      "UNION ALL " +
+      "SELECT 1, CustomerID, Timestamp, NULL, NULL, DepositAmt, OldOverBalance, NewOverBalance, OverdraftLogID " +
+      "FROM OverdraftLogs WHERE CustomerID=? " +
+      "UNION ALL " +
+      "(SELECT 2, CustomerID, Timestamp, Action, NULL, Amount, NULL, NULL, TransactionID " +
+      "FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?) " +
+      "ORDER BY RowType, Timestamp, LogID";
+
+  @Param({"100", "10000"})
+  public int overdraftLogRows;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private AccountSnapshotRepository accountSnapshotRepository;
+  private CharArrayWriter page = new CharArrayWriter();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("accountinfo");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    accountSnapshotRepository = new AccountSnapshotRepository(jdbcTemplate);
+
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER_ID, 10000);
+    jdbcTemplate.update("INSERT INTO OverdraftLogs (CustomerID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance) "
+                        + "SELECT ?, DATEADD('MINUTE', X, ?), 10000, 5100, 0 FROM SYSTEM_RANGE(1, ?)",
+                        CUSTOMER_ID, LocalDateTime.of(2020, 1, 1, 0, 0), overdraftLogRows);
+    TransactionHistoryRepository transactionHistoryRepository = new TransactionHistoryRepository(jdbcTemplate);
+    for (int i = 0; i < MAX_NUM_TRANSACTIONS_DISPLAYED; i++) {
+      transactionHistoryRepository.insert(CUSTOMER_ID, LocalDateTime.of(2021, 1, 1, 0, i), "Deposit", Money.ofCents(10000));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Benchmark
+  public int concatenatedLogs() {
+    String[] logs = jdbcTemplate.query(UNBOUNDED_ACCOUNT_SNAPSHOT_SQL, concatenatingExtractor(),
+                                       CUSTOMER_ID, CUSTOMER_ID, CUSTOMER_ID, MAX_NUM_TRANSACTIONS_DISPLAYED);
+    page.reset();
+    page.append(logs[0]).append(logs[1]);
+    return page.size();
+  }
+
+  @Benchmark
+  public int typedRows() {
+    AccountSnapshot snapshot = accountSnapshotRepository.loadSnapshot(CUSTOMER_ID, MAX_NUM_OVERDRAFT_LOGS_DISPLAYED,
+                                                                      MAX_NUM_TRANSACTIONS_DISPLAYED);
+    page.reset();
+    for (OverdraftLogEntry overdraftLog : snapshot.getOverdraftLogs()) {
+      page.append(overdraftLog.getTimestamp().toString()).append(" Deposit: $").append(overdraftLog.getDepositAmt().toString())
+          .append(" Overdraft: $").append(overdraftLog.getOldOverdraftBalance().toString())
+          .append(" to $").append(overdraftLog.getNewOverdraftBalance().toString()).append(HTML_LINE_BREAK);
+    }
+    for (TransactionRecord transactionLog : snapshot.getTransactionHistory()) {
+      page.append(transactionLog.getTimestamp().toString()).append(' ').append(transactionLog.getAction())
+          .append(": $").append(transactionLog.getAmount().toString()).append(HTML_LINE_BREAK);
+    }
+    return page.size();
+  }
+
+  /**
+   * @return extractor that builds the overdraft and transaction logs as the page used to, one `+=` per row
+   */
+  private static ResultSetExtractor<String[]> concatenatingExtractor() {
+    return rs -> {
+      String logs = HTML_LINE_BREAK;
+      String transactionHistoryOutput = HTML_LINE_BREAK;
+      while (rs.next()) {
+        int rowType = rs.getInt(1);
+        if (rowType == 1) {
+          OverdraftLogEntry overdraftLog = new OverdraftLogEntry(rs.getLong(9), CUSTOMER_ID, rs.getObject(3, LocalDateTime.class),
+                                                                 Money.ofCents(rs.getLong(6)), Money.ofCents(rs.getLong(7)),
+                                                                 Money.ofCents(rs.getLong(8)));
+          logs += overdraftLog + HTML_LINE_BREAK;
+        } else if (rowType == 2) {
+          TransactionRecord transactionLog = new TransactionRecord(rs.getLong(9), CUSTOMER_ID, rs.getObject(3, LocalDateTime.class),
+                                                                   rs.getString(4), Money.ofCents(rs.getLong(6)));
+          transactionHistoryOutput += transactionLog + HTML_LINE_BREAK;
+        }
+      }
+      return new String[] {logs, transactionHistoryOutput};
+    };
+  }
+}
@@ -0,0 +1,192 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AccountSnapshotCache} wired into {@link LedgerService}, run against an in-memory
+ * H2 DB in MySQL mode. A customer must always read back their own writes, even while other threads
+ * keep loading the same snapshot into the cache.
+ */
+public class AccountSnapshotCacheTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final int NUM_WRITERS = 4;
+  private static final int NUM_READERS = 8;
+  private static final int DEPOSITS_PER_WRITER = 50;
+  private static final long TTL_IN_SECONDS = 30;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private AccountSnapshotCache accountSnapshotCache;
+  private LedgerService ledgerService;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("snapshots", NUM_WRITERS + NUM_READERS);
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    accountSnapshotCache = new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), 100);
+    ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                      new TransactionHistoryRepository(jdbcTemplate),
+                                      new OverdraftLogRepository(jdbcTemplate),
+                                      accountSnapshotCache,
+                                      transactionTemplate,
+                                      Clock.systemDefaultZone(),
+                                      new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Test
+  public void testRepeatedReadsAreServedFromCache() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 1000);
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(1000, accountSnapshotCache.get(CUSTOMER1_USERNAME).getBalance().getCents());
+    }
+
+    assertEquals(1, accountSnapshotCache.stats().missCount());
+    assertEquals(4, accountSnapshotCache.stats().hitCount());
+  }
+
+  @Test
+  public void testCacheStatsAreReportedAsMeters() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 1000);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    AccountSnapshotCache meteredCache = new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), ReplicationTracker.primaryOnly(),
+                                                                 meterRegistry, 100, 30);
+
+    for (int i = 0; i < 3; i++) {
+      meteredCache.get(CUSTOMER1_USERNAME);
+    }
+
+    assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "account-snapshots").tag("result", "hit").functionCounter().count(), 0);
+    assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "account-snapshots").tag("result", "miss").functionCounter().count(), 0);
+  }
+
+  @Test
+  public void testWriteByAnotherInstanceIsSeenOnceSnapshotExpires() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 1000);
+    AtomicLong nanoTime = new AtomicLong();
+    AccountSnapshotCache expiringCache = new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), ReplicationTracker.primaryOnly(),
+                                                                  new SimpleMeterRegistry(), 100, TTL_IN_SECONDS, TimeUnit.SECONDS, nanoTime::get);
+    assertEquals(1000, expiringCache.get(CUSTOMER1_USERNAME).getBalance().getCents());
+
+    // another instance of the app moves money without invalidating this instance's cache
+    jdbcTemplate.update("UPDATE Customers SET Balance = 750 WHERE CustomerID = ?", CUSTOMER1_USERNAME);
+    nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS - 1));
+    assertEquals(1000, expiringCache.get(CUSTOMER1_USERNAME).getBalance().getCents());
+
+    nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(750, expiringCache.get(CUSTOMER1_USERNAME).getBalance().getCents());
+    assertEquals(2, expiringCache.stats().missCount());
+  }
+
+  @Test
+  public void testMoneyMovementInvalidatesSnapshot() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 1000);
+    assertEquals(1000, accountSnapshotCache.get(CUSTOMER1_USERNAME).getBalance().getCents());
+
+    ledgerService.withdraw(CUSTOMER1_USERNAME, Money.ofCents(250));
+    AccountSnapshot snapshot = accountSnapshotCache.get(CUSTOMER1_USERNAME);
+
+    assertEquals(750, snapshot.getBalance().getCents());
+    assertEquals(1, snapshot.getTransactionHistory().size());
+    assertEquals(2, accountSnapshotCache.stats().missCount());
+  }
+
+  @Test
+  public void testSnapshotHoldsOnlyMostRecentOverdraftLogs() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 0);
+    OverdraftLogRepository overdraftLogRepository = new OverdraftLogRepository(jdbcTemplate);
+    LocalDateTime timestamp = LocalDateTime.of(2021, 11, 3, 11, 35, 45);
+    // the snapshot reads the logs on their own, so they point at made-up TransactionIDs
+    for (int i = 0; i < 25; i++) {
+      overdraftLogRepository.insert(CUSTOMER1_USERNAME, i, timestamp.plusSeconds(i), Money.ofCents(i + 1), Money.ofCents(100), Money.ZERO);
+    }
+
+    List<OverdraftLogEntry> overdraftLogs = accountSnapshotCache.get(CUSTOMER1_USERNAME).getOverdraftLogs();
+
+    assertEquals(10, overdraftLogs.size());
+    assertEquals(25, overdraftLogs.get(0).getDepositAmt().getCents());
+    assertEquals(16, overdraftLogs.get(9).getDepositAmt().getCents());
+  }
+
+  @Test
+  public void testWritersReadTheirOwnWritesUnderConcurrentReads() throws Exception {
+    // each writer owns one customer, and readers keep re-caching all of them
+    for (int writer = 0; writer < NUM_WRITERS; writer++) {
+      H2Fixture.insertCustomer(jdbcTemplate, "writer" + writer, 0);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_WRITERS + NUM_READERS);
+    CountDownLatch startingGun = new CountDownLatch(1);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    List<Future<?>> readers = new ArrayList<>();
+    for (int reader = 0; reader < NUM_READERS; reader++) {
+      readers.add(executor.submit(() -> {
+        startingGun.await();
+        for (int i = 0; writing.get(); i++) {
+          accountSnapshotCache.get("writer" + (i % NUM_WRITERS));
+        }
+        return null;
+      }));
+    }
+    List<Future<?>> writers = new ArrayList<>();
+    for (int writer = 0; writer < NUM_WRITERS; writer++) {
+      String customerID = "writer" + writer;
+      writers.add(executor.submit(() -> {
+        startingGun.await();
+        for (int i = 1; i <= DEPOSITS_PER_WRITER; i++) {
+          assertEquals(LedgerOutcome.APPLIED, ledgerService.deposit(customerID, Money.ofCents(100)));
+          // a stale snapshot would still show the balance from before this deposit
+          AccountSnapshot snapshot = accountSnapshotCache.get(customerID);
+          assertEquals(i * 100, snapshot.getBalance().getCents());
+          assertEquals(Math.min(i, 3), snapshot.getTransactionHistory().size());
+        }
+        return null;
+      }));
+    }
+    startingGun.countDown();
+
+    try {
+      for (Future<?> writer : writers) {
+        writer.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      writing.set(false);
+    }
+    for (Future<?> reader : readers) {
+      reader.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    // readers must actually have been served from the cache between writes
+    assertTrue(accountSnapshotCache.stats().hitCount() > 0);
+  }
+}
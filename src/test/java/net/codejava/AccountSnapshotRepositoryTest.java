@@ -0,0 +1,106 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link AccountSnapshotRepository} loads the same snapshot with and without
+ * `testudo.snapshot.fan-out.enabled`, run against an in-memory H2 DB in MySQL mode.
+ */
+public class AccountSnapshotRepositoryTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final int MAX_OVERDRAFT_LOGS = 10;
+  private static final int MAX_TRANSACTIONS = 3;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("fanout", 4);
+    dataSource.setConnectionTimeout(1000);
+    jdbcTemplate = new JdbcTemplate(dataSource);
+
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, "John", "Doe", 10000, 5100, 0);
+    OverdraftLogRepository overdraftLogRepository = new OverdraftLogRepository(jdbcTemplate);
+    TransactionHistoryRepository transactionHistoryRepository = new TransactionHistoryRepository(jdbcTemplate);
+    for (int i = 0; i < MAX_OVERDRAFT_LOGS + 2; i++) {
+      LocalDateTime timestamp = LocalDateTime.of(2021, 1, 1, 0, i);
+      long transactionID = transactionHistoryRepository.insert(CUSTOMER1_USERNAME, timestamp, i % 2 == 0 ? "Deposit" : "Withdraw", Money.ofCents(100 + i));
+      overdraftLogRepository.insert(CUSTOMER1_USERNAME, transactionID, timestamp, Money.ofCents(100 + i), Money.ofCents(5100), Money.ofCents(5000 - i));
+    }
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Test
+  public void testFanOutLoadsSameSnapshot() {
+    AccountSnapshotRepository singleQuery = new AccountSnapshotRepository(jdbcTemplate);
+    // fewer threads than reads, so one of them runs on the calling thread
+    AccountSnapshotRepository fanOut = new AccountSnapshotRepository(jdbcTemplate, true, 2, 2000);
+
+    try {
+      AccountSnapshot expected = singleQuery.loadSnapshot(CUSTOMER1_USERNAME, MAX_OVERDRAFT_LOGS, MAX_TRANSACTIONS);
+      AccountSnapshot actual = fanOut.loadSnapshot(CUSTOMER1_USERNAME, MAX_OVERDRAFT_LOGS, MAX_TRANSACTIONS);
+
+      assertEquals(MAX_OVERDRAFT_LOGS, actual.getOverdraftLogs().size());
+      assertEquals(MAX_TRANSACTIONS, actual.getTransactionHistory().size());
+      assertEquals(LocalDateTime.of(2021, 1, 1, 0, MAX_OVERDRAFT_LOGS + 1), actual.getTransactionHistory().get(0).getTimestamp());
+      assertEquals(expected, actual);
+    } finally {
+      fanOut.shutdown();
+    }
+  }
+
+  @Test
+  public void testFanOutMissingCustomer() {
+    AccountSnapshotRepository fanOut = new AccountSnapshotRepository(jdbcTemplate, true, 3, 2000);
+
+    try {
+      fanOut.loadSnapshot("000000000", MAX_OVERDRAFT_LOGS, MAX_TRANSACTIONS);
+      fail("loaded a snapshot of a customer that doesn't exist");
+    } catch (EmptyResultDataAccessException e) {
+      // expected, as without fan-out
+    } finally {
+      fanOut.shutdown();
+    }
+  }
+
+  @Test
+  public void testFanOutTimesOut() throws Exception {
+    AccountSnapshotRepository fanOut = new AccountSnapshotRepository(jdbcTemplate, true, 3, 100);
+    // every pooled connection is taken, so the reads wait for one until the pool gives up
+    Connection[] connections = new Connection[dataSource.getMaximumPoolSize()];
+    for (int i = 0; i < connections.length; i++) {
+      connections[i] = dataSource.getConnection();
+    }
+
+    long start = System.nanoTime();
+    try {
+      fanOut.loadSnapshot(CUSTOMER1_USERNAME, MAX_OVERDRAFT_LOGS, MAX_TRANSACTIONS);
+      fail("loaded a snapshot without a connection");
+    } catch (QueryTimeoutException e) {
+      // expected
+      assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    } finally {
+      for (Connection connection : connections) {
+        connection.close();
+      }
+      fanOut.shutdown();
+    }
+  }
+}
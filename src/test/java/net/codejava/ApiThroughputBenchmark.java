@@ -0,0 +1,135 @@
+package net.codejava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Load test of the whole application over HTTP: the same deposit and account read submitted
+ * as a form that renders the "account_info" JSP, and as a call to {@link AccountApiController}
+ * that returns JSON.
+ *
+ * The app is started on a random port against an in-memory H2 DB. Every request carries the
+ * session cookie of a customer that logged in during setup, so neither path checks a password.
+ * The score is requests per second, with every response body read to the end.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=ApiThroughputBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ApiThroughputBenchmark {
+  private final static String CUSTOMER_ID = "123456789";
+  private final static String PASSWORD = "password";
+
+  private ConfigurableApplicationContext context;
+  private String baseUrl;
+  private String sessionCookie;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    // a new in-memory H2 DB is created with whatever credentials the first connection uses
+    context = SpringApplication.run(TestudoBankApplication.class,
+                                    "--server.port=0",
+                                    "--spring.datasource.url=" + H2Fixture.memoryUrl("throughput"),
+                                    "--spring.datasource.username=sa",
+                                    "--spring.datasource.password=sa",
+                                    "--logging.level.root=WARN",
+                                    "--logging.level.net.codejava=WARN");
+    baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER_ID, 0);
+    jdbcTemplate.update("INSERT INTO Passwords VALUES (?, ?)", CUSTOMER_ID, PASSWORD);
+
+    HttpURLConnection login = post("/api/sessions", "application/json",
+                                   "{\"username\":\"" + CUSTOMER_ID + "\",\"password\":\"" + PASSWORD + "\"}");
+    String setCookie = login.getHeaderField("Set-Cookie");
+    readBody(login);
+    sessionCookie = setCookie.substring(0, setCookie.indexOf(';'));
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    context.close();
+  }
+
+  @Benchmark
+  public int jspDeposit() throws IOException {
+    return readBody(post("/deposit", "application/x-www-form-urlencoded",
+                         "username=" + CUSTOMER_ID + "&amountToDeposit=0.01"));
+  }
+
+  @Benchmark
+  public int apiDeposit() throws IOException {
+    return readBody(post("/api/accounts/" + CUSTOMER_ID + "/deposits", "application/json", "{\"amount\":\"0.01\"}"));
+  }
+
+  @Benchmark
+  public int jspLogin() throws IOException {
+    return readBody(post("/login", "application/x-www-form-urlencoded", "username=" + CUSTOMER_ID + "&password=" + PASSWORD));
+  }
+
+  @Benchmark
+  public int apiAccount() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/api/accounts/" + CUSTOMER_ID).openConnection();
+    connection.setRequestProperty("Cookie", sessionCookie);
+    return readBody(connection);
+  }
+
+  private HttpURLConnection post(String path, String contentType, String body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", contentType);
+    if (sessionCookie != null) {
+      connection.setRequestProperty("Cookie", sessionCookie);
+    }
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    return connection;
+  }
+
+  /**
+   * @return length of the response body, which is read to the end so the connection is kept alive
+   */
+  private static int readBody(HttpURLConnection connection) throws IOException {
+    if (connection.getResponseCode() >= 300) {
+      throw new IllegalStateException(connection.getRequestMethod() + " " + connection.getURL() + " returned " + connection.getResponseCode());
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try (InputStream in = connection.getInputStream()) {
+      byte[] buffer = new byte[4096];
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        body.write(buffer, 0, read);
+      }
+    }
+    return body.size();
+  }
+}
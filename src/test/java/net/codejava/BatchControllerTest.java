@@ -0,0 +1,270 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests for {@link BatchController} and {@link LedgerService#applyBatch}, run against an in-memory
+ * H2 DB in MySQL mode.
+ */
+public class BatchControllerTest {
+  private static final String BATCH_CUSTOMER = "111111111";
+  private static final String SINGLE_CUSTOMER = "222222222";
+  private static final String FROZEN_CUSTOMER = "333333333";
+  private static final String API_KEY = "payroll-key";
+  private static final int MAX_OPERATIONS = 20;
+  private static final int MAX_OPERATIONS_PER_TRANSACTION = 3;
+  private static final int MAX_BODY_BYTES = 4096;
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private LedgerService ledgerService;
+  private BatchController batchController;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("batch");
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                      new TransactionHistoryRepository(jdbcTemplate),
+                                      new OverdraftLogRepository(jdbcTemplate),
+                                      new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), 100),
+                                      transactionTemplate,
+                                      Clock.systemDefaultZone(),
+                                      new SimpleMeterRegistry());
+    batchController = new BatchController(ledgerService, OBJECT_MAPPER, API_KEY, MAX_OPERATIONS, MAX_OPERATIONS_PER_TRANSACTION, MAX_BODY_BYTES);
+
+    H2Fixture.insertCustomer(jdbcTemplate, BATCH_CUSTOMER, 10000);
+    H2Fixture.insertCustomer(jdbcTemplate, SINGLE_CUSTOMER, "Jane", "Roe", 10000, 0, 0);
+    H2Fixture.insertCustomer(jdbcTemplate, FROZEN_CUSTOMER, "Jim", "Poe", 10000, 0, 2);
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  private static BatchOperation operation(String customerID, BatchOperation.Type type, String dollars) {
+    return new BatchOperation(customerID, type, Money.valueOf(dollars));
+  }
+
+  private static InputStream json(List<BatchOperation> operations) throws IOException {
+    return new ByteArrayInputStream(OBJECT_MAPPER.writeValueAsBytes(operations));
+  }
+
+  private static InputStream body(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static BatchReport report(ResponseEntity<?> response) {
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    return (BatchReport) response.getBody();
+  }
+
+  @Test
+  public void testBatchAppliesSameRulesAsSingleOperations() throws Exception {
+    // into overdraft with interest, past the overdraft limit, paying the overdraft off in two deposits,
+    // an invalid amount, and a plain withdraw, spread over several transactions
+    List<String[]> steps = Arrays.asList(new String[] {"WITHDRAW", "150"},
+                                         new String[] {"WITHDRAW", "2000"},
+                                         new String[] {"DEPOSIT", "20"},
+                                         new String[] {"DEPOSIT", "-5"},
+                                         new String[] {"DEPOSIT", "100"},
+                                         new String[] {"WITHDRAW", "10.25"},
+                                         new String[] {"DEPOSIT", "0.99"});
+    List<BatchOperation> operations = new ArrayList<>();
+    List<LedgerOutcome> singleOutcomes = new ArrayList<>();
+    for (String[] step : steps) {
+      BatchOperation.Type type = BatchOperation.Type.valueOf(step[0]);
+      operations.add(operation(BATCH_CUSTOMER, type, step[1]));
+      Money amount = Money.valueOf(step[1]);
+      singleOutcomes.add(type == BatchOperation.Type.DEPOSIT ? ledgerService.deposit(SINGLE_CUSTOMER, amount)
+                                                             : ledgerService.withdraw(SINGLE_CUSTOMER, amount));
+    }
+
+    BatchReport report = report(batchController.submitBatch(API_KEY, json(operations)));
+
+    List<LedgerOutcome> batchOutcomes = new ArrayList<>();
+    for (BatchLineResult result : report.getResults()) {
+      batchOutcomes.add(result.getOutcome());
+    }
+    assertEquals(singleOutcomes, batchOutcomes);
+    assertEquals(5, report.getApplied());
+    assertEquals(2, report.getRejected());
+    assertTrue(report.getOperationsPerSecond() > 0);
+
+    String customerSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=?";
+    assertEquals(jdbcTemplate.queryForMap(customerSql, SINGLE_CUSTOMER), jdbcTemplate.queryForMap(customerSql, BATCH_CUSTOMER));
+    String historySql = "SELECT Action, Amount FROM TransactionHistory WHERE CustomerID=? ORDER BY TransactionID";
+    assertEquals(jdbcTemplate.queryForList(historySql, SINGLE_CUSTOMER), jdbcTemplate.queryForList(historySql, BATCH_CUSTOMER));
+    String overdraftLogSql = "SELECT DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE CustomerID=? ORDER BY OverdraftLogID";
+    List<Map<String, Object>> overdraftLogs = jdbcTemplate.queryForList(overdraftLogSql, BATCH_CUSTOMER);
+    assertEquals(2, overdraftLogs.size());
+    assertEquals(jdbcTemplate.queryForList(overdraftLogSql, SINGLE_CUSTOMER), overdraftLogs);
+  }
+
+  @Test
+  public void testCsvReportsEveryLineInOrder() throws Exception {
+    String file = "CustomerID,Type,Amount\n"
+                  + "111111111,DEPOSIT,10.00\r\n"
+                  + "999999999,deposit,10.00\n"
+                  + "\n"
+                  + "333333333,WITHDRAW,1\n"
+                  + "222222222,Withdraw,5000\n"
+                  + "111111111,WITHDRAW,0.50\n";
+
+    BatchReport report = report(batchController.submitCsvBatch(API_KEY, body(file)));
+
+    List<BatchLineResult> expected = Arrays.asList(new BatchLineResult(2, BATCH_CUSTOMER, LedgerOutcome.APPLIED),
+                                                   new BatchLineResult(3, "999999999", LedgerOutcome.CUSTOMER_NOT_FOUND),
+                                                   new BatchLineResult(5, FROZEN_CUSTOMER, LedgerOutcome.ACCOUNT_FROZEN),
+                                                   new BatchLineResult(6, SINGLE_CUSTOMER, LedgerOutcome.OVERDRAFT_LIMIT_EXCEEDED),
+                                                   new BatchLineResult(7, BATCH_CUSTOMER, LedgerOutcome.APPLIED));
+    assertEquals(expected, report.getResults());
+    Integer balance = jdbcTemplate.queryForObject("SELECT Balance FROM Customers WHERE CustomerID=?", Integer.class, BATCH_CUSTOMER);
+    assertEquals(10950, (int) balance);
+    Integer frozenBalance = jdbcTemplate.queryForObject("SELECT Balance FROM Customers WHERE CustomerID=?", Integer.class, FROZEN_CUSTOMER);
+    assertEquals(10000, (int) frozenBalance);
+  }
+
+  @Test
+  public void testFailedTransactionIsReportedWithWhatWasCommitted() throws Exception {
+    String laterCustomer = "444444444";
+    H2Fixture.insertCustomer(jdbcTemplate, laterCustomer, 10000);
+    // fails the second transaction, which holds SINGLE_CUSTOMER's deposit
+    jdbcTemplate.execute("ALTER TABLE TransactionHistory ADD CONSTRAINT NoSingleCustomer CHECK (CustomerID <> '" + SINGLE_CUSTOMER + "')");
+    String file = "111111111,DEPOSIT,1\n"
+                  + "111111111,DEPOSIT,1\n"
+                  + "111111111,DEPOSIT,1\n"
+                  + "222222222,DEPOSIT,1\n"
+                  + "333333333,WITHDRAW,1\n"
+                  + "444444444,DEPOSIT,1\n";
+
+    BatchReport report = report(batchController.submitCsvBatch(API_KEY, body(file)));
+
+    // the first transaction stays committed, and the batch stops at the failed one
+    List<BatchLineResult> expected = Arrays.asList(new BatchLineResult(1, BATCH_CUSTOMER, LedgerOutcome.APPLIED),
+                                                   new BatchLineResult(2, BATCH_CUSTOMER, LedgerOutcome.APPLIED),
+                                                   new BatchLineResult(3, BATCH_CUSTOMER, LedgerOutcome.APPLIED),
+                                                   new BatchLineResult(4, SINGLE_CUSTOMER, LedgerOutcome.NOT_COMMITTED),
+                                                   new BatchLineResult(5, FROZEN_CUSTOMER, LedgerOutcome.NOT_COMMITTED),
+                                                   new BatchLineResult(6, laterCustomer, LedgerOutcome.NOT_COMMITTED));
+    assertEquals(expected, report.getResults());
+    assertEquals(3, report.getApplied());
+    String balanceSql = "SELECT Balance FROM Customers WHERE CustomerID=?";
+    assertEquals(10300, (int) jdbcTemplate.queryForObject(balanceSql, Integer.class, BATCH_CUSTOMER));
+    assertEquals(10000, (int) jdbcTemplate.queryForObject(balanceSql, Integer.class, SINGLE_CUSTOMER));
+    assertEquals(10000, (int) jdbcTemplate.queryForObject(balanceSql, Integer.class, laterCustomer));
+    assertEquals(3, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory", Integer.class));
+  }
+
+  @Test
+  public void testMalformedLineRejectsWholeBatch() throws Exception {
+    String file = "111111111,DEPOSIT,10.00\n"
+                  + "111111111,DEPOSIT,ten dollars\n";
+
+    ResponseEntity<?> response = batchController.submitCsvBatch(API_KEY, body(file));
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals(new ApiError("INVALID_OPERATION", 2), response.getBody());
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory", Integer.class));
+
+    List<BatchOperation> operations = Arrays.asList(operation(BATCH_CUSTOMER, BatchOperation.Type.DEPOSIT, "1"),
+                                                    new BatchOperation(BATCH_CUSTOMER, null, Money.ofCents(100)));
+    response = batchController.submitBatch(API_KEY, json(operations));
+    assertEquals(new ApiError("INVALID_OPERATION", 2), response.getBody());
+  }
+
+  @Test
+  public void testApiKeyIsCheckedBeforeBodyIsRead() throws Exception {
+    InputStream unread = new InputStream() {
+      @Override
+      public int read() {
+        throw new AssertionError("Body was read without a valid API key");
+      }
+    };
+    assertEquals(HttpStatus.UNAUTHORIZED, batchController.submitBatch(null, unread).getStatusCode());
+    assertEquals(HttpStatus.UNAUTHORIZED, batchController.submitCsvBatch("not the key", unread).getStatusCode());
+
+    // nor does Spring parse the body before the handler runs
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(batchController).build();
+    mockMvc.perform(post("/api/batches").contentType(MediaType.APPLICATION_JSON).content("not json"))
+           .andExpect(status().isUnauthorized());
+  }
+
+  @Test
+  public void testUnreadableJsonIsRejected() throws Exception {
+    for (String json : Arrays.asList("null", "", "not json", "[{\"customerID\": \"111111111\", \"type\": \"PAYOUT\", \"amount\": \"1\"}]")) {
+      ResponseEntity<?> response = batchController.submitBatch(API_KEY, body(json));
+      assertEquals(json, HttpStatus.BAD_REQUEST, response.getStatusCode());
+      assertEquals(json, new ApiError("INVALID_OPERATION"), response.getBody());
+    }
+  }
+
+  @Test
+  public void testBodyTooLarge() throws Exception {
+    StringBuilder file = new StringBuilder();
+    while (file.length() <= MAX_BODY_BYTES) {
+      file.append("111111111,DEPOSIT,1\n");
+    }
+
+    ResponseEntity<?> response = batchController.submitCsvBatch(API_KEY, body(file.toString()));
+
+    assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+    assertEquals(new ApiError("BODY_TOO_LARGE"), response.getBody());
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory", Integer.class));
+  }
+
+  @Test
+  public void testBatchesRequireApiKey() throws Exception {
+    List<BatchOperation> operations = Arrays.asList(operation(BATCH_CUSTOMER, BatchOperation.Type.DEPOSIT, "1"));
+
+    assertEquals(HttpStatus.UNAUTHORIZED, batchController.submitBatch(null, json(operations)).getStatusCode());
+    assertEquals(HttpStatus.UNAUTHORIZED, batchController.submitBatch("not the key", json(operations)).getStatusCode());
+    BatchController disabledController = new BatchController(ledgerService, OBJECT_MAPPER, "", MAX_OPERATIONS, MAX_OPERATIONS_PER_TRANSACTION,
+                                                             MAX_BODY_BYTES);
+    assertEquals(HttpStatus.FORBIDDEN, disabledController.submitBatch("", json(operations)).getStatusCode());
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory", Integer.class));
+  }
+
+  @Test
+  public void testTooManyOperations() throws Exception {
+    List<BatchOperation> operations = new ArrayList<>();
+    for (int i = 0; i <= MAX_OPERATIONS; i++) {
+      operations.add(operation(BATCH_CUSTOMER, BatchOperation.Type.DEPOSIT, "1"));
+    }
+
+    assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, batchController.submitBatch(API_KEY, json(operations)).getStatusCode());
+  }
+}
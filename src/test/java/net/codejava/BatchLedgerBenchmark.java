@@ -0,0 +1,102 @@
+package net.codejava;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares a payroll run of 1000 deposits and withdraws over 100 customers, applied one money movement
+ * at a time (`singleOperations`, as one `/deposit` or `/withdraw` post per line does) against
+ * {@link LedgerService#applyBatch} (`batch`, as `POST /api/batches` does).
+ *
+ * The score is operations per second. Withdraws are small enough that no account goes into overdraft.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=BatchLedgerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchLedgerBenchmark {
+  private final static int NUM_CUSTOMERS = 100;
+  private final static int NUM_OPERATIONS = 1000;
+  private final static int MAX_OPERATIONS_PER_TRANSACTION = 500;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private LedgerService ledgerService;
+  private List<BatchOperation> operations = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("batch");
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                      new TransactionHistoryRepository(jdbcTemplate),
+                                      new OverdraftLogRepository(jdbcTemplate),
+                                      new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), NUM_CUSTOMERS),
+                                      transactionTemplate,
+                                      Clock.systemDefaultZone(),
+                                      new SimpleMeterRegistry());
+
+    for (int i = 0; i < NUM_CUSTOMERS; i++) {
+      H2Fixture.insertCustomer(jdbcTemplate, String.valueOf(100000000 + i), 100000000);
+    }
+    // a payroll run alternates employers' withdraws with employees' deposits
+    for (int i = 0; i < NUM_OPERATIONS; i++) {
+      BatchOperation.Type type = i % 2 == 0 ? BatchOperation.Type.DEPOSIT : BatchOperation.Type.WITHDRAW;
+      operations.add(new BatchOperation(String.valueOf(100000000 + i % NUM_CUSTOMERS), type, Money.ofCents(100 + i)));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OPERATIONS)
+  public int singleOperations() {
+    int applied = 0;
+    for (BatchOperation operation : operations) {
+      LedgerOutcome outcome = operation.getType() == BatchOperation.Type.DEPOSIT
+                              ? ledgerService.deposit(operation.getCustomerID(), operation.getAmount())
+                              : ledgerService.withdraw(operation.getCustomerID(), operation.getAmount());
+      if (outcome == LedgerOutcome.APPLIED) {
+        applied++;
+      }
+    }
+    return applied;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OPERATIONS)
+  public List<LedgerOutcome> batch() {
+    return ledgerService.applyBatch(operations, MAX_OPERATIONS_PER_TRANSACTION);
+  }
+}
@@ -0,0 +1,103 @@
+package net.codejava;
+
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Repeated authenticated operations by a working set of customers, checking each password
+ * either straight against the DB (the old handler code) or through {@link CredentialCache}.
+ *
+ * The `dbQueries` counter reports how many password queries reached the DB.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=CredentialBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CredentialBenchmark {
+  private final static int NUM_CUSTOMERS = 1000;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private CredentialCache credentialCache;
+  private String[] customerIDs;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("credentials");
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    credentialCache = new CredentialCache(jdbcTemplate, new SimpleMeterRegistry(), 10000, 5);
+    customerIDs = new String[NUM_CUSTOMERS];
+    for (int i = 0; i < NUM_CUSTOMERS; i++) {
+      customerIDs[i] = String.format("%09d", i);
+      jdbcTemplate.update("INSERT INTO Passwords VALUES (?, ?)", customerIDs[i], "password" + i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  /**
+   * Hands out customers round-robin, one cursor per benchmark thread, and counts the
+   * password queries that thread sent to the DB.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class CustomerCursor {
+    public long dbQueries;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      dbQueries = 0;
+    }
+
+    int nextCustomer() {
+      next = (next + 1) % NUM_CUSTOMERS;
+      return next;
+    }
+  }
+
+  @Benchmark
+  public boolean uncachedPasswordCheck(CustomerCursor cursor) {
+    int customer = cursor.nextCustomer();
+    String userPassword = jdbcTemplate.queryForObject(CredentialCache.GET_USER_PASSWORD_SQL, String.class, customerIDs[customer]);
+    cursor.dbQueries++;
+    return ("password" + customer).equals(userPassword);
+  }
+
+  @Benchmark
+  public boolean cachedPasswordCheck(CustomerCursor cursor) {
+    int customer = cursor.nextCustomer();
+    long missesBefore = credentialCache.stats().missCount();
+    boolean verified = credentialCache.verify(customerIDs[customer], "password" + customer);
+    // misses are counted across all threads, so this is only approximate per thread
+    cursor.dbQueries += credentialCache.stats().missCount() - missesBefore;
+    return verified;
+  }
+}
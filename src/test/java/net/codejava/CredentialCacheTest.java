@@ -0,0 +1,103 @@
+package net.codejava;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class CredentialCacheTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final String CUSTOMER2_USERNAME = "987654321";
+  private static final long TTL_IN_MINUTES = 5;
+
+  @Mock
+  private JdbcTemplate jdbcTemplate;
+
+  private AtomicLong nanoTime;
+  private SimpleMeterRegistry meterRegistry;
+  private CredentialCache credentialCache;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    when(jdbcTemplate.queryForObject(eq(CredentialCache.GET_USER_PASSWORD_SQL), eq(String.class), eq(CUSTOMER1_USERNAME))).thenReturn("password");
+    when(jdbcTemplate.queryForObject(eq(CredentialCache.GET_USER_PASSWORD_SQL), eq(String.class), eq(CUSTOMER2_USERNAME))).thenReturn("hunter2");
+
+    // cache holds a single credential and is driven by a manual clock
+    nanoTime = new AtomicLong();
+    meterRegistry = new SimpleMeterRegistry();
+    credentialCache = new CredentialCache(jdbcTemplate, meterRegistry, 1, TTL_IN_MINUTES, TimeUnit.MINUTES, nanoTime::get);
+  }
+
+  private void verifyPasswordQueries(String customerID, int times) {
+    Mockito.verify(jdbcTemplate, Mockito.times(times)).queryForObject(eq(CredentialCache.GET_USER_PASSWORD_SQL), eq(String.class), eq(customerID));
+  }
+
+  @Test
+  public void testRepeatedVerifyReadsPasswordOnce() {
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+    assertFalse(credentialCache.verify(CUSTOMER1_USERNAME, "not password"));
+
+    verifyPasswordQueries(CUSTOMER1_USERNAME, 1);
+    assertEquals(1, credentialCache.stats().missCount());
+    assertEquals(2, credentialCache.stats().hitCount());
+    assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "credentials").tag("result", "hit").functionCounter().count(), 0);
+    assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "credentials").tag("result", "miss").functionCounter().count(), 0);
+  }
+
+  @Test
+  public void testWrongOrMissingPasswordIsRejected() {
+    assertFalse(credentialCache.verify(CUSTOMER1_USERNAME, "not password"));
+    assertFalse(credentialCache.verify(CUSTOMER1_USERNAME, ""));
+    assertFalse(credentialCache.verify(CUSTOMER1_USERNAME, null));
+  }
+
+  @Test
+  public void testChangedPasswordIsPickedUpAfterTtl() {
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+
+    // password is changed in the DB, and the cached credential is used until it expires
+    when(jdbcTemplate.queryForObject(eq(CredentialCache.GET_USER_PASSWORD_SQL), eq(String.class), eq(CUSTOMER1_USERNAME))).thenReturn("new password");
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+    nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(TTL_IN_MINUTES));
+
+    assertFalse(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "new password"));
+    verifyPasswordQueries(CUSTOMER1_USERNAME, 2);
+  }
+
+  @Test
+  public void testCredentialExpiresAfterTtl() {
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+
+    nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(TTL_IN_MINUTES - 1));
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+    verifyPasswordQueries(CUSTOMER1_USERNAME, 1);
+
+    nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(1));
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+    verifyPasswordQueries(CUSTOMER1_USERNAME, 2);
+  }
+
+  @Test
+  public void testCacheIsSizeBounded() {
+    assertTrue(credentialCache.verify(CUSTOMER1_USERNAME, "password"));
+    assertTrue(credentialCache.verify(CUSTOMER2_USERNAME, "hunter2"));
+    // size-based eviction runs asynchronously
+    credentialCache.cleanUp();
+
+    assertEquals(1, credentialCache.stats().evictionCount());
+  }
+}
@@ -0,0 +1,85 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the reporting pool of {@link DataSourceConfiguration}, run against an in-memory H2 DB.
+ */
+public class DataSourceConfigurationTest {
+  private static final int REPORTING_POOL_SIZE = 2;
+
+  private HikariDataSource oltpDataSource;
+  private HikariDataSource reportingDataSource;
+
+  @BeforeEach
+  public void setup() {
+    DataSourceProperties properties = new DataSourceProperties();
+    properties.setUrl("jdbc:h2:mem:pools;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    properties.setUsername("sa");
+    MockEnvironment environment = new MockEnvironment()
+        .withProperty("spring.datasource.hikari.pool-name", "oltp")
+        .withProperty("spring.datasource.hikari.maximum-pool-size", "4")
+        .withProperty("spring.datasource.hikari.validation-timeout", "1000")
+        .withProperty("spring.datasource.hikari.data-source-properties.IFEXISTS", "FALSE")
+        .withProperty(DataSourceConfiguration.REPORTING_HIKARI_PREFIX + ".pool-name", "reporting")
+        .withProperty(DataSourceConfiguration.REPORTING_HIKARI_PREFIX + ".maximum-pool-size", String.valueOf(REPORTING_POOL_SIZE))
+        .withProperty(DataSourceConfiguration.REPORTING_HIKARI_PREFIX + ".connection-timeout", "250");
+
+    DataSourceConfiguration configuration = new DataSourceConfiguration();
+    oltpDataSource = configuration.dataSource(properties);
+    oltpDataSource.setMaximumPoolSize(4);
+    reportingDataSource = configuration.reportingDataSource(properties, environment);
+  }
+
+  @AfterEach
+  public void teardown() {
+    oltpDataSource.close();
+    reportingDataSource.close();
+  }
+
+  @Test
+  public void testReportingPoolOverridesOltpSettings() {
+    assertEquals("reporting", reportingDataSource.getPoolName());
+    assertEquals(REPORTING_POOL_SIZE, reportingDataSource.getMaximumPoolSize());
+    assertEquals(250, reportingDataSource.getConnectionTimeout());
+    // not overridden, so the same as oltp's
+    assertEquals(1000, reportingDataSource.getValidationTimeout());
+    assertEquals("FALSE", reportingDataSource.getDataSourceProperties().getProperty("IFEXISTS"));
+    assertEquals("jdbc:h2:mem:pools;MODE=MySQL;DB_CLOSE_DELAY=-1", reportingDataSource.getJdbcUrl());
+  }
+
+  @Test
+  public void testFullReportingPoolLeavesOltpConnections() throws Exception {
+    Connection[] exports = new Connection[REPORTING_POOL_SIZE];
+    for (int i = 0; i < exports.length; i++) {
+      exports[i] = reportingDataSource.getConnection();
+    }
+
+    try {
+      try (Connection connection = oltpDataSource.getConnection()) {
+        assertTrue(connection.isValid(1));
+      }
+      try {
+        reportingDataSource.getConnection().close();
+        fail("took a connection from a full reporting pool");
+      } catch (SQLTransientConnectionException e) {
+        // expected, after the reporting pool's connection-timeout
+      }
+    } finally {
+      for (Connection connection : exports) {
+        connection.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package net.codejava;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * In-memory H2 DBs in MySQL mode with the app's Flyway migrations applied, shared by the tests and
+ * benchmarks that run against a real DB.
+ *
+ * The DB lives until {@link #dropAndClose} drops its tables, and waits up to LOCK_TIMEOUT_MILLIS for
+ * row locks, so that tests of concurrent writes see them queue up rather than fail.
+ */
+final class H2Fixture {
+  private final static int DEFAULT_POOL_SIZE = 10;
+  private final static long LOCK_TIMEOUT_MILLIS = 10000;
+  private final static String OPTIONS = ";MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=" + LOCK_TIMEOUT_MILLIS;
+
+  private H2Fixture() {
+  }
+
+  /**
+   * @param name
+   * @return the URL of the in-memory DB, for an app context to connect to
+   */
+  static String memoryUrl(String name) {
+    return "jdbc:h2:mem:" + name + OPTIONS;
+  }
+
+  /**
+   * @param port of a running H2 TCP server
+   * @param name
+   * @return the URL of the in-memory DB behind the TCP server, so that every query is a socket round trip
+   */
+  static String tcpUrl(int port, String name) {
+    return "jdbc:h2:tcp://localhost:" + port + "/mem:" + name + OPTIONS;
+  }
+
+  static HikariDataSource newMigratedDataSource(String name) {
+    return newMigratedDataSource(name, DEFAULT_POOL_SIZE);
+  }
+
+  static HikariDataSource newMigratedDataSource(String name, int maxPoolSize) {
+    return newMigratedDataSourceAt(memoryUrl(name), maxPoolSize);
+  }
+
+  /**
+   * @param jdbcUrl
+   * @param maxPoolSize
+   * @return a pool connected to jdbcUrl, whose DB has been migrated
+   */
+  static HikariDataSource newMigratedDataSourceAt(String jdbcUrl, int maxPoolSize) {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(jdbcUrl);
+    dataSource.setMaximumPoolSize(maxPoolSize);
+    Flyway.configure().dataSource(dataSource).load().migrate();
+    return dataSource;
+  }
+
+  static void insertCustomer(JdbcTemplate jdbcTemplate, String customerID, String firstName, String lastName,
+                             long balanceInPennies, long overdraftBalanceInPennies, int numFraudReversals) {
+    jdbcTemplate.update("INSERT INTO Customers VALUES (?, ?, ?, ?, ?, ?)",
+                        customerID, firstName, lastName, balanceInPennies, overdraftBalanceInPennies, numFraudReversals);
+  }
+
+  /**
+   * Inserts John Doe with no overdraft balance and no fraud reversals.
+   */
+  static void insertCustomer(JdbcTemplate jdbcTemplate, String customerID, long balanceInPennies) {
+    insertCustomer(jdbcTemplate, customerID, "John", "Doe", balanceInPennies, 0, 0);
+  }
+
+  /**
+   * Drops every table, so that the next DB of the same name starts empty, and closes the pool.
+   */
+  static void dropAndClose(HikariDataSource dataSource) {
+    new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+    dataSource.close();
+  }
+}
@@ -0,0 +1,180 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link HistoryController} and the keyset pagination of {@link TransactionHistoryRepository}
+ * and {@link OverdraftLogRepository}, run against an in-memory H2 DB in MySQL mode.
+ */
+public class HistoryControllerTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final String CUSTOMER2_USERNAME = "987654321";
+  private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2021, 11, 3, 11, 35, 45);
+  private static final int DEFAULT_PAGE_SIZE = 4;
+  private static final int MAX_PAGE_SIZE = 10;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private TransactionHistoryRepository transactionHistoryRepository;
+  private OverdraftLogRepository overdraftLogRepository;
+  private SessionStore sessionStore;
+  private HistoryController historyController;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("history");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    transactionHistoryRepository = new TransactionHistoryRepository(jdbcTemplate);
+    overdraftLogRepository = new OverdraftLogRepository(jdbcTemplate);
+    sessionStore = new SessionStore(100, 30);
+    historyController = new HistoryController(sessionStore, transactionHistoryRepository, overdraftLogRepository, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Test
+  public void testPagesCoverHistoryNewestFirstWithoutDuplicatesOrGaps() {
+    // batches of three transactions share a Timestamp, so pages must break ties by TransactionID
+    for (int i = 0; i < 15; i++) {
+      transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP.plusSeconds(i / 3), "Deposit", Money.ofCents(i + 1));
+      transactionHistoryRepository.insert(CUSTOMER2_USERNAME, TIMESTAMP.plusSeconds(i / 3), "Deposit", Money.ofCents(100));
+    }
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    List<TransactionRecord> transactions = new ArrayList<>();
+    String cursor = null;
+    int numPages = 0;
+    do {
+      ResponseEntity<TransactionHistoryPage> response = historyController.getHistory(token, cursor, null);
+      assertEquals(HttpStatus.OK, response.getStatusCode());
+      TransactionHistoryPage page = response.getBody();
+      assertTrue(page.getTransactions().size() <= DEFAULT_PAGE_SIZE);
+      transactions.addAll(page.getTransactions());
+      cursor = page.getNextCursor();
+      numPages++;
+    } while (cursor != null);
+
+    assertEquals(4, numPages);
+    assertEquals(15, transactions.size());
+    Set<Long> transactionIDs = new HashSet<>();
+    for (int i = 0; i < transactions.size(); i++) {
+      TransactionRecord transaction = transactions.get(i);
+      assertEquals(CUSTOMER1_USERNAME, transaction.getCustomerID());
+      // inserted in order, so the newest has the largest amount
+      assertEquals(15 - i, transaction.getAmount().getCents());
+      assertTrue(transactionIDs.add(transaction.getTransactionID()));
+    }
+  }
+
+  @Test
+  public void testOverdraftLogPagesCoverLogsNewestFirstWithoutDuplicatesOrGaps() {
+    // the logs are paged on their own, so they point at made-up TransactionIDs
+    for (int i = 0; i < 10; i++) {
+      overdraftLogRepository.insert(CUSTOMER1_USERNAME, i, TIMESTAMP.plusSeconds(i / 2), Money.ofCents(i + 1), Money.ofCents(100), Money.ZERO);
+      overdraftLogRepository.insert(CUSTOMER2_USERNAME, i, TIMESTAMP.plusSeconds(i / 2), Money.ofCents(100), Money.ofCents(100), Money.ZERO);
+    }
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    List<OverdraftLogEntry> overdraftLogs = new ArrayList<>();
+    String cursor = null;
+    do {
+      OverdraftLogPage page = historyController.getOverdraftLogs(token, cursor, 3).getBody();
+      overdraftLogs.addAll(page.getOverdraftLogs());
+      cursor = page.getNextCursor();
+    } while (cursor != null);
+
+    assertEquals(10, overdraftLogs.size());
+    for (int i = 0; i < overdraftLogs.size(); i++) {
+      assertEquals(CUSTOMER1_USERNAME, overdraftLogs.get(i).getCustomerID());
+      assertEquals(10 - i, overdraftLogs.get(i).getDepositAmt().getCents());
+    }
+    assertEquals(HttpStatus.UNAUTHORIZED, historyController.getOverdraftLogs(null, null, null).getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, historyController.getOverdraftLogs(token, "not a cursor", null).getStatusCode());
+  }
+
+  @Test
+  public void testFirstPageMatchesRecentTransactions() {
+    for (int i = 0; i < 5; i++) {
+      transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP, "Withdraw", Money.ofCents(i + 1));
+    }
+
+    TransactionHistoryPage page = transactionHistoryRepository.findPage(CUSTOMER1_USERNAME, null, 3);
+
+    assertEquals(transactionHistoryRepository.findRecent(CUSTOMER1_USERNAME, 3), page.getTransactions());
+    assertNotNull(page.getNextCursor());
+  }
+
+  @Test
+  public void testPageSizeIsClamped() {
+    for (int i = 0; i < MAX_PAGE_SIZE + 5; i++) {
+      transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP.plusSeconds(i), "Deposit", Money.ofCents(100));
+    }
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    assertEquals(MAX_PAGE_SIZE, historyController.getHistory(token, null, 1000).getBody().getTransactions().size());
+    assertEquals(1, historyController.getHistory(token, null, 0).getBody().getTransactions().size());
+    assertEquals(2, historyController.getHistory(token, null, 2).getBody().getTransactions().size());
+  }
+
+  @Test
+  public void testLastPageHasNoCursor() {
+    transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP, "Deposit", Money.ofCents(100));
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    TransactionHistoryPage page = historyController.getHistory(token, null, null).getBody();
+
+    assertEquals(1, page.getTransactions().size());
+    assertNull(page.getNextCursor());
+  }
+
+  @Test
+  public void testHistoryRequiresSession() {
+    assertEquals(HttpStatus.UNAUTHORIZED, historyController.getHistory(null, null, null).getStatusCode());
+    assertEquals(HttpStatus.UNAUTHORIZED, historyController.getHistory("not a token", null, null).getStatusCode());
+  }
+
+  @Test
+  public void testMalformedCursorIsBadRequest() {
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    assertEquals(HttpStatus.BAD_REQUEST, historyController.getHistory(token, "not a cursor", null).getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, historyController.getHistory(token, "%%%", null).getStatusCode());
+  }
+
+  @Test
+  public void testCursorRoundTrips() {
+    HistoryCursor cursor = new HistoryCursor(TIMESTAMP, 42);
+
+    assertEquals(cursor, HistoryCursor.decode(cursor.encode()));
+  }
+
+  @Test
+  public void testTransactionsSerializeAmountsAsDollars() throws Exception {
+    transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP, "Deposit", Money.ofCents(1050));
+
+    TransactionHistoryPage page = transactionHistoryRepository.findPage(CUSTOMER1_USERNAME, null, 1);
+    String json = new ObjectMapper().findAndRegisterModules().writeValueAsString(page);
+
+    assertTrue(json, json.contains("\"amount\":\"10.50\""));
+    assertFalse(json, json.contains("deposit"));
+  }
+}
@@ -0,0 +1,109 @@
+package net.codejava;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Load test of deposits from many concurrent requests: one commit per deposit (`groupCommit=false`,
+ * the default) against deposits grouped into shared commits by {@link LedgerGroupCommit}. Each thread
+ * deposits to its own customer, so that deposits don't wait on each other's row locks.
+ *
+ * The benchmark score is deposits per second. Commits per second is printed at the end of each trial.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=LedgerGroupCommitBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class LedgerGroupCommitBenchmark {
+  private final static int NUM_CUSTOMERS = 32;
+
+  @Param({"false", "true"})
+  public boolean groupCommit;
+
+  @Param({"0", "5"})
+  public long maxLingerMillis;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private SimpleMeterRegistry meterRegistry;
+  private LedgerService ledgerService;
+  private final AtomicInteger nextCustomer = new AtomicInteger();
+  private long trialStartNanos;
+
+  /**
+   * Customer that one benchmark thread deposits to.
+   */
+  @State(Scope.Thread)
+  public static class ThreadCustomer {
+    String customerID;
+
+    @Setup(Level.Trial)
+    public void setup(LedgerGroupCommitBenchmark benchmark) {
+      customerID = String.valueOf(100000000 + benchmark.nextCustomer.getAndIncrement() % NUM_CUSTOMERS);
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("groupcommit", 40);
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    meterRegistry = new SimpleMeterRegistry();
+    ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                      new TransactionHistoryRepository(jdbcTemplate),
+                                      new OverdraftLogRepository(jdbcTemplate),
+                                      new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), NUM_CUSTOMERS),
+                                      new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                                      Clock.systemDefaultZone(),
+                                      meterRegistry,
+                                      groupCommit, 64, maxLingerMillis, 30000);
+    for (int i = 0; i < NUM_CUSTOMERS; i++) {
+      H2Fixture.insertCustomer(jdbcTemplate, String.valueOf(100000000 + i), 0);
+    }
+    trialStartNanos = System.nanoTime();
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws InterruptedException {
+    ledgerService.shutdown();
+    double seconds = (System.nanoTime() - trialStartNanos) / 1e9;
+    long deposits = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory", Long.class);
+    long commits = groupCommit ? (long) meterRegistry.counter("ledger.group.commits").count() : deposits;
+    System.out.printf("%ngroupCommit=%s maxLingerMillis=%d: %d deposits in %d commits, %.0f commits/s, %.1f deposits per commit%n",
+                      groupCommit, maxLingerMillis, deposits, commits, commits / seconds, (double) deposits / commits);
+
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Benchmark
+  public LedgerOutcome deposit(ThreadCustomer customer) {
+    return ledgerService.deposit(customer.customerID, Money.ofCents(100));
+  }
+}
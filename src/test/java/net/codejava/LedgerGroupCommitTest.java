@@ -0,0 +1,92 @@
+package net.codejava;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link LedgerGroupCommit} on its own, with groups that are applied in memory instead of in a DB.
+ */
+public class LedgerGroupCommitTest {
+  private static final int NUM_SUBMITTERS = 8;
+  private static final int NUM_ROUNDS = 20;
+
+  private static final BatchOperation DEPOSIT = new BatchOperation("123456789", BatchOperation.Type.DEPOSIT, Money.ofCents(100));
+
+  @Test
+  public void testSubmitRacingShutdownIsAppliedOrRejected() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_SUBMITTERS);
+    try {
+      for (int round = 0; round < NUM_ROUNDS; round++) {
+        AtomicInteger numApplied = new AtomicInteger();
+        LedgerGroupCommit groupCommit = new LedgerGroupCommit(operations -> {
+          numApplied.addAndGet(operations.size());
+          return Collections.nCopies(operations.size(), LedgerOutcome.APPLIED);
+        }, 64, 0, 30000);
+
+        // every submitter keeps submitting until it is rejected
+        CountDownLatch started = new CountDownLatch(NUM_SUBMITTERS);
+        List<Future<Integer>> submitters = new ArrayList<>();
+        for (int i = 0; i < NUM_SUBMITTERS; i++) {
+          submitters.add(executor.submit(() -> {
+            started.countDown();
+            int numSubmitted = 0;
+            while (true) {
+              try {
+                assertEquals(LedgerOutcome.APPLIED, groupCommit.submit(DEPOSIT));
+              } catch (IllegalStateException e) {
+                return numSubmitted;
+              }
+              numSubmitted++;
+            }
+          }));
+        }
+        started.await();
+        groupCommit.shutdown();
+
+        // a submit that slipped in while shutting down must not be left waiting
+        int numSubmitted = 0;
+        for (Future<Integer> submitter : submitters) {
+          numSubmitted += submitter.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(numSubmitted, numApplied.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSubmitGivesUpOnStalledGroup() throws Exception {
+    CountDownLatch stalled = new CountDownLatch(1);
+    LedgerGroupCommit groupCommit = new LedgerGroupCommit(operations -> {
+      try {
+        stalled.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return Collections.nCopies(operations.size(), LedgerOutcome.APPLIED);
+    }, 64, 0, 100);
+
+    try {
+      groupCommit.submit(DEPOSIT);
+      fail("Submit of a stalled group returned");
+    } catch (QueryTimeoutException e) {
+      // expected
+    } finally {
+      stalled.countDown();
+      groupCommit.shutdown();
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Concurrency stress tests for {@link LedgerService}, run against an in-memory H2 DB in MySQL mode.
+ * Many threads hammer the same account at once, and the final balances must be exactly what a
+ * serial execution of the applied money movements would produce.
+ */
+public class LedgerServiceTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final int NUM_THREADS = 16;
+  private static final int OPERATIONS_PER_THREAD = 50;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private TransactionTemplate transactionTemplate;
+  private SimpleMeterRegistry meterRegistry;
+  private LedgerService ledgerService;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("ledger", NUM_THREADS);
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    meterRegistry = new SimpleMeterRegistry();
+    ledgerService = ledgerService(false);
+  }
+
+  private LedgerService ledgerService(boolean groupCommitEnabled) {
+    return ledgerService(groupCommitEnabled, Clock.systemDefaultZone());
+  }
+
+  private LedgerService ledgerService(boolean groupCommitEnabled, Clock clock) {
+    return new LedgerService(new CustomerRepository(jdbcTemplate),
+                             new TransactionHistoryRepository(jdbcTemplate),
+                             new OverdraftLogRepository(jdbcTemplate),
+                             new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), 100),
+                             transactionTemplate,
+                             clock,
+                             meterRegistry,
+                             groupCommitEnabled, 64, 5, 30000);
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Test
+  public void testConcurrentDepositsAndWithdrawsConserveBalance() throws Exception {
+    // start customer with a balance of $10000 so that no withdraw goes into overdraft
+    int initialBalanceInPennies = 1000000;
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, initialBalanceInPennies);
+
+    // even threads deposit $1.50 and odd threads withdraw $0.75, all at the same time
+    List<Integer> appliedAmountsInPennies = runConcurrently(thread -> {
+      int amountInPennies = 0;
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        if (thread % 2 == 0 && ledgerService.deposit(CUSTOMER1_USERNAME, Money.ofCents(150)) == LedgerOutcome.APPLIED) {
+          amountInPennies += 150;
+        } else if (thread % 2 == 1 && ledgerService.withdraw(CUSTOMER1_USERNAME, Money.ofCents(75)) == LedgerOutcome.APPLIED) {
+          amountInPennies -= 75;
+        }
+      }
+      return amountInPennies;
+    });
+
+    int expectedBalanceInPennies = initialBalanceInPennies + appliedAmountsInPennies.stream().mapToInt(Integer::intValue).sum();
+    int expectedNumTransactions = NUM_THREADS * OPERATIONS_PER_THREAD;
+
+    // no money movement may be lost or double-applied
+    assertEquals(expectedBalanceInPennies, (int) jdbcTemplate.queryForObject("SELECT Balance FROM Customers WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT OverdraftBalance FROM Customers WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+    assertEquals(expectedNumTransactions, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+
+    // the transaction history must agree with the balance
+    int netHistoryAmountInPennies = jdbcTemplate.queryForObject(
+        "SELECT SUM(CASE WHEN Action='Deposit' THEN Amount ELSE -Amount END) FROM TransactionHistory WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME);
+    assertEquals(expectedBalanceInPennies - initialBalanceInPennies, netHistoryAmountInPennies);
+  }
+
+  @Test
+  public void testConcurrentOverdraftWithdrawsNeverExceedOverdraftLimit() throws Exception {
+    // start customer with an empty balance so that every withdraw goes into overdraft
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 0);
+
+    // every thread withdraws $10 at a time, which is $10.20 of overdraft after interest.
+    // only 98 of these fit under the $1000 overdraft limit.
+    List<Integer> appliedWithdraws = runConcurrently(thread -> {
+      int numApplied = 0;
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        if (ledgerService.withdraw(CUSTOMER1_USERNAME, Money.ofCents(1000)) == LedgerOutcome.APPLIED) {
+          numApplied++;
+        }
+      }
+      return numApplied;
+    });
+
+    int numAppliedWithdraws = appliedWithdraws.stream().mapToInt(Integer::intValue).sum();
+    int overdraftBalanceInPennies = jdbcTemplate.queryForObject("SELECT OverdraftBalance FROM Customers WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME);
+
+    assertEquals(98, numAppliedWithdraws);
+    assertEquals(numAppliedWithdraws * 1020, overdraftBalanceInPennies);
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT Balance FROM Customers WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+    assertEquals(numAppliedWithdraws, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+  }
+
+  @Test
+  public void testGroupCommitAppliesWholeMoneyMovementsInSharedCommits() throws Exception {
+    LedgerService groupCommitLedgerService = ledgerService(true);
+
+    // each thread moves money on its own customer, who starts with an empty balance so that withdraws go into overdraft
+    for (int thread = 0; thread < NUM_THREADS; thread++) {
+      H2Fixture.insertCustomer(jdbcTemplate, "thread" + thread, 0);
+    }
+    runConcurrently(thread -> {
+      String customerID = "thread" + thread;
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        if (i % 2 == 0) {
+          assertEquals(LedgerOutcome.APPLIED, groupCommitLedgerService.withdraw(customerID, Money.ofCents(100)));
+        } else {
+          assertEquals(LedgerOutcome.APPLIED, groupCommitLedgerService.deposit(customerID, Money.ofCents(102)));
+        }
+        // the money movement only returns once its balance and history have committed together
+        assertEquals(i + 1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory WHERE CustomerID=?", Integer.class, customerID));
+      }
+      return 0;
+    });
+    groupCommitLedgerService.shutdown();
+
+    // each $1 withdraw went $1.02 into overdraft, which the next deposit paid off
+    for (int thread = 0; thread < NUM_THREADS; thread++) {
+      assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT Balance FROM Customers WHERE CustomerID=?", Integer.class, "thread" + thread));
+      assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT OverdraftBalance FROM Customers WHERE CustomerID=?", Integer.class, "thread" + thread));
+    }
+    assertEquals(NUM_THREADS * OPERATIONS_PER_THREAD / 2, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM OverdraftLogs", Integer.class));
+    // concurrent money movements must have shared commits
+    double numCommits = meterRegistry.counter("ledger.group.commits").count();
+    assertTrue(numCommits > 0 && numCommits < NUM_THREADS * OPERATIONS_PER_THREAD);
+  }
+
+  @Test
+  public void testGroupCommitRejectsMoneyMovementsAfterShutdown() throws Exception {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 1000);
+    LedgerService groupCommitLedgerService = ledgerService(true);
+    groupCommitLedgerService.shutdown();
+
+    try {
+      groupCommitLedgerService.deposit(CUSTOMER1_USERNAME, Money.ofCents(100));
+      fail("Deposit after shutdown was accepted");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    // a rejected money movement was not applied, so it is safe to retry
+    assertEquals(1000, (int) jdbcTemplate.queryForObject("SELECT Balance FROM Customers WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TransactionHistory", Integer.class));
+  }
+
+  @Test
+  public void testLedgerEventsAreCounted() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, 1000);
+    // older withdraws with distinct timestamps, so that they can be picked out for disputes
+    LocalDateTime now = LocalDateTime.now();
+    jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, 'Withdraw', 300)", CUSTOMER1_USERNAME, now.minusHours(2));
+    jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, 'Withdraw', 500)", CUSTOMER1_USERNAME, now.minusHours(1));
+
+    // $20 withdraw from a $10 balance goes into overdraft
+    assertEquals(LedgerOutcome.APPLIED, ledgerService.withdraw(CUSTOMER1_USERNAME, Money.ofCents(2000)));
+    // the $5 withdraw is behind one new transaction, and then behind two
+    assertEquals(LedgerOutcome.APPLIED, ledgerService.reverseTransaction(CUSTOMER1_USERNAME, 2));
+    assertEquals(LedgerOutcome.APPLIED, ledgerService.reverseTransaction(CUSTOMER1_USERNAME, 3));
+    // two fraud reversals freeze the account
+    assertEquals(LedgerOutcome.ACCOUNT_FROZEN, ledgerService.deposit(CUSTOMER1_USERNAME, Money.ofCents(100)));
+    assertEquals(LedgerOutcome.TRANSACTION_NOT_FOUND, ledgerService.reverseTransaction(CUSTOMER1_USERNAME, 4));
+
+    assertEquals(1, meterRegistry.get("ledger.overdrafts").counter().count(), 0);
+    assertEquals(2, meterRegistry.get("ledger.reversals").tag("action", "withdraw").counter().count(), 0);
+    assertEquals(0, meterRegistry.get("ledger.reversals").tag("action", "deposit").counter().count(), 0);
+    assertEquals(1, meterRegistry.get("ledger.rejections").tag("outcome", "ACCOUNT_FROZEN").counter().count(), 0);
+    assertEquals(1, meterRegistry.get("ledger.rejections").tag("outcome", "TRANSACTION_NOT_FOUND").counter().count(), 0);
+  }
+
+  @Test
+  public void testReversingOverdraftPayoffRestoresOverdraftWithoutInterest() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, "John", "Doe", 0, 5000, 0);
+
+    // the $100 deposit pays off the $50 overdraft, which is logged with the deposit's TransactionID
+    assertEquals(LedgerOutcome.APPLIED, ledgerService.deposit(CUSTOMER1_USERNAME, Money.ofCents(10000)));
+    assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM OverdraftLogs WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+
+    // reversing it finds that overdraft log by the deposit's TransactionID, so no interest is charged again
+    assertEquals(LedgerOutcome.APPLIED, ledgerService.reverseTransaction(CUSTOMER1_USERNAME, 1));
+
+    CustomerState customerState = new CustomerRepository(jdbcTemplate).findState(CUSTOMER1_USERNAME);
+    assertEquals(Money.ZERO, customerState.getBalance());
+    assertEquals(Money.ofCents(5000), customerState.getOverdraftBalance());
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM OverdraftLogs WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+  }
+
+  @Test
+  public void testReversingOneOfBatchedOverdraftPayoffsKeepsTheOtherLog() {
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER1_USERNAME, "John", "Doe", 0, 5000, 0);
+    // every write of the batch has the same timestamp
+    LedgerService ledgerService = ledgerService(false, Clock.fixed(Instant.parse("2021-11-03T11:35:45Z"), ZoneOffset.UTC));
+
+    // the $30 deposit pays off $30 of the $50 overdraft, and the $40 deposit pays off the other $20
+    List<LedgerOutcome> outcomes = ledgerService.applyBatch(Arrays.asList(new BatchOperation(CUSTOMER1_USERNAME, BatchOperation.Type.DEPOSIT, Money.ofCents(3000)),
+                                                                          new BatchOperation(CUSTOMER1_USERNAME, BatchOperation.Type.DEPOSIT, Money.ofCents(4000))), 500);
+    assertEquals(Arrays.asList(LedgerOutcome.APPLIED, LedgerOutcome.APPLIED), outcomes);
+    assertEquals(2, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM OverdraftLogs WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+    assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT Timestamp) FROM OverdraftLogs WHERE CustomerID=?", Integer.class, CUSTOMER1_USERNAME));
+
+    // reversing the $40 deposit takes back only its own $20 of overdraft payoff, and only its log
+    assertEquals(LedgerOutcome.APPLIED, ledgerService.reverseTransaction(CUSTOMER1_USERNAME, 1));
+
+    CustomerState customerState = new CustomerRepository(jdbcTemplate).findState(CUSTOMER1_USERNAME);
+    assertEquals(Money.ZERO, customerState.getBalance());
+    assertEquals(Money.ofCents(2000), customerState.getOverdraftBalance());
+    List<Long> depositAmts = jdbcTemplate.queryForList("SELECT DepositAmt FROM OverdraftLogs WHERE CustomerID=?", Long.class, CUSTOMER1_USERNAME);
+    assertEquals(Arrays.asList(3000L), depositAmts);
+  }
+
+  /**
+   * Runs the same task on NUM_THREADS threads that all start at the same moment.
+   *
+   * @param task receives the thread number and returns that thread's result
+   * @return the result of every thread
+   */
+  private List<Integer> runConcurrently(ThreadTask task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    CountDownLatch startingGun = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int thread = 0; thread < NUM_THREADS; thread++) {
+      int threadNum = thread;
+      Callable<Integer> callable = () -> {
+        startingGun.await();
+        return task.run(threadNum);
+      };
+      results.add(executor.submit(callable));
+    }
+    startingGun.countDown();
+
+    List<Integer> threadResults = new ArrayList<>();
+    for (Future<Integer> result : results) {
+      threadResults.add(result.get(60, TimeUnit.SECONDS));
+    }
+    executor.shutdown();
+    return threadResults;
+  }
+
+  private interface ThreadTask {
+    int run(int threadNum) throws Exception;
+  }
+}
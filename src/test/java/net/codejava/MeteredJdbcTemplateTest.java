@@ -0,0 +1,77 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MeteredJdbcTemplateTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+
+  private HikariDataSource dataSource;
+  private SimpleMeterRegistry meterRegistry;
+  private MeteredJdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("metered");
+
+    meterRegistry = new SimpleMeterRegistry();
+    jdbcTemplate = new MeteredJdbcTemplate(dataSource, meterRegistry);
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Test
+  public void testStatementsAreTimedAndRowsCounted() {
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      rows.add(new Object[] {CUSTOMER1_USERNAME, LocalDateTime.now(), "Deposit", 100});
+    }
+    jdbcTemplate.batchUpdate(TransactionHistoryRepository.INSERT_TRANSACTION_SQL, rows);
+    new TransactionHistoryRepository(jdbcTemplate).findRecent(CUSTOMER1_USERNAME, 3);
+    new TransactionHistoryRepository(jdbcTemplate).findRecent(CUSTOMER1_USERNAME, 3);
+
+    assertEquals(1, timer(TransactionHistoryRepository.INSERT_TRANSACTION_SQL, "success").count());
+    assertEquals(5, rows(TransactionHistoryRepository.INSERT_TRANSACTION_SQL).totalAmount(), 0);
+    assertEquals(2, timer(TransactionHistoryRepository.RECENT_TRANSACTIONS_SQL, "success").count());
+    assertEquals(6, rows(TransactionHistoryRepository.RECENT_TRANSACTIONS_SQL).totalAmount(), 0);
+  }
+
+  @Test
+  public void testFailedStatementsAreTimedSeparately() {
+    String badSQL = "UPDATE NoSuchTable SET Balance=? WHERE CustomerID=?";
+    try {
+      jdbcTemplate.update(badSQL, 0, CUSTOMER1_USERNAME);
+      fail("update of a missing table must fail");
+    } catch (DataAccessException e) {
+      // expected
+    }
+
+    assertEquals(1, timer(badSQL, "error").count());
+    assertEquals(0, timer(badSQL, "success").count());
+    assertEquals(0, rows(badSQL).count());
+  }
+
+  private Timer timer(String sql, String outcome) {
+    return meterRegistry.get("jdbc.statement").tag("sql", sql).tag("outcome", outcome).timer();
+  }
+
+  private DistributionSummary rows(String sql) {
+    return meterRegistry.get("jdbc.statement.rows").tag("sql", sql).summary();
+  }
+}
@@ -0,0 +1,112 @@
+package net.codejava;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the money arithmetic of a withdraw into overdraft, as done with `double` dollars and
+ * `int` pennies before, against {@link Money}: parse the form input, apply interest to the
+ * overdraft, hold the amount in a TransactionHistory row, and render the new overdraft balance.
+ *
+ * Each result is checked against a BigDecimal computation made up front, so the `wrongCents`
+ * counter reports how many overdraft balances came out wrong. The gc profiler, on by default in
+ * the benchmark profile, reports the bytes allocated per operation as gc.alloc.rate.norm.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=MoneyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+  private final static String[] AMOUNTS_TO_WITHDRAW = {"0.29", "19.99", "4.35", "250.25", "57.10", "0.01", "999.99", "12.5"};
+  private final static double INTEREST_RATE = 1.02;
+  private final static long INTEREST_IN_BASIS_POINTS = 200;
+  private final static String CUSTOMER_ID = "123456789";
+
+  /**
+   * The form inputs, cycled through in order, along with the overdraft balance each must produce.
+   */
+  @State(Scope.Thread)
+  public static class Withdraws {
+    int overdraftBalanceInPennies = 5025;
+    Money overdraftBalance = Money.ofCents(5025);
+    long[] expectedOverdraftBalanceInPennies = new long[AMOUNTS_TO_WITHDRAW.length];
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      for (int i = 0; i < AMOUNTS_TO_WITHDRAW.length; i++) {
+        BigDecimal interest = new BigDecimal(AMOUNTS_TO_WITHDRAW[i]).movePointRight(2)
+                                                                    .multiply(new BigDecimal("1.02"))
+                                                                    .setScale(0, RoundingMode.HALF_UP);
+        expectedOverdraftBalanceInPennies[i] = overdraftBalanceInPennies + interest.longValueExact();
+      }
+    }
+
+    int next() {
+      int index = next;
+      next = (next + 1) % AMOUNTS_TO_WITHDRAW.length;
+      return index;
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Errors {
+    public long wrongCents;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      wrongCents = 0;
+    }
+  }
+
+  @Benchmark
+  public void doublePennies(Withdraws withdraws, Errors errors, Blackhole blackhole) {
+    int index = withdraws.next();
+    // Spring's String to Number converter hands the form field over as a boxed Double
+    double userWithdrawAmt = Double.valueOf(AMOUNTS_TO_WITHDRAW[index]);
+    int userWithdrawAmtInPennies = (int) (userWithdrawAmt * 100);
+    int newOverdraftAmtAfterInterestInPennies = (int) (userWithdrawAmtInPennies * INTEREST_RATE);
+    int cumulativeOverdraftInPennies = withdraws.overdraftBalanceInPennies + newOverdraftAmtAfterInterestInPennies;
+    blackhole.consume(new Object[] {CUSTOMER_ID, "Withdraw", userWithdrawAmtInPennies});
+
+    // the JSP reads user.overDraftBalance through reflection, which boxes it again
+    double overDraftBalance = cumulativeOverdraftInPennies;
+    Object renderedOverDraftBalance = overDraftBalance / 100;
+    blackhole.consume(renderedOverDraftBalance.toString());
+    if (cumulativeOverdraftInPennies != withdraws.expectedOverdraftBalanceInPennies[index]) {
+      errors.wrongCents++;
+    }
+  }
+
+  @Benchmark
+  public void money(Withdraws withdraws, Errors errors, Blackhole blackhole) {
+    int index = withdraws.next();
+    Money userWithdrawAmt = Money.valueOf(AMOUNTS_TO_WITHDRAW[index]);
+    Money cumulativeOverdraft = withdraws.overdraftBalance.plus(userWithdrawAmt.withInterest(INTEREST_IN_BASIS_POINTS));
+    blackhole.consume(new Object[] {CUSTOMER_ID, "Withdraw", userWithdrawAmt});
+
+    blackhole.consume(cumulativeOverdraft.toString());
+    if (cumulativeOverdraft.getCents() != withdraws.expectedOverdraftBalanceInPennies[index]) {
+      errors.wrongCents++;
+    }
+  }
+}
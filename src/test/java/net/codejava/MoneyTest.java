@@ -0,0 +1,59 @@
+package net.codejava;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.Assert.*;
+
+public class MoneyTest {
+  @Test
+  public void testParsesDollarAmountsExactly() {
+    assertEquals(29, Money.valueOf("0.29").getCents());
+    assertEquals(1250, Money.valueOf("12.5").getCents());
+    assertEquals(1200, Money.valueOf(" 12 ").getCents());
+    assertEquals(-7, Money.valueOf("-.07").getCents());
+    // the old double conversion lost a cent on this amount
+    assertEquals(28, (int) (Double.parseDouble("0.29") * 100));
+  }
+
+  @Test
+  public void testRejectsAmountsThatAreNotWholeCents() {
+    String[] invalidAmounts = {"0.291", "1e3", "", "-", "1.2.3", "$5", "99999999999999999999"};
+    for (String invalidAmount : invalidAmounts) {
+      try {
+        Money.valueOf(invalidAmount);
+        fail(invalidAmount);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testInterestIsRoundedToNearestCent() {
+    // 2% of $10 is exactly 20 cents
+    assertEquals(1020, Money.ofCents(1000).withInterest(200).getCents());
+    // 2% of 25 cents is half a cent, which rounds up
+    assertEquals(26, Money.ofCents(25).withInterest(200).getCents());
+    // 2% of 24 cents is 0.48 cents, which rounds down
+    assertEquals(24, Money.ofCents(24).withInterest(200).getCents());
+    assertEquals(-26, Money.ofCents(-25).withInterest(200).getCents());
+  }
+
+  @Test
+  public void testArithmeticFailsInsteadOfOverflowing() {
+    try {
+      Money.ofCents(Long.MAX_VALUE).plus(Money.ofCents(1));
+      fail();
+    } catch (ArithmeticException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFormatsWithTwoDecimals() {
+    assertEquals("1234.50", Money.ofCents(123450).toString());
+    assertEquals("0.07", Money.ofCents(7).toString());
+    assertEquals("-0.29", Money.ofCents(-29).toString());
+    assertEquals(Money.valueOf("0.29"), Money.valueOf(Money.ofCents(29).toString()));
+  }
+}
@@ -0,0 +1,337 @@
+package net.codejava;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Per-request cost of every {@link MvcController} POST handler, plus the "account_info" rendering
+ * they all end with, against one of two backends:
+ *
+ *   stub - a JdbcTemplate that answers every query with canned rows and never touches a DB,
+ *          so the score is the CPU and allocation cost of the handler code alone
+ *   h2   - an embedded H2 DB in MySQL mode with the Flyway schema, for the end-to-end cost
+ *          including JDBC, transactions and row locks
+ *
+ * Money operations present a login session, like a customer who already logged in. Every handler
+ * works on its own customer, and the H2 accounts are reset before each iteration so that the
+ * normal and overdraft paths keep being the ones measured.
+ *
+ * Results are written as JSON to target/jmh-result.json (see the benchmark profile in pom.xml).
+ * Both backends run by default, and each JSON result records its backend under `params`.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=MvcControllerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MvcControllerBenchmark {
+  private final static String LOGIN_CUSTOMER = "000000001";
+  private final static String DEPOSIT_CUSTOMER = "000000002";
+  private final static String WITHDRAW_CUSTOMER = "000000003";
+  private final static String OVERDRAFT_CUSTOMER = "000000004";
+  private final static String DISPUTE_CUSTOMER = "000000005";
+  private final static String[] CUSTOMERS = {LOGIN_CUSTOMER, DEPOSIT_CUSTOMER, WITHDRAW_CUSTOMER, OVERDRAFT_CUSTOMER, DISPUTE_CUSTOMER};
+  private final static String PASSWORD = "password";
+  private final static int LARGE_BALANCE_IN_PENNIES = 1000000000;
+  // reversed withdraws count as fraud reversals, so start far enough below the limit
+  // that no iteration can freeze the dispute customer's account
+  private final static int DISPUTE_ALLOWANCE = -1000000000;
+
+  @Param({"stub", "h2"})
+  public String backend;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private AccountSnapshotCache accountSnapshotCache;
+  private MvcController controller;
+  private SessionStore sessionStore;
+  private Map<String, String> sessionTokens = new HashMap<>();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    PlatformTransactionManager transactionManager;
+    if (backend.equals("h2")) {
+      dataSource = H2Fixture.newMigratedDataSource("controller");
+      jdbcTemplate = new JdbcTemplate(dataSource);
+      transactionManager = new DataSourceTransactionManager(dataSource);
+
+      for (String customerID : CUSTOMERS) {
+        H2Fixture.insertCustomer(jdbcTemplate, customerID, 0);
+        jdbcTemplate.update("INSERT INTO Passwords VALUES (?, ?)", customerID, PASSWORD);
+      }
+      jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, 'Deposit', 100)",
+                          DISPUTE_CUSTOMER, LocalDateTime.now().minusDays(1));
+    } else {
+      jdbcTemplate = new StubJdbcTemplate();
+      transactionManager = new StubTransactionManager();
+    }
+
+    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+    accountSnapshotCache = new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), 100);
+    LedgerService ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                                    new TransactionHistoryRepository(jdbcTemplate),
+                                                    new OverdraftLogRepository(jdbcTemplate),
+                                                    accountSnapshotCache,
+                                                    transactionTemplate,
+                                                    Clock.systemDefaultZone(),
+                                                    new SimpleMeterRegistry());
+    sessionStore = new SessionStore(10000, 30);
+    controller = new MvcController(new CredentialCache(jdbcTemplate, new SimpleMeterRegistry(), 10000, 5), sessionStore, accountSnapshotCache, ledgerService);
+    for (String customerID : CUSTOMERS) {
+      sessionTokens.put(customerID, sessionStore.create(customerID));
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void resetAccounts() {
+    if (backend.equals("h2")) {
+      jdbcTemplate.update("UPDATE Customers SET Balance=?, OverdraftBalance=0, NumFraudReversals=0", LARGE_BALANCE_IN_PENNIES);
+      jdbcTemplate.update("UPDATE Customers SET Balance=0 WHERE CustomerID=?", OVERDRAFT_CUSTOMER);
+      jdbcTemplate.update("UPDATE Customers SET NumFraudReversals=? WHERE CustomerID=?", DISPUTE_ALLOWANCE, DISPUTE_CUSTOMER);
+      for (String customerID : CUSTOMERS) {
+        accountSnapshotCache.invalidate(customerID);
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    if (dataSource != null) {
+      H2Fixture.dropAndClose(dataSource);
+    }
+  }
+
+  @Benchmark
+  public String submitLoginForm() {
+    return controller.submitLoginForm(user(LOGIN_CUSTOMER), new MockHttpServletResponse());
+  }
+
+  @Benchmark
+  public String submitDeposit() {
+    User user = user(DEPOSIT_CUSTOMER);
+    user.setAmountToDeposit(Money.ofDollars(1));
+    return controller.submitDeposit(user, sessionTokens.get(DEPOSIT_CUSTOMER));
+  }
+
+  @Benchmark
+  public String submitWithdraw() {
+    User user = user(WITHDRAW_CUSTOMER);
+    user.setAmountToWithdraw(Money.ofDollars(1));
+    return controller.submitWithdraw(user, sessionTokens.get(WITHDRAW_CUSTOMER));
+  }
+
+  @Benchmark
+  public String submitWithdrawIntoOverdraft() {
+    // one penny of overdraft per withdraw, so the $1000 limit is never reached in an iteration
+    User user = user(OVERDRAFT_CUSTOMER);
+    user.setAmountToWithdraw(Money.ofCents(1));
+    return controller.submitWithdraw(user, sessionTokens.get(OVERDRAFT_CUSTOMER));
+  }
+
+  @Benchmark
+  public String submitDispute() {
+    User user = user(DISPUTE_CUSTOMER);
+    user.setNumTransactionsAgo(1);
+    return controller.submitDispute(user, sessionTokens.get(DISPUTE_CUSTOMER));
+  }
+
+  /**
+   * Renders "account_info" for a customer whose snapshot is cached, like a repeated page view.
+   */
+  @Benchmark
+  public User updateAccountInfo() {
+    User user = user(LOGIN_CUSTOMER);
+    controller.updateAccountInfo(user);
+    return user;
+  }
+
+  /**
+   * Renders "account_info" right after the customer's account changed, so the snapshot is loaded again.
+   */
+  @Benchmark
+  public User updateAccountInfoUncached() {
+    accountSnapshotCache.invalidate(LOGIN_CUSTOMER);
+    User user = user(LOGIN_CUSTOMER);
+    controller.updateAccountInfo(user);
+    return user;
+  }
+
+  private User user(String customerID) {
+    User user = new User();
+    user.setUsername(customerID);
+    user.setPassword(PASSWORD);
+    // as served to the customer's login session
+    user.setCsrfToken(sessionStore.csrfTokenFor(sessionTokens.get(customerID)));
+    return user;
+  }
+
+  /**
+   * Answers the queries of the controller's repositories with fixed rows, and accepts every
+   * update without keeping it. Row mappers and extractors still run over a real ResultSet,
+   * so their cost is part of the score.
+   */
+  private static class StubJdbcTemplate extends JdbcTemplate {
+    private final Map<String, Integer> balances = new HashMap<>();
+    private final LocalDateTime recentDepositTimestamp = LocalDateTime.now().minusDays(1);
+
+    StubJdbcTemplate() {
+      balances.put(LOGIN_CUSTOMER, LARGE_BALANCE_IN_PENNIES);
+      balances.put(DEPOSIT_CUSTOMER, LARGE_BALANCE_IN_PENNIES);
+      balances.put(WITHDRAW_CUSTOMER, LARGE_BALANCE_IN_PENNIES);
+      balances.put(OVERDRAFT_CUSTOMER, 0);
+      balances.put(DISPUTE_CUSTOMER, LARGE_BALANCE_IN_PENNIES);
+    }
+
+    @Override
+    public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) throws DataAccessException {
+      // the only single-column query is the password lookup
+      return requiredType.cast(PASSWORD);
+    }
+
+    @Override
+    public <T> T queryForObject(String sql, RowMapper<T> rowMapper, Object... args) throws DataAccessException {
+      // the only mapped single-row query is the customer state, with or without FOR UPDATE
+      SimpleResultSet rs = new TypedResultSet();
+      rs.addColumn("Balance", Types.BIGINT, 19, 0);
+      rs.addColumn("OverdraftBalance", Types.BIGINT, 19, 0);
+      rs.addColumn("NumFraudReversals", Types.INTEGER, 10, 0);
+      rs.addRow(balances.get((String) args[0]), 0, 0);
+      return extract(rs, r -> {
+        r.next();
+        return rowMapper.mapRow(r, 0);
+      });
+    }
+
+    @Override
+    public <T> T query(String sql, ResultSetExtractor<T> rse, Object... args) throws DataAccessException {
+      // the only extracted query is the account snapshot
+      String customerID = (String) args[0];
+      SimpleResultSet rs = new TypedResultSet();
+      rs.addColumn("RowType", Types.INTEGER, 10, 0);
+      rs.addColumn("CustomerID", Types.VARCHAR, 9, 0);
+      rs.addColumn("Timestamp", Types.TIMESTAMP, 0, 0);
+      rs.addColumn("Text1", Types.VARCHAR, 255, 0);
+      rs.addColumn("Text2", Types.VARCHAR, 255, 0);
+      rs.addColumn("Num1", Types.BIGINT, 19, 0);
+      rs.addColumn("Num2", Types.BIGINT, 19, 0);
+      rs.addColumn("Num3", Types.BIGINT, 19, 0);
+      rs.addColumn("LogID", Types.BIGINT, 19, 0);
+      rs.addRow(0, customerID, null, "John", "Doe", balances.get(customerID), 0, null, null);
+      for (int i = 0; i < 3; i++) {
+        rs.addRow(2, customerID, LocalDateTime.now().minusMinutes(3 - i), "Deposit", null, 100, null, null, i + 1);
+      }
+      return extract(rs, rse);
+    }
+
+    @Override
+    public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) throws DataAccessException {
+      SimpleResultSet rs = new TypedResultSet();
+      if (sql.equals(TransactionHistoryRepository.RECENT_TRANSACTIONS_SQL)) {
+        rs.addColumn("TransactionID", Types.BIGINT, 19, 0);
+        rs.addColumn("Timestamp", Types.TIMESTAMP, 0, 0);
+        rs.addColumn("Action", Types.VARCHAR, 255, 0);
+        rs.addColumn("Amount", Types.BIGINT, 19, 0);
+        rs.addRow(1, recentDepositTimestamp, "Deposit", 100);
+      } else {
+        // deposits being reversed never paid off an overdraft
+        rs.addColumn("OverdraftLogID", Types.BIGINT, 19, 0);
+        rs.addColumn("Timestamp", Types.TIMESTAMP, 0, 0);
+        rs.addColumn("DepositAmt", Types.BIGINT, 19, 0);
+        rs.addColumn("OldOverBalance", Types.BIGINT, 19, 0);
+        rs.addColumn("NewOverBalance", Types.BIGINT, 19, 0);
+      }
+      return extract(rs, new RowMapperResultSetExtractor<>(rowMapper));
+    }
+
+    @Override
+    public int update(String sql, Object... args) throws DataAccessException {
+      return 1;
+    }
+
+    @Override
+    public int update(PreparedStatementCreator psc, KeyHolder generatedKeyHolder) throws DataAccessException {
+      // the only insert that returns its key is the TransactionHistory one
+      generatedKeyHolder.getKeyList().add(Collections.<String, Object>singletonMap("TransactionID", 1L));
+      return 1;
+    }
+
+    private static <T> T extract(ResultSet rs, ResultSetExtractor<T> rse) {
+      try {
+        return rse.extractData(rs);
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * H2's in-memory ResultSet, plus the typed getObject that the row mappers use for timestamps.
+   */
+  private static class TypedResultSet extends SimpleResultSet {
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+      return type.cast(getObject(columnIndex));
+    }
+  }
+
+  /**
+   * Transactions that begin, commit and roll back without doing anything.
+   */
+  private static class StubTransactionManager implements PlatformTransactionManager {
+    @Override
+    public TransactionStatus getTransaction(TransactionDefinition definition) {
+      return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public void commit(TransactionStatus status) {
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+    }
+  }
+}
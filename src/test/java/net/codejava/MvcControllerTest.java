@@ -4,15 +4,32 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.mock.web.MockCookie;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.ui.ExtendedModelMap;
 import org.springframework.ui.Model;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import static org.mockito.Mockito.*;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -26,39 +43,33 @@ public class MvcControllerTest {
   @Mock
   Model mockModel;
 
+  @Mock
+  PlatformTransactionManager transactionManager;
+
 	private MvcController controller;
+  private SessionStore sessionStore;
 
   private static String CUSTOMER1_USERNAME;
-  private static List<Map<String, Object>> CUSTOMER1_DATA;
-  private static List<Map<String, Object>> TRANSACTION_HIST;
-  private static List<Map<String, Object>> TRANSACTION_HIST_WITHDRAW;
-  private static List<Map<String, Object>> OVERDRAFT_LOGS;
+  // every transaction and overdraft log written by a test is stamped with this time
+  private static final LocalDateTime CURRENT_TIME = LocalDateTime.of(2021, 11, 3, 11, 35, 45);
+  private static final Clock TEST_CLOCK = Clock.fixed(CURRENT_TIME.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+  private static AccountSnapshot CUSTOMER1_SNAPSHOT;
+  private static List<TransactionRecord> TRANSACTION_HIST;
+  private static List<TransactionRecord> TRANSACTION_HIST_WITHDRAW;
+  private static List<OverdraftLogEntry> OVERDRAFT_LOGS;
 
   @BeforeAll
   public static void init() {
     CUSTOMER1_USERNAME = "123456789";
 
     // prepare what the updateAccountInfo() helper method should return when stubbed
-    CUSTOMER1_DATA = new ArrayList<>();
-    CUSTOMER1_DATA.add(new HashMap<>());
-    CUSTOMER1_DATA.get(0).put("FirstName", "John");
-    CUSTOMER1_DATA.get(0).put("LastName", "Doe");
-    CUSTOMER1_DATA.get(0).put("Balance", 10000);
-	  CUSTOMER1_DATA.get(0).put("OverdraftBalance", 0);
+    CUSTOMER1_SNAPSHOT = new AccountSnapshot(CUSTOMER1_USERNAME, "John", "Doe", Money.ofCents(10000), Money.ofCents(0), new ArrayList<>(), new ArrayList<>());
     // prepare what seaerch for transaction history with deposit should return
     TRANSACTION_HIST = new ArrayList<>();
-    TRANSACTION_HIST.add(new HashMap<>());
-    TRANSACTION_HIST.get(0).put("CustomerID", "123456789");
-    TRANSACTION_HIST.get(0).put("Timestamp", "2021-11-03 11:35:45");
-    TRANSACTION_HIST.get(0).put("Action", "Deposit");
-    TRANSACTION_HIST.get(0).put("Amount", 10000);
+    TRANSACTION_HIST.add(new TransactionRecord(1, "123456789", LocalDateTime.of(2021, 11, 3, 11, 35, 45), "Deposit", Money.ofCents(10000)));
     // prepare what seaerch for transaction history with withdraw should return
     TRANSACTION_HIST_WITHDRAW = new ArrayList<>();
-    TRANSACTION_HIST_WITHDRAW.add(new HashMap<>());
-    TRANSACTION_HIST_WITHDRAW.get(0).put("CustomerID", "123456789");
-    TRANSACTION_HIST_WITHDRAW.get(0).put("Timestamp", "2021-11-03 11:35:45");
-    TRANSACTION_HIST_WITHDRAW.get(0).put("Action", "Withdraw");
-    TRANSACTION_HIST_WITHDRAW.get(0).put("Amount", 10000);
+    TRANSACTION_HIST_WITHDRAW.add(new TransactionRecord(1, "123456789", LocalDateTime.of(2021, 11, 3, 11, 35, 45), "Withdraw", Money.ofCents(10000)));
 
     OVERDRAFT_LOGS = new ArrayList<>();
   }
@@ -66,7 +77,21 @@ public class MvcControllerTest {
   @BeforeEach
   public void setup() {
     MockitoAnnotations.initMocks(this);
-    controller = new MvcController(jdbcTemplate);
+    // the TransactionHistory insert hands back a generated TransactionID, as the live DB would
+    when(jdbcTemplate.update(Mockito.any(PreparedStatementCreator.class), Mockito.any(KeyHolder.class))).thenAnswer(invocation -> {
+      ((KeyHolder) invocation.getArgument(1)).getKeyList().add(Collections.<String, Object>singletonMap("TransactionID", 1L));
+      return 1;
+    });
+    AccountSnapshotCache accountSnapshotCache = new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), 100);
+    LedgerService ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                                    new TransactionHistoryRepository(jdbcTemplate),
+                                                    new OverdraftLogRepository(jdbcTemplate),
+                                                    accountSnapshotCache,
+                                                    new TransactionTemplate(transactionManager),
+                                                    TEST_CLOCK,
+                                                    new SimpleMeterRegistry());
+    sessionStore = new SessionStore(100, 30);
+    controller = new MvcController(new CredentialCache(jdbcTemplate, new SimpleMeterRegistry(), 10000, 5), sessionStore, accountSnapshotCache, ledgerService);
   }
 
 	@Test
@@ -92,16 +117,22 @@ public class MvcControllerTest {
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
 
     // send login request
-    String pageReturned = controller.submitLoginForm(customer1);
+    String pageReturned = controller.submitLoginForm(customer1, new MockHttpServletResponse());
 
     // Verify that the SELECT SQL command executed to retrieve user's password uses the customer's ID
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class));
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()));
+
+    // Verify that the "account_info" page is loaded with a single snapshot query instead of separate
+    // Customers, OverdraftLogs and TransactionHistory queries
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any());
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(eq(AccountSnapshotRepository.ACCOUNT_SNAPSHOT_SQL), Mockito.any(ResultSetExtractor.class),
+                                                         eq(CUSTOMER1_USERNAME), eq(CUSTOMER1_USERNAME), anyInt(), eq(CUSTOMER1_USERNAME), anyInt());
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -115,16 +146,16 @@ public class MvcControllerTest {
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
 
     // send login request
-    String pageReturned = controller.submitLoginForm(customer1);
+    String pageReturned = controller.submitLoginForm(customer1, new MockHttpServletResponse());
 
     // Verify that the SELECT SQL command executed to retrieve user's password uses the customer's ID
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class));
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()));
 
     // verify that customer is re-directed to "welcome" page
 		assertEquals("welcome", pageReturned);
@@ -132,41 +163,59 @@ public class MvcControllerTest {
 
 	@Test
 	public void testShowDepositFormSuccess() {
-		assertEquals("deposit_form", controller.showDepositForm(mockModel));
+		assertEquals("deposit_form", controller.showDepositForm(mockModel, null));
 	}
 
 	@Test
-	public void testDepositSuccesswithCorrectPassword() {
+	public void testDepositSuccesswithCorrectPassword() throws Exception {
     // initialize user input to the deposit form
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToDeposit(100);
+		customer1.setAmountToDeposit(Money.ofDollars(100));
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // no overdraft
-    String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(0);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $0, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(0), 0));
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
 
     // send deposit request
-    String pageReturned = controller.submitDeposit(customer1);
+    String pageReturned = controller.submitDeposit(customer1, null);
 
     // Verify that the SQL Update command executed uses customer1's ID and amountToDeposit.
-    int expectedDepositAmtInPennies = (int) (customer1.getAmountToDeposit() * 100);
-    String balanceIncreaseSqlCustomer1=String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';",
-                                                     expectedDepositAmtInPennies,
-                                                     customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceIncreaseSqlCustomer1));
+    long expectedDepositAmtInPennies = customer1.getAmountToDeposit().getCents();
+    String balanceIncreaseSqlCustomer1 = "UPDATE Customers SET Balance = Balance + ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceIncreaseSqlCustomer1), eq(expectedDepositAmtInPennies), eq(customer1.getUsername()));
+
+    // Verify that the deposit is logged with the test clock's time, passed to JDBC as a LocalDateTime
+    String transactionHistoryInsertSql = "INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, ?, ?)";
+    ArgumentCaptor<PreparedStatementCreator> transactionHistoryInsert = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(transactionHistoryInsert.capture(), Mockito.any(KeyHolder.class));
+    Connection connection = mock(Connection.class);
+    PreparedStatement preparedStatement = mock(PreparedStatement.class);
+    when(connection.prepareStatement(transactionHistoryInsertSql, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+    assertSame(preparedStatement, transactionHistoryInsert.getValue().createPreparedStatement(connection));
+    Mockito.verify(preparedStatement).setString(1, customer1.getUsername());
+    Mockito.verify(preparedStatement).setObject(2, CURRENT_TIME);
+    Mockito.verify(preparedStatement).setString(3, "Deposit");
+    Mockito.verify(preparedStatement).setObject(4, expectedDepositAmtInPennies);
+
+    // Verify that the "account_info" page is loaded with a single snapshot query instead of separate
+    // Customers, OverdraftLogs and TransactionHistory queries
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any());
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(eq(AccountSnapshotRepository.ACCOUNT_SNAPSHOT_SQL), Mockito.any(ResultSetExtractor.class),
+                                                         eq(CUSTOMER1_USERNAME), eq(CUSTOMER1_USERNAME), anyInt(), eq(CUSTOMER1_USERNAME), anyInt());
+
+    // Verify that the deposit ran as a single committed transaction
+    Mockito.verify(transactionManager, Mockito.times(1)).getTransaction(Mockito.any());
+    Mockito.verify(transactionManager, Mockito.times(1)).commit(Mockito.any());
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -177,18 +226,18 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("not password");
-		customer1.setAmountToDeposit(100);
+		customer1.setAmountToDeposit(Money.ofDollars(100));
 
     // stub jdbc calls
     // unsuccessful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
 
     // send deposit request
-    String pageReturned = controller.submitDeposit(customer1);
+    String pageReturned = controller.submitDeposit(customer1, null);
 
     // Verify that no SQL Update commands are sent
-    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString());
+    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString(), (Object[]) Mockito.any());
 
     // verify that customer is re-directed to "welcome" page
 		assertEquals("welcome", pageReturned);
@@ -196,7 +245,7 @@ public class MvcControllerTest {
 
 	@Test
 	public void testShowWithdrawFormSuccess() {
-		assertEquals("withdraw_form", controller.showWithdrawForm(mockModel));
+		assertEquals("withdraw_form", controller.showWithdrawForm(mockModel, null));
 	}
 
   @Test
@@ -204,32 +253,33 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToWithdraw(100);
+		customer1.setAmountToWithdraw(Money.ofDollars(100));
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // retrieve balance of $200 (which is stored as 20000 pennies) from DB
-    String getCustomer1BalanceSql=String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class))).thenReturn(20000);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $200, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(20000), Money.ofCents(0), 0));
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
 
     // send withdraw request
-    String pageReturned = controller.submitWithdraw(customer1);
+    String pageReturned = controller.submitWithdraw(customer1, null);
 
     // Verify that the SQL Update command executed uses customer1's ID and amountToWitdraw.
-    int expectedWithdrawAmtInPennies = (int) (customer1.getAmountToWithdraw() * 100);
-    String balanceDecreaseSqlCustomer1=String.format("UPDATE Customers SET Balance = Balance - %d WHERE CustomerID='%s';",
-                                                     expectedWithdrawAmtInPennies,
-                                                     customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceDecreaseSqlCustomer1));
+    long expectedWithdrawAmtInPennies = customer1.getAmountToWithdraw().getCents();
+    String balanceDecreaseSqlCustomer1 = "UPDATE Customers SET Balance = Balance - ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceDecreaseSqlCustomer1), eq(expectedWithdrawAmtInPennies), eq(customer1.getUsername()));
+
+    // Verify that the "account_info" page is loaded with a single snapshot query instead of separate
+    // Customers, OverdraftLogs and TransactionHistory queries
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any());
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(eq(AccountSnapshotRepository.ACCOUNT_SNAPSHOT_SQL), Mockito.any(ResultSetExtractor.class),
+                                                         eq(CUSTOMER1_USERNAME), eq(CUSTOMER1_USERNAME), anyInt(), eq(CUSTOMER1_USERNAME), anyInt());
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -240,18 +290,18 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("not password");
-		customer1.setAmountToWithdraw(100);
+		customer1.setAmountToWithdraw(Money.ofDollars(100));
 
     // stub jdbc calls
     // unsuccessful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
 
     // send withdraw request
-    String pageReturned = controller.submitWithdraw(customer1);
+    String pageReturned = controller.submitWithdraw(customer1, null);
 
     // Verify that no SQL Update commands are sent
-    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString());
+    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString(), (Object[]) Mockito.any());
 
     // verify that customer is re-directed to "welcome" page
 		assertEquals("welcome", pageReturned);
@@ -262,35 +312,31 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToWithdraw(10); // withdraw $10 in overdraft
+		customer1.setAmountToWithdraw(Money.ofDollars(10)); // withdraw $10 in overdraft
 
-		String getCustomer1PasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
-		String getCustomer1BalanceSql =  String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
-		String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
+		String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
 
     // stub jdbc calls
     // successful login
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME))).thenReturn("password");
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
-    // start customer with balance and overdraft balance of $0
-		when(jdbcTemplate.queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class))).thenReturn(0);
-		when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(0);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
+    // start customer with balance of $0, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(0), 0));
 
     // send withdraw request
-    String pageReturned = controller.submitWithdraw(customer1);
+    String pageReturned = controller.submitWithdraw(customer1, null);
 
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class));
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class));
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class));
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME));
+    // verify that balance, overdraft balance and fraud reversals are read in a single row read
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME));
+    Mockito.verify(jdbcTemplate, Mockito.never()).queryForObject(anyString(), eq(Integer.class), (Object[]) Mockito.any());
     // expect a new overdraft balance of $10.20 due to 2% interest rate
-    String overDraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = %d WHERE CustomerID='%s';", 1020, CUSTOMER1_USERNAME);
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(overDraftBalanceUpdateSql); 
+    String overDraftBalanceUpdateSql = "UPDATE Customers SET OverdraftBalance = ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overDraftBalanceUpdateSql), eq(1020L), eq(CUSTOMER1_USERNAME)); 
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -301,31 +347,30 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToWithdraw(2000); // try to withdraw $2000 in overdraft, but the max allowed is $1000
+		customer1.setAmountToWithdraw(Money.ofDollars(2000)); // try to withdraw $2000 in overdraft, but the max allowed is $1000
 
-		String getCustomer1PasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
-		String getCustomer1BalanceSql =  String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
+		String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
 		
     // stub jdbc calls
     // successful login
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME))).thenReturn("password");
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
-    // start customer with balance of $0
-		when(jdbcTemplate.queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class))).thenReturn(0);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
+    // start customer with balance of $0, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(0), 0));
 
     // send withdraw request
-    String pageReturned = controller.submitWithdraw(customer1);
+    String pageReturned = controller.submitWithdraw(customer1, null);
     
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class));
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class));
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME));
+    // verify that balance, overdraft balance and fraud reversals are read in a single row read
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME));
+    Mockito.verify(jdbcTemplate, Mockito.never()).queryForObject(anyString(), eq(Integer.class), (Object[]) Mockito.any());
     // no update due to failing on customer.getAmountToWithdraw() > MAX_AMOUNT
-    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString());
+    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString(), (Object[]) Mockito.any());
 
     // verify "welcome" page is returned
 		assertEquals("welcome", pageReturned);
@@ -336,38 +381,43 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToDeposit(100); // deposit $100 to pay off $10 of overdraft and deposit $90 excess into main balance
+		customer1.setAmountToDeposit(Money.ofDollars(100)); // deposit $100 to pay off $10 of overdraft and deposit $90 excess into main balance
 
-		String getCustomer1PasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
-		String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
+		String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
 
     // stub jdbc calls
     // successful login
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME))).thenReturn("password");
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
-    // start customer with overdraft balance of $10 (represented as 1000 pennies in the DB)
-		when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(1000); 
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
+    // start customer with balance of $0, overdraft balance of $10 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(1000), 0));
 		
     // send deposit request
-    String pageReturned = controller.submitDeposit(customer1);
+    String pageReturned = controller.submitDeposit(customer1, null);
 
     // verify queries for password and overdraft balance
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class));
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class));
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME));
+    // verify that balance, overdraft balance and fraud reversals are read in a single row read
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME));
+    Mockito.verify(jdbcTemplate, Mockito.never()).queryForObject(anyString(), eq(Integer.class), (Object[]) Mockito.any());
 
     // verify updating overdraft balance to $0
-    String overDraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = %d WHERE CustomerID='%s';", 0, CUSTOMER1_USERNAME);
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overDraftBalanceUpdateSql));
+    String overDraftBalanceUpdateSql = "UPDATE Customers SET OverdraftBalance = ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overDraftBalanceUpdateSql), eq(0L), eq(CUSTOMER1_USERNAME));
 
     // verify updating balance to $90 due to excess deposit (represented as 9000 pennies in the DB)
-    String balanceUpdateSql = String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';", 9000, CUSTOMER1_USERNAME);
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceUpdateSql));
+    String balanceUpdateSql = "UPDATE Customers SET Balance = Balance + ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceUpdateSql), eq(9000L), eq(CUSTOMER1_USERNAME));
+
+    // Verify that the "account_info" page is loaded with a single snapshot query instead of separate
+    // Customers, OverdraftLogs and TransactionHistory queries
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any());
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(eq(AccountSnapshotRepository.ACCOUNT_SNAPSHOT_SQL), Mockito.any(ResultSetExtractor.class),
+                                                         eq(CUSTOMER1_USERNAME), eq(CUSTOMER1_USERNAME), anyInt(), eq(CUSTOMER1_USERNAME), anyInt());
 
     // verify "account_info" page is returned
     assertEquals("account_info", pageReturned);
@@ -378,38 +428,37 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToDeposit(100); // deposit $100 to pay off part of a $500 overdraft balance
+		customer1.setAmountToDeposit(Money.ofDollars(100)); // deposit $100 to pay off part of a $500 overdraft balance
 
-		String getCustomer1PasswordSql = String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
-		String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", CUSTOMER1_USERNAME);
+		String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
 		
     // stub jdbc calls
 		// successful login
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME))).thenReturn("password");
     // handles updateAccountInfo() helper method
-    when(jdbcTemplate.queryForList(anyString())).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
-    // start customer with overdraft balance of $500 (represented as 50000 pennies in the DB)
-		when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(50000); 
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
+    // start customer with balance of $0, overdraft balance of $500 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(50000), 0));
 
     // send deposit request
-    String pageReturned = controller.submitDeposit(customer1);
+    String pageReturned = controller.submitDeposit(customer1, null);
 
     // verify queries for password and overdraft balance
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class));
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class));
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME));
+    // verify that balance, overdraft balance and fraud reversals are read in a single row read
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME));
+    Mockito.verify(jdbcTemplate, Mockito.never()).queryForObject(anyString(), eq(Integer.class), (Object[]) Mockito.any());
 
 		// overdraft balance > customer deposit, so new overdraft balance must be $400 (represented as 40000 pennies in DB)
-    String overDraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = %d WHERE CustomerID='%s';", 40000, CUSTOMER1_USERNAME);
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overDraftBalanceUpdateSql));
+    String overDraftBalanceUpdateSql = "UPDATE Customers SET OverdraftBalance = ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overDraftBalanceUpdateSql), eq(40000L), eq(CUSTOMER1_USERNAME));
 
     // main balance should remain unchanged
-    String balanceUpdateSql = String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';", 0, CUSTOMER1_USERNAME);
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceUpdateSql));
+    String balanceUpdateSql = "UPDATE Customers SET Balance = Balance + ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceUpdateSql), eq(0L), eq(CUSTOMER1_USERNAME));
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -420,19 +469,19 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToWithdraw(100);
+		customer1.setAmountToWithdraw(Money.ofDollars(100));
 
     // stub jdbc calls
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // handles account being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(2);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $0, overdraft balance of $0 and 2 fraud reversals (locked account)
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(0), 2));
     // send withdraw request
-    String pageReturned = controller.submitWithdraw(customer1);
+    String pageReturned = controller.submitWithdraw(customer1, null);
 
     // Verify that no SQL Update commands are sent
-    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString());
+    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString(), (Object[]) Mockito.any());
 
     // verify that customer is re-directed to "welcome" page
 		assertEquals("welcome", pageReturned);
@@ -443,20 +492,20 @@ public class MvcControllerTest {
 		User customer1 = new User();
 		customer1.setUsername(CUSTOMER1_USERNAME);
 		customer1.setPassword("password");
-		customer1.setAmountToDeposit(100);
+		customer1.setAmountToDeposit(Money.ofDollars(100));
 
     // stub jdbc calls
     // unsuccessful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // handles account being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(2);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $0, overdraft balance of $0 and 2 fraud reversals (locked account)
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(0), 2));
     // send deposit request
-    String pageReturned = controller.submitDeposit(customer1);
+    String pageReturned = controller.submitDeposit(customer1, null);
 
     // Verify that no SQL Update commands are sent
-    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString());
+    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString(), (Object[]) Mockito.any());
 
     // verify that customer is re-directed to "welcome" page
 		assertEquals("welcome", pageReturned);
@@ -473,38 +522,29 @@ public class MvcControllerTest {
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // no overdraft
-    String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(0);
-    // has balance of 200
-    String getCustomer1BalanceSql=String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class))).thenReturn(20000);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $200, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(20000), Money.ofCents(0), 0));
     // handles updateAccountInfo() helper method
-    String getUserNameAndBalanceAndOverDraftBalanceSql = String.format("SELECT FirstName, LastName, Balance, OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForList(eq(getUserNameAndBalanceAndOverDraftBalanceSql))).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // handles getting 3 most recent logs from transaction history
-    String getTransactionHistorySql = String.format("Select * from TransactionHistory WHERE CustomerId='%s' ORDER BY Timestamp DESC LIMIT %d;", customer1.getUsername(), 3);
-    when(jdbcTemplate.queryForList(eq(getTransactionHistorySql))).thenReturn(TRANSACTION_HIST);
-    // sends empty overdraft log when fetching overdraft logs for customer that match timestamp of reversed transaction
-    String getOverDraftLogsSql = String.format("SELECT * FROM OverdraftLogs WHERE CustomerID='%s' AND Timestamp='%s';", customer1.getUsername(), TRANSACTION_HIST.get(0).get("Timestamp"));
-    when(jdbcTemplate.queryForList(eq(getOverDraftLogsSql))).thenReturn(OVERDRAFT_LOGS);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
+    String getTransactionHistorySql = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?";
+    when(jdbcTemplate.query(eq(getTransactionHistorySql), Mockito.any(RowMapper.class), eq(customer1.getUsername()), eq(3))).thenReturn(TRANSACTION_HIST);
+    // sends empty overdraft log when fetching the overdraft logs of the reversed transaction
+    String getOverDraftLogsSql = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE TransactionID=? AND CustomerID=?";
+    when(jdbcTemplate.query(eq(getOverDraftLogsSql), Mockito.any(RowMapper.class), eq(TRANSACTION_HIST.get(0).getTransactionID()), eq(customer1.getUsername()))).thenReturn(OVERDRAFT_LOGS);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
 
     // send dispute request
-    String pageReturned = controller.submitDispute(customer1);
+    String pageReturned = controller.submitDispute(customer1, null);
 
     // Verify that the SQL Update command executed uses dispute amount
-    int expectedDepositAmtInPennies = (int) (100*100);
-    String balanceDecreaseSqlCustomer1=String.format("UPDATE Customers SET Balance = Balance - %d WHERE CustomerID='%s';",
-                                                     expectedDepositAmtInPennies,
-                                                     customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceDecreaseSqlCustomer1));
+    long expectedDepositAmtInPennies = 100*100;
+    String balanceDecreaseSqlCustomer1 = "UPDATE Customers SET Balance = Balance - ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceDecreaseSqlCustomer1), eq(expectedDepositAmtInPennies), eq(customer1.getUsername()));
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -521,39 +561,31 @@ public class MvcControllerTest {
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // no overdraft
-    String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(0);
-    // has balance of 0
-    String getCustomer1BalanceSql=String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class))).thenReturn(0);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $0, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(0), 0));
     // handles updateAccountInfo() helper method
-    String getUserNameAndBalanceAndOverDraftBalanceSql = String.format("SELECT FirstName, LastName, Balance, OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForList(eq(getUserNameAndBalanceAndOverDraftBalanceSql))).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // handles getting 3 most recent logs from transaction history
-    String getTransactionHistorySql = String.format("Select * from TransactionHistory WHERE CustomerId='%s' ORDER BY Timestamp DESC LIMIT %d;", customer1.getUsername(), 3);
-    when(jdbcTemplate.queryForList(eq(getTransactionHistorySql))).thenReturn(TRANSACTION_HIST);
-    // sends empty overdraft log when fetching overdraft logs for customer that match timestamp of reversed transaction
-    String getOverDraftLogsSql = String.format("SELECT * FROM OverdraftLogs WHERE CustomerID='%s' AND Timestamp='%s';", customer1.getUsername(), TRANSACTION_HIST.get(0).get("Timestamp"));
-    when(jdbcTemplate.queryForList(eq(getOverDraftLogsSql))).thenReturn(OVERDRAFT_LOGS);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
+    String getTransactionHistorySql = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?";
+    when(jdbcTemplate.query(eq(getTransactionHistorySql), Mockito.any(RowMapper.class), eq(customer1.getUsername()), eq(3))).thenReturn(TRANSACTION_HIST);
+    // sends empty overdraft log when fetching the overdraft logs of the reversed transaction
+    String getOverDraftLogsSql = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE TransactionID=? AND CustomerID=?";
+    when(jdbcTemplate.query(eq(getOverDraftLogsSql), Mockito.any(RowMapper.class), eq(TRANSACTION_HIST.get(0).getTransactionID()), eq(customer1.getUsername()))).thenReturn(OVERDRAFT_LOGS);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
 
     // send dispute request
-    String pageReturned = controller.submitDispute(customer1);
+    String pageReturned = controller.submitDispute(customer1, null);
 
     // Verify that the SQL Update command executed sets balance to 0
-    String balanceZeroSqlCustomer1=String.format("UPDATE Customers SET Balance = 0 WHERE CustomerID='%s';",
-                                                     customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceZeroSqlCustomer1));
+    String balanceZeroSqlCustomer1 = "UPDATE Customers SET Balance = ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceZeroSqlCustomer1), eq(0L), eq(customer1.getUsername()));
     //makes sure overdraft balance is increased by 10000*1.02 (the tax)
-    String overdraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = OverdraftBalance + 10200 WHERE CustomerID='%s';", customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overdraftBalanceUpdateSql));
+    String overdraftBalanceUpdateSql = "UPDATE Customers SET OverdraftBalance = OverdraftBalance + ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overdraftBalanceUpdateSql), eq(10200L), eq(customer1.getUsername()));
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -570,38 +602,35 @@ public class MvcControllerTest {
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // no overdraft
-    String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(0);
-    // has balance of 200
-    String getCustomer1BalanceSql=String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class))).thenReturn(20000);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $200, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(20000), Money.ofCents(0), 0));
     // handles updateAccountInfo() helper method
-    String getUserNameAndBalanceAndOverDraftBalanceSql = String.format("SELECT FirstName, LastName, Balance, OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForList(eq(getUserNameAndBalanceAndOverDraftBalanceSql))).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // handles getting 3 most recent logs from transaction history
-    String getTransactionHistorySql = String.format("Select * from TransactionHistory WHERE CustomerId='%s' ORDER BY Timestamp DESC LIMIT %d;", customer1.getUsername(), 3);
-    when(jdbcTemplate.queryForList(eq(getTransactionHistorySql))).thenReturn(TRANSACTION_HIST_WITHDRAW);
-    // sends empty overdraft log when fetching overdraft logs for customer that match timestamp of reversed transaction
-    String getOverDraftLogsSql = String.format("SELECT * FROM OverdraftLogs WHERE CustomerID='%s' AND Timestamp='%s';", customer1.getUsername(), TRANSACTION_HIST.get(0).get("Timestamp"));
-    when(jdbcTemplate.queryForList(eq(getOverDraftLogsSql))).thenReturn(OVERDRAFT_LOGS);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
+    String getTransactionHistorySql = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?";
+    when(jdbcTemplate.query(eq(getTransactionHistorySql), Mockito.any(RowMapper.class), eq(customer1.getUsername()), eq(3))).thenReturn(TRANSACTION_HIST_WITHDRAW);
+    // sends empty overdraft log when fetching the overdraft logs of the reversed transaction
+    String getOverDraftLogsSql = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE TransactionID=? AND CustomerID=?";
+    when(jdbcTemplate.query(eq(getOverDraftLogsSql), Mockito.any(RowMapper.class), eq(TRANSACTION_HIST.get(0).getTransactionID()), eq(customer1.getUsername()))).thenReturn(OVERDRAFT_LOGS);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
 
     // send dispute request
-    String pageReturned = controller.submitDispute(customer1);
+    String pageReturned = controller.submitDispute(customer1, null);
 
     // Verify that the SQL Update command executed uses dispute amount
-    int expectedDepositAmtInPennies = (int) (100*100);
-    String balanceDecreaseSqlCustomer1=String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';",
-                                                     expectedDepositAmtInPennies,
-                                                     customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceDecreaseSqlCustomer1));
+    long expectedDepositAmtInPennies = 100*100;
+    String balanceDecreaseSqlCustomer1 = "UPDATE Customers SET Balance = Balance + ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceDecreaseSqlCustomer1), eq(expectedDepositAmtInPennies), eq(customer1.getUsername()));
+
+    // Verify that the "account_info" page is loaded with a single snapshot query instead of separate
+    // Customers, OverdraftLogs and TransactionHistory queries
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any());
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).query(eq(AccountSnapshotRepository.ACCOUNT_SNAPSHOT_SQL), Mockito.any(ResultSetExtractor.class),
+                                                         eq(CUSTOMER1_USERNAME), eq(CUSTOMER1_USERNAME), anyInt(), eq(CUSTOMER1_USERNAME), anyInt());
 
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
@@ -618,43 +647,131 @@ public class MvcControllerTest {
 
     // stub jdbc calls
     // successful login
-    String getCustomer1PasswordSql=String.format("SELECT Password FROM passwords WHERE CustomerID='%s';", customer1.getUsername());
-		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class))).thenReturn("password");
-    // no overdraft
-    String getCustomer1OverdraftBalanceSql = String.format("SELECT OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1OverdraftBalanceSql), eq(Integer.class))).thenReturn(5000);
-    // has balance of 200
-    String getCustomer1BalanceSql=String.format("SELECT Balance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getCustomer1BalanceSql), eq(Integer.class))).thenReturn(0);
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $0, overdraft balance of $50 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(5000), 0));
     // handles updateAccountInfo() helper method
-    String getUserNameAndBalanceAndOverDraftBalanceSql = String.format("SELECT FirstName, LastName, Balance, OverdraftBalance FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForList(eq(getUserNameAndBalanceAndOverDraftBalanceSql))).thenReturn(CUSTOMER1_DATA);
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
     // handles getting 3 most recent logs from transaction history
-    String getTransactionHistorySql = String.format("Select * from TransactionHistory WHERE CustomerId='%s' ORDER BY Timestamp DESC LIMIT %d;", customer1.getUsername(), 3);
-    when(jdbcTemplate.queryForList(eq(getTransactionHistorySql))).thenReturn(TRANSACTION_HIST_WITHDRAW);
-    // sends empty overdraft log when fetching overdraft logs for customer that match timestamp of reversed transaction
-    String getOverDraftLogsSql = String.format("SELECT * FROM OverdraftLogs WHERE CustomerID='%s' AND Timestamp='%s';", customer1.getUsername(), TRANSACTION_HIST.get(0).get("Timestamp"));
-    when(jdbcTemplate.queryForList(eq(getOverDraftLogsSql))).thenReturn(OVERDRAFT_LOGS);
-    // handles account not being locked
-    String getNumReversals = String.format("SELECT NumFraudReversals FROM customers WHERE CustomerID='%s';", customer1.getUsername());
-    when(jdbcTemplate.queryForObject(eq(getNumReversals), eq(Integer.class))).thenReturn(0);
+    String getTransactionHistorySql = "SELECT TransactionID, Timestamp, Action, Amount FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC, TransactionID DESC LIMIT ?";
+    when(jdbcTemplate.query(eq(getTransactionHistorySql), Mockito.any(RowMapper.class), eq(customer1.getUsername()), eq(3))).thenReturn(TRANSACTION_HIST_WITHDRAW);
+    // sends empty overdraft log when fetching the overdraft logs of the reversed transaction
+    String getOverDraftLogsSql = "SELECT OverdraftLogID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance FROM OverdraftLogs WHERE TransactionID=? AND CustomerID=?";
+    when(jdbcTemplate.query(eq(getOverDraftLogsSql), Mockito.any(RowMapper.class), eq(TRANSACTION_HIST.get(0).getTransactionID()), eq(customer1.getUsername()))).thenReturn(OVERDRAFT_LOGS);
     // not working with live DB
-		when(jdbcTemplate.update(anyString())).thenReturn(1);
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
 
     // send dispute request
-    String pageReturned = controller.submitDispute(customer1);
+    String pageReturned = controller.submitDispute(customer1, null);
 
     // Verify that the SQL Update command executed uses dispute amount. 10000 is withdraw amount and
     // 5000 is amount in overdraft so when depositing 10000 5000 should go into balance
-    int expectedDepositAmtInPennies = (100*100) - (50*100);
-    String balanceIncreaseSqlCustomer1=String.format("UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';",
-                                                     expectedDepositAmtInPennies,
-                                                     customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceIncreaseSqlCustomer1));
+    long expectedDepositAmtInPennies = (100*100) - (50*100);
+    String balanceIncreaseSqlCustomer1 = "UPDATE Customers SET Balance = Balance + ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceIncreaseSqlCustomer1), eq(expectedDepositAmtInPennies), eq(customer1.getUsername()));
     // as overdraft is completly paid off it should be set to 0
-    String overdraftBalanceUpdateSql = String.format("UPDATE Customers SET OverdraftBalance = 0 WHERE CustomerID='%s';", customer1.getUsername());
-    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overdraftBalanceUpdateSql));
+    String overdraftBalanceUpdateSql = "UPDATE Customers SET OverdraftBalance = ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(overdraftBalanceUpdateSql), eq(0L), eq(customer1.getUsername()));
     // verify "account_info" page is returned
 		assertEquals("account_info", pageReturned);
 	}
+
+  @Test
+	public void testDepositWithLoginSessionSkipsPasswordCheck() {
+    // log in first
+		User customer1 = new User();
+		customer1.setUsername(CUSTOMER1_USERNAME);
+		customer1.setPassword("password");
+
+    // stub jdbc calls
+    // successful login
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+    // start customer with balance of $0, overdraft balance of $0 and 0 fraud reversals
+    String getCustomer1StateSql = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID=? FOR UPDATE";
+    when(jdbcTemplate.queryForObject(eq(getCustomer1StateSql), Mockito.any(RowMapper.class), eq(CUSTOMER1_USERNAME))).thenReturn(new CustomerState(CUSTOMER1_USERNAME, Money.ofCents(0), Money.ofCents(0), 0));
+    // handles updateAccountInfo() helper method
+    when(jdbcTemplate.query(anyString(), Mockito.any(ResultSetExtractor.class), (Object[]) Mockito.any())).thenReturn(CUSTOMER1_SNAPSHOT);
+    // not working with live DB
+		when(jdbcTemplate.update(anyString(), (Object[]) Mockito.any())).thenReturn(1);
+
+    MockHttpServletResponse loginResponse = new MockHttpServletResponse();
+    assertEquals("account_info", controller.submitLoginForm(customer1, loginResponse));
+    MockCookie sessionCookie = (MockCookie) loginResponse.getCookie(SessionStore.SESSION_COOKIE);
+    assertNotNull(sessionCookie);
+    // only sent over HTTPS, and never with requests from other sites
+    assertTrue(sessionCookie.getSecure());
+    assertTrue(sessionCookie.isHttpOnly());
+    assertEquals("Strict", sessionCookie.getSameSite());
+    String sessionToken = sessionCookie.getValue();
+
+    // deposit form served to the session, and submitted with the session cookie and no password
+    ExtendedModelMap depositFormModel = new ExtendedModelMap();
+    assertEquals("deposit_form", controller.showDepositForm(depositFormModel, sessionToken));
+    User depositForm = (User) depositFormModel.get("user");
+    assertEquals(sessionStore.csrfTokenFor(sessionToken), depositForm.getCsrfToken());
+    depositForm.setUsername(CUSTOMER1_USERNAME);
+    depositForm.setAmountToDeposit(Money.ofDollars(100));
+    String pageReturned = controller.submitDeposit(depositForm, sessionToken);
+
+    // Verify that the password was only read from the DB for the login itself
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(CUSTOMER1_USERNAME));
+    String balanceIncreaseSqlCustomer1 = "UPDATE Customers SET Balance = Balance + ? WHERE CustomerID=?";
+    Mockito.verify(jdbcTemplate, Mockito.times(1)).update(eq(balanceIncreaseSqlCustomer1), eq(10000L), eq(CUSTOMER1_USERNAME));
+		assertEquals("account_info", pageReturned);
+	}
+
+  @Test
+	public void testSessionOfAnotherCustomerDoesNotAuthorizeWithdraw() {
+    // a different customer is logged in, and submits a withdraw form for customer1
+    String sessionToken = sessionStore.create("987654321");
+		User customer1 = new User();
+		customer1.setUsername(CUSTOMER1_USERNAME);
+		customer1.setPassword("not password");
+		customer1.setAmountToWithdraw(Money.ofDollars(100));
+
+    // stub jdbc calls
+    // unsuccessful login
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+
+    String pageReturned = controller.submitWithdraw(customer1, sessionToken);
+
+    // Verify that no SQL Update commands are sent
+    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString(), (Object[]) Mockito.any());
+		assertEquals("welcome", pageReturned);
+	}
+
+  @Test
+	public void testSessionWithoutCsrfTokenDoesNotAuthorizeDeposit() {
+    // a form on another site posts to /deposit, and the browser sends customer1's session cookie along
+    String sessionToken = sessionStore.create(CUSTOMER1_USERNAME);
+		User customer1 = new User();
+		customer1.setUsername(CUSTOMER1_USERNAME);
+		customer1.setAmountToDeposit(Money.ofDollars(100));
+
+    // stub jdbc calls
+    String getCustomer1PasswordSql = "SELECT Password FROM Passwords WHERE CustomerID=?";
+		when(jdbcTemplate.queryForObject(eq(getCustomer1PasswordSql), eq(String.class), eq(customer1.getUsername()))).thenReturn("password");
+
+    assertEquals("welcome", controller.submitDeposit(customer1, sessionToken));
+    customer1.setCsrfToken("not the csrf token");
+    assertEquals("welcome", controller.submitDeposit(customer1, sessionToken));
+
+    // Verify that no SQL Update commands are sent
+    Mockito.verify(jdbcTemplate, Mockito.times(0)).update(anyString(), (Object[]) Mockito.any());
+	}
+
+  @Test
+	public void testLogoutEndsSession() {
+    String sessionToken = sessionStore.create(CUSTOMER1_USERNAME);
+    MockHttpServletResponse logoutResponse = new MockHttpServletResponse();
+
+    assertEquals("welcome", controller.submitLogout(sessionToken, logoutResponse));
+
+    assertNull(sessionStore.customerFor(sessionToken));
+    assertEquals(0, logoutResponse.getCookie(SessionStore.SESSION_COOKIE).getMaxAge());
+	}
 }
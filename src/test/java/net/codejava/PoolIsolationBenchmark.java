@@ -0,0 +1,150 @@
+package net.codejava;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.flywaydb.core.Flyway;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Latency of withdraws while three threads export statements without pause, with exports sharing
+ * the oltp pool (`pools=shared`) or on their own reporting pool (`pools=separate`), as
+ * {@link DataSourceConfiguration} sets them up. The oltp pool has 2 connections and the reporting
+ * pool 2 more, so shared exports can hold every connection a withdraw needs.
+ *
+ * The DB is an in-memory H2 DB behind H2's TCP server, so that every query is a real socket round
+ * trip, and each statement holds 5000 TransactionHistory rows.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=PoolIsolationBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoolIsolationBenchmark {
+  private final static String EXPORTED_CUSTOMER_ID = "111111111";
+  private final static String WITHDRAW_CUSTOMER_ID = "123456789";
+  private final static int NUM_EXPORTED_ROWS = 5000;
+  private final static int POOL_SIZE = 2;
+
+  @Param({"shared", "separate"})
+  public String pools;
+
+  private Server h2Server;
+  private HikariDataSource oltpDataSource;
+  private HikariDataSource reportingDataSource;
+  private JdbcTemplate jdbcTemplate;
+  private StatementExporter statementExporter;
+  private LedgerService ledgerService;
+  // drops the statement, as only the DB side of an export is measured
+  private final Writer out = new Writer() {
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  @Setup(Level.Trial)
+  public void setup() throws SQLException, IOException {
+    int h2Port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      h2Port = socket.getLocalPort();
+    }
+    h2Server = Server.createTcpServer("-tcpPort", String.valueOf(h2Port), "-ifNotExists").start();
+    String url = H2Fixture.tcpUrl(h2Port, "pools");
+
+    oltpDataSource = newPool("oltp", url);
+    Flyway.configure().dataSource(oltpDataSource).load().migrate();
+    jdbcTemplate = new JdbcTemplate(oltpDataSource);
+    if (pools.equals("separate")) {
+      reportingDataSource = newPool("reporting", url);
+      statementExporter = new StatementExporter(new JdbcTemplate(reportingDataSource), 1000);
+    } else {
+      statementExporter = new StatementExporter(jdbcTemplate, 1000);
+    }
+
+    TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(oltpDataSource));
+    ledgerService = new LedgerService(new CustomerRepository(jdbcTemplate),
+                                      new TransactionHistoryRepository(jdbcTemplate),
+                                      new OverdraftLogRepository(jdbcTemplate),
+                                      new AccountSnapshotCache(new AccountSnapshotRepository(jdbcTemplate), 100),
+                                      transactionTemplate,
+                                      Clock.systemDefaultZone(),
+                                      new SimpleMeterRegistry());
+
+    H2Fixture.insertCustomer(jdbcTemplate, WITHDRAW_CUSTOMER_ID, 1000000000);
+    H2Fixture.insertCustomer(jdbcTemplate, EXPORTED_CUSTOMER_ID, "Jane", "Roe", 10000, 0, 0);
+    jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) "
+                        + "SELECT ?, DATEADD('MINUTE', X, ?), 'Deposit', 10000 FROM SYSTEM_RANGE(1, ?)",
+                        EXPORTED_CUSTOMER_ID, LocalDateTime.of(2020, 1, 1, 0, 0), NUM_EXPORTED_ROWS);
+  }
+
+  private static HikariDataSource newPool(String poolName, String url) {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setPoolName(poolName);
+    dataSource.setJdbcUrl(url);
+    dataSource.setMaximumPoolSize(POOL_SIZE);
+    return dataSource;
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    jdbcTemplate.execute("DROP ALL OBJECTS");
+    if (reportingDataSource != null) {
+      reportingDataSource.close();
+    }
+    oltpDataSource.close();
+    h2Server.stop();
+  }
+
+  @Benchmark
+  @Group("exportsAndWithdraws")
+  @GroupThreads(3)
+  public long export() throws IOException {
+    return statementExporter.export(EXPORTED_CUSTOMER_ID, LocalDateTime.of(2020, 1, 1, 0, 0), LocalDateTime.of(2030, 1, 1, 0, 0),
+                                    StatementExporter.Format.CSV, out);
+  }
+
+  @Benchmark
+  @Group("exportsAndWithdraws")
+  @GroupThreads(1)
+  public LedgerOutcome withdraw() {
+    return ledgerService.withdraw(WITHDRAW_CUSTOMER_ID, Money.ofCents(1));
+  }
+}
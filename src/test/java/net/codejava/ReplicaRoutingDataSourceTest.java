@@ -0,0 +1,150 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link ReplicaRoutingDataSource} reads from a replica only once the {@link ReplicationTracker}
+ * has seen it catch up, run against two in-memory H2 DBs in MySQL mode standing in for the primary and
+ * the replica.
+ *
+ * Nothing replicates between them by itself: each test copies the heartbeat over with replicate(). The
+ * customer's first name differs between the two DBs, so every read shows which DB it came from.
+ */
+public class ReplicaRoutingDataSourceTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final long MAX_LAG_MILLIS = 60_000;
+
+  private HikariDataSource primaryDataSource;
+  private HikariDataSource replicaDataSource;
+  private JdbcTemplate primaryJdbcTemplate;
+  private JdbcTemplate replicaJdbcTemplate;
+  private ReplicationTracker replicationTracker;
+  private JdbcTemplate routedJdbcTemplate;
+  private AccountSnapshotRepository accountSnapshotRepository;
+
+  @BeforeEach
+  public void setup() {
+    primaryDataSource = H2Fixture.newMigratedDataSource("primary");
+    replicaDataSource = H2Fixture.newMigratedDataSource("replica");
+    primaryJdbcTemplate = new JdbcTemplate(primaryDataSource);
+    replicaJdbcTemplate = new JdbcTemplate(replicaDataSource);
+    H2Fixture.insertCustomer(primaryJdbcTemplate, CUSTOMER1_USERNAME, "Primary", "Doe", 10000, 0, 0);
+    H2Fixture.insertCustomer(replicaJdbcTemplate, CUSTOMER1_USERNAME, "Replica", "Doe", 10000, 0, 0);
+
+    createTracker(0);
+  }
+
+  private void createTracker(long readYourWritesWaitMillis) {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // heartbeats are only sent by the tests
+    replicationTracker = new ReplicationTracker(primaryJdbcTemplate, Collections.singletonList(replicaDataSource), Clock.systemDefaultZone(),
+                                                MAX_LAG_MILLIS, readYourWritesWaitMillis, 0, meterRegistry);
+    routedJdbcTemplate = new JdbcTemplate(new ReplicaRoutingDataSource(primaryDataSource, replicationTracker, meterRegistry));
+    accountSnapshotRepository = new AccountSnapshotRepository(routedJdbcTemplate);
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(primaryDataSource);
+    H2Fixture.dropAndClose(replicaDataSource);
+  }
+
+  /**
+   * Applies the primary's heartbeat to the replica, as replication would.
+   */
+  private void replicate() {
+    LocalDateTime heartbeat = primaryJdbcTemplate.queryForObject(ReplicationTracker.READ_HEARTBEAT_SQL, LocalDateTime.class);
+    replicaJdbcTemplate.update(ReplicationTracker.WRITE_HEARTBEAT_SQL, heartbeat);
+  }
+
+  /**
+   * Sends a heartbeat, replicates it and lets the tracker see that the replica has it.
+   */
+  private void catchUp() {
+    replicationTracker.heartbeat();
+    replicate();
+    replicationTracker.heartbeat();
+  }
+
+  private String readFirstName() {
+    return accountSnapshotRepository.loadSnapshot(CUSTOMER1_USERNAME, 10, 3).getFirstName();
+  }
+
+  @Test
+  public void testReadsGoToReplicaOnceCaughtUp() {
+    // the replica's heartbeat is from 1970
+    replicationTracker.heartbeat();
+    assertEquals("Primary", readFirstName());
+
+    catchUp();
+    assertEquals("Replica", readFirstName());
+  }
+
+  @Test
+  public void testReadYourWrites() {
+    catchUp();
+    new AccountSnapshotCache(accountSnapshotRepository, replicationTracker, new SimpleMeterRegistry(), 100, 30).invalidate(CUSTOMER1_USERNAME);
+
+    assertEquals("Primary", readFirstName());
+    // another customer didn't write, so still reads from the replica
+    assertEquals(0, replicationTracker.chooseReplica("987654321"));
+
+    catchUp();
+    assertEquals("Replica", readFirstName());
+  }
+
+  @Test
+  public void testReadAfterWriteWaitsForReplica() throws Exception {
+    createTracker(5000);
+    catchUp();
+    replicationTracker.recordWrite(CUSTOMER1_USERNAME);
+
+    Thread replication = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        return;
+      }
+      catchUp();
+    });
+    long start = System.nanoTime();
+    replication.start();
+    try {
+      assertEquals("Replica", readFirstName());
+      assertTrue(System.nanoTime() - start >= 100_000_000L);
+    } finally {
+      replication.join();
+    }
+  }
+
+  @Test
+  public void testUnreadableReplicaIsSkipped() {
+    catchUp();
+    replicaJdbcTemplate.execute("DROP TABLE ReplicationHeartbeat");
+    replicationTracker.heartbeat();
+
+    assertEquals(ReplicationTracker.PRIMARY, replicationTracker.chooseReplica(CUSTOMER1_USERNAME));
+    assertEquals("Primary", readFirstName());
+  }
+
+  @Test
+  public void testQueriesOutsideReadForUsePrimary() {
+    catchUp();
+
+    String firstName = routedJdbcTemplate.queryForObject("SELECT FirstName FROM Customers WHERE CustomerID=?", String.class, CUSTOMER1_USERNAME);
+    assertEquals("Primary", firstName);
+  }
+}
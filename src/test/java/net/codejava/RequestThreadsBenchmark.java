@@ -0,0 +1,157 @@
+package net.codejava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Load test of request threads: 1000 concurrent clients against the app with `testudo.server.threads`
+ * set to `platform` (Tomcat's pool of 200 threads) or `virtual` (one virtual thread per request).
+ *
+ * Every client is logged in as its own customer. Half of them deposit through the JSON API, which
+ * needs a DB connection, and half read their account, which is usually served from the
+ * {@link AccountSnapshotCache}. The DB is an in-memory H2 DB behind H2's TCP server, so that every
+ * JDBC call is a blocking socket round trip, with a pool of 50 connections.
+ *
+ * Throughput is reported in requests per millisecond, and SampleTime reports p50/p99 latencies.
+ * `virtual` needs a Java 21+ JVM to run the benchmark.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=RequestThreadsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dhttp.maxConnections=1100", "-Xmx2g"})
+public class RequestThreadsBenchmark {
+  private final static int NUM_CLIENTS = 1000;
+
+  @Param({"platform", "virtual"})
+  public String threads;
+
+  private Server h2Server;
+  private ConfigurableApplicationContext context;
+  private String baseUrl;
+  private final AtomicInteger nextClient = new AtomicInteger();
+
+  @Setup(Level.Trial)
+  public void setup() throws SQLException, IOException {
+    int h2Port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      h2Port = socket.getLocalPort();
+    }
+    h2Server = Server.createTcpServer("-tcpPort", String.valueOf(h2Port), "-ifNotExists").start();
+
+    context = SpringApplication.run(TestudoBankApplication.class,
+                                    "--server.port=0",
+                                    "--server.tomcat.accept-count=" + NUM_CLIENTS,
+                                    "--testudo.server.threads=" + threads,
+                                    "--spring.datasource.url=" + H2Fixture.tcpUrl(h2Port, "threads"),
+                                    "--spring.datasource.username=sa",
+                                    "--spring.datasource.password=sa",
+                                    "--spring.datasource.hikari.maximum-pool-size=50",
+                                    "--logging.level.root=WARN",
+                                    "--logging.level.net.codejava=WARN");
+    baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+    JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+    for (int i = 0; i < NUM_CLIENTS; i++) {
+      H2Fixture.insertCustomer(jdbcTemplate, customerID(i), 0);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    context.close();
+    h2Server.stop();
+  }
+
+  private static String customerID(int client) {
+    return String.valueOf(100000000 + client);
+  }
+
+  /**
+   * One logged in customer per benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Client {
+    private String accountUrl;
+    private String sessionCookie;
+
+    @Setup(Level.Trial)
+    public void setup(RequestThreadsBenchmark app) {
+      String customerID = customerID(app.nextClient.getAndIncrement());
+      accountUrl = app.baseUrl + "/api/accounts/" + customerID;
+      sessionCookie = SessionStore.SESSION_COOKIE + "=" + app.context.getBean(SessionStore.class).create(customerID);
+    }
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(NUM_CLIENTS / 2)
+  public int deposit(Client client) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(client.accountUrl + "/deposits").openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setRequestProperty("Cookie", client.sessionCookie);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write("{\"amount\":\"0.01\"}".getBytes(StandardCharsets.UTF_8));
+    }
+    return readBody(connection);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(NUM_CLIENTS / 2)
+  public int readAccount(Client client) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(client.accountUrl).openConnection();
+    connection.setRequestProperty("Cookie", client.sessionCookie);
+    return readBody(connection);
+  }
+
+  /**
+   * @return length of the response body, which is read to the end so the connection is kept alive
+   */
+  private static int readBody(HttpURLConnection connection) throws IOException {
+    if (connection.getResponseCode() != 200) {
+      throw new IllegalStateException(connection.getRequestMethod() + " " + connection.getURL() + " returned " + connection.getResponseCode());
+    }
+    int length = 0;
+    try (InputStream in = connection.getInputStream()) {
+      byte[] buffer = new byte[4096];
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        length += read;
+      }
+    }
+    return length;
+  }
+}
@@ -0,0 +1,180 @@
+package net.codejava;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.read.ListAppender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RingBufferAppenderTest {
+  private static final int NUM_THREADS = 8;
+  private static final int EVENTS_PER_THREAD = 1000;
+
+  private LoggerContext context;
+  private ListAppender<ILoggingEvent> written;
+
+  @BeforeEach
+  public void setup() {
+    context = new LoggerContext();
+    written = new ListAppender<>();
+    written.setContext(context);
+    written.start();
+  }
+
+  private RingBufferAppender ringBufferAppender(int capacity, RingBufferAppender.OverflowPolicy overflowPolicy,
+                                                double debugSampleRate, AppenderBase<ILoggingEvent> child) {
+    RingBufferAppender appender = new RingBufferAppender();
+    appender.setContext(context);
+    appender.setName("RING_BUFFER");
+    appender.setCapacity(capacity);
+    appender.setOverflowPolicy(overflowPolicy);
+    appender.setDebugSampleRate(debugSampleRate);
+    appender.addAppender(child);
+    appender.start();
+    return appender;
+  }
+
+  private Logger logger(RingBufferAppender appender) {
+    Logger logger = context.getLogger("net.codejava.test");
+    logger.setLevel(Level.DEBUG);
+    logger.setAdditive(false);
+    logger.addAppender(appender);
+    return logger;
+  }
+
+  @Test
+  public void testEventsAreWrittenInOrder() {
+    RingBufferAppender appender = ringBufferAppender(16, RingBufferAppender.OverflowPolicy.BLOCK, 1.0, written);
+    Logger logger = logger(appender);
+
+    for (int i = 0; i < 100; i++) {
+      logger.info("event={}", i);
+    }
+    appender.stop();
+
+    assertEquals(100, written.list.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("event=" + i, written.list.get(i).getFormattedMessage());
+    }
+  }
+
+  @Test
+  public void testCredentialsAreRedacted() {
+    RingBufferAppender appender = ringBufferAppender(16, RingBufferAppender.OverflowPolicy.BLOCK, 1.0, written);
+    Logger logger = logger(appender);
+
+    User user = new User();
+    user.setUsername("123456789");
+    user.setPassword("hunter2");
+    logger.info("{}", user);
+    logger.info("Login attempt customer={} token: {}", "123456789", "abc123");
+    appender.stop();
+
+    assertEquals("User [username=123456789, password=****, balance=0.00]", written.list.get(0).getFormattedMessage());
+    assertEquals("Login attempt customer=123456789 token: ****", written.list.get(1).getFormattedMessage());
+  }
+
+  @Test
+  public void testDebugEventsAreSampled() {
+    RingBufferAppender appender = ringBufferAppender(16, RingBufferAppender.OverflowPolicy.BLOCK, 0.0, written);
+    Logger logger = logger(appender);
+
+    for (int i = 0; i < 10; i++) {
+      logger.debug("Increasing balance customer={}", i);
+    }
+    logger.info("Kept");
+    appender.stop();
+
+    assertEquals(1, written.list.size());
+    assertEquals("Kept", written.list.get(0).getFormattedMessage());
+    assertEquals(10, appender.getSampledOutEvents());
+  }
+
+  @Test
+  public void testFullBufferDropsAndCountsEvents() throws Exception {
+    // the console is stuck, so nothing leaves the buffer until it is released
+    CountDownLatch release = new CountDownLatch(1);
+    BlockingAppender stuck = new BlockingAppender(release);
+    RingBufferAppender appender = ringBufferAppender(4, RingBufferAppender.OverflowPolicy.DROP, 1.0, stuck);
+    Logger logger = logger(appender);
+
+    for (int i = 0; i < 20; i++) {
+      logger.info("event={}", i);
+    }
+    release.countDown();
+    appender.stop();
+
+    // at most one event is held by the stuck console, plus a full buffer
+    assertTrue(appender.getDroppedEvents() >= 20 - 5);
+    assertEquals(20, appender.getDroppedEvents() + stuck.events.size());
+  }
+
+  @Test
+  public void testBlockPolicyLosesNoEventsUnderContention() throws Exception {
+    RingBufferAppender appender = ringBufferAppender(8, RingBufferAppender.OverflowPolicy.BLOCK, 1.0, written);
+    Logger logger = logger(appender);
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    CountDownLatch startingGun = new CountDownLatch(1);
+    List<Future<?>> results = new ArrayList<>();
+    for (int thread = 0; thread < NUM_THREADS; thread++) {
+      int threadNum = thread;
+      results.add(executor.submit(() -> {
+        startingGun.await();
+        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+          logger.info("thread={} event={}", threadNum, i);
+        }
+        return null;
+      }));
+    }
+    startingGun.countDown();
+    for (Future<?> result : results) {
+      result.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+    appender.stop();
+
+    assertEquals(0, appender.getDroppedEvents());
+    assertEquals(NUM_THREADS * EVENTS_PER_THREAD, written.list.size());
+    // each thread's events keep their order
+    int[] nextEvent = new int[NUM_THREADS];
+    for (ILoggingEvent event : written.list) {
+      int thread = (Integer) event.getArgumentArray()[0];
+      assertEquals(nextEvent[thread]++, (int) (Integer) event.getArgumentArray()[1]);
+    }
+  }
+
+  private static class BlockingAppender extends AppenderBase<ILoggingEvent> {
+    private final CountDownLatch release;
+    private final List<ILoggingEvent> events = new ArrayList<>();
+
+    BlockingAppender(CountDownLatch release) {
+      this.release = release;
+      start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      events.add(event);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package net.codejava;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Compares the reads of a deposit dispute decoded the old way, as `queryForList` maps that are
+ * looked up by column name and cast, against the typed {@link TransactionRecord} and
+ * {@link OverdraftLogEntry} rows that the repositories now decode by column index.
+ *
+ * Each operation reads the customer's 3 most recent transactions and the overdraft logs
+ * of the one being reversed, from an in-memory H2 DB. Bytes allocated per operation are
+ * reported as gc.alloc.rate.norm by the benchmark profile's gc profiler.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=RowDecodingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowDecodingBenchmark {
+  private final static String CUSTOMER_ID = "123456789";
+  private final static int MAX_REVERSABLE_TRANSACTIONS_AGO = 3;
+  private final static String SELECT_ALL_RECENT_TRANSACTIONS_SQL = "SELECT * FROM TransactionHistory WHERE CustomerID=? ORDER BY Timestamp DESC LIMIT ?";
+  private final static String SELECT_ALL_OVERDRAFT_LOGS_OF_TRANSACTION_SQL = "SELECT * FROM OverdraftLogs WHERE TransactionID=? AND CustomerID=?";
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private TransactionHistoryRepository transactionHistoryRepository;
+  private OverdraftLogRepository overdraftLogRepository;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("decoding");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    transactionHistoryRepository = new TransactionHistoryRepository(jdbcTemplate);
+    overdraftLogRepository = new OverdraftLogRepository(jdbcTemplate);
+
+    // the most recent transaction is a deposit that paid off an overdraft
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER_ID, 10000);
+    LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    transactionHistoryRepository.insert(CUSTOMER_ID, now.minusMinutes(2), "Withdraw", Money.ofCents(5000));
+    transactionHistoryRepository.insert(CUSTOMER_ID, now.minusMinutes(1), "Withdraw", Money.ofCents(2500));
+    long depositID = transactionHistoryRepository.insert(CUSTOMER_ID, now, "Deposit", Money.ofCents(20000));
+    overdraftLogRepository.insert(CUSTOMER_ID, depositID, now, Money.ofCents(20000), Money.ofCents(2550), Money.ZERO);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  @Benchmark
+  public long columnMaps() {
+    List<Map<String,Object>> transactionLogs = jdbcTemplate.queryForList(SELECT_ALL_RECENT_TRANSACTIONS_SQL, CUSTOMER_ID, MAX_REVERSABLE_TRANSACTIONS_AGO);
+    Map<String,Object> logToReverse = transactionLogs.get(0);
+    long reversalAmountInPennies = ((Number) logToReverse.get("Amount")).longValue();
+    if (((String) logToReverse.get("Action")).toLowerCase().equals("deposit")) {
+      List<Map<String,Object>> queryLogs = jdbcTemplate.queryForList(SELECT_ALL_OVERDRAFT_LOGS_OF_TRANSACTION_SQL, logToReverse.get("TransactionID"), CUSTOMER_ID);
+      return reversalAmountInPennies + queryLogs.size();
+    }
+    return reversalAmountInPennies;
+  }
+
+  @Benchmark
+  public long typedRecords() {
+    List<TransactionRecord> transactionLogs = transactionHistoryRepository.findRecent(CUSTOMER_ID, MAX_REVERSABLE_TRANSACTIONS_AGO);
+    TransactionRecord logToReverse = transactionLogs.get(0);
+    long reversalAmountInPennies = logToReverse.getAmount().getCents();
+    if (logToReverse.isDeposit()) {
+      List<OverdraftLogEntry> queryLogs = overdraftLogRepository.findByTransaction(CUSTOMER_ID, logToReverse.getTransactionID());
+      return reversalAmountInPennies + queryLogs.size();
+    }
+    return reversalAmountInPennies;
+  }
+}
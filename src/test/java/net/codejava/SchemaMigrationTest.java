@@ -0,0 +1,157 @@
+package net.codejava;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import static org.junit.Assert.*;
+
+/**
+ * Query-plan regression tests for the schema in src/main/resources/db/migration.
+ * The migrations are applied to an in-memory H2 DB in MySQL mode, and the plan of every hot
+ * query must name the primary key or index it is expected to use. H2 marks a full scan as
+ * a `tableScan`, so a query that loses its index fails here instead of in production.
+ */
+public class SchemaMigrationTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final String TIMESTAMP = "2021-01-01 12:00:00";
+  private static final String TRANSACTION_HISTORY_INDEX = "TRANSACTIONHISTORY_CUSTOMERID_TIMESTAMP";
+  private static final String OVERDRAFT_LOGS_INDEX = "OVERDRAFTLOGS_CUSTOMERID_TIMESTAMP";
+  private static final String OVERDRAFT_LOGS_TRANSACTION_ID_INDEX = "OVERDRAFTLOGS_TRANSACTIONID";
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("schema");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  @AfterEach
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  private String explain(String sql, Object... args) {
+    return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, args);
+  }
+
+  @Test
+  public void testCustomerStateLookupUsesPrimaryKey() {
+    String plan = explain(CustomerRepository.CUSTOMER_STATE_SQL, CUSTOMER1_USERNAME);
+
+    assertTrue(plan, plan.contains("PRIMARY_KEY"));
+    assertFalse(plan, plan.contains("tableScan"));
+  }
+
+  @Test
+  public void testPasswordLookupUsesPrimaryKey() {
+    String plan = explain(CredentialCache.GET_USER_PASSWORD_SQL, CUSTOMER1_USERNAME);
+
+    assertTrue(plan, plan.contains("PRIMARY_KEY"));
+    assertFalse(plan, plan.contains("tableScan"));
+  }
+
+  @Test
+  public void testRecentTransactionsUseCustomerTimestampIndex() {
+    String plan = explain(TransactionHistoryRepository.RECENT_TRANSACTIONS_SQL, CUSTOMER1_USERNAME, 3);
+
+    assertTrue(plan, plan.contains(TRANSACTION_HISTORY_INDEX + ": CUSTOMERID = ?1"));
+    assertFalse(plan, plan.contains("tableScan"));
+  }
+
+  @Test
+  public void testHistoryPageAfterCursorSeeksCustomerTimestampIndex() {
+    String plan = explain(TransactionHistoryRepository.TRANSACTIONS_AFTER_CURSOR_SQL,
+                          CUSTOMER1_USERNAME, TIMESTAMP, TIMESTAMP, 42, 21);
+
+    // the page starts at the cursor in the index instead of counting through the pages before it
+    assertTrue(plan, plan.contains(TRANSACTION_HISTORY_INDEX + ": CUSTOMERID = ?1"));
+    assertTrue(plan, plan.contains("AND TIMESTAMP <= ?2"));
+    assertFalse(plan, plan.contains("tableScan"));
+  }
+
+  @Test
+  public void testOverdraftLogPageAfterCursorSeeksCustomerTimestampIndex() {
+    String plan = explain(OverdraftLogRepository.OVERDRAFT_LOGS_AFTER_CURSOR_SQL,
+                          CUSTOMER1_USERNAME, TIMESTAMP, TIMESTAMP, 42, 21);
+
+    assertTrue(plan, plan.contains(OVERDRAFT_LOGS_INDEX + ": CUSTOMERID = ?1"));
+    assertTrue(plan, plan.contains("AND TIMESTAMP <= ?2"));
+    assertFalse(plan, plan.contains("tableScan"));
+  }
+
+  @Test
+  public void testStatementQueriesUseCustomerTimestampIndexes() {
+    String transactionsPlan = explain(StatementExporter.TRANSACTIONS_BETWEEN_SQL, CUSTOMER1_USERNAME, TIMESTAMP, TIMESTAMP);
+    String overdraftLogsPlan = explain(StatementExporter.OVERDRAFT_LOGS_BETWEEN_SQL, CUSTOMER1_USERNAME, TIMESTAMP, TIMESTAMP);
+
+    // H2 lists the range conditions in any order
+    assertTrue(transactionsPlan, transactionsPlan.contains(TRANSACTION_HISTORY_INDEX + ":"));
+    assertTrue(transactionsPlan, transactionsPlan.contains("CUSTOMERID = ?1"));
+    assertTrue(overdraftLogsPlan, overdraftLogsPlan.contains(OVERDRAFT_LOGS_INDEX + ":"));
+    assertTrue(overdraftLogsPlan, overdraftLogsPlan.contains("CUSTOMERID = ?1"));
+    assertFalse(transactionsPlan, transactionsPlan.contains("tableScan"));
+    assertFalse(overdraftLogsPlan, overdraftLogsPlan.contains("tableScan"));
+  }
+
+  @Test
+  public void testOverdraftLogLookupUsesTransactionIDIndex() {
+    String plan = explain(OverdraftLogRepository.OVERDRAFT_LOGS_OF_TRANSACTION_SQL, 1, CUSTOMER1_USERNAME);
+
+    assertTrue(plan, plan.contains(OVERDRAFT_LOGS_TRANSACTION_ID_INDEX + ": TRANSACTIONID = ?1"));
+    assertFalse(plan, plan.contains("tableScan"));
+  }
+
+  @Test
+  public void testAccountSnapshotUsesIndexOnEveryBranch() {
+    String plan = explain(AccountSnapshotRepository.ACCOUNT_SNAPSHOT_SQL,
+                          CUSTOMER1_USERNAME, CUSTOMER1_USERNAME, 10, CUSTOMER1_USERNAME, 3);
+
+    assertTrue(plan, plan.contains("PRIMARY_KEY"));
+    assertTrue(plan, plan.contains(OVERDRAFT_LOGS_INDEX));
+    assertTrue(plan, plan.contains(TRANSACTION_HISTORY_INDEX));
+    assertFalse(plan, plan.contains("tableScan"));
+  }
+
+  @Test
+  public void testLogTablesHaveSurrogateKeys() {
+    jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, ?, ?)",
+                        CUSTOMER1_USERNAME, TIMESTAMP, "Deposit", 100);
+    jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, ?, ?)",
+                        CUSTOMER1_USERNAME, TIMESTAMP, "Withdraw", 100);
+
+    // two rows for the same customer at the same Timestamp are still told apart by their TransactionID
+    Integer numDistinctIDs = jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT TransactionID) FROM TransactionHistory", Integer.class);
+    assertEquals(2, (int) numDistinctIDs);
+  }
+
+  @Test
+  public void testOverdraftLogsBeforeV7AreLinkedToTheirDeposit() {
+    HikariDataSource v6DataSource = new HikariDataSource();
+    v6DataSource.setJdbcUrl(H2Fixture.memoryUrl("schema-v6"));
+    try {
+      Flyway.configure().dataSource(v6DataSource).target("6").load().migrate();
+      JdbcTemplate v6JdbcTemplate = new JdbcTemplate(v6DataSource);
+      v6JdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, ?, ?)",
+                            CUSTOMER1_USERNAME, TIMESTAMP, "Withdraw", 100);
+      v6JdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) VALUES (?, ?, ?, ?)",
+                            CUSTOMER1_USERNAME, TIMESTAMP, "Deposit", 100);
+      v6JdbcTemplate.update("INSERT INTO OverdraftLogs (CustomerID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance) VALUES (?, ?, ?, ?, ?)",
+                            CUSTOMER1_USERNAME, TIMESTAMP, 100, 200, 100);
+      Long depositID = v6JdbcTemplate.queryForObject("SELECT TransactionID FROM TransactionHistory WHERE Action='Deposit'", Long.class);
+
+      Flyway.configure().dataSource(v6DataSource).load().migrate();
+
+      // the log written before V7 is linked to the deposit at its Timestamp, not to the withdraw
+      assertEquals(depositID, v6JdbcTemplate.queryForObject("SELECT TransactionID FROM OverdraftLogs", Long.class));
+    } finally {
+      H2Fixture.dropAndClose(v6DataSource);
+    }
+  }
+}
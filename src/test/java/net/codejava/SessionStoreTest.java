@@ -0,0 +1,94 @@
+package net.codejava;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.Assert.*;
+
+public class SessionStoreTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final String CUSTOMER2_USERNAME = "987654321";
+  private static final long IDLE_TIMEOUT_IN_MINUTES = 30;
+
+  private AtomicLong nanoTime;
+  private SessionStore sessionStore;
+
+  @BeforeEach
+  public void setup() {
+    // store holds a single session and is driven by a manual clock
+    nanoTime = new AtomicLong();
+    sessionStore = new SessionStore(1, IDLE_TIMEOUT_IN_MINUTES, TimeUnit.MINUTES, nanoTime::get);
+  }
+
+  @Test
+  public void testSessionMapsToCustomer() {
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    assertEquals(CUSTOMER1_USERNAME, sessionStore.customerFor(token));
+    assertNull(sessionStore.customerFor("not a token"));
+    assertNull(sessionStore.customerFor(null));
+  }
+
+  @Test
+  public void testCsrfTokenBelongsToSession() {
+    SessionStore largerStore = new SessionStore(100, IDLE_TIMEOUT_IN_MINUTES);
+    String token1 = largerStore.create(CUSTOMER1_USERNAME);
+    String token2 = largerStore.create(CUSTOMER1_USERNAME);
+    String csrfToken1 = largerStore.csrfTokenFor(token1);
+
+    assertNotNull(csrfToken1);
+    assertFalse(csrfToken1.equals(token1));
+    assertTrue(largerStore.isValidCsrfToken(token1, csrfToken1));
+    // another session of the same customer has its own CSRF token
+    assertFalse(largerStore.isValidCsrfToken(token2, csrfToken1));
+    assertFalse(largerStore.isValidCsrfToken(token1, null));
+    assertFalse(largerStore.isValidCsrfToken(null, csrfToken1));
+    assertNull(largerStore.csrfTokenFor(null));
+
+    largerStore.invalidate(token1);
+    assertFalse(largerStore.isValidCsrfToken(token1, csrfToken1));
+  }
+
+  @Test
+  public void testSessionsGetDistinctTokens() {
+    SessionStore largerStore = new SessionStore(100, IDLE_TIMEOUT_IN_MINUTES);
+
+    assertFalse(largerStore.create(CUSTOMER1_USERNAME).equals(largerStore.create(CUSTOMER1_USERNAME)));
+  }
+
+  @Test
+  public void testSessionExpiresWhenIdle() {
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    // every use keeps the session alive
+    nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(IDLE_TIMEOUT_IN_MINUTES - 1));
+    assertEquals(CUSTOMER1_USERNAME, sessionStore.customerFor(token));
+    nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(IDLE_TIMEOUT_IN_MINUTES - 1));
+    assertEquals(CUSTOMER1_USERNAME, sessionStore.customerFor(token));
+
+    nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(IDLE_TIMEOUT_IN_MINUTES));
+    assertNull(sessionStore.customerFor(token));
+  }
+
+  @Test
+  public void testInvalidatedSessionIsGone() {
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+    sessionStore.invalidate(token);
+
+    assertNull(sessionStore.customerFor(token));
+  }
+
+  @Test
+  public void testStoreIsSizeBounded() {
+    String token1 = sessionStore.create(CUSTOMER1_USERNAME);
+    String token2 = sessionStore.create(CUSTOMER2_USERNAME);
+    // size-based eviction runs asynchronously
+    sessionStore.cleanUp();
+
+    int liveSessions = (sessionStore.customerFor(token1) != null ? 1 : 0) + (sessionStore.customerFor(token2) != null ? 1 : 0);
+    assertEquals(1, liveSessions);
+  }
+}
@@ -0,0 +1,99 @@
+package net.codejava;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Latency of loading one uncached {@link AccountSnapshot} with `testudo.snapshot.fan-out.enabled`
+ * off (`fanOut=false`, one UNION ALL query) and on (`fanOut=true`, three concurrent queries).
+ * `sequentialReads` runs the same three queries one after the other, as the page did before snapshots.
+ *
+ * The DB is an in-memory H2 DB behind H2's TCP server, so that every query is a real socket round
+ * trip, holding a customer with 1000 OverdraftLogs and 1000 TransactionHistory rows.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=SnapshotFanOutBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotFanOutBenchmark {
+  private final static String CUSTOMER_ID = "123456789";
+  private final static int NUM_LOG_ROWS = 1000;
+
+  @Param({"false", "true"})
+  public boolean fanOut;
+
+  private Server h2Server;
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private AccountSnapshotRepository accountSnapshotRepository;
+  private TransactionHistoryRepository transactionHistoryRepository;
+
+  @Setup(Level.Trial)
+  public void setup() throws SQLException, IOException {
+    int h2Port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      h2Port = socket.getLocalPort();
+    }
+    h2Server = Server.createTcpServer("-tcpPort", String.valueOf(h2Port), "-ifNotExists").start();
+
+    dataSource = H2Fixture.newMigratedDataSourceAt(H2Fixture.tcpUrl(h2Port, "fanout"), 10);
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    accountSnapshotRepository = new AccountSnapshotRepository(jdbcTemplate, fanOut, 8, 2000);
+    transactionHistoryRepository = new TransactionHistoryRepository(jdbcTemplate);
+
+    H2Fixture.insertCustomer(jdbcTemplate, CUSTOMER_ID, 10000);
+    jdbcTemplate.update("INSERT INTO OverdraftLogs (CustomerID, Timestamp, DepositAmt, OldOverBalance, NewOverBalance) "
+                        + "SELECT ?, DATEADD('MINUTE', X, ?), 10000, 5100, 0 FROM SYSTEM_RANGE(1, ?)",
+                        CUSTOMER_ID, LocalDateTime.of(2020, 1, 1, 0, 0), NUM_LOG_ROWS);
+    jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) "
+                        + "SELECT ?, DATEADD('MINUTE', X, ?), 'Deposit', 10000 FROM SYSTEM_RANGE(1, ?)",
+                        CUSTOMER_ID, LocalDateTime.of(2020, 1, 1, 0, 0), NUM_LOG_ROWS);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    accountSnapshotRepository.shutdown();
+    H2Fixture.dropAndClose(dataSource);
+    h2Server.stop();
+  }
+
+  @Benchmark
+  public AccountSnapshot loadSnapshot() {
+    return accountSnapshotRepository.loadSnapshot(CUSTOMER_ID, AccountSnapshotCache.MAX_NUM_OVERDRAFT_LOGS_DISPLAYED,
+                                                  AccountSnapshotCache.MAX_NUM_TRANSACTIONS_DISPLAYED);
+  }
+
+  @Benchmark
+  public int sequentialReads() {
+    int rows = jdbcTemplate.queryForList(AccountSnapshotRepository.CUSTOMER_SQL, CUSTOMER_ID).size();
+    rows += jdbcTemplate.queryForList(OverdraftLogRepository.RECENT_OVERDRAFT_LOGS_SQL, CUSTOMER_ID,
+                                      AccountSnapshotCache.MAX_NUM_OVERDRAFT_LOGS_DISPLAYED).size();
+    rows += transactionHistoryRepository.findRecent(CUSTOMER_ID, AccountSnapshotCache.MAX_NUM_TRANSACTIONS_DISPLAYED).size();
+    return rows;
+  }
+}
@@ -0,0 +1,100 @@
+package net.codejava;
+
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Compares statements per second of the old literal `String.format` SQL against the
+ * parameterized statements in {@link CustomerRepository}, cycling through many customers
+ * so that every literal statement is a different SQL string.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=StatementBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementBenchmark {
+  private final static int NUM_CUSTOMERS = 1000;
+  private final static Money ONE_CENT = Money.ofCents(1);
+  private final static String LITERAL_CUSTOMER_STATE_SQL = "SELECT Balance, OverdraftBalance, NumFraudReversals FROM Customers WHERE CustomerID='%s';";
+  private final static String LITERAL_INCREASE_BALANCE_SQL = "UPDATE Customers SET Balance = Balance + %d WHERE CustomerID='%s';";
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private CustomerRepository customerRepository;
+  private String[] customerIDs;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    dataSource = H2Fixture.newMigratedDataSource("statements");
+
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    customerRepository = new CustomerRepository(jdbcTemplate);
+    customerIDs = new String[NUM_CUSTOMERS];
+    for (int i = 0; i < NUM_CUSTOMERS; i++) {
+      customerIDs[i] = String.format("%09d", i);
+      H2Fixture.insertCustomer(jdbcTemplate, customerIDs[i], "Foo", "Bar", 0, 0, 0);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    H2Fixture.dropAndClose(dataSource);
+  }
+
+  /**
+   * Hands out customer IDs round-robin, one cursor per benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class CustomerCursor {
+    private int next;
+
+    String nextCustomerID(StatementBenchmark benchmark) {
+      next = (next + 1) % NUM_CUSTOMERS;
+      return benchmark.customerIDs[next];
+    }
+  }
+
+  @Benchmark
+  public CustomerState literalRead(CustomerCursor cursor) {
+    String customerID = cursor.nextCustomerID(this);
+    return jdbcTemplate.queryForObject(String.format(LITERAL_CUSTOMER_STATE_SQL, customerID),
+                                       (rs, rowNum) -> new CustomerState(customerID,
+                                                                         Money.ofCents(rs.getLong("Balance")),
+                                                                         Money.ofCents(rs.getLong("OverdraftBalance")),
+                                                                         rs.getInt("NumFraudReversals")));
+  }
+
+  @Benchmark
+  public CustomerState parameterizedRead(CustomerCursor cursor) {
+    return customerRepository.findState(cursor.nextCustomerID(this));
+  }
+
+  @Benchmark
+  public int literalUpdate(CustomerCursor cursor) {
+    return jdbcTemplate.update(String.format(LITERAL_INCREASE_BALANCE_SQL, 1, cursor.nextCustomerID(this)));
+  }
+
+  @Benchmark
+  public void parameterizedUpdate(CustomerCursor cursor) {
+    customerRepository.increaseBalance(cursor.nextCustomerID(this), ONE_CENT);
+  }
+}
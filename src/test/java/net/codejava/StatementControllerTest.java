@@ -0,0 +1,203 @@
+package net.codejava;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link StatementController} and {@link StatementExporter}, run against an H2 DB in MySQL
+ * mode. The DB is kept in files so that a multi-million-row history doesn't share the heap with the export.
+ *
+ * The multi-million-row export takes over a minute, so it is tagged "large" and only runs with
+ * `mvn -P large-tests test`. The default build streams a history of a few thousand rows instead.
+ */
+public class StatementControllerTest {
+  private static final String CUSTOMER1_USERNAME = "123456789";
+  private static final String CUSTOMER2_USERNAME = "987654321";
+  private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2021, 11, 3, 11, 35, 0);
+  private static final int FETCH_SIZE = 1000;
+  // several fetches, but quick enough for every build
+  private static final int SMALL_HISTORY_ROWS = 10 * FETCH_SIZE + 1;
+  private static final int LARGE_HISTORY_ROWS = 2_000_000;
+  private static final long MAX_HEAP_GROWTH_IN_BYTES = 32 * 1024 * 1024;
+
+  @TempDir
+  Path dbDirectory;
+
+  private HikariDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private TransactionHistoryRepository transactionHistoryRepository;
+  private OverdraftLogRepository overdraftLogRepository;
+  private SessionStore sessionStore;
+  private StatementController statementController;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl("jdbc:h2:file:" + dbDirectory.resolve("statements") + ";MODE=MySQL;LAZY_QUERY_EXECUTION=1");
+    Flyway.configure().dataSource(dataSource).load().migrate();
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    transactionHistoryRepository = new TransactionHistoryRepository(jdbcTemplate);
+    overdraftLogRepository = new OverdraftLogRepository(jdbcTemplate);
+    sessionStore = new SessionStore(100, 30);
+    statementController = new StatementController(sessionStore, new StatementExporter(jdbcTemplate, FETCH_SIZE));
+  }
+
+  @AfterEach
+  public void teardown() {
+    jdbcTemplate.execute("SHUTDOWN");
+    dataSource.close();
+  }
+
+  private String statement(String token, String format, LocalDate from, LocalDate to) throws Exception {
+    ResponseEntity<StreamingResponseBody> response = statementController.getStatement(token, format, from, to);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    response.getBody().writeTo(out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testCsvStatementListsTransactionsThenOverdraftLogsOldestFirst() throws Exception {
+    long depositID = transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP.plusDays(1), "Deposit", Money.ofCents(10000));
+    transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP, "Withdraw", Money.ofCents(5050));
+    transactionHistoryRepository.insert(CUSTOMER2_USERNAME, TIMESTAMP, "Deposit", Money.ofCents(100));
+    overdraftLogRepository.insert(CUSTOMER1_USERNAME, depositID, TIMESTAMP.plusDays(1), Money.ofCents(10000), Money.ofCents(5151), Money.ZERO);
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    String csv = statement(token, "csv", null, null);
+
+    assertEquals(StatementExporter.CSV_HEADER
+                 + "Transaction,2021-11-03T11:35:00,2,Withdraw,50.50,,,\n"
+                 + "Transaction,2021-11-04T11:35:00,1,Deposit,100.00,,,\n"
+                 + "OverdraftLog,2021-11-04T11:35:00,,,,100.00,51.51,0.00\n", csv);
+  }
+
+  @Test
+  public void testJsonLinesStatementHasOneObjectPerRow() throws Exception {
+    long depositID = transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP, "Deposit", Money.ofCents(10000));
+    overdraftLogRepository.insert(CUSTOMER1_USERNAME, depositID, TIMESTAMP, Money.ofCents(10000), Money.ofCents(5151), Money.ZERO);
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    String jsonl = statement(token, "jsonl", null, null);
+
+    assertEquals("{\"type\":\"transaction\",\"timestamp\":\"2021-11-03T11:35:00\",\"transactionID\":1,\"action\":\"Deposit\",\"amount\":\"100.00\"}\n"
+                 + "{\"type\":\"overdraftLog\",\"timestamp\":\"2021-11-03T11:35:00\",\"depositAmt\":\"100.00\",\"oldOverdraftBalance\":\"51.51\",\"newOverdraftBalance\":\"0.00\"}\n",
+                 jsonl);
+  }
+
+  @Test
+  public void testDateRangeIncludesWholeDays() throws Exception {
+    for (int day = 0; day < 5; day++) {
+      transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP.plusDays(day), "Deposit", Money.ofCents(day + 1));
+    }
+    transactionHistoryRepository.insert(CUSTOMER1_USERNAME, TIMESTAMP.plusDays(3).toLocalDate().atStartOfDay(), "Deposit", Money.ofCents(99));
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    String csv = statement(token, "csv", LocalDate.of(2021, 11, 4), LocalDate.of(2021, 11, 6));
+
+    assertEquals(StatementExporter.CSV_HEADER
+                 + "Transaction,2021-11-04T11:35:00,2,Deposit,0.02,,,\n"
+                 + "Transaction,2021-11-05T11:35:00,3,Deposit,0.03,,,\n"
+                 + "Transaction,2021-11-06T00:00:00,6,Deposit,0.99,,,\n"
+                 + "Transaction,2021-11-06T11:35:00,4,Deposit,0.04,,,\n", csv);
+  }
+
+  @Test
+  public void testStatementRequiresSession() {
+    assertEquals(HttpStatus.UNAUTHORIZED, statementController.getStatement(null, "csv", null, null).getStatusCode());
+    assertEquals(HttpStatus.UNAUTHORIZED, statementController.getStatement("not a token", "csv", null, null).getStatusCode());
+  }
+
+  @Test
+  public void testBadFormatOrRangeIsBadRequest() {
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    assertEquals(HttpStatus.BAD_REQUEST, statementController.getStatement(token, "xml", null, null).getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST,
+                 statementController.getStatement(token, "csv", LocalDate.of(2021, 11, 4), LocalDate.of(2021, 11, 3)).getStatusCode());
+  }
+
+  @Test
+  public void testStatementLongerThanFetchSizeIsStreamedWhole() throws Exception {
+    insertDeposits(SMALL_HISTORY_ROWS);
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+
+    LineCountingOutputStream out = new LineCountingOutputStream(SMALL_HISTORY_ROWS / 2);
+    statementController.getStatement(token, "csv", null, null).getBody().writeTo(out);
+
+    assertEquals(SMALL_HISTORY_ROWS + 1, out.lines);
+  }
+
+  @Test
+  @Tag("large")
+  public void testMultiMillionRowStatementStreamsInConstantMemory() throws Exception {
+    insertDeposits(LARGE_HISTORY_ROWS);
+    String token = sessionStore.create(CUSTOMER1_USERNAME);
+    long heapBeforeExport = liveHeap();
+
+    LineCountingOutputStream out = new LineCountingOutputStream(LARGE_HISTORY_ROWS / 2);
+    statementController.getStatement(token, "csv", null, null).getBody().writeTo(out);
+
+    assertEquals(LARGE_HISTORY_ROWS + 1, out.lines);
+    // a history buffered in memory would hold a million rows by the time the millionth line is written
+    assertTrue(out.heapAtSampledLine - heapBeforeExport + " bytes", out.heapAtSampledLine - heapBeforeExport < MAX_HEAP_GROWTH_IN_BYTES);
+  }
+
+  private void insertDeposits(int numRows) {
+    jdbcTemplate.update("INSERT INTO TransactionHistory (CustomerID, Timestamp, Action, Amount) "
+                        + "SELECT ?, DATEADD('SECOND', X, ?), 'Deposit', X FROM SYSTEM_RANGE(1, ?)",
+                        CUSTOMER1_USERNAME, TIMESTAMP, numRows);
+  }
+
+  private static long liveHeap() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Discards the statement, counting its lines and measuring the live heap once it reaches a given line.
+   */
+  private static class LineCountingOutputStream extends OutputStream {
+    private final long sampledLine;
+    private long lines;
+    private long heapAtSampledLine;
+
+    LineCountingOutputStream(long sampledLine) {
+      this.sampledLine = sampledLine;
+    }
+
+    @Override
+    public void write(int b) {
+      if (b == '\n' && ++lines == sampledLine) {
+        heapAtSampledLine = liveHeap();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      for (int i = off; i < off + len; i++) {
+        write(b[i]);
+      }
+    }
+  }
+}
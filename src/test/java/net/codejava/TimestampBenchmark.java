@@ -0,0 +1,91 @@
+package net.codejava;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the shared static SimpleDateFormat that used to timestamp log rows against the
+ * LocalDateTime that {@link LedgerService} now passes to JDBC, with many threads at once.
+ *
+ * Each thread stamps its own instant and checks the result against a value computed up front,
+ * so the `corrupted` counter reports how many timestamps came out wrong.
+ *
+ * Run with: mvn -P benchmark verify -DskipTests -Djmh.include=TimestampBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class TimestampBenchmark {
+  private final static ZoneId ZONE = ZoneId.systemDefault();
+  private final static SimpleDateFormat SQL_DATETIME_FORMATTER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+  /**
+   * One instant per thread, along with the timestamp it must produce.
+   */
+  @State(Scope.Thread)
+  public static class ThreadInstant {
+    long epochMillis;
+    String expectedFormatted;
+    LocalDateTime expectedLocalDateTime;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      // a random second in 2000-2030, so that threads disagree on every field
+      epochMillis = ThreadLocalRandom.current().nextLong(946684800000L, 1893456000000L);
+      expectedFormatted = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(epochMillis));
+      expectedLocalDateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZONE).truncatedTo(ChronoUnit.SECONDS);
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Corruption {
+    public long corrupted;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      corrupted = 0;
+    }
+  }
+
+  @Benchmark
+  public String sharedSimpleDateFormat(ThreadInstant instant, Corruption corruption) {
+    String timestamp = SQL_DATETIME_FORMATTER.format(new Date(instant.epochMillis));
+    if (!timestamp.equals(instant.expectedFormatted)) {
+      corruption.corrupted++;
+    }
+    return timestamp;
+  }
+
+  @Benchmark
+  public LocalDateTime localDateTime(ThreadInstant instant, Corruption corruption) {
+    LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(instant.epochMillis), ZONE).truncatedTo(ChronoUnit.SECONDS);
+    if (!timestamp.equals(instant.expectedLocalDateTime)) {
+      corruption.corrupted++;
+    }
+    return timestamp;
+  }
+}
@@ -0,0 +1,109 @@
+package net.codejava;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests for {@link VirtualThreads} and the {@link ConnectionPermitDataSource} that guards the DB
+ * in virtual thread mode. Which of the executor tests runs depends on the Java version running the tests.
+ */
+public class VirtualThreadsTest {
+  private static final int MAX_PERMITS = 2;
+
+  private HikariDataSource dataSource;
+  private ConnectionPermitDataSource connectionPermitDataSource;
+
+  @BeforeEach
+  public void setup() {
+    dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl("jdbc:h2:mem:permits;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    dataSource.setMaximumPoolSize(MAX_PERMITS + 1);
+    connectionPermitDataSource = new ConnectionPermitDataSource(dataSource, MAX_PERMITS, 100);
+  }
+
+  @AfterEach
+  public void teardown() {
+    dataSource.close();
+  }
+
+  @Test
+  public void testPermitsBoundOpenConnections() throws Exception {
+    Connection first = connectionPermitDataSource.getConnection();
+    Connection second = connectionPermitDataSource.getConnection();
+    assertEquals(0, connectionPermitDataSource.getAvailablePermits());
+
+    try {
+      connectionPermitDataSource.getConnection();
+      fail("a third connection was handed out with only two permits");
+    } catch (SQLTransientConnectionException e) {
+      // expected
+    }
+
+    // closing twice returns the permit once
+    first.close();
+    first.close();
+    assertEquals(1, connectionPermitDataSource.getAvailablePermits());
+    try (Connection third = connectionPermitDataSource.getConnection()) {
+      assertTrue(third.isValid(1));
+    }
+    second.close();
+    assertEquals(MAX_PERMITS, connectionPermitDataSource.getAvailablePermits());
+  }
+
+  @Test
+  public void testPermitReturnedWhenQueryFails() {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(connectionPermitDataSource);
+    for (int i = 0; i < MAX_PERMITS + 1; i++) {
+      try {
+        jdbcTemplate.queryForObject("SELECT * FROM NoSuchTable", Integer.class);
+        fail();
+      } catch (RuntimeException e) {
+        // expected
+      }
+    }
+
+    assertEquals(MAX_PERMITS, connectionPermitDataSource.getAvailablePermits());
+    assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT 1", Integer.class));
+  }
+
+  @Test
+  public void testExecutorRunsTasksOnNamedVirtualThreads() throws Exception {
+    assumeTrue(VirtualThreads.isSupported());
+    ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor("http-virtual-");
+
+    try {
+      Future<Thread> thread = executor.submit(Thread::currentThread);
+
+      assertTrue(VirtualThreads.isVirtual(thread.get()));
+      assertTrue(thread.get().getName(), thread.get().getName().startsWith("http-virtual-"));
+      assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testExecutorFailsFastWithoutVirtualThreads() {
+    assumeFalse(VirtualThreads.isSupported());
+
+    try {
+      VirtualThreads.newVirtualThreadPerTaskExecutor("http-virtual-");
+      fail("created a virtual thread executor on Java " + System.getProperty("java.version"));
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Java 21"));
+    }
+  }
+}